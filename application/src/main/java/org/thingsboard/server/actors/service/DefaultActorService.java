@@ -26,6 +26,7 @@ import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.actors.ActorSystemContext;
 import org.thingsboard.server.actors.DefaultTbActorSystem;
 import org.thingsboard.server.actors.TbActorId;
+import org.thingsboard.server.actors.TbActorMailboxType;
 import org.thingsboard.server.actors.TbActorRef;
 import org.thingsboard.server.actors.TbActorSystem;
 import org.thingsboard.server.actors.TbActorSystemSettings;
@@ -37,6 +38,8 @@ import org.thingsboard.server.queue.discovery.PartitionChangeEvent;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -78,11 +81,28 @@ public class DefaultActorService implements ActorService {
     @Value("${actors.system.rule_dispatcher_pool_size:4}")
     private int ruleDispatcherSize;
 
+    @Value("${actors.system.app_dispatcher_mailbox_type:DEFAULT}")
+    private TbActorMailboxType appDispatcherMailboxType;
+
+    @Value("${actors.system.tenant_dispatcher_mailbox_type:DEFAULT}")
+    private TbActorMailboxType tenantDispatcherMailboxType;
+
+    @Value("${actors.system.device_dispatcher_mailbox_type:DEFAULT}")
+    private TbActorMailboxType deviceDispatcherMailboxType;
+
+    @Value("${actors.system.rule_dispatcher_mailbox_type:DEFAULT}")
+    private TbActorMailboxType ruleDispatcherMailboxType;
+
     @PostConstruct
     public void initActorSystem() {
         log.info("Initializing actor system.");
         actorContext.setActorService(this);
-        TbActorSystemSettings settings = new TbActorSystemSettings(actorThroughput, schedulerPoolSize, maxActorInitAttempts);
+        Map<String, TbActorMailboxType> mailboxTypes = new HashMap<>();
+        mailboxTypes.put(APP_DISPATCHER_NAME, appDispatcherMailboxType);
+        mailboxTypes.put(TENANT_DISPATCHER_NAME, tenantDispatcherMailboxType);
+        mailboxTypes.put(DEVICE_DISPATCHER_NAME, deviceDispatcherMailboxType);
+        mailboxTypes.put(RULE_DISPATCHER_NAME, ruleDispatcherMailboxType);
+        TbActorSystemSettings settings = new TbActorSystemSettings(actorThroughput, schedulerPoolSize, maxActorInitAttempts, mailboxTypes);
         system = new DefaultTbActorSystem(settings);
 
         system.createDispatcher(APP_DISPATCHER_NAME, initDispatcherExecutor(APP_DISPATCHER_NAME, appDispatcherSize));
@@ -100,6 +100,7 @@ import org.thingsboard.server.service.security.permission.AccessControlService;
 import org.thingsboard.server.service.security.permission.Operation;
 import org.thingsboard.server.service.security.permission.Resource;
 import org.thingsboard.server.service.state.DeviceStateService;
+import org.thingsboard.server.service.subscription.TbEntityDataSubscriptionService;
 import org.thingsboard.server.service.telemetry.AlarmSubscriptionService;
 import org.thingsboard.server.service.telemetry.TelemetrySubscriptionService;
 
@@ -190,6 +191,9 @@ public abstract class BaseController {
     @Autowired
     protected EntityViewService entityViewService;
 
+    @Autowired
+    protected TbEntityDataSubscriptionService entityDataSubscriptionService;
+
     @Autowired
     protected TelemetrySubscriptionService tsSubService;
 
@@ -657,6 +661,7 @@ public abstract class BaseController {
         }
         if (e == null) {
             pushEntityActionToRuleEngine(entityId, entity, user, customerId, actionType, additionalInfo);
+            entityDataSubscriptionService.onEntityAction(user.getTenantId(), entityId, actionType);
         }
         auditLogService.logEntityAction(user.getTenantId(), customerId, user.getId(), user.getName(), entityId, entity, actionType, e, additionalInfo);
     }
@@ -23,6 +23,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.adapter.NativeWebSocketSession;
@@ -38,13 +39,18 @@ import org.thingsboard.server.service.security.model.SecurityUser;
 import org.thingsboard.server.service.security.model.UserPrincipal;
 import org.thingsboard.server.service.telemetry.SessionEvent;
 import org.thingsboard.server.service.telemetry.TelemetryWebSocketMsgEndpoint;
+import org.thingsboard.server.service.telemetry.TelemetryWebSocketProtoEncoder;
+import org.thingsboard.server.service.telemetry.TelemetryWebSocketProtocol;
 import org.thingsboard.server.service.telemetry.TelemetryWebSocketService;
 import org.thingsboard.server.service.telemetry.TelemetryWebSocketSessionRef;
 
 import javax.websocket.*;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
@@ -55,10 +61,12 @@ import java.util.concurrent.LinkedBlockingQueue;
 @Service
 @TbCoreComponent
 @Slf4j
-public class TbWebSocketHandler extends TextWebSocketHandler implements TelemetryWebSocketMsgEndpoint {
+public class TbWebSocketHandler extends TextWebSocketHandler implements TelemetryWebSocketMsgEndpoint, SubProtocolCapable {
 
     private static final ConcurrentMap<String, SessionMetaData> internalSessionMap = new ConcurrentHashMap<>();
     private static final ConcurrentMap<String, String> externalSessionMap = new ConcurrentHashMap<>();
+    private static final List<String> SUB_PROTOCOLS = Arrays.asList(
+            TelemetryWebSocketProtocol.PROTO_DEFLATE.getSubProtocol(), TelemetryWebSocketProtocol.PROTO.getSubProtocol());
 
     @Autowired
     private TelemetryWebSocketService webSocketService;
@@ -87,6 +95,11 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
     private ConcurrentMap<UserId, Set<String>> regularUserSessionsMap = new ConcurrentHashMap<>();
     private ConcurrentMap<UserId, Set<String>> publicUserSessionsMap = new ConcurrentHashMap<>();
 
+    @Override
+    public List<String> getSubProtocols() {
+        return SUB_PROTOCOLS;
+    }
+
     @Override
     public void handleTextMessage(WebSocketSession session, TextMessage message) {
         try {
@@ -177,7 +190,8 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
             throw new InvalidParameterException("Can't find plugin with specified token!");
         } else {
             SecurityUser currentUser = (SecurityUser) ((Authentication) session.getPrincipal()).getPrincipal();
-            return new TelemetryWebSocketSessionRef(UUID.randomUUID().toString(), currentUser, session.getLocalAddress(), session.getRemoteAddress());
+            return new TelemetryWebSocketSessionRef(UUID.randomUUID().toString(), currentUser, session.getLocalAddress(), session.getRemoteAddress(),
+                    TelemetryWebSocketProtocol.forSubProtocol(session.getAcceptedProtocol()));
         }
     }
 
@@ -187,7 +201,7 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
         private final TelemetryWebSocketSessionRef sessionRef;
 
         private volatile boolean isSending = false;
-        private final Queue<String> msgQueue;
+        private final Queue<Object> msgQueue;
 
         SessionMetaData(WebSocketSession session, TelemetryWebSocketSessionRef sessionRef, int maxMsgQueuePerSession) {
             super();
@@ -198,7 +212,10 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
             this.msgQueue = new LinkedBlockingQueue<>(maxMsgQueuePerSession);
         }
 
-        synchronized void sendMsg(String msg) {
+        /**
+         * @param msg either a String for a text frame or a byte[] for a binary frame
+         */
+        synchronized void sendMsg(Object msg) {
             if (isSending) {
                 try {
                     msgQueue.add(msg);
@@ -220,9 +237,13 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
             }
         }
 
-        private void sendMsgInternal(String msg) {
+        private void sendMsgInternal(Object msg) {
             try {
-                this.asyncRemote.sendText(msg, this);
+                if (msg instanceof byte[]) {
+                    this.asyncRemote.sendBinary(ByteBuffer.wrap((byte[]) msg), this);
+                } else {
+                    this.asyncRemote.sendText((String) msg, this);
+                }
             } catch (Exception e) {
                 log.trace("[{}] Failed to send msg", session.getId(), e);
                 try {
@@ -243,7 +264,7 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
                     log.trace("[{}] Session transport error", session.getId(), ioe);
                 }
             } else {
-                String msg = msgQueue.poll();
+                Object msg = msgQueue.poll();
                 if (msg != null) {
                     sendMsgInternal(msg);
                 } else {
@@ -255,8 +276,19 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
 
     @Override
     public void send(TelemetryWebSocketSessionRef sessionRef, int subscriptionId, String msg) throws IOException {
+        doSend(sessionRef, subscriptionId, msg);
+    }
+
+    @Override
+    public void send(TelemetryWebSocketSessionRef sessionRef, int subscriptionId, byte[] msg) throws IOException {
+        doSend(sessionRef, subscriptionId, msg);
+    }
+
+    private void doSend(TelemetryWebSocketSessionRef sessionRef, int subscriptionId, Object msg) {
         String externalId = sessionRef.getSessionId();
-        log.debug("[{}] Processing {}", externalId, msg);
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Processing {}", externalId, msg instanceof byte[] ? ((byte[]) msg).length + " bytes" : msg);
+        }
         String internalId = externalSessionMap.get(externalId);
         if (internalId != null) {
             SessionMetaData sessionMd = internalSessionMap.get(internalId);
@@ -267,7 +299,13 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
                         if (blacklistedSessions.putIfAbsent(externalId, sessionRef) == null) {
                             log.info("[{}][{}][{}] Failed to process session update. Max session updates limit reached"
                                     , sessionRef.getSecurityCtx().getTenantId(), sessionRef.getSecurityCtx().getId(), externalId);
-                            sessionMd.sendMsg("{\"subscriptionId\":" + subscriptionId + ", \"errorCode\":" + ThingsboardErrorCode.TOO_MANY_UPDATES.getErrorCode() + ", \"errorMsg\":\"Too many updates!\"}");
+                            TelemetryWebSocketProtocol protocol = sessionRef.getProtocol();
+                            if (protocol.isBinary()) {
+                                sessionMd.sendMsg(TelemetryWebSocketProtoEncoder.encodeError(subscriptionId,
+                                        ThingsboardErrorCode.TOO_MANY_UPDATES.getErrorCode(), "Too many updates!", protocol.isDeflate()));
+                            } else {
+                                sessionMd.sendMsg("{\"subscriptionId\":" + subscriptionId + ", \"errorCode\":" + ThingsboardErrorCode.TOO_MANY_UPDATES.getErrorCode() + ", \"errorMsg\":\"Too many updates!\"}");
+                            }
                         }
                         return;
                     } else {
@@ -301,6 +339,18 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
         }
     }
 
+    @Override
+    public int getPendingMsgCount(TelemetryWebSocketSessionRef sessionRef) {
+        String internalId = externalSessionMap.get(sessionRef.getSessionId());
+        if (internalId != null) {
+            SessionMetaData sessionMd = internalSessionMap.get(internalId);
+            if (sessionMd != null) {
+                return sessionMd.msgQueue.size();
+            }
+        }
+        return 0;
+    }
+
     private boolean checkLimits(WebSocketSession session, TelemetryWebSocketSessionRef sessionRef) throws Exception {
         String sessionId = session.getId();
         if (maxSessionsPerTenant > 0) {
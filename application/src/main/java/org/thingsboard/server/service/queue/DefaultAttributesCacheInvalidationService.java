@@ -0,0 +1,94 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.dao.attributes.AttributesCacheInvalidationService;
+import org.thingsboard.server.gen.transport.TransportProtos.AttributesCacheInvalidationMsgProto;
+import org.thingsboard.server.gen.transport.TransportProtos.ToCoreNotificationMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineNotificationMsg;
+import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.discovery.PartitionService;
+import org.thingsboard.server.queue.discovery.TbServiceInfoProvider;
+import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Broadcasts attribute changes to the other core and rule engine services, so they evict the attributes from their local caches.
+ * Disabled by default: services of older versions do not recognize the notification.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "cache.attributes", value = "invalidation_enabled", havingValue = "true")
+public class DefaultAttributesCacheInvalidationService implements AttributesCacheInvalidationService {
+
+    private final TbQueueProducerProvider producerProvider;
+    private final PartitionService partitionService;
+    private final TbServiceInfoProvider serviceInfoProvider;
+
+    public DefaultAttributesCacheInvalidationService(TbQueueProducerProvider producerProvider, PartitionService partitionService, TbServiceInfoProvider serviceInfoProvider) {
+        this.producerProvider = producerProvider;
+        this.partitionService = partitionService;
+        this.serviceInfoProvider = serviceInfoProvider;
+    }
+
+    @Override
+    public void broadcastInvalidation(TenantId tenantId, EntityId entityId, String scope, Collection<String> keys) {
+        log.trace("[{}][{}][{}] Broadcasting attributes cache invalidation: {}", tenantId, entityId, scope, keys);
+        AttributesCacheInvalidationMsgProto invalidationMsg = AttributesCacheInvalidationMsgProto.newBuilder()
+                .setTenantIdMSB(tenantId.getId().getMostSignificantBits())
+                .setTenantIdLSB(tenantId.getId().getLeastSignificantBits())
+                .setEntityType(entityId.getEntityType().name())
+                .setEntityIdMSB(entityId.getId().getMostSignificantBits())
+                .setEntityIdLSB(entityId.getId().getLeastSignificantBits())
+                .setScope(scope)
+                .addAllKeys(keys)
+                .build();
+        String currentServiceId = serviceInfoProvider.getServiceId();
+        Set<String> tbCoreServices = new HashSet<>(partitionService.getAllServiceIds(ServiceType.TB_CORE));
+        tbCoreServices.remove(currentServiceId);
+        if (!tbCoreServices.isEmpty()) {
+            TbQueueProducer<TbProtoQueueMsg<ToCoreNotificationMsg>> toCoreNfProducer = producerProvider.getTbCoreNotificationsMsgProducer();
+            ToCoreNotificationMsg toCoreMsg = ToCoreNotificationMsg.newBuilder().setAttributesCacheInvalidationMsg(invalidationMsg).build();
+            for (String serviceId : tbCoreServices) {
+                TopicPartitionInfo tpi = partitionService.getNotificationsTopic(ServiceType.TB_CORE, serviceId);
+                toCoreNfProducer.send(tpi, new TbProtoQueueMsg<>(entityId.getId(), toCoreMsg), null);
+            }
+        }
+        Set<String> tbRuleEngineServices = new HashSet<>(partitionService.getAllServiceIds(ServiceType.TB_RULE_ENGINE));
+        // No need to push notifications twice
+        tbRuleEngineServices.removeAll(partitionService.getAllServiceIds(ServiceType.TB_CORE));
+        tbRuleEngineServices.remove(currentServiceId);
+        if (!tbRuleEngineServices.isEmpty()) {
+            TbQueueProducer<TbProtoQueueMsg<ToRuleEngineNotificationMsg>> toRuleEngineProducer = producerProvider.getRuleEngineNotificationsMsgProducer();
+            ToRuleEngineNotificationMsg toRuleEngineMsg = ToRuleEngineNotificationMsg.newBuilder().setAttributesCacheInvalidationMsg(invalidationMsg).build();
+            for (String serviceId : tbRuleEngineServices) {
+                TopicPartitionInfo tpi = partitionService.getNotificationsTopic(ServiceType.TB_RULE_ENGINE, serviceId);
+                toRuleEngineProducer.send(tpi, new TbProtoQueueMsg<>(entityId.getId(), toRuleEngineMsg), null);
+            }
+        }
+    }
+}
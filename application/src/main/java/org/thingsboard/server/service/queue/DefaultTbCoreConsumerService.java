@@ -31,20 +31,25 @@ import org.thingsboard.server.common.data.alarm.Alarm;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.msg.MsgType;
 import org.thingsboard.server.common.msg.TbActorMsg;
+import org.thingsboard.server.common.msg.queue.MultipleTbCallback;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TbCallback;
 import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.common.transport.util.DataDecodingEncodingService;
+import org.thingsboard.server.dao.attributes.AttributesCache;
 import org.thingsboard.server.dao.util.mapping.JacksonUtil;
 import org.thingsboard.server.gen.transport.TransportProtos.DeviceStateServiceMsgProto;
 import org.thingsboard.server.gen.transport.TransportProtos.FromDeviceRPCResponseProto;
 import org.thingsboard.server.gen.transport.TransportProtos.LocalSubscriptionServiceMsgProto;
+import org.thingsboard.server.gen.transport.TransportProtos.SessionActivityBatchProto;
+import org.thingsboard.server.gen.transport.TransportProtos.SessionSubscriptionInfoProto;
 import org.thingsboard.server.gen.transport.TransportProtos.SubscriptionMgrMsgProto;
 import org.thingsboard.server.gen.transport.TransportProtos.TbAlarmDeleteProto;
 import org.thingsboard.server.gen.transport.TransportProtos.TbAlarmUpdateProto;
 import org.thingsboard.server.gen.transport.TransportProtos.TbAttributeDeleteProto;
 import org.thingsboard.server.gen.transport.TransportProtos.TbAttributeUpdateProto;
 import org.thingsboard.server.gen.transport.TransportProtos.TbSubscriptionCloseProto;
+import org.thingsboard.server.gen.transport.TransportProtos.TbSubscriptionUpdateProto;
 import org.thingsboard.server.gen.transport.TransportProtos.TbTimeSeriesUpdateProto;
 import org.thingsboard.server.gen.transport.TransportProtos.ToCoreMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.ToCoreNotificationMsg;
@@ -117,8 +122,9 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
                                         TbDeviceProfileCache deviceProfileCache,
                                         TbApiUsageStateService statsService,
                                         TbTenantProfileCache tenantProfileCache,
-                                        TbApiUsageStateService apiUsageStateService) {
-        super(actorContext, encodingService, tenantProfileCache, deviceProfileCache, apiUsageStateService, tbCoreQueueFactory.createToCoreNotificationsMsgConsumer());
+                                        TbApiUsageStateService apiUsageStateService,
+                                        AttributesCache attributesCache) {
+        super(actorContext, encodingService, tenantProfileCache, deviceProfileCache, apiUsageStateService, attributesCache, tbCoreQueueFactory.createToCoreNotificationsMsgConsumer());
         this.mainConsumer = tbCoreQueueFactory.createToCoreMsgConsumer();
         this.usageStatsConsumer = tbCoreQueueFactory.createToUsageStatsServiceMsgConsumer();
         this.stateService = stateService;
@@ -192,6 +198,12 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
                                 } else if (toCoreMsg.hasToDeviceActorMsg()) {
                                     log.trace("[{}] Forwarding message to device actor {}", id, toCoreMsg.getToDeviceActorMsg());
                                     forwardToDeviceActor(toCoreMsg.getToDeviceActorMsg(), callback);
+                                } else if (toCoreMsg.getToDeviceActorMsgsCount() > 0) {
+                                    log.trace("[{}] Forwarding batch of {} messages to device actors", id, toCoreMsg.getToDeviceActorMsgsCount());
+                                    forwardToDeviceActors(toCoreMsg.getToDeviceActorMsgsList(), callback);
+                                } else if (toCoreMsg.hasSessionActivityBatch()) {
+                                    log.trace("[{}] Forwarding activity of {} sessions to device actors", id, toCoreMsg.getSessionActivityBatch().getSessionsCount());
+                                    forwardToDeviceActors(toCoreMsg.getSessionActivityBatch(), callback);
                                 } else if (toCoreMsg.hasDeviceStateServiceMsg()) {
                                     log.trace("[{}] Forwarding message to state service {}", id, toCoreMsg.getDeviceStateServiceMsg());
                                     forwardToStateService(toCoreMsg.getDeviceStateServiceMsg(), callback);
@@ -272,6 +284,9 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
         } else if (toCoreNotification.getComponentLifecycleMsg() != null && !toCoreNotification.getComponentLifecycleMsg().isEmpty()) {
             handleComponentLifecycleMsg(id, toCoreNotification.getComponentLifecycleMsg());
             callback.onSuccess();
+        } else if (toCoreNotification.hasAttributesCacheInvalidationMsg()) {
+            handleAttributesCacheInvalidationMsg(id, toCoreNotification.getAttributesCacheInvalidationMsg());
+            callback.onSuccess();
         }
         if (statsEnabled) {
             stats.log(toCoreNotification);
@@ -346,6 +361,11 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
             localSubscriptionService.onSubscriptionUpdate(msg.getSubUpdate().getSessionId(), TbSubscriptionUtils.fromProto(msg.getSubUpdate()), callback);
         } else if (msg.hasAlarmSubUpdate()) {
             localSubscriptionService.onSubscriptionUpdate(msg.getAlarmSubUpdate().getSessionId(), TbSubscriptionUtils.fromProto(msg.getAlarmSubUpdate()), callback);
+        } else if (msg.getSubUpdatesCount() > 0) {
+            TbCallback multipleCallback = new MultipleTbCallback(msg.getSubUpdatesCount(), callback);
+            for (TbSubscriptionUpdateProto subUpdate : msg.getSubUpdatesList()) {
+                localSubscriptionService.onSubscriptionUpdate(subUpdate.getSessionId(), TbSubscriptionUtils.fromProto(subUpdate), multipleCallback);
+            }
         } else {
             throwNotHandled(msg, callback);
         }
@@ -413,6 +433,26 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
         actorContext.tell(new TransportToDeviceActorMsgWrapper(toDeviceActorMsg, callback));
     }
 
+    private void forwardToDeviceActors(List<TransportToDeviceActorMsg> msgs, TbCallback callback) {
+        TbCallback batchCallback = new MultipleTbCallback(msgs.size(), callback);
+        for (TransportToDeviceActorMsg msg : msgs) {
+            forwardToDeviceActor(msg, batchCallback);
+        }
+    }
+
+    private void forwardToDeviceActors(SessionActivityBatchProto batch, TbCallback callback) {
+        if (batch.getSessionsCount() == 0) {
+            callback.onSuccess();
+            return;
+        }
+        TbCallback batchCallback = new MultipleTbCallback(batch.getSessionsCount(), callback);
+        for (SessionSubscriptionInfoProto session : batch.getSessionsList()) {
+            forwardToDeviceActor(TransportToDeviceActorMsg.newBuilder()
+                    .setSessionInfo(session.getSessionInfo())
+                    .setSubscriptionInfo(session.getSubscriptionInfo()).build(), batchCallback);
+        }
+    }
+
     private void throwNotHandled(Object msg, TbCallback callback) {
         log.warn("Message not handled: {}", msg);
         callback.onFailure(new RuntimeException("Message not handled!"));
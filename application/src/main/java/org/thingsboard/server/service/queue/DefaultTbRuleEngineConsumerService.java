@@ -20,6 +20,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.rule.engine.api.RpcError;
 import org.thingsboard.server.actors.ActorSystemContext;
 import org.thingsboard.server.common.data.id.TenantId;
@@ -33,6 +34,7 @@ import org.thingsboard.server.common.msg.queue.TbCallback;
 import org.thingsboard.server.common.msg.queue.TbMsgCallback;
 import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.common.transport.util.DataDecodingEncodingService;
+import org.thingsboard.server.dao.attributes.AttributesCache;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineNotificationMsg;
@@ -59,6 +61,7 @@ import org.thingsboard.server.service.stats.RuleEngineStatisticsService;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -69,6 +72,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 @Service
@@ -96,6 +100,8 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
     private final ConcurrentMap<String, TbRuleEngineQueueConfiguration> consumerConfigurations = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, TbRuleEngineConsumerStats> consumerStats = new ConcurrentHashMap<>();
     private ExecutorService submitExecutor;
+    private ScheduledExecutorService pipelineTimeoutExecutor;
+    private ScheduledExecutorService pipelineRetryExecutor;
 
     public DefaultTbRuleEngineConsumerService(TbRuleEngineProcessingStrategyFactory processingStrategyFactory,
                                               TbRuleEngineSubmitStrategyFactory submitStrategyFactory,
@@ -108,8 +114,9 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
                                               StatsFactory statsFactory,
                                               TbDeviceProfileCache deviceProfileCache,
                                               TbTenantProfileCache tenantProfileCache,
-                                              TbApiUsageStateService apiUsageStateService) {
-        super(actorContext, encodingService, tenantProfileCache, deviceProfileCache, apiUsageStateService, tbRuleEngineQueueFactory.createToRuleEngineNotificationsMsgConsumer());
+                                              TbApiUsageStateService apiUsageStateService,
+                                              AttributesCache attributesCache) {
+        super(actorContext, encodingService, tenantProfileCache, deviceProfileCache, apiUsageStateService, attributesCache, tbRuleEngineQueueFactory.createToRuleEngineNotificationsMsgConsumer());
         this.statisticsService = statisticsService;
         this.ruleEngineSettings = ruleEngineSettings;
         this.tbRuleEngineQueueFactory = tbRuleEngineQueueFactory;
@@ -128,6 +135,8 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
             consumerStats.put(configuration.getName(), new TbRuleEngineConsumerStats(configuration.getName(), statsFactory));
         }
         submitExecutor = Executors.newSingleThreadExecutor();
+        pipelineTimeoutExecutor = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("re-pipeline-timeout"));
+        pipelineRetryExecutor = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("re-pipeline-retry"));
     }
 
     @PreDestroy
@@ -136,6 +145,12 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
         if (submitExecutor != null) {
             submitExecutor.shutdownNow();
         }
+        if (pipelineTimeoutExecutor != null) {
+            pipelineTimeoutExecutor.shutdownNow();
+        }
+        if (pipelineRetryExecutor != null) {
+            pipelineRetryExecutor.shutdownNow();
+        }
         ruleEngineSettings.getQueues().forEach(config -> consumerConfigurations.put(config.getName(), config));
     }
 
@@ -158,11 +173,93 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
         consumers.values().forEach(TbQueueConsumer::unsubscribe);
     }
 
+    static List<TbProtoQueueMsg<ToRuleEngineMsg>> unbatch(List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs) {
+        boolean batched = false;
+        for (TbProtoQueueMsg<ToRuleEngineMsg> msg : msgs) {
+            if (msg.getValue().getMsgsCount() > 0) {
+                batched = true;
+                break;
+            }
+        }
+        if (!batched) {
+            return msgs;
+        }
+        List<TbProtoQueueMsg<ToRuleEngineMsg>> result = new ArrayList<>(msgs.size());
+        for (TbProtoQueueMsg<ToRuleEngineMsg> msg : msgs) {
+            if (msg.getValue().getMsgsCount() > 0) {
+                for (ToRuleEngineMsg batchMsg : msg.getValue().getMsgsList()) {
+                    UUID key = batchMsg.getMsgKeyMSB() != 0 || batchMsg.getMsgKeyLSB() != 0 ?
+                            new UUID(batchMsg.getMsgKeyMSB(), batchMsg.getMsgKeyLSB()) : msg.getKey();
+                    result.add(new TbProtoQueueMsg<>(key, batchMsg, msg.getHeaders()));
+                }
+            } else {
+                result.add(msg);
+            }
+        }
+        return result;
+    }
+
     private void launchConsumer(TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer, TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats) {
+        if (isPipelined(consumer, configuration)) {
+            launchPipelinedConsumer(consumer, configuration, stats);
+        } else {
+            launchPackConsumer(consumer, configuration, stats);
+        }
+    }
+
+    private boolean isPipelined(TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer, TbRuleEngineQueueConfiguration configuration) {
+        if (configuration.getMaxInFlightMsgs() <= 0) {
+            return false;
+        }
+        String submitStrategyType = configuration.getSubmitStrategy().getType();
+        if (!"BURST".equals(submitStrategyType) && !"BATCH".equals(submitStrategyType)) {
+            log.warn("[{}] Pipelined processing does not preserve the order of the {} submit strategy. Processing messages in packs.", configuration.getName(), submitStrategyType);
+            return false;
+        }
+        if (!consumer.isPartialCommitSupported()) {
+            log.warn("[{}] Queue consumer does not support partial commits. Processing messages in packs.", configuration.getName());
+            return false;
+        }
+        if ("BATCH".equals(submitStrategyType)) {
+            log.warn("[{}] Pipelined processing submits messages one by one, the batch size of the BATCH submit strategy is replaced by max in flight messages [{}].",
+                    configuration.getName(), configuration.getMaxInFlightMsgs());
+        }
+        return true;
+    }
+
+    private void launchPipelinedConsumer(TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer, TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats) {
+        TbRuleEngineConsumerPipeline pipeline = new TbRuleEngineConsumerPipeline(configuration, consumer, processingStrategyFactory,
+                statsEnabled ? stats : null, (ctx, id, msg) -> submitExecutor.submit(() -> submitMessage(configuration, stats, ctx, id, msg)),
+                pipelineTimeoutExecutor, pipelineRetryExecutor);
         consumersExecutor.execute(() -> {
             while (!stopped) {
                 try {
-                    List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = consumer.poll(pollDuration);
+                    List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = unbatch(consumer.poll(pollDuration));
+                    if (msgs.isEmpty()) {
+                        pipeline.commitCompleted();
+                        continue;
+                    }
+                    pipeline.process(msgs, consumer.getLastPollId(), () -> stopped);
+                } catch (Exception e) {
+                    if (!stopped) {
+                        log.warn("Failed to process messages from queue.", e);
+                        try {
+                            Thread.sleep(pollDuration);
+                        } catch (InterruptedException e2) {
+                            log.trace("Failed to wait until the server has capacity to handle new requests", e2);
+                        }
+                    }
+                }
+            }
+            log.info("TB Rule Engine Consumer stopped.");
+        });
+    }
+
+    private void launchPackConsumer(TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer, TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats) {
+        consumersExecutor.execute(() -> {
+            while (!stopped) {
+                try {
+                    List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = unbatch(consumer.poll(pollDuration));
                     if (msgs.isEmpty()) {
                         continue;
                     }
@@ -173,23 +270,7 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
 
                     while (!stopped) {
                         TbMsgPackProcessingContext ctx = new TbMsgPackProcessingContext(configuration.getName(), submitStrategy);
-                        submitStrategy.submitAttempt((id, msg) -> submitExecutor.submit(() -> {
-                            log.trace("[{}] Creating callback for message: {}", id, msg.getValue());
-                            ToRuleEngineMsg toRuleEngineMsg = msg.getValue();
-                            TenantId tenantId = new TenantId(new UUID(toRuleEngineMsg.getTenantIdMSB(), toRuleEngineMsg.getTenantIdLSB()));
-                            TbMsgCallback callback = statsEnabled ?
-                                    new TbMsgPackCallback(id, tenantId, ctx, stats.getTimer(tenantId, SUCCESSFUL_STATUS), stats.getTimer(tenantId, FAILED_STATUS)) :
-                                    new TbMsgPackCallback(id, tenantId, ctx);
-                            try {
-                                if (toRuleEngineMsg.getTbMsg() != null && !toRuleEngineMsg.getTbMsg().isEmpty()) {
-                                    forwardToRuleEngineActor(configuration.getName(), tenantId, toRuleEngineMsg, callback);
-                                } else {
-                                    callback.onSuccess();
-                                }
-                            } catch (Exception e) {
-                                callback.onFailure(new RuleEngineException(e.getMessage()));
-                            }
-                        }));
+                        submitStrategy.submitAttempt((id, msg) -> submitExecutor.submit(() -> submitMessage(configuration, stats, ctx, id, msg)));
 
                         boolean timeout = false;
                         if (!ctx.await(configuration.getPackProcessingTimeout(), TimeUnit.MILLISECONDS)) {
@@ -232,6 +313,25 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
         });
     }
 
+    private void submitMessage(TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats, TbMsgPackProcessingContext ctx,
+                               UUID id, TbProtoQueueMsg<ToRuleEngineMsg> msg) {
+        log.trace("[{}] Creating callback for message: {}", id, msg.getValue());
+        ToRuleEngineMsg toRuleEngineMsg = msg.getValue();
+        TenantId tenantId = new TenantId(new UUID(toRuleEngineMsg.getTenantIdMSB(), toRuleEngineMsg.getTenantIdLSB()));
+        TbMsgCallback callback = statsEnabled ?
+                new TbMsgPackCallback(id, tenantId, ctx, stats.getTimer(tenantId, SUCCESSFUL_STATUS), stats.getTimer(tenantId, FAILED_STATUS)) :
+                new TbMsgPackCallback(id, tenantId, ctx);
+        try {
+            if (toRuleEngineMsg.getTbMsg() != null && !toRuleEngineMsg.getTbMsg().isEmpty()) {
+                forwardToRuleEngineActor(configuration.getName(), tenantId, toRuleEngineMsg, callback);
+            } else {
+                callback.onSuccess();
+            }
+        } catch (Exception e) {
+            callback.onFailure(new RuleEngineException(e.getMessage()));
+        }
+    }
+
     private void printFirstOrAll(TbRuleEngineQueueConfiguration configuration, TbMsgPackProcessingContext ctx, Map<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> map, String prefix) {
         boolean printAll = log.isTraceEnabled();
         log.info("{} to process [{}] messages", prefix, map.size());
@@ -276,6 +376,9 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
                     , proto.getResponse(), error);
             tbDeviceRpcService.processRpcResponseFromDevice(response);
             callback.onSuccess();
+        } else if (nfMsg.hasAttributesCacheInvalidationMsg()) {
+            handleAttributesCacheInvalidationMsg(id, nfMsg.getAttributesCacheInvalidationMsg());
+            callback.onSuccess();
         } else {
             log.trace("Received notification with missing handler");
             callback.onSuccess();
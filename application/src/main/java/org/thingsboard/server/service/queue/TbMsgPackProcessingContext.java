@@ -53,10 +53,16 @@ public class TbMsgPackProcessingContext {
     private final ConcurrentMap<TenantId, RuleEngineException> exceptionsMap = new ConcurrentHashMap<>();
 
     private final ConcurrentMap<UUID, RuleNodeInfo> lastRuleNodeMap = new ConcurrentHashMap<>();
+    private final Runnable completionCallback;
 
     public TbMsgPackProcessingContext(String queueName, TbRuleEngineSubmitStrategy submitStrategy) {
+        this(queueName, submitStrategy, null);
+    }
+
+    public TbMsgPackProcessingContext(String queueName, TbRuleEngineSubmitStrategy submitStrategy, Runnable completionCallback) {
         this.queueName = queueName;
         this.submitStrategy = submitStrategy;
+        this.completionCallback = completionCallback;
         this.profilerEnabled = log.isDebugEnabled();
         this.pendingMap = submitStrategy.getPendingMap();
         this.pendingCount = new AtomicInteger(pendingMap.size());
@@ -64,12 +70,18 @@ public class TbMsgPackProcessingContext {
 
     public boolean await(long packProcessingTimeout, TimeUnit milliseconds) throws InterruptedException {
         boolean success = processingTimeoutLatch.await(packProcessingTimeout, milliseconds);
-        if (!success && profilerEnabled) {
-            msgProfilerMap.values().forEach(this::onTimeout);
+        if (!success) {
+            onTimeout();
         }
         return success;
     }
 
+    public void onTimeout() {
+        if (profilerEnabled) {
+            msgProfilerMap.values().forEach(this::onTimeout);
+        }
+    }
+
     public void onSuccess(UUID id) {
         TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg> msg;
         boolean empty = false;
@@ -80,7 +92,7 @@ public class TbMsgPackProcessingContext {
             submitStrategy.onSuccess(id);
         }
         if (empty) {
-            processingTimeoutLatch.countDown();
+            onComplete();
         }
     }
 
@@ -94,7 +106,14 @@ public class TbMsgPackProcessingContext {
             exceptionsMap.putIfAbsent(tenantId, e);
         }
         if (empty) {
-            processingTimeoutLatch.countDown();
+            onComplete();
+        }
+    }
+
+    private void onComplete() {
+        processingTimeoutLatch.countDown();
+        if (completionCallback != null) {
+            completionCallback.run();
         }
     }
 
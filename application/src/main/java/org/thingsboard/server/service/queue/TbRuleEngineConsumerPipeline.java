@@ -0,0 +1,207 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue;
+
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
+import org.thingsboard.server.queue.TbQueueConsumer;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.settings.TbRuleEngineQueueConfiguration;
+import org.thingsboard.server.service.queue.processing.BurstTbRuleEngineSubmitStrategy;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineProcessingDecision;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineProcessingResult;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineProcessingStrategy;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineProcessingStrategyFactory;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineSubmitStrategy;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Pipelined processing of a rule engine queue.
+ * <p>
+ * The consumer keeps polling while up to {@code maxInFlightMsgs} messages are being processed. Every message is
+ * processed as a pack of one, so the configured processing strategy retries or skips each message independently.
+ * Completion is tracked per poll, and the consumer commits the highest poll for which it and all the previous polls are done.
+ */
+@Slf4j
+class TbRuleEngineConsumerPipeline {
+
+    private final TbRuleEngineQueueConfiguration configuration;
+    private final TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer;
+    private final TbRuleEngineProcessingStrategyFactory processingStrategyFactory;
+    private final TbRuleEngineConsumerStats stats;
+    private final MsgSubmitter submitter;
+    private final ScheduledExecutorService timeoutExecutor;
+    private final ScheduledExecutorService retryExecutor;
+    private final Semaphore inFlightPermits;
+    private final Deque<PolledPack> window = new ArrayDeque<>();
+
+    TbRuleEngineConsumerPipeline(TbRuleEngineQueueConfiguration configuration, TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer,
+                                 TbRuleEngineProcessingStrategyFactory processingStrategyFactory, TbRuleEngineConsumerStats stats,
+                                 MsgSubmitter submitter, ScheduledExecutorService timeoutExecutor, ScheduledExecutorService retryExecutor) {
+        this.configuration = configuration;
+        this.consumer = consumer;
+        this.processingStrategyFactory = processingStrategyFactory;
+        this.stats = stats;
+        this.submitter = submitter;
+        this.timeoutExecutor = timeoutExecutor;
+        this.retryExecutor = retryExecutor;
+        this.inFlightPermits = new Semaphore(configuration.getMaxInFlightMsgs());
+    }
+
+    /**
+     * Submits the messages of the last poll. Blocks while the maximum number of messages is in flight.
+     *
+     * @return false if the pipeline was stopped before all messages were submitted
+     */
+    boolean process(List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs, long pollId, BooleanSupplier stopped) throws InterruptedException {
+        PolledPack pack = new PolledPack(pollId, msgs.size());
+        synchronized (window) {
+            window.addLast(pack);
+        }
+        for (TbProtoQueueMsg<ToRuleEngineMsg> msg : msgs) {
+            while (!inFlightPermits.tryAcquire(configuration.getPollInterval(), TimeUnit.MILLISECONDS)) {
+                if (stopped.getAsBoolean()) {
+                    return false;
+                }
+                commitCompleted();
+            }
+            TbRuleEngineSubmitStrategy submitStrategy = new BurstTbRuleEngineSubmitStrategy(configuration.getName());
+            submitStrategy.init(Collections.singletonList(msg));
+            TbRuleEngineProcessingStrategy ackStrategy = processingStrategyFactory.newInstance(configuration.getName(), configuration.getProcessingStrategy(), false);
+            submitAttempt(pack, submitStrategy, ackStrategy);
+        }
+        commitCompleted();
+        return true;
+    }
+
+    void commitCompleted() {
+        long pollId = -1;
+        synchronized (window) {
+            while (!window.isEmpty() && window.peekFirst().isDone()) {
+                pollId = window.pollFirst().pollId;
+            }
+        }
+        if (pollId >= 0) {
+            consumer.commit(pollId);
+        }
+    }
+
+    private void submitAttempt(PolledPack pack, TbRuleEngineSubmitStrategy submitStrategy, TbRuleEngineProcessingStrategy ackStrategy) {
+        Attempt attempt = new Attempt(pack, submitStrategy, ackStrategy);
+        TbMsgPackProcessingContext ctx = new TbMsgPackProcessingContext(configuration.getName(), submitStrategy, () -> attempt.onDone(false));
+        attempt.ctx = ctx;
+        attempt.timeoutFuture = timeoutExecutor.schedule(() -> attempt.onDone(true), configuration.getPackProcessingTimeout(), TimeUnit.MILLISECONDS);
+        submitStrategy.submitAttempt((id, msg) -> submitter.submit(ctx, id, msg));
+    }
+
+    private void onAttemptDone(Attempt attempt, boolean timeout) {
+        TbMsgPackProcessingContext ctx = attempt.ctx;
+        if (timeout) {
+            ctx.onTimeout();
+        }
+        TbRuleEngineProcessingResult result = new TbRuleEngineProcessingResult(configuration.getName(), timeout, ctx);
+        if (result.isSuccess()) {
+            onDecision(attempt, result, attempt.ackStrategy.analyze(result));
+        } else {
+            if (timeout) {
+                log.info("[{}] Timeout to process message: {}", configuration.getName(), ctx.getPendingMap().keySet());
+            } else {
+                log.debug("[{}] Failed to process message: {}", configuration.getName(), ctx.getExceptionsMap());
+            }
+            onDecision(attempt, result, attempt.ackStrategy.analyze(result));
+        }
+    }
+
+    private void onDecision(Attempt attempt, TbRuleEngineProcessingResult result, TbRuleEngineProcessingDecision decision) {
+        if (stats != null) {
+            stats.log(result, decision.isCommit());
+        }
+        if (decision.isCommit() || decision.getReprocessMap() == null || decision.getReprocessMap().isEmpty()) {
+            attempt.submitStrategy.stop();
+            attempt.pack.onMsgDone();
+            inFlightPermits.release();
+        } else {
+            attempt.submitStrategy.update(decision.getReprocessMap());
+            // the retry strategy does not block, its pause is applied by scheduling the next attempt
+            retryExecutor.schedule(() -> submitAttempt(attempt.pack, attempt.submitStrategy, attempt.ackStrategy),
+                    decision.getRetryDelayMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    interface MsgSubmitter {
+
+        void submit(TbMsgPackProcessingContext ctx, UUID id, TbProtoQueueMsg<ToRuleEngineMsg> msg);
+
+    }
+
+    private class Attempt {
+
+        private final PolledPack pack;
+        private final TbRuleEngineSubmitStrategy submitStrategy;
+        private final TbRuleEngineProcessingStrategy ackStrategy;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile TbMsgPackProcessingContext ctx;
+        private volatile ScheduledFuture<?> timeoutFuture;
+
+        private Attempt(PolledPack pack, TbRuleEngineSubmitStrategy submitStrategy, TbRuleEngineProcessingStrategy ackStrategy) {
+            this.pack = pack;
+            this.submitStrategy = submitStrategy;
+            this.ackStrategy = ackStrategy;
+        }
+
+        private void onDone(boolean timeout) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            ScheduledFuture<?> future = timeoutFuture;
+            if (!timeout && future != null) {
+                future.cancel(false);
+            }
+            onAttemptDone(this, timeout);
+        }
+    }
+
+    private static class PolledPack {
+
+        private final long pollId;
+        private final AtomicInteger remaining;
+
+        private PolledPack(long pollId, int size) {
+            this.pollId = pollId;
+            this.remaining = new AtomicInteger(size);
+        }
+
+        private void onMsgDone() {
+            remaining.decrementAndGet();
+        }
+
+        private boolean isDone() {
+            return remaining.get() <= 0;
+        }
+    }
+}
@@ -18,49 +18,86 @@ package org.thingsboard.server.service.queue.processing;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BiConsumer;
 
+/**
+ * Addresses the messages of a pack by their index in the polled list.
+ * The message id carries a random per-pack prefix in the most significant bits, and the attempt number and the pack index
+ * in the least significant bits, so the index is resolved without lookups. A callback is accepted only if the message is pending
+ * in the attempt encoded in its id, which makes late callbacks from previous attempts harmless.
+ * The ids are created once per message and attempt, when the pending map of the attempt is built.
+ */
 public abstract class AbstractTbRuleEngineSubmitStrategy implements TbRuleEngineSubmitStrategy {
 
     protected final String queueName;
-    protected List<IdMsgPair> orderedMsgList;
+    private final long packIdMsb = ThreadLocalRandom.current().nextLong();
+    protected List<TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> msgs;
+    private UUID[] ids;
+    private AtomicIntegerArray pending;
+    private volatile int attempt;
+    /**
+     * Pack indexes of the messages to submit, in the original order. Only first {@code orderSize} elements are used.
+     */
+    protected int[] order;
+    protected int orderSize;
     private volatile boolean stopped;
 
     public AbstractTbRuleEngineSubmitStrategy(String queueName) {
         this.queueName = queueName;
     }
 
-    protected abstract void doOnSuccess(UUID id);
+    protected abstract void doOnSuccess(int idx);
 
     @Override
     public void init(List<TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> msgs) {
-        orderedMsgList = msgs.stream().map(msg -> new IdMsgPair(UUID.randomUUID(), msg)).collect(Collectors.toList());
+        int size = msgs.size();
+        this.msgs = msgs;
+        this.ids = new UUID[size];
+        this.order = new int[size];
+        this.pending = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        this.orderSize = size;
+        this.attempt = 1;
     }
 
     @Override
     public ConcurrentMap<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> getPendingMap() {
-        return orderedMsgList.stream().collect(Collectors.toConcurrentMap(pair -> pair.uuid, pair -> pair.msg));
+        ConcurrentMap<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> pendingMap = new ConcurrentHashMap<>(Math.max(16, orderSize * 4 / 3 + 1));
+        for (int i = 0; i < orderSize; i++) {
+            int idx = order[i];
+            pendingMap.put(idOf(idx), msgs.get(idx));
+        }
+        return pendingMap;
     }
 
     @Override
     public void update(ConcurrentMap<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> reprocessMap) {
-        List<IdMsgPair> newOrderedMsgList = new ArrayList<>(reprocessMap.size());
-        for (IdMsgPair pair : orderedMsgList) {
-            if (reprocessMap.containsKey(pair.uuid)) {
-                newOrderedMsgList.add(pair);
+        int newSize = 0;
+        for (int i = 0; i < orderSize; i++) {
+            int idx = order[i];
+            if (reprocessMap.containsKey(idOf(idx))) {
+                order[newSize++] = idx;
             }
         }
-        orderedMsgList = newOrderedMsgList;
+        orderSize = newSize;
+        attempt++;
     }
 
     @Override
     public void onSuccess(UUID id) {
         if (!stopped) {
-            doOnSuccess(id);
+            int idx = indexOf(id);
+            if (idx >= 0 && pending.compareAndSet(idx, attemptOf(id), 0)) {
+                doOnSuccess(idx);
+            }
         }
     }
 
@@ -68,4 +105,32 @@ public abstract class AbstractTbRuleEngineSubmitStrategy implements TbRuleEngine
     public void stop() {
         stopped = true;
     }
+
+    protected void submit(BiConsumer<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> msgConsumer, int idx) {
+        UUID id = idOf(idx);
+        pending.set(idx, attempt);
+        msgConsumer.accept(id, msgs.get(idx));
+    }
+
+    private UUID idOf(int idx) {
+        int currentAttempt = attempt;
+        UUID id = ids[idx];
+        if (id == null || attemptOf(id) != currentAttempt) {
+            id = new UUID(packIdMsb, ((long) currentAttempt << 32) | idx);
+            ids[idx] = id;
+        }
+        return id;
+    }
+
+    private int indexOf(UUID id) {
+        if (id.getMostSignificantBits() != packIdMsb) {
+            return -1;
+        }
+        long idx = id.getLeastSignificantBits() & 0xFFFFFFFFL;
+        return idx < ids.length ? (int) idx : -1;
+    }
+
+    private static int attemptOf(UUID id) {
+        return (int) (id.getLeastSignificantBits() >>> 32);
+    }
 }
@@ -19,8 +19,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -31,7 +29,7 @@ public class BatchTbRuleEngineSubmitStrategy extends AbstractTbRuleEngineSubmitS
 
     private final int batchSize;
     private final AtomicInteger packIdx = new AtomicInteger(0);
-    private final Map<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> pendingPack = new LinkedHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger(0);
     private volatile BiConsumer<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> msgConsumer;
 
     public BatchTbRuleEngineSubmitStrategy(String queueName, int batchSize) {
@@ -52,36 +50,27 @@ public class BatchTbRuleEngineSubmitStrategy extends AbstractTbRuleEngineSubmitS
     }
 
     @Override
-    protected void doOnSuccess(UUID id) {
-        boolean endOfPendingPack;
-        synchronized (pendingPack) {
-            TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg> msg = pendingPack.remove(id);
-            endOfPendingPack = msg != null && pendingPack.isEmpty();
-        }
-        if (endOfPendingPack) {
+    protected void doOnSuccess(int idx) {
+        if (pendingCount.decrementAndGet() == 0) {
             packIdx.incrementAndGet();
             submitNext();
         }
     }
 
     private void submitNext() {
-        int listSize = orderedMsgList.size();
-        int startIdx = Math.min(packIdx.get() * batchSize, listSize);
-        int endIdx = Math.min(startIdx + batchSize, listSize);
-        Map<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> tmpPack;
-        synchronized (pendingPack) {
-            pendingPack.clear();
-            for (int i = startIdx; i < endIdx; i++) {
-                IdMsgPair pair = orderedMsgList.get(i);
-                pendingPack.put(pair.uuid, pair.msg);
-            }
-            tmpPack = new LinkedHashMap<>(pendingPack);
+        int startIdx = Math.min(packIdx.get() * batchSize, orderSize);
+        int endIdx = Math.min(startIdx + batchSize, orderSize);
+        int submitSize = endIdx - startIdx;
+        if (submitSize == 0) {
+            return;
         }
-        int submitSize = pendingPack.size();
-        if (log.isDebugEnabled() && submitSize > 0) {
+        if (log.isDebugEnabled()) {
             log.debug("[{}] submitting [{}] messages to rule engine", queueName, submitSize);
         }
-        tmpPack.forEach(msgConsumer);
+        pendingCount.set(submitSize);
+        for (int i = startIdx; i < endIdx; i++) {
+            submit(msgConsumer, order[i]);
+        }
     }
 
 }
@@ -32,13 +32,15 @@ public class BurstTbRuleEngineSubmitStrategy extends AbstractTbRuleEngineSubmitS
     @Override
     public void submitAttempt(BiConsumer<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> msgConsumer) {
         if (log.isDebugEnabled()) {
-            log.debug("[{}] submitting [{}] messages to rule engine", queueName, orderedMsgList.size());
+            log.debug("[{}] submitting [{}] messages to rule engine", queueName, orderSize);
+        }
+        for (int i = 0; i < orderSize; i++) {
+            submit(msgConsumer, order[i]);
         }
-        orderedMsgList.forEach(pair -> msgConsumer.accept(pair.uuid, pair.msg));
     }
 
     @Override
-    protected void doOnSuccess(UUID id) {
+    protected void doOnSuccess(int idx) {
 
     }
 }
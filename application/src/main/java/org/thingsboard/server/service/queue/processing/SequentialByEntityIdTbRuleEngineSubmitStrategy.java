@@ -20,20 +20,26 @@ import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
 
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.BiConsumer;
 
+/**
+ * Messages of the same entity form a chain of pack indexes: {@code next[idx]} is the index of the following message of the same entity.
+ * Messages without an entity id form a chain of their own. The heads of all chains are submitted at once,
+ * and each successfully processed message submits its successor.
+ */
 @Slf4j
 public abstract class SequentialByEntityIdTbRuleEngineSubmitStrategy extends AbstractTbRuleEngineSubmitStrategy {
 
     private volatile BiConsumer<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> msgConsumer;
-    private volatile ConcurrentMap<UUID, EntityId> msgToEntityIdMap = new ConcurrentHashMap<>();
-    private volatile ConcurrentMap<EntityId, Queue<IdMsgPair>> entityIdToListMap = new ConcurrentHashMap<>();
+    private int[] next;
+    private int[] heads;
+    private int headsSize;
 
     public SequentialByEntityIdTbRuleEngineSubmitStrategy(String queueName) {
         super(queueName);
@@ -42,55 +48,52 @@ public abstract class SequentialByEntityIdTbRuleEngineSubmitStrategy extends Abs
     @Override
     public void init(List<TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> msgs) {
         super.init(msgs);
-        initMaps();
+        next = new int[msgs.size()];
+        heads = new int[msgs.size()];
+        initChains();
     }
 
     @Override
     public void submitAttempt(BiConsumer<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> msgConsumer) {
         this.msgConsumer = msgConsumer;
-        entityIdToListMap.forEach((entityId, queue) -> {
-            IdMsgPair msg = queue.peek();
-            if (msg != null) {
-                msgConsumer.accept(msg.uuid, msg.msg);
-            }
-        });
+        for (int i = 0; i < headsSize; i++) {
+            submit(msgConsumer, heads[i]);
+        }
     }
 
     @Override
     public void update(ConcurrentMap<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> reprocessMap) {
         super.update(reprocessMap);
-        initMaps();
+        initChains();
     }
 
     @Override
-    protected void doOnSuccess(UUID id) {
-        EntityId entityId = msgToEntityIdMap.get(id);
-        if (entityId != null) {
-            Queue<IdMsgPair> queue = entityIdToListMap.get(entityId);
-            if (queue != null) {
-                IdMsgPair next = null;
-                synchronized (queue) {
-                    IdMsgPair expected = queue.peek();
-                    if (expected != null && expected.uuid.equals(id)) {
-                        queue.poll();
-                        next = queue.peek();
-                    }
-                }
-                if (next != null) {
-                    msgConsumer.accept(next.uuid, next.msg);
-                }
-            }
+    protected void doOnSuccess(int idx) {
+        int nextIdx = next[idx];
+        if (nextIdx >= 0) {
+            submit(msgConsumer, nextIdx);
         }
     }
 
-    private void initMaps() {
-        msgToEntityIdMap.clear();
-        entityIdToListMap.clear();
-        for (IdMsgPair pair : orderedMsgList) {
-            EntityId entityId = getEntityId(pair.msg.getValue());
+    private void initChains() {
+        Arrays.fill(next, -1);
+        headsSize = 0;
+        Map<EntityId, Integer> tails = new HashMap<>();
+        int noEntityTail = -1;
+        for (int i = 0; i < orderSize; i++) {
+            int idx = order[i];
+            EntityId entityId = getEntityId(msgs.get(idx).getValue());
+            Integer tail;
             if (entityId != null) {
-                msgToEntityIdMap.put(pair.uuid, entityId);
-                entityIdToListMap.computeIfAbsent(entityId, id -> new LinkedList<>()).add(pair);
+                tail = tails.put(entityId, idx);
+            } else {
+                tail = noEntityTail >= 0 ? noEntityTail : null;
+                noEntityTail = idx;
+            }
+            if (tail != null) {
+                next[tail] = idx;
+            } else {
+                heads[headsSize++] = idx;
             }
         }
     }
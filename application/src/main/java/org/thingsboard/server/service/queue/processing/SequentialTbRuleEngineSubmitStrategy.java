@@ -20,7 +20,6 @@ import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
 
 import java.util.UUID;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 
@@ -29,7 +28,6 @@ public class SequentialTbRuleEngineSubmitStrategy extends AbstractTbRuleEngineSu
 
     private final AtomicInteger msgIdx = new AtomicInteger(0);
     private volatile BiConsumer<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> msgConsumer;
-    private volatile UUID expectedMsgId;
 
     public SequentialTbRuleEngineSubmitStrategy(String queueName) {
         super(queueName);
@@ -43,28 +41,19 @@ public class SequentialTbRuleEngineSubmitStrategy extends AbstractTbRuleEngineSu
     }
 
     @Override
-    public void update(ConcurrentMap<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> reprocessMap) {
-        super.update(reprocessMap);
-    }
-
-    @Override
-    protected void doOnSuccess(UUID id) {
-        if (expectedMsgId.equals(id)) {
-            msgIdx.incrementAndGet();
-            submitNext();
-        }
+    protected void doOnSuccess(int idx) {
+        msgIdx.incrementAndGet();
+        submitNext();
     }
 
     private void submitNext() {
-        int listSize = orderedMsgList.size();
         int idx = msgIdx.get();
-        if (idx < listSize) {
-            IdMsgPair pair = orderedMsgList.get(idx);
-            expectedMsgId = pair.uuid;
+        if (idx < orderSize) {
+            int packIdx = order[idx];
             if (log.isDebugEnabled()) {
-                log.debug("[{}] submitting [{}] message to rule engine", queueName, pair.msg);
+                log.debug("[{}] submitting [{}] message to rule engine", queueName, msgs.get(packIdx));
             }
-            msgConsumer.accept(pair.uuid, pair.msg);
+            submit(msgConsumer, packIdx);
         }
     }
 
@@ -27,5 +27,17 @@ public class TbRuleEngineProcessingDecision {
 
     private final boolean commit;
     private final ConcurrentMap<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> reprocessMap;
+    // Pause before the reprocessing that the caller has to apply, if the strategy was created without the blocking pause
+    private final long retryDelayMs;
+
+    public TbRuleEngineProcessingDecision(boolean commit, ConcurrentMap<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> reprocessMap) {
+        this(commit, reprocessMap, 0L);
+    }
+
+    public TbRuleEngineProcessingDecision(boolean commit, ConcurrentMap<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> reprocessMap, long retryDelayMs) {
+        this.commit = commit;
+        this.reprocessMap = reprocessMap;
+        this.retryDelayMs = retryDelayMs;
+    }
 
 }
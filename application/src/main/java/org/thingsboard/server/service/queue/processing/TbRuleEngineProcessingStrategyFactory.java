@@ -33,17 +33,25 @@ import java.util.concurrent.TimeUnit;
 public class TbRuleEngineProcessingStrategyFactory {
 
     public TbRuleEngineProcessingStrategy newInstance(String name, TbRuleEngineQueueAckStrategyConfiguration configuration) {
+        return newInstance(name, configuration, true);
+    }
+
+    /**
+     * @param blockingPause if false, retry strategies do not sleep between the retries
+     *                      but return the pause as {@link TbRuleEngineProcessingDecision#getRetryDelayMs()}
+     */
+    public TbRuleEngineProcessingStrategy newInstance(String name, TbRuleEngineQueueAckStrategyConfiguration configuration, boolean blockingPause) {
         switch (configuration.getType()) {
             case "SKIP_ALL_FAILURES":
                 return new SkipStrategy(name);
             case "RETRY_ALL":
-                return new RetryStrategy(name, true, true, true, configuration);
+                return new RetryStrategy(name, true, true, true, configuration, blockingPause);
             case "RETRY_FAILED":
-                return new RetryStrategy(name, false, true, false, configuration);
+                return new RetryStrategy(name, false, true, false, configuration, blockingPause);
             case "RETRY_TIMED_OUT":
-                return new RetryStrategy(name, false, false, true, configuration);
+                return new RetryStrategy(name, false, false, true, configuration, blockingPause);
             case "RETRY_FAILED_AND_TIMED_OUT":
-                return new RetryStrategy(name, false, true, true, configuration);
+                return new RetryStrategy(name, false, true, true, configuration, blockingPause);
             default:
                 throw new RuntimeException("TbRuleEngineProcessingStrategy with type " + configuration.getType() + " is not supported!");
         }
@@ -57,13 +65,15 @@ public class TbRuleEngineProcessingStrategyFactory {
         private final int maxRetries;
         private final double maxAllowedFailurePercentage;
         private final long maxPauseBetweenRetries;
+        private final boolean blockingPause;
 
         private long pauseBetweenRetries;
 
         private int initialTotalCount;
         private int retryCount;
 
-        public RetryStrategy(String queueName, boolean retrySuccessful, boolean retryFailed, boolean retryTimeout, TbRuleEngineQueueAckStrategyConfiguration configuration) {
+        public RetryStrategy(String queueName, boolean retrySuccessful, boolean retryFailed, boolean retryTimeout, TbRuleEngineQueueAckStrategyConfiguration configuration,
+                             boolean blockingPause) {
             this.queueName = queueName;
             this.retrySuccessful = retrySuccessful;
             this.retryFailed = retryFailed;
@@ -72,6 +82,7 @@ public class TbRuleEngineProcessingStrategyFactory {
             this.maxAllowedFailurePercentage = configuration.getFailurePercentage();
             this.pauseBetweenRetries = configuration.getPauseBetweenRetries();
             this.maxPauseBetweenRetries = configuration.getMaxPauseBetweenRetries();
+            this.blockingPause = blockingPause;
         }
 
         @Override
@@ -105,17 +116,22 @@ public class TbRuleEngineProcessingStrategyFactory {
                     if (log.isTraceEnabled()) {
                         toReprocess.forEach((id, msg) -> log.trace("Going to reprocess [{}]: {}", id, TbMsg.fromBytes(result.getQueueName(), msg.getValue().getTbMsg().toByteArray(), TbMsgCallback.EMPTY)));
                     }
+                    long retryDelayMs = 0;
                     if (pauseBetweenRetries > 0) {
-                        try {
-                            Thread.sleep(TimeUnit.SECONDS.toMillis(pauseBetweenRetries));
-                        } catch (InterruptedException e) {
-                            throw new RuntimeException(e);
+                        if (blockingPause) {
+                            try {
+                                Thread.sleep(TimeUnit.SECONDS.toMillis(pauseBetweenRetries));
+                            } catch (InterruptedException e) {
+                                throw new RuntimeException(e);
+                            }
+                        } else {
+                            retryDelayMs = TimeUnit.SECONDS.toMillis(pauseBetweenRetries);
                         }
                         if (maxPauseBetweenRetries > pauseBetweenRetries) {
                             pauseBetweenRetries = Math.min(maxPauseBetweenRetries, pauseBetweenRetries * 2);
                         }
                     }
-                    return new TbRuleEngineProcessingDecision(false, toReprocess);
+                    return new TbRuleEngineProcessingDecision(false, toReprocess, retryDelayMs);
                 }
             }
         }
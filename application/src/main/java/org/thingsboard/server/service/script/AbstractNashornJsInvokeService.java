@@ -21,31 +21,49 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import delight.nashornsandbox.NashornSandbox;
 import delight.nashornsandbox.NashornSandboxes;
+import io.micrometer.core.instrument.Timer;
 import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
+import lombok.Data;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.common.stats.StatsType;
 import org.thingsboard.server.queue.usagestats.TbApiUsageClient;
 import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import javax.script.Invocable;
 import javax.script.ScriptEngine;
-import javax.script.ScriptException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 @Slf4j
 public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeService {
 
-    private NashornSandbox sandbox;
-    private ScriptEngine engine;
+    private static final int STATS_TOP_SCRIPTS = 10;
+
+    // Idle contexts. A task takes a context for the time of the invocation, so contexts are not bound to the pool threads
+    private final BlockingQueue<NashornJsContext> contexts = new LinkedBlockingQueue<>();
+    private final AtomicInteger contextCount = new AtomicInteger();
+    private final Map<UUID, String> scriptBodies = new ConcurrentHashMap<>();
+    private final Map<UUID, ScriptTimer> scriptTimers = new ConcurrentHashMap<>();
+    private final AtomicLong releaseVersion = new AtomicLong();
+    private final StatsFactory statsFactory;
+    private int maxContexts;
     private ExecutorService monitorExecutorService;
 
     private final AtomicInteger jsPushedMsgs = new AtomicInteger(0);
@@ -62,12 +80,17 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
     @Value("${js.local.max_requests_timeout:0}")
     private long maxRequestsTimeout;
 
+    @Value("${js.local.max_scripts_per_context:1000}")
+    private int maxScriptsPerContext;
+
     @Value("${js.local.stats.enabled:false}")
     private boolean statsEnabled;
 
-    public AbstractNashornJsInvokeService(TbApiUsageStateService apiUsageStateService, TbApiUsageClient apiUsageClient, JsExecutorService jsExecutor) {
+    public AbstractNashornJsInvokeService(TbApiUsageStateService apiUsageStateService, TbApiUsageClient apiUsageClient, JsExecutorService jsExecutor,
+                                          StatsFactory statsFactory) {
         super(apiUsageStateService, apiUsageClient);
         this.jsExecutor = jsExecutor;
+        this.statsFactory = statsFactory;
     }
 
     @Scheduled(fixedDelayString = "${js.local.stats.print_interval_ms:10000}")
@@ -82,26 +105,72 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
                 log.info("Nashorn JS Invoke Stats: pushed [{}] received [{}] invoke [{}] eval [{}] failed [{}] timedOut [{}]",
                         pushedMsgs, invokeMsgs + evalMsgs, invokeMsgs, evalMsgs, failed, timedOut);
             }
+            // timers are cumulative, so the printout reports the invocations since the previous one
+            List<ScriptTimer.Interval> topScripts = scriptTimers.values().stream()
+                    .map(ScriptTimer::nextInterval)
+                    .filter(interval -> interval.getCount() > 0)
+                    .sorted(Comparator.comparingDouble(ScriptTimer.Interval::getTotalMs).reversed())
+                    .limit(STATS_TOP_SCRIPTS)
+                    .collect(Collectors.toList());
+            for (ScriptTimer.Interval interval : topScripts) {
+                log.info("Nashorn JS Script [{}] invocations [{}] avg [{}ms] max [{}ms]", interval.getFunctionName(),
+                        interval.getCount(), interval.getTotalMs() / interval.getCount(), interval.getMaxMs());
+            }
         }
     }
 
     @PostConstruct
     public void init() {
         super.init(maxRequestsTimeout);
+        maxContexts = jsExecutor.getThreadPollSize();
         if (useJsSandbox()) {
-            sandbox = NashornSandboxes.create();
             monitorExecutorService = Executors.newWorkStealingPool(getMonitorThreadPoolSize());
+        }
+    }
+
+    private NashornJsContext createContext() {
+        if (useJsSandbox()) {
+            NashornSandbox sandbox = NashornSandboxes.create();
             sandbox.setExecutor(monitorExecutorService);
             sandbox.setMaxCPUTime(getMaxCpuTime());
             sandbox.allowNoBraces(false);
             sandbox.allowLoadFunctions(true);
             sandbox.setMaxPreparedStatements(30);
+            return new NashornJsContext(sandbox, null, maxScriptsPerContext);
         } else {
             NashornScriptEngineFactory factory = new NashornScriptEngineFactory();
-            engine = factory.getScriptEngine(new String[]{"--no-java"});
+            ScriptEngine engine = factory.getScriptEngine(new String[]{"--no-java"});
+            return new NashornJsContext(null, engine, maxScriptsPerContext);
         }
     }
 
+    /**
+     * Takes an idle context or creates a new one, up to the size of the JS executor pool.
+     * Waits for a context to become idle if the pool runs more tasks at once, e.g. due to its compensation threads.
+     */
+    private NashornJsContext acquireContext() throws InterruptedException {
+        NashornJsContext context = contexts.poll();
+        if (context == null) {
+            if (contextCount.incrementAndGet() <= maxContexts) {
+                try {
+                    context = createContext();
+                } catch (RuntimeException e) {
+                    contextCount.decrementAndGet();
+                    throw e;
+                }
+            } else {
+                contextCount.decrementAndGet();
+                context = contexts.take();
+            }
+        }
+        context.purgeReleased(releaseVersion.get(), scriptBodies);
+        return context;
+    }
+
+    private void releaseContext(NashornJsContext context) {
+        contexts.offer(context);
+    }
+
     @PreDestroy
     public void stop() {
         super.stop();
@@ -120,17 +189,21 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
     protected ListenableFuture<UUID> doEval(UUID scriptId, String functionName, String jsScript) {
         jsPushedMsgs.incrementAndGet();
         ListenableFuture<UUID> result = jsExecutor.executeAsync(() -> {
+            NashornJsContext context = acquireContext();
             try {
-                if (useJsSandbox()) {
-                    sandbox.eval(jsScript);
-                } else {
-                    engine.eval(jsScript);
-                }
+                context.eval(scriptId, functionName, jsScript);
+                scriptBodies.put(scriptId, jsScript);
                 scriptIdToNameMap.put(scriptId, functionName);
+                if (statsEnabled) {
+                    scriptTimers.computeIfAbsent(scriptId, id -> new ScriptTimer(statsFactory.createTimer(StatsType.JS_INVOKE.getName() + ".script",
+                            "functionName", functionName)));
+                }
                 return scriptId;
             } catch (Exception e) {
                 log.debug("Failed to compile JS script: {}", e.getMessage(), e);
                 throw new ExecutionException(e);
+            } finally {
+                releaseContext(context);
             }
         });
         if (maxRequestsTimeout > 0) {
@@ -144,15 +217,23 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
     protected ListenableFuture<Object> doInvokeFunction(UUID scriptId, String functionName, Object[] args) {
         jsPushedMsgs.incrementAndGet();
         ListenableFuture<Object> result = jsExecutor.executeAsync(() -> {
+            String jsScript = scriptBodies.get(scriptId);
+            if (jsScript == null) {
+                throw new ExecutionException(new IllegalStateException("JS script [" + functionName + "] is not compiled or already released!"));
+            }
+            NashornJsContext context = acquireContext();
+            long startTs = System.nanoTime();
             try {
-                if (useJsSandbox()) {
-                    return sandbox.getSandboxedInvocable().invokeFunction(functionName, args);
-                } else {
-                    return ((Invocable) engine).invokeFunction(functionName, args);
-                }
+                return context.invokeFunction(scriptId, functionName, jsScript, args);
             } catch (Exception e) {
                 onScriptExecutionError(scriptId);
                 throw new ExecutionException(e);
+            } finally {
+                releaseContext(context);
+                ScriptTimer timer = scriptTimers.get(scriptId);
+                if (timer != null) {
+                    timer.getTimer().record(System.nanoTime() - startTs, TimeUnit.NANOSECONDS);
+                }
             }
         });
 
@@ -163,11 +244,45 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
         return result;
     }
 
-    protected void doRelease(UUID scriptId, String functionName) throws ScriptException {
-        if (useJsSandbox()) {
-            sandbox.eval(functionName + " = undefined;");
-        } else {
-            engine.eval(functionName + " = undefined;");
+    protected void doRelease(UUID scriptId, String functionName) {
+        scriptBodies.remove(scriptId);
+        ScriptTimer timer = scriptTimers.remove(scriptId);
+        if (timer != null) {
+            // the timer is tagged with the script function name, which is not reused by the other scripts
+            statsFactory.removeTimer(timer.getTimer());
+        }
+        releaseVersion.incrementAndGet();
+    }
+
+    /**
+     * Timer of the script invocations and its totals at the previous stats printout.
+     */
+    private static class ScriptTimer {
+        @Getter
+        private final Timer timer;
+        private long printedCount;
+        private double printedTotalMs;
+
+        ScriptTimer(Timer timer) {
+            this.timer = timer;
+        }
+
+        synchronized Interval nextInterval() {
+            long count = timer.count();
+            double totalMs = timer.totalTime(TimeUnit.MILLISECONDS);
+            Interval interval = new Interval(timer.getId().getTag("functionName"), count - printedCount,
+                    totalMs - printedTotalMs, timer.max(TimeUnit.MILLISECONDS));
+            printedCount = count;
+            printedTotalMs = totalMs;
+            return interval;
+        }
+
+        @Data
+        private static class Interval {
+            private final String functionName;
+            private final long count;
+            private final double totalMs;
+            private final double maxMs;
         }
     }
 
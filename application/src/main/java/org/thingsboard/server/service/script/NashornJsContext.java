@@ -0,0 +1,111 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.script;
+
+import delight.nashornsandbox.NashornSandbox;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Isolated Nashorn global scope, used by one JS executor task at a time.
+ * Scripts are compiled lazily on first use and the least recently used ones are undefined
+ * once the context holds more than {@code maxScripts} functions.
+ * Not thread safe.
+ */
+@Slf4j
+class NashornJsContext {
+
+    private final NashornSandbox sandbox;
+    private final ScriptEngine engine;
+    private final LinkedHashMap<UUID, String> compiledFunctions;
+    private long releaseVersion;
+
+    NashornJsContext(NashornSandbox sandbox, ScriptEngine engine, int maxScripts) {
+        this.sandbox = sandbox;
+        this.engine = engine;
+        this.compiledFunctions = new LinkedHashMap<UUID, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, String> eldest) {
+                if (size() > maxScripts) {
+                    undefine(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    void eval(UUID scriptId, String functionName, String jsScript) throws ScriptException {
+        doEval(jsScript);
+        compiledFunctions.put(scriptId, functionName);
+    }
+
+    Object invokeFunction(UUID scriptId, String functionName, String jsScript, Object[] args) throws ScriptException, NoSuchMethodException {
+        if (compiledFunctions.get(scriptId) == null) {
+            eval(scriptId, functionName, jsScript);
+        }
+        if (sandbox != null) {
+            return sandbox.getSandboxedInvocable().invokeFunction(functionName, args);
+        } else {
+            return ((Invocable) engine).invokeFunction(functionName, args);
+        }
+    }
+
+    /**
+     * Undefines functions of the scripts that were released since the previous call.
+     */
+    void purgeReleased(long currentReleaseVersion, Map<UUID, String> activeScripts) {
+        if (releaseVersion == currentReleaseVersion) {
+            return;
+        }
+        releaseVersion = currentReleaseVersion;
+        Iterator<Map.Entry<UUID, String>> it = compiledFunctions.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, String> entry = it.next();
+            if (!activeScripts.containsKey(entry.getKey())) {
+                undefine(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    int size() {
+        return compiledFunctions.size();
+    }
+
+    private void undefine(String functionName) {
+        try {
+            doEval(functionName + " = undefined;");
+        } catch (ScriptException e) {
+            log.debug("Failed to release JS function [{}]: {}", functionName, e.getMessage());
+        }
+    }
+
+    private void doEval(String jsScript) throws ScriptException {
+        if (sandbox != null) {
+            sandbox.eval(jsScript);
+        } else {
+            engine.eval(jsScript);
+        }
+    }
+}
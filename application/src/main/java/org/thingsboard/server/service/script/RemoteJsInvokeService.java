@@ -19,6 +19,7 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,6 +27,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.gen.js.JsInvokeProtos;
 import org.thingsboard.server.queue.TbQueueRequestTemplate;
 import org.thingsboard.server.queue.common.TbProtoJsQueueMsg;
@@ -36,9 +38,14 @@ import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -64,6 +71,12 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
     @Value("${js.remote.stats.enabled:false}")
     private boolean statsEnabled;
 
+    @Value("${js.remote.batch.linger_ms:0}")
+    private long batchLingerMs;
+
+    @Value("${js.remote.batch.max_size:100}")
+    private int batchMaxSize;
+
     private final AtomicInteger queuePushedMsgs = new AtomicInteger(0);
     private final AtomicInteger queueInvokeMsgs = new AtomicInteger(0);
     private final AtomicInteger queueEvalMsgs = new AtomicInteger(0);
@@ -93,16 +106,24 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
     private TbQueueRequestTemplate<TbProtoJsQueueMsg<JsInvokeProtos.RemoteJsRequest>, TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> requestTemplate;
 
     private Map<UUID, String> scriptIdToBodysMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, JsInvokeBatch> pendingBatches = new ConcurrentHashMap<>();
+    private ScheduledExecutorService batchExecutor;
 
     @PostConstruct
     public void init() {
         super.init(maxRequestsTimeout);
         requestTemplate.init();
+        if (batchLingerMs > 0) {
+            batchExecutor = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("js-invoke-batch"));
+        }
     }
 
     @PreDestroy
     public void destroy() {
         super.stop();
+        if (batchExecutor != null) {
+            batchExecutor.shutdownNow();
+        }
         if (requestTemplate != null) {
             requestTemplate.stop();
         }
@@ -160,12 +181,140 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
         if (scriptBody == null) {
             return Futures.immediateFailedFuture(new RuntimeException("No script body found for scriptId: [" + scriptId + "]!"));
         }
+        if (batchLingerMs <= 0) {
+            return sendInvokeRequest(scriptId, functionName, scriptBody, args);
+        }
+        SettableFuture<Object> result = SettableFuture.create();
+        long deadline = maxRequestsTimeout > 0 ? System.currentTimeMillis() + maxRequestsTimeout : Long.MAX_VALUE;
+        JsInvokeBatch[] fullBatch = new JsInvokeBatch[1];
+        pendingBatches.compute(scriptId, (id, batch) -> {
+            if (batch == null) {
+                JsInvokeBatch newBatch = new JsInvokeBatch(functionName, scriptBody);
+                batchExecutor.schedule(() -> flushBatch(id, newBatch), batchLingerMs, TimeUnit.MILLISECONDS);
+                batch = newBatch;
+            }
+            batch.add(args, result, deadline);
+            if (batch.size() >= batchMaxSize) {
+                fullBatch[0] = batch;
+                return null;
+            }
+            return batch;
+        });
+        if (fullBatch[0] != null) {
+            sendBatch(scriptId, fullBatch[0]);
+        }
+        if (maxRequestsTimeout > 0) {
+            return Futures.withTimeout(result, maxRequestsTimeout, TimeUnit.MILLISECONDS, timeoutExecutorService);
+        }
+        return result;
+    }
+
+    private void flushBatch(UUID scriptId, JsInvokeBatch batch) {
+        if (pendingBatches.remove(scriptId, batch)) {
+            sendBatch(scriptId, batch);
+        }
+    }
+
+    private void sendBatch(UUID scriptId, JsInvokeBatch batch) {
+        long ts = System.currentTimeMillis();
+        JsInvokeBatch liveBatch = new JsInvokeBatch(batch.functionName, batch.scriptBody);
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.deadlines.get(i) <= ts) {
+                onInvocationTimeout(scriptId, batch.results.get(i));
+            } else {
+                liveBatch.add(batch.invocations.get(i), batch.results.get(i), batch.deadlines.get(i));
+            }
+        }
+        if (liveBatch.size() == 0) {
+            return;
+        }
+        // The queue request must live until the latest invocation expires, while each script execution is limited by the earliest one.
+        long requestTimeout = maxRequestsTimeout > 0 ? liveBatch.getMaxDeadline() - ts : 0;
+        long executionTimeout = maxRequestsTimeout > 0 ? liveBatch.getMinDeadline() - ts : 0;
+        if (liveBatch.size() == 1) {
+            liveBatch.results.get(0).setFuture(sendInvokeRequest(scriptId, liveBatch.functionName, liveBatch.scriptBody, liveBatch.invocations.get(0), requestTimeout));
+            return;
+        }
+        JsInvokeProtos.JsBatchInvokeRequest.Builder jsRequestBuilder = JsInvokeProtos.JsBatchInvokeRequest.newBuilder()
+                .setScriptIdMSB(scriptId.getMostSignificantBits())
+                .setScriptIdLSB(scriptId.getLeastSignificantBits())
+                .setFunctionName(liveBatch.functionName)
+                .setTimeout((int) executionTimeout)
+                .setScriptBody(liveBatch.scriptBody);
+        for (Object[] args : liveBatch.invocations) {
+            jsRequestBuilder.addInvocations(toInvokeArgs(args));
+        }
+
+        JsInvokeProtos.RemoteJsRequest jsRequestWrapper = JsInvokeProtos.RemoteJsRequest.newBuilder()
+                .setBatchInvokeRequest(jsRequestBuilder.build())
+                .build();
+
+        ListenableFuture<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> future = requestTemplate.send(new TbProtoJsQueueMsg<>(UUID.randomUUID(), jsRequestWrapper));
+        if (requestTimeout > 0) {
+            future = Futures.withTimeout(future, requestTimeout, TimeUnit.MILLISECONDS, timeoutExecutorService);
+        }
+        queuePushedMsgs.incrementAndGet();
+        Futures.addCallback(future, new FutureCallback<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>>() {
+            @Override
+            public void onSuccess(@Nullable TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse> response) {
+                completeBatch(scriptId, liveBatch, response.getValue().getBatchInvokeResponse().getResponsesList());
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                onScriptExecutionError(scriptId);
+                if (t instanceof TimeoutException || (t.getCause() != null && t.getCause() instanceof TimeoutException)) {
+                    queueTimeoutMsgs.addAndGet(liveBatch.size());
+                }
+                queueFailedMsgs.addAndGet(liveBatch.size());
+                liveBatch.results.forEach(result -> result.setException(t));
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void completeBatch(UUID scriptId, JsInvokeBatch batch, List<JsInvokeProtos.JsInvokeResponse> responses) {
+        long ts = System.currentTimeMillis();
+        for (int i = 0; i < batch.size(); i++) {
+            SettableFuture<Object> result = batch.results.get(i);
+            if (batch.deadlines.get(i) <= ts) {
+                onInvocationTimeout(scriptId, result);
+                continue;
+            }
+            queueInvokeMsgs.incrementAndGet();
+            if (i >= responses.size()) {
+                onScriptExecutionError(scriptId);
+                result.setException(new RuntimeException("No response for batched invocation of script: [" + scriptId + "]!"));
+                continue;
+            }
+            JsInvokeProtos.JsInvokeResponse invokeResult = responses.get(i);
+            if (invokeResult.getSuccess()) {
+                result.set(invokeResult.getResult());
+            } else {
+                onScriptExecutionError(scriptId);
+                log.debug("[{}] Failed to invoke script due to [{}]: {}", scriptId, invokeResult.getErrorCode().name(), invokeResult.getErrorDetails());
+                result.setException(new RuntimeException(invokeResult.getErrorDetails()));
+            }
+        }
+    }
+
+    private void onInvocationTimeout(UUID scriptId, SettableFuture<Object> result) {
+        onScriptExecutionError(scriptId);
+        queueTimeoutMsgs.incrementAndGet();
+        queueFailedMsgs.incrementAndGet();
+        result.setException(new TimeoutException("Batched invocation of script [" + scriptId + "] timed out!"));
+    }
+
+    private ListenableFuture<Object> sendInvokeRequest(UUID scriptId, String functionName, String scriptBody, Object[] args) {
+        return sendInvokeRequest(scriptId, functionName, scriptBody, args, maxRequestsTimeout);
+    }
+
+    private ListenableFuture<Object> sendInvokeRequest(UUID scriptId, String functionName, String scriptBody, Object[] args, long requestTimeout) {
         JsInvokeProtos.JsInvokeRequest.Builder jsRequestBuilder = JsInvokeProtos.JsInvokeRequest.newBuilder()
                 .setScriptIdMSB(scriptId.getMostSignificantBits())
                 .setScriptIdLSB(scriptId.getLeastSignificantBits())
                 .setFunctionName(functionName)
-                .setTimeout((int) maxRequestsTimeout)
-                .setScriptBody(scriptIdToBodysMap.get(scriptId));
+                .setTimeout((int) requestTimeout)
+                .setScriptBody(scriptBody);
 
         for (Object arg : args) {
             jsRequestBuilder.addArgs(arg.toString());
@@ -176,8 +325,8 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
                 .build();
 
         ListenableFuture<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> future = requestTemplate.send(new TbProtoJsQueueMsg<>(UUID.randomUUID(), jsRequestWrapper));
-        if (maxRequestsTimeout > 0) {
-            future = Futures.withTimeout(future, maxRequestsTimeout, TimeUnit.MILLISECONDS, timeoutExecutorService);
+        if (requestTimeout > 0) {
+            future = Futures.withTimeout(future, requestTimeout, TimeUnit.MILLISECONDS, timeoutExecutorService);
         }
         queuePushedMsgs.incrementAndGet();
         Futures.addCallback(future, new FutureCallback<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>>() {
@@ -238,4 +387,43 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
         return TimeUnit.SECONDS.toMillis(maxBlackListDurationSec);
     }
 
+    private static JsInvokeProtos.JsInvokeArgs toInvokeArgs(Object[] args) {
+        JsInvokeProtos.JsInvokeArgs.Builder builder = JsInvokeProtos.JsInvokeArgs.newBuilder();
+        for (Object arg : args) {
+            builder.addArgs(arg.toString());
+        }
+        return builder.build();
+    }
+
+    private static class JsInvokeBatch {
+        private final String functionName;
+        private final String scriptBody;
+        private final List<Object[]> invocations = new ArrayList<>();
+        private final List<SettableFuture<Object>> results = new ArrayList<>();
+        private final List<Long> deadlines = new ArrayList<>();
+
+        private JsInvokeBatch(String functionName, String scriptBody) {
+            this.functionName = functionName;
+            this.scriptBody = scriptBody;
+        }
+
+        private void add(Object[] args, SettableFuture<Object> result, long deadline) {
+            invocations.add(args);
+            results.add(result);
+            deadlines.add(deadline);
+        }
+
+        private long getMinDeadline() {
+            return deadlines.stream().mapToLong(Long::longValue).min().orElse(Long.MAX_VALUE);
+        }
+
+        private long getMaxDeadline() {
+            return deadlines.stream().mapToLong(Long::longValue).max().orElse(Long.MAX_VALUE);
+        }
+
+        private int size() {
+            return invocations.size();
+        }
+    }
+
 }
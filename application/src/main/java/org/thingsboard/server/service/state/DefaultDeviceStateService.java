@@ -20,6 +20,7 @@ import com.google.common.base.Function;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import lombok.Getter;
@@ -35,6 +36,7 @@ import org.thingsboard.server.common.data.Tenant;
 import org.thingsboard.server.common.data.id.DeviceId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
+import org.thingsboard.server.common.data.kv.BaseAttributeKvEntry;
 import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
 import org.thingsboard.server.common.data.kv.BooleanDataEntry;
 import org.thingsboard.server.common.data.kv.KvEntry;
@@ -75,6 +77,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static org.thingsboard.server.common.data.DataConstants.ACTIVITY_EVENT;
@@ -126,10 +129,26 @@ public class DefaultDeviceStateService implements DeviceStateService {
     @Getter
     private int initFetchPackSize;
 
+    @Value("${state.initFetchThreads:4}")
+    @Getter
+    private int initFetchThreads;
+
+    @Value("${state.flushIntervalMs:0}")
+    @Getter
+    private long flushIntervalMs;
+
+    @Value("${state.flushTimeoutMs:10000}")
+    @Getter
+    private long flushTimeoutMs;
+
     private volatile boolean clusterUpdatePending = false;
 
     private ListeningScheduledExecutorService queueExecutor;
+    private ListeningExecutorService initExecutor;
+    private ScheduledExecutorService flushExecutor;
+    private final DeviceStateWriteBuffer writeBuffer = new DeviceStateWriteBuffer();
     private final ConcurrentMap<TopicPartitionInfo, Set<DeviceId>> partitionedDevices = new ConcurrentHashMap<>();
+    private final ConcurrentMap<TopicPartitionInfo, DeviceInactivityQueue> partitionedInactivityQueues = new ConcurrentHashMap<>();
     private final ConcurrentMap<DeviceId, DeviceStateData> deviceStates = new ConcurrentHashMap<>();
     private final ConcurrentMap<DeviceId, Long> deviceLastReportedActivity = new ConcurrentHashMap<>();
     private final ConcurrentMap<DeviceId, Long> deviceLastSavedActivity = new ConcurrentHashMap<>();
@@ -155,6 +174,11 @@ public class DefaultDeviceStateService implements DeviceStateService {
         // Should be always single threaded due to absence of locks.
         queueExecutor = MoreExecutors.listeningDecorator(Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("device-state")));
         queueExecutor.scheduleAtFixedRate(this::updateState, new Random().nextInt(defaultStateCheckIntervalInSec), defaultStateCheckIntervalInSec, TimeUnit.SECONDS);
+        initExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(initFetchThreads, ThingsBoardThreadFactory.forName("device-state-init")));
+        if (flushIntervalMs > 0) {
+            flushExecutor = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("device-state-flush"));
+            flushExecutor.scheduleWithFixedDelay(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
     }
 
     @PreDestroy
@@ -162,6 +186,13 @@ public class DefaultDeviceStateService implements DeviceStateService {
         if (queueExecutor != null) {
             queueExecutor.shutdownNow();
         }
+        if (initExecutor != null) {
+            initExecutor.shutdownNow();
+        }
+        if (flushExecutor != null) {
+            flushExecutor.shutdownNow();
+            flushAndWait();
+        }
     }
 
     @Override
@@ -186,7 +217,7 @@ public class DefaultDeviceStateService implements DeviceStateService {
             long ts = System.currentTimeMillis();
             stateData.getState().setLastConnectTime(ts);
             pushRuleEngineMessage(stateData, CONNECT_EVENT);
-            save(deviceId, LAST_CONNECT_TIME, ts);
+            save(stateData, LAST_CONNECT_TIME, ts);
         }
     }
 
@@ -197,15 +228,16 @@ public class DefaultDeviceStateService implements DeviceStateService {
         if (lastReportedActivity > 0 && lastReportedActivity > lastSavedActivity) {
             DeviceStateData stateData = getOrFetchDeviceStateData(deviceId);
             if (stateData != null) {
-                save(deviceId, LAST_ACTIVITY_TIME, lastReportedActivity);
+                save(stateData, LAST_ACTIVITY_TIME, lastReportedActivity);
                 deviceLastSavedActivity.put(deviceId, lastReportedActivity);
                 DeviceState state = stateData.getState();
                 state.setLastActivityTime(lastReportedActivity);
                 if (!state.isActive()) {
                     state.setActive(true);
-                    save(deviceId, ACTIVITY_STATE, state.isActive());
+                    save(stateData, ACTIVITY_STATE, state.isActive());
                     stateData.getMetaData().putValue("scope", SERVER_SCOPE);
                     pushRuleEngineMessage(stateData, ACTIVITY_EVENT);
+                    scheduleInactivityCheck(stateData);
                 }
             }
         }
@@ -218,7 +250,7 @@ public class DefaultDeviceStateService implements DeviceStateService {
             long ts = System.currentTimeMillis();
             stateData.getState().setLastDisconnectTime(ts);
             pushRuleEngineMessage(stateData, DISCONNECT_EVENT);
-            save(deviceId, LAST_DISCONNECT_TIME, ts);
+            save(stateData, LAST_DISCONNECT_TIME, ts);
         }
     }
 
@@ -235,8 +267,9 @@ public class DefaultDeviceStateService implements DeviceStateService {
             boolean oldActive = state.isActive();
             state.setActive(ts < state.getLastActivityTime() + state.getInactivityTimeout());
             if (!oldActive && state.isActive() || oldActive && !state.isActive()) {
-                save(deviceId, ACTIVITY_STATE, state.isActive());
+                save(stateData, ACTIVITY_STATE, state.isActive());
             }
+            scheduleInactivityCheck(stateData);
         }
     }
 
@@ -297,6 +330,10 @@ public class DefaultDeviceStateService implements DeviceStateService {
     @Override
     public void onApplicationEvent(PartitionChangeEvent partitionChangeEvent) {
         if (ServiceType.TB_CORE.equals(partitionChangeEvent.getServiceType())) {
+            // Persist the pending state before the partitions are handed over to another node
+            if (flushIntervalMs > 0) {
+                flushAndWait();
+            }
             synchronized (this) {
                 pendingPartitions = partitionChangeEvent.getPartitions();
                 if (!clusterUpdatePending) {
@@ -327,6 +364,8 @@ public class DefaultDeviceStateService implements DeviceStateService {
 
             // We no longer manage current partition of devices;
             removedPartitions.forEach(partition -> {
+                flush(partition);
+                partitionedInactivityQueues.remove(partition);
                 Set<DeviceId> devices = partitionedDevices.remove(partition);
                 devices.forEach(deviceId -> {
                     deviceStates.remove(deviceId);
@@ -335,39 +374,20 @@ public class DefaultDeviceStateService implements DeviceStateService {
                 });
             });
 
-            addedPartitions.forEach(tpi -> partitionedDevices.computeIfAbsent(tpi, key -> ConcurrentHashMap.newKeySet()));
+            addedPartitions.forEach(tpi -> {
+                partitionedInactivityQueues.computeIfAbsent(tpi, key -> new DeviceInactivityQueue());
+                partitionedDevices.computeIfAbsent(tpi, key -> ConcurrentHashMap.newKeySet());
+            });
 
             //TODO 3.0: replace this dummy search with new functionality to search by partitions using SQL capabilities.
             // Adding only devices that are in new partitions
-            List<Tenant> tenants = tenantService.findTenants(new PageLink(Integer.MAX_VALUE)).getData();
-            for (Tenant tenant : tenants) {
-                PageLink pageLink = new PageLink(initFetchPackSize);
-                while (pageLink != null) {
-                    List<ListenableFuture<Void>> fetchFutures = new ArrayList<>();
-                    PageData<Device> page = deviceService.findDevicesByTenantId(tenant.getId(), pageLink);
-                    pageLink = page.hasNext() ? pageLink.nextPageLink() : null;
-                    for (Device device : page.getData()) {
-                        TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenant.getId(), device.getId());
-                        if (addedPartitions.contains(tpi)) {
-                            ListenableFuture<Void> future = Futures.transform(fetchDeviceState(device), new Function<DeviceStateData, Void>() {
-                                @Nullable
-                                @Override
-                                public Void apply(@Nullable DeviceStateData state) {
-                                    if (state != null) {
-                                        addDeviceUsingState(tpi, state);
-                                    }
-                                    return null;
-                                }
-                            }, MoreExecutors.directExecutor());
-                            fetchFutures.add(future);
-                        }
-                    }
-                    try {
-                        Futures.successfulAsList(fetchFutures).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        log.warn("Failed to init device state service from DB", e);
-                    }
+            if (!addedPartitions.isEmpty()) {
+                List<Tenant> tenants = tenantService.findTenants(new PageLink(Integer.MAX_VALUE)).getData();
+                List<ListenableFuture<?>> tenantFutures = new ArrayList<>(tenants.size());
+                for (Tenant tenant : tenants) {
+                    tenantFutures.add(initExecutor.submit(() -> initTenantStateFromDB(tenant.getId(), addedPartitions)));
                 }
+                Futures.successfulAsList(tenantFutures).get();
             }
             log.info("Managing following partitions:");
             partitionedDevices.forEach((tpi, devices) -> {
@@ -378,32 +398,96 @@ public class DefaultDeviceStateService implements DeviceStateService {
         }
     }
 
+    /**
+     * Loads the devices of the tenant page by page. The states of the previous page are fetched
+     * while the next page is being loaded, so the DB calls of the two pages overlap.
+     */
+    private void initTenantStateFromDB(TenantId tenantId, Set<TopicPartitionInfo> addedPartitions) {
+        PageLink pageLink = new PageLink(initFetchPackSize);
+        ListenableFuture<List<Void>> previousPage = null;
+        while (pageLink != null) {
+            List<ListenableFuture<Void>> fetchFutures = new ArrayList<>();
+            PageData<Device> page = deviceService.findDevicesByTenantId(tenantId, pageLink);
+            pageLink = page.hasNext() ? pageLink.nextPageLink() : null;
+            for (Device device : page.getData()) {
+                TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenantId, device.getId());
+                if (addedPartitions.contains(tpi)) {
+                    ListenableFuture<Void> future = Futures.transform(fetchDeviceState(device), new Function<DeviceStateData, Void>() {
+                        @Nullable
+                        @Override
+                        public Void apply(@Nullable DeviceStateData state) {
+                            if (state != null) {
+                                addDeviceUsingState(tpi, state);
+                            }
+                            return null;
+                        }
+                    }, MoreExecutors.directExecutor());
+                    fetchFutures.add(future);
+                }
+            }
+            awaitFetch(tenantId, previousPage);
+            previousPage = Futures.successfulAsList(fetchFutures);
+        }
+        awaitFetch(tenantId, previousPage);
+    }
+
+    private void awaitFetch(TenantId tenantId, ListenableFuture<List<Void>> fetchFuture) {
+        if (fetchFuture != null) {
+            try {
+                fetchFuture.get();
+            } catch (InterruptedException | ExecutionException e) {
+                log.warn("[{}] Failed to init device state service from DB", tenantId, e);
+            }
+        }
+    }
+
     private void addDeviceUsingState(TopicPartitionInfo tpi, DeviceStateData state) {
         partitionedDevices.computeIfAbsent(tpi, id -> ConcurrentHashMap.newKeySet()).add(state.getDeviceId());
         deviceStates.put(state.getDeviceId(), state);
+        DeviceInactivityQueue inactivityQueue = partitionedInactivityQueues.get(tpi);
+        if (inactivityQueue != null) {
+            inactivityQueue.schedule(state, getInactivityDeadline(state));
+        }
+    }
+
+    private void scheduleInactivityCheck(DeviceStateData stateData) {
+        TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, stateData.getTenantId(), stateData.getDeviceId());
+        DeviceInactivityQueue inactivityQueue = partitionedInactivityQueues.get(tpi);
+        if (inactivityQueue != null) {
+            inactivityQueue.schedule(stateData, getInactivityDeadline(stateData));
+        }
+    }
+
+    private long getInactivityDeadline(DeviceStateData stateData) {
+        DeviceState state = stateData.getState();
+        return Math.max(state.getLastActivityTime(), stateData.getDeviceCreationTime()) + state.getInactivityTimeout();
     }
 
     private void updateState() {
         long ts = System.currentTimeMillis();
-        Set<DeviceId> deviceIds = new HashSet<>(deviceStates.keySet());
-        log.debug("Calculating state updates for {} devices", deviceStates.size());
-        for (DeviceId deviceId : deviceIds) {
-            DeviceStateData stateData = getOrFetchDeviceStateData(deviceId);
-            if (stateData != null) {
-                DeviceState state = stateData.getState();
-                state.setActive(ts < state.getLastActivityTime() + state.getInactivityTimeout());
-                if (!state.isActive() && (state.getLastInactivityAlarmTime() == 0L || state.getLastInactivityAlarmTime() < state.getLastActivityTime()) && stateData.getDeviceCreationTime() + state.getInactivityTimeout() < ts) {
-                    state.setLastInactivityAlarmTime(ts);
-                    pushRuleEngineMessage(stateData, INACTIVITY_EVENT);
-                    save(deviceId, INACTIVITY_ALARM_TIME, ts);
-                    save(deviceId, ACTIVITY_STATE, state.isActive());
+        partitionedInactivityQueues.forEach((tpi, inactivityQueue) -> {
+            List<DeviceStateData> expired = inactivityQueue.pollExpired(ts);
+            log.debug("[{}] Calculating state updates for {} of {} devices", tpi.getFullTopicName(), expired.size(), inactivityQueue.size());
+            for (DeviceStateData stateData : expired) {
+                if (deviceStates.get(stateData.getDeviceId()) == stateData) {
+                    updateState(stateData, ts);
                 }
-            } else {
-                log.debug("[{}] Device that belongs to other server is detected and removed.", deviceId);
-                deviceStates.remove(deviceId);
-                deviceLastReportedActivity.remove(deviceId);
-                deviceLastSavedActivity.remove(deviceId);
             }
+        });
+    }
+
+    private void updateState(DeviceStateData stateData, long ts) {
+        DeviceId deviceId = stateData.getDeviceId();
+        DeviceState state = stateData.getState();
+        state.setActive(ts < state.getLastActivityTime() + state.getInactivityTimeout());
+        if (state.isActive() || stateData.getDeviceCreationTime() + state.getInactivityTimeout() >= ts) {
+            // The device reported activity or was created after the check was scheduled.
+            scheduleInactivityCheck(stateData);
+        } else if (state.getLastInactivityAlarmTime() == 0L || state.getLastInactivityAlarmTime() < state.getLastActivityTime()) {
+            state.setLastInactivityAlarmTime(ts);
+            pushRuleEngineMessage(stateData, INACTIVITY_EVENT);
+            save(stateData, INACTIVITY_ALARM_TIME, ts);
+            save(stateData, ACTIVITY_STATE, state.isActive());
         }
     }
 
@@ -414,7 +498,12 @@ public class DefaultDeviceStateService implements DeviceStateService {
             if (device != null) {
                 try {
                     deviceStateData = fetchDeviceState(device).get();
-                    deviceStates.putIfAbsent(deviceId, deviceStateData);
+                    DeviceStateData existing = deviceStates.putIfAbsent(deviceId, deviceStateData);
+                    if (existing == null) {
+                        scheduleInactivityCheck(deviceStateData);
+                    } else {
+                        deviceStateData = existing;
+                    }
                 } catch (InterruptedException | ExecutionException e) {
                     log.debug("[{}] Failed to fetch device state!", deviceId, e);
                 }
@@ -441,6 +530,7 @@ public class DefaultDeviceStateService implements DeviceStateService {
         deviceLastReportedActivity.remove(deviceId);
         deviceLastSavedActivity.remove(deviceId);
         TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenantId, deviceId);
+        writeBuffer.remove(tpi, deviceId);
         Set<DeviceId> deviceIdSet = partitionedDevices.get(tpi);
         deviceIdSet.remove(deviceId);
     }
@@ -519,47 +609,97 @@ public class DefaultDeviceStateService implements DeviceStateService {
         }
     }
 
-    private void save(DeviceId deviceId, String key, long value) {
-        if (persistToTelemetry) {
-            tsSubService.saveAndNotify(
-                    TenantId.SYS_TENANT_ID, deviceId,
-                    Collections.singletonList(new BasicTsKvEntry(System.currentTimeMillis(), new LongDataEntry(key, value))),
-                    new AttributeSaveCallback(deviceId, key, value));
+    private void save(DeviceStateData stateData, String key, long value) {
+        save(stateData, new LongDataEntry(key, value));
+    }
+
+    private void save(DeviceStateData stateData, String key, boolean value) {
+        save(stateData, new BooleanDataEntry(key, value));
+    }
+
+    private void save(DeviceStateData stateData, KvEntry kvEntry) {
+        TsKvEntry entry = new BasicTsKvEntry(System.currentTimeMillis(), kvEntry);
+        if (flushIntervalMs > 0) {
+            TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, stateData.getTenantId(), stateData.getDeviceId());
+            writeBuffer.put(tpi, stateData.getDeviceId(), entry);
         } else {
-            tsSubService.saveAttrAndNotify(TenantId.SYS_TENANT_ID, deviceId, DataConstants.SERVER_SCOPE, key, value, new AttributeSaveCallback(deviceId, key, value));
+            persist(stateData.getDeviceId(), Collections.singletonList(entry));
         }
     }
 
-    private void save(DeviceId deviceId, String key, boolean value) {
+    private void persist(DeviceId deviceId, List<TsKvEntry> entries) {
         if (persistToTelemetry) {
-            tsSubService.saveAndNotify(
-                    TenantId.SYS_TENANT_ID, deviceId,
-                    Collections.singletonList(new BasicTsKvEntry(System.currentTimeMillis(), new BooleanDataEntry(key, value))),
-                    new AttributeSaveCallback(deviceId, key, value));
+            tsSubService.saveAndNotify(TenantId.SYS_TENANT_ID, deviceId, entries, new AttributeSaveCallback(deviceId, entries));
         } else {
-            tsSubService.saveAttrAndNotify(TenantId.SYS_TENANT_ID, deviceId, DataConstants.SERVER_SCOPE, key, value, new AttributeSaveCallback(deviceId, key, value));
+            List<AttributeKvEntry> attributes = new ArrayList<>(entries.size());
+            for (TsKvEntry entry : entries) {
+                attributes.add(new BaseAttributeKvEntry(entry, entry.getTs()));
+            }
+            tsSubService.saveAndNotify(TenantId.SYS_TENANT_ID, deviceId, DataConstants.SERVER_SCOPE, attributes, new AttributeSaveCallback(deviceId, entries));
+        }
+    }
+
+    private void flush(TopicPartitionInfo tpi) {
+        writeBuffer.drain(tpi).forEach((deviceId, entries) -> {
+            try {
+                persist(deviceId, entries);
+            } catch (Exception e) {
+                writeBuffer.complete(deviceId);
+                log.warn("[{}] Failed to flush device state {}", deviceId, entries, e);
+            }
+        });
+    }
+
+    private void flushAll() {
+        try {
+            writeBuffer.getPartitions().forEach(this::flush);
+        } catch (Exception e) {
+            log.warn("Failed to flush device states", e);
+        }
+    }
+
+    /**
+     * Saves all the pending state, including the devices skipped by {@link #flushAll()} because of their in-flight saves,
+     * and waits for the saves to complete within {@code state.flushTimeoutMs}.
+     */
+    private void flushAndWait() {
+        long deadline = System.currentTimeMillis() + flushTimeoutMs;
+        try {
+            while (true) {
+                flushAll();
+                if (!writeBuffer.awaitInFlight(deadline - System.currentTimeMillis())) {
+                    log.warn("Failed to save pending device states within {} ms", flushTimeoutMs);
+                    return;
+                }
+                if (writeBuffer.isEmpty()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while saving pending device states");
+            Thread.currentThread().interrupt();
         }
     }
 
-    private static class AttributeSaveCallback implements FutureCallback<Void> {
+    private class AttributeSaveCallback implements FutureCallback<Void> {
         private final DeviceId deviceId;
-        private final String key;
-        private final Object value;
+        private final List<TsKvEntry> entries;
 
-        AttributeSaveCallback(DeviceId deviceId, String key, Object value) {
+        AttributeSaveCallback(DeviceId deviceId, List<TsKvEntry> entries) {
             this.deviceId = deviceId;
-            this.key = key;
-            this.value = value;
+            this.entries = entries;
         }
 
         @Override
         public void onSuccess(@Nullable Void result) {
-            log.trace("[{}] Successfully updated attribute [{}] with value [{}]", deviceId, key, value);
+            writeBuffer.complete(deviceId);
+            log.trace("[{}] Successfully updated attributes {}", deviceId, entries);
         }
 
         @Override
         public void onFailure(Throwable t) {
-            log.warn("[{}] Failed to update attribute [{}] with value [{}]", deviceId, key, value, t);
+            writeBuffer.complete(deviceId);
+            log.warn("[{}] Failed to update attributes {}", deviceId, entries, t);
         }
     }
 }
@@ -0,0 +1,82 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.state;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Inactivity check deadlines of the devices that belong to a single partition, ordered by time.
+ * <p>
+ * Every device has at most one scheduled check. Device activity does not touch the queue:
+ * once the check is due, the caller re-schedules it if the device reported activity in the meantime.
+ * So the periodic state update only touches the devices whose deadline has passed.
+ */
+class DeviceInactivityQueue {
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.comparingLong(Entry::getDeadline));
+
+    /**
+     * Schedules the check, unless an earlier check of the device is already scheduled.
+     */
+    synchronized void schedule(DeviceStateData stateData, long deadline) {
+        long scheduled = stateData.getNextCheckTs();
+        if (scheduled == 0L || deadline < scheduled) {
+            stateData.setNextCheckTs(deadline);
+            queue.add(new Entry(stateData, deadline));
+        }
+    }
+
+    /**
+     * Removes and returns the devices whose check is due. Entries replaced by an earlier check are skipped.
+     */
+    synchronized List<DeviceStateData> pollExpired(long ts) {
+        List<DeviceStateData> result = new ArrayList<>();
+        while (!queue.isEmpty() && queue.peek().getDeadline() <= ts) {
+            Entry entry = queue.poll();
+            DeviceStateData stateData = entry.getStateData();
+            if (stateData.getNextCheckTs() == entry.getDeadline()) {
+                stateData.setNextCheckTs(0L);
+                result.add(stateData);
+            }
+        }
+        return result;
+    }
+
+    synchronized int size() {
+        return queue.size();
+    }
+
+    private static final class Entry {
+        private final DeviceStateData stateData;
+        private final long deadline;
+
+        private Entry(DeviceStateData stateData, long deadline) {
+            this.stateData = stateData;
+            this.deadline = deadline;
+        }
+
+        DeviceStateData getStateData() {
+            return stateData;
+        }
+
+        long getDeadline() {
+            return deadline;
+        }
+    }
+}
@@ -33,5 +33,7 @@ class DeviceStateData {
     private final long deviceCreationTime;
     private TbMsgMetaData metaData;
     private final DeviceState state;
-    
+    // Deadline of the scheduled inactivity check, 0 if the check is not scheduled. Guarded by DeviceInactivityQueue.
+    private long nextCheckTs;
+
 }
@@ -0,0 +1,127 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.state;
+
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Write-behind buffer of the device state attributes, grouped by partition and device.
+ * A newer value of the same key replaces the pending one, so every flush issues a single save per device.
+ * A device is not drained again until its previous save is {@link #complete(DeviceId) completed},
+ * so the saves of the same device never overtake each other.
+ * The pending state is handed over with {@link #awaitInFlight(long)} and a drain of the devices it skipped.
+ */
+class DeviceStateWriteBuffer {
+
+    private final ConcurrentMap<TopicPartitionInfo, ConcurrentMap<DeviceId, Map<String, TsKvEntry>>> partitions = new ConcurrentHashMap<>();
+    private final Set<DeviceId> inFlight = ConcurrentHashMap.newKeySet();
+    private final Object inFlightLock = new Object();
+
+    void put(TopicPartitionInfo tpi, DeviceId deviceId, TsKvEntry entry) {
+        partitions.computeIfAbsent(tpi, key -> new ConcurrentHashMap<>()).compute(deviceId, (id, entries) -> {
+            if (entries == null) {
+                entries = new HashMap<>();
+            }
+            entries.put(entry.getKey(), entry);
+            return entries;
+        });
+    }
+
+    Set<TopicPartitionInfo> getPartitions() {
+        return partitions.keySet();
+    }
+
+    boolean isEmpty() {
+        return partitions.values().stream().allMatch(Map::isEmpty);
+    }
+
+    /**
+     * Drops the pending entries of the device, e.g. when the device is deleted.
+     */
+    void remove(TopicPartitionInfo tpi, DeviceId deviceId) {
+        ConcurrentMap<DeviceId, Map<String, TsKvEntry>> devices = partitions.get(tpi);
+        if (devices != null) {
+            devices.remove(deviceId);
+        }
+    }
+
+    /**
+     * Marks the save of the device returned by the previous {@link #drain(TopicPartitionInfo)} as finished.
+     */
+    void complete(DeviceId deviceId) {
+        inFlight.remove(deviceId);
+        if (inFlight.isEmpty()) {
+            synchronized (inFlightLock) {
+                inFlightLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits till all the saves returned by the previous drains are completed.
+     *
+     * @return false if some saves are still in flight after the timeout.
+     */
+    boolean awaitInFlight(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (inFlightLock) {
+            while (!inFlight.isEmpty()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                inFlightLock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes and returns the pending entries of the partition.
+     * Devices whose previous save is still in flight are skipped and stay pending till the next drain.
+     */
+    Map<DeviceId, List<TsKvEntry>> drain(TopicPartitionInfo tpi) {
+        ConcurrentMap<DeviceId, Map<String, TsKvEntry>> devices = partitions.get(tpi);
+        if (devices == null || devices.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<DeviceId, List<TsKvEntry>> result = new LinkedHashMap<>();
+        for (DeviceId deviceId : devices.keySet()) {
+            if (!inFlight.add(deviceId)) {
+                continue;
+            }
+            Map<String, TsKvEntry> entries = devices.remove(deviceId);
+            if (entries != null) {
+                result.put(deviceId, new ArrayList<>(entries.values()));
+            } else {
+                inFlight.remove(deviceId);
+            }
+        }
+        return result;
+    }
+}
@@ -17,6 +17,8 @@ package org.thingsboard.server.service.subscription;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.thingsboard.common.util.DonAsynchron;
 import org.thingsboard.common.util.ThingsBoardThreadFactory;
@@ -31,6 +33,7 @@ import org.thingsboard.server.common.data.kv.Aggregation;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
 import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.KvEntry;
 import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.StringDataEntry;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
@@ -60,17 +63,19 @@ import org.thingsboard.server.service.telemetry.sub.TelemetrySubscriptionUpdate;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.function.Function;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
 import java.util.function.Predicate;
 
 @Slf4j
@@ -102,10 +107,14 @@ public class DefaultSubscriptionManagerService implements SubscriptionManagerSer
     @Autowired
     private TbClusterService clusterService;
 
-    private final Map<EntityId, Set<TbSubscription>> subscriptionsByEntityId = new ConcurrentHashMap<>();
+    @Value("${queue.core.sub-updates-batch-enabled:false}")
+    private boolean subUpdatesBatchEnabled;
+
+    private final Map<EntityId, TbEntitySubscriptions> subscriptionsByEntityId = new ConcurrentHashMap<>();
     private final Map<String, Map<Integer, TbSubscription>> subscriptionsByWsSessionId = new ConcurrentHashMap<>();
     private final ConcurrentMap<TopicPartitionInfo, Set<TbSubscription>> partitionedSubscriptions = new ConcurrentHashMap<>();
     private final Set<TopicPartitionInfo> currentPartitions = ConcurrentHashMap.newKeySet();
+    private final SubscriptionServiceStatistics stats = new SubscriptionServiceStatistics();
 
     private ExecutorService tsCallBackExecutor;
     private String serviceId;
@@ -139,7 +148,7 @@ public class DefaultSubscriptionManagerService implements SubscriptionManagerSer
             callback.onFailure(new RuntimeException("Entity belongs to external partition " + tpi.getFullTopicName() + "!"));
         }
         boolean newSubscription = subscriptionsByEntityId
-                .computeIfAbsent(subscription.getEntityId(), k -> ConcurrentHashMap.newKeySet()).add(subscription);
+                .computeIfAbsent(subscription.getEntityId(), k -> new TbEntitySubscriptions()).add(subscription);
         subscriptionsByWsSessionId.computeIfAbsent(subscription.getSessionId(), k -> new ConcurrentHashMap<>()).put(subscription.getSubscriptionId(), subscription);
         if (newSubscription) {
             switch (subscription.getType()) {
@@ -202,25 +211,16 @@ public class DefaultSubscriptionManagerService implements SubscriptionManagerSer
 
     @Override
     public void onTimeSeriesUpdate(TenantId tenantId, EntityId entityId, List<TsKvEntry> ts, TbCallback callback) {
-        onLocalTelemetrySubUpdate(entityId,
-                s -> {
-                    if (TbSubscriptionType.TIMESERIES.equals(s.getType())) {
-                        return (TbTimeseriesSubscription) s;
-                    } else {
-                        return null;
-                    }
-                }, s -> true, s -> {
-                    List<TsKvEntry> subscriptionUpdate = null;
-                    for (TsKvEntry kv : ts) {
-                        if (isInTimeRange(s, kv.getTs()) && (s.isAllKeys() || s.getKeyStates().containsKey((kv.getKey())))) {
-                            if (subscriptionUpdate == null) {
-                                subscriptionUpdate = new ArrayList<>();
-                            }
-                            subscriptionUpdate.add(kv);
-                        }
-                    }
-                    return subscriptionUpdate;
-                });
+        TbEntitySubscriptions entitySubscriptions = subscriptionsByEntityId.get(entityId);
+        if (entitySubscriptions != null) {
+            onLocalTelemetrySubUpdate(entityId, entitySubscriptions.getTimeseriesSubscriptions(getKeys(ts)),
+                    s -> true,
+                    (s, key) -> s.isAllKeys() || s.getKeyStates().containsKey(key),
+                    (s, kv) -> isInTimeRange(s, kv.getTs()),
+                    ts);
+        } else {
+            log.debug("[{}] No device subscriptions to process!", entityId);
+        }
         callback.onSuccess();
     }
 
@@ -231,27 +231,16 @@ public class DefaultSubscriptionManagerService implements SubscriptionManagerSer
 
     @Override
     public void onAttributesUpdate(TenantId tenantId, EntityId entityId, String scope, List<AttributeKvEntry> attributes, boolean notifyDevice, TbCallback callback) {
-        onLocalTelemetrySubUpdate(entityId,
-                s -> {
-                    if (TbSubscriptionType.ATTRIBUTES.equals(s.getType())) {
-                        return (TbAttributeSubscription) s;
-                    } else {
-                        return null;
-                    }
-                },
-                s -> (TbAttributeSubscriptionScope.ANY_SCOPE.equals(s.getScope()) || scope.equals(s.getScope().name())),
-                s -> {
-                    List<TsKvEntry> subscriptionUpdate = null;
-                    for (AttributeKvEntry kv : attributes) {
-                        if (s.isAllKeys() || s.getKeyStates().containsKey(kv.getKey())) {
-                            if (subscriptionUpdate == null) {
-                                subscriptionUpdate = new ArrayList<>();
-                            }
-                            subscriptionUpdate.add(new BasicTsKvEntry(kv.getLastUpdateTs(), kv));
-                        }
-                    }
-                    return subscriptionUpdate;
-                });
+        TbEntitySubscriptions entitySubscriptions = subscriptionsByEntityId.get(entityId);
+        if (entitySubscriptions != null) {
+            List<TsKvEntry> updates = new ArrayList<>(attributes.size());
+            for (AttributeKvEntry kv : attributes) {
+                updates.add(new BasicTsKvEntry(kv.getLastUpdateTs(), kv));
+            }
+            onLocalAttributesSubUpdate(entityId, entitySubscriptions.getAttributeSubscriptions(getKeys(attributes)), scope, updates);
+        } else {
+            log.debug("[{}] No device subscriptions to process!", entityId);
+        }
         if (entityId.getEntityType() == EntityType.DEVICE) {
             if (TbAttributeSubscriptionScope.SERVER_SCOPE.name().equalsIgnoreCase(scope)) {
                 for (AttributeKvEntry attribute : attributes) {
@@ -270,103 +259,147 @@ public class DefaultSubscriptionManagerService implements SubscriptionManagerSer
 
     @Override
     public void onAlarmUpdate(TenantId tenantId, EntityId entityId, Alarm alarm, TbCallback callback) {
-        onLocalAlarmSubUpdate(entityId,
-                s -> {
-                    if (TbSubscriptionType.ALARMS.equals(s.getType())) {
-                        return (TbAlarmsSubscription) s;
-                    } else {
-                        return null;
-                    }
-                },
-                s -> alarm.getCreatedTime() >= s.getTs(),
-                s -> alarm,
-                false
-        );
+        onLocalAlarmSubUpdate(entityId, s -> alarm.getCreatedTime() >= s.getTs(), alarm, false);
         callback.onSuccess();
     }
 
     @Override
     public void onAlarmDeleted(TenantId tenantId, EntityId entityId, Alarm alarm, TbCallback callback) {
-        onLocalAlarmSubUpdate(entityId,
-                s -> {
-                    if (TbSubscriptionType.ALARMS.equals(s.getType())) {
-                        return (TbAlarmsSubscription) s;
-                    } else {
-                        return null;
-                    }
-                },
-                s -> alarm.getCreatedTime() >= s.getTs(),
-                s -> alarm,
-                true
-        );
+        onLocalAlarmSubUpdate(entityId, s -> alarm.getCreatedTime() >= s.getTs(), alarm, true);
         callback.onSuccess();
     }
 
     @Override
     public void onAttributesDelete(TenantId tenantId, EntityId entityId, String scope, List<String> keys, TbCallback callback) {
-        onLocalTelemetrySubUpdate(entityId,
-                s -> {
-                    if (TbSubscriptionType.ATTRIBUTES.equals(s.getType())) {
-                        return (TbAttributeSubscription) s;
-                    } else {
-                        return null;
-                    }
-                },
-                s -> (TbAttributeSubscriptionScope.ANY_SCOPE.equals(s.getScope()) || scope.equals(s.getScope().name())),
-                s -> {
-                    List<TsKvEntry> subscriptionUpdate = null;
-                    for (String key : keys) {
-                        if (s.isAllKeys() || s.getKeyStates().containsKey(key)) {
-                            if (subscriptionUpdate == null) {
-                                subscriptionUpdate = new ArrayList<>();
-                            }
-                            subscriptionUpdate.add(new BasicTsKvEntry(0, new StringDataEntry(key, null)));
-                        }
-                    }
-                    return subscriptionUpdate;
-                });
+        TbEntitySubscriptions entitySubscriptions = subscriptionsByEntityId.get(entityId);
+        if (entitySubscriptions != null) {
+            List<TsKvEntry> updates = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                updates.add(new BasicTsKvEntry(0, new StringDataEntry(key, null)));
+            }
+            onLocalAttributesSubUpdate(entityId, entitySubscriptions.getAttributeSubscriptions(keys), scope, updates);
+        } else {
+            log.debug("[{}] No device subscriptions to process!", entityId);
+        }
         callback.onSuccess();
     }
 
+    @Scheduled(fixedDelayString = "${server.ws.dynamic_page_link.stats:10000}")
+    public void printStats() {
+        int entityCnt = 0;
+        int subscriptionCnt = 0;
+        int maxSubscriptionsPerEntity = 0;
+        for (TbEntitySubscriptions entitySubscriptions : subscriptionsByEntityId.values()) {
+            int size = entitySubscriptions.size();
+            entityCnt++;
+            subscriptionCnt += size;
+            maxSubscriptionsPerEntity = Math.max(maxSubscriptionsPerEntity, size);
+        }
+        stats.getSubscribedEntityCnt().set(entityCnt);
+        stats.getEntitySubscriptionCnt().set(subscriptionCnt);
+        stats.getMaxSubscriptionsPerEntity().set(maxSubscriptionsPerEntity);
+        int updateCnt = stats.getSubscriptionUpdateCnt().getAndSet(0);
+        int notificationCnt = stats.getSubscriptionNotificationCnt().getAndSet(0);
+        long updateTime = stats.getSubscriptionUpdateTimeSpent().getAndSet(0);
+        if (updateCnt > 0 || entityCnt > 0) {
+            log.info("Stats: subscribedEntityCnt = [{}], entitySubscriptionCnt = [{}], maxSubscriptionsPerEntity = [{}], " +
+                            "subscriptionUpdateCnt = [{}], subscriptionNotificationCnt = [{}], subscriptionUpdateTime (us) = [{}]",
+                    entityCnt, subscriptionCnt, maxSubscriptionsPerEntity, updateCnt, notificationCnt, updateTime);
+        }
+    }
+
+    private void onLocalAttributesSubUpdate(EntityId entityId, Collection<TbAttributeSubscription> subscriptions, String scope, List<TsKvEntry> updates) {
+        onLocalTelemetrySubUpdate(entityId, subscriptions,
+                s -> (TbAttributeSubscriptionScope.ANY_SCOPE.equals(s.getScope()) || scope.equals(s.getScope().name())),
+                (s, key) -> s.isAllKeys() || s.getKeyStates().containsKey(key),
+                (s, kv) -> true,
+                updates);
+    }
+
+    /**
+     * Matches the update against the subscriptions selected by the key index. Value lists are encoded once per key and shared
+     * by all the remote subscriptions that receive every value of that key, and the updates of the remote subscriptions
+     * are sent in a single notification per target service.
+     */
     private <T extends TbSubscription> void onLocalTelemetrySubUpdate(EntityId entityId,
-                                                                      Function<TbSubscription, T> castFunction,
+                                                                      Collection<T> subscriptions,
                                                                       Predicate<T> filterFunction,
-                                                                      Function<T, List<TsKvEntry>> processFunction) {
-        Set<TbSubscription> entitySubscriptions = subscriptionsByEntityId.get(entityId);
-        if (entitySubscriptions != null) {
-            entitySubscriptions.stream().map(castFunction).filter(Objects::nonNull).filter(filterFunction).forEach(s -> {
-                List<TsKvEntry> subscriptionUpdate = processFunction.apply(s);
-                if (subscriptionUpdate != null && !subscriptionUpdate.isEmpty()) {
-                    if (serviceId.equals(s.getServiceId())) {
-                        TelemetrySubscriptionUpdate update = new TelemetrySubscriptionUpdate(s.getSubscriptionId(), subscriptionUpdate);
-                        localSubscriptionService.onSubscriptionUpdate(s.getSessionId(), update, TbCallback.EMPTY);
+                                                                      BiPredicate<T, String> keyFilter,
+                                                                      BiPredicate<T, TsKvEntry> valueFilter,
+                                                                      List<TsKvEntry> updates) {
+        if (subscriptions.isEmpty()) {
+            log.debug("[{}] No device subscriptions to process!", entityId);
+            return;
+        }
+        long startNs = System.nanoTime();
+        int notificationCnt = 0;
+        Map<String, List<TsKvEntry>> updatesByKey = null;
+        Map<String, TbSubscriptionUpdateValueListProto> encodedByKey = null;
+        Map<String, List<TbSubscriptionUpdateProto>> remoteUpdates = null;
+        for (T s : subscriptions) {
+            if (!filterFunction.test(s)) {
+                continue;
+            }
+            List<TsKvEntry> subscriptionUpdate = null;
+            boolean partial = false;
+            for (TsKvEntry kv : updates) {
+                if (keyFilter.test(s, kv.getKey())) {
+                    if (valueFilter.test(s, kv)) {
+                        if (subscriptionUpdate == null) {
+                            subscriptionUpdate = new ArrayList<>();
+                        }
+                        subscriptionUpdate.add(kv);
                     } else {
-                        TopicPartitionInfo tpi = partitionService.getNotificationsTopic(ServiceType.TB_CORE, s.getServiceId());
-                        toCoreNotificationsProducer.send(tpi, toProto(s, subscriptionUpdate), null);
+                        partial = true;
                     }
                 }
-            });
-        } else {
-            log.debug("[{}] No device subscriptions to process!", entityId);
+            }
+            if (subscriptionUpdate == null) {
+                continue;
+            }
+            notificationCnt++;
+            if (serviceId.equals(s.getServiceId())) {
+                TelemetrySubscriptionUpdate update = new TelemetrySubscriptionUpdate(s.getSubscriptionId(), subscriptionUpdate);
+                localSubscriptionService.onSubscriptionUpdate(s.getSessionId(), update, TbCallback.EMPTY);
+            } else {
+                TbSubscriptionUpdateProto.Builder builder = newSubscriptionUpdateBuilder(s);
+                if (partial) {
+                    groupByKey(subscriptionUpdate).forEach((key, values) -> builder.addData(toValueListProto(key, values)));
+                } else {
+                    if (updatesByKey == null) {
+                        updatesByKey = groupByKey(updates);
+                        encodedByKey = new HashMap<>();
+                    }
+                    for (Map.Entry<String, List<TsKvEntry>> entry : updatesByKey.entrySet()) {
+                        if (keyFilter.test(s, entry.getKey())) {
+                            builder.addData(encodedByKey.computeIfAbsent(entry.getKey(), key -> toValueListProto(key, entry.getValue())));
+                        }
+                    }
+                }
+                if (remoteUpdates == null) {
+                    remoteUpdates = new HashMap<>();
+                }
+                remoteUpdates.computeIfAbsent(s.getServiceId(), id -> new ArrayList<>()).add(builder.build());
+            }
+        }
+        if (remoteUpdates != null) {
+            remoteUpdates.forEach((targetServiceId, subUpdates) -> sendSubscriptionUpdates(entityId, targetServiceId, subUpdates));
         }
+        stats.getSubscriptionUpdateCnt().incrementAndGet();
+        stats.getSubscriptionNotificationCnt().addAndGet(notificationCnt);
+        stats.getSubscriptionUpdateTimeSpent().addAndGet(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNs));
     }
 
-    private void onLocalAlarmSubUpdate(EntityId entityId,
-                                       Function<TbSubscription, TbAlarmsSubscription> castFunction,
-                                       Predicate<TbAlarmsSubscription> filterFunction,
-                                       Function<TbAlarmsSubscription, Alarm> processFunction, boolean deleted) {
-        Set<TbSubscription> entitySubscriptions = subscriptionsByEntityId.get(entityId);
+    private void onLocalAlarmSubUpdate(EntityId entityId, Predicate<TbAlarmsSubscription> filterFunction, Alarm alarm, boolean deleted) {
+        TbEntitySubscriptions entitySubscriptions = subscriptionsByEntityId.get(entityId);
         if (entitySubscriptions != null) {
-            entitySubscriptions.stream().map(castFunction).filter(Objects::nonNull).filter(filterFunction).forEach(s -> {
-                Alarm alarm = processFunction.apply(s);
-                if (alarm != null) {
-                    if (serviceId.equals(s.getServiceId())) {
-                        AlarmSubscriptionUpdate update = new AlarmSubscriptionUpdate(s.getSubscriptionId(), alarm, deleted);
-                        localSubscriptionService.onSubscriptionUpdate(s.getSessionId(), update, TbCallback.EMPTY);
-                    } else {
-                        TopicPartitionInfo tpi = partitionService.getNotificationsTopic(ServiceType.TB_CORE, s.getServiceId());
-                        toCoreNotificationsProducer.send(tpi, toProto(s, alarm, deleted), null);
-                    }
+            entitySubscriptions.getAlarmSubscriptions().stream().filter(filterFunction).forEach(s -> {
+                if (serviceId.equals(s.getServiceId())) {
+                    AlarmSubscriptionUpdate update = new AlarmSubscriptionUpdate(s.getSubscriptionId(), alarm, deleted);
+                    localSubscriptionService.onSubscriptionUpdate(s.getSessionId(), update, TbCallback.EMPTY);
+                } else {
+                    TopicPartitionInfo tpi = partitionService.getNotificationsTopic(ServiceType.TB_CORE, s.getServiceId());
+                    toCoreNotificationsProducer.send(tpi, toProto(s, alarm, deleted), null);
                 }
             });
         } else {
@@ -380,13 +413,10 @@ public class DefaultSubscriptionManagerService implements SubscriptionManagerSer
     }
 
     private void removeSubscriptionFromEntityMap(TbSubscription sub) {
-        Set<TbSubscription> entitySubSet = subscriptionsByEntityId.get(sub.getEntityId());
-        if (entitySubSet != null) {
-            entitySubSet.remove(sub);
-            if (entitySubSet.isEmpty()) {
-                subscriptionsByEntityId.remove(sub.getEntityId());
-            }
-        }
+        subscriptionsByEntityId.computeIfPresent(sub.getEntityId(), (entityId, entitySubscriptions) -> {
+            entitySubscriptions.remove(sub);
+            return entitySubscriptions.isEmpty() ? null : entitySubscriptions;
+        });
     }
 
     private void removeSubscriptionFromPartitionMap(TbSubscription sub) {
@@ -449,36 +479,63 @@ public class DefaultSubscriptionManagerService implements SubscriptionManagerSer
         }
     }
 
+    private void sendSubscriptionUpdates(EntityId entityId, String targetServiceId, List<TbSubscriptionUpdateProto> subUpdates) {
+        TopicPartitionInfo tpi = partitionService.getNotificationsTopic(ServiceType.TB_CORE, targetServiceId);
+        if (subUpdates.size() == 1 || !subUpdatesBatchEnabled) {
+            for (TbSubscriptionUpdateProto subUpdate : subUpdates) {
+                sendSubscriptionUpdates(entityId, tpi, LocalSubscriptionServiceMsgProto.newBuilder().setSubUpdate(subUpdate).build());
+            }
+        } else {
+            sendSubscriptionUpdates(entityId, tpi, LocalSubscriptionServiceMsgProto.newBuilder().addAllSubUpdates(subUpdates).build());
+        }
+    }
+
+    private void sendSubscriptionUpdates(EntityId entityId, TopicPartitionInfo tpi, LocalSubscriptionServiceMsgProto msg) {
+        ToCoreNotificationMsg toCoreMsg = ToCoreNotificationMsg.newBuilder().setToLocalSubscriptionServiceMsg(msg).build();
+        toCoreNotificationsProducer.send(tpi, new TbProtoQueueMsg<>(entityId.getId(), toCoreMsg), null);
+    }
+
     private TbProtoQueueMsg<ToCoreNotificationMsg> toProto(TbSubscription subscription, List<TsKvEntry> updates) {
-        TbSubscriptionUpdateProto.Builder builder = TbSubscriptionUpdateProto.newBuilder();
+        TbSubscriptionUpdateProto.Builder builder = newSubscriptionUpdateBuilder(subscription);
+        groupByKey(updates).forEach((key, values) -> builder.addData(toValueListProto(key, values)));
+
+        ToCoreNotificationMsg toCoreMsg = ToCoreNotificationMsg.newBuilder().setToLocalSubscriptionServiceMsg(
+                LocalSubscriptionServiceMsgProto.newBuilder().setSubUpdate(builder.build()).build())
+                .build();
+        return new TbProtoQueueMsg<>(subscription.getEntityId().getId(), toCoreMsg);
+    }
 
+    private static TbSubscriptionUpdateProto.Builder newSubscriptionUpdateBuilder(TbSubscription subscription) {
+        TbSubscriptionUpdateProto.Builder builder = TbSubscriptionUpdateProto.newBuilder();
         builder.setSessionId(subscription.getSessionId());
         builder.setSubscriptionId(subscription.getSubscriptionId());
+        return builder;
+    }
 
-        Map<String, List<Object>> data = new TreeMap<>();
+    private static Map<String, List<TsKvEntry>> groupByKey(List<TsKvEntry> updates) {
+        Map<String, List<TsKvEntry>> data = new TreeMap<>();
         for (TsKvEntry tsEntry : updates) {
-            List<Object> values = data.computeIfAbsent(tsEntry.getKey(), k -> new ArrayList<>());
-            Object[] value = new Object[2];
-            value[0] = tsEntry.getTs();
-            value[1] = tsEntry.getValueAsString();
-            values.add(value);
+            data.computeIfAbsent(tsEntry.getKey(), k -> new ArrayList<>()).add(tsEntry);
         }
+        return data;
+    }
 
-        data.forEach((key, value) -> {
-            TbSubscriptionUpdateValueListProto.Builder dataBuilder = TbSubscriptionUpdateValueListProto.newBuilder();
-            dataBuilder.setKey(key);
-            value.forEach(v -> {
-                Object[] array = (Object[]) v;
-                dataBuilder.addTs((long) array[0]);
-                dataBuilder.addValue((String) array[1]);
-            });
-            builder.addData(dataBuilder.build());
-        });
+    private static TbSubscriptionUpdateValueListProto toValueListProto(String key, List<TsKvEntry> values) {
+        TbSubscriptionUpdateValueListProto.Builder dataBuilder = TbSubscriptionUpdateValueListProto.newBuilder();
+        dataBuilder.setKey(key);
+        for (TsKvEntry tsEntry : values) {
+            dataBuilder.addTs(tsEntry.getTs());
+            dataBuilder.addValue(tsEntry.getValueAsString());
+        }
+        return dataBuilder.build();
+    }
 
-        ToCoreNotificationMsg toCoreMsg = ToCoreNotificationMsg.newBuilder().setToLocalSubscriptionServiceMsg(
-                LocalSubscriptionServiceMsgProto.newBuilder().setSubUpdate(builder.build()).build())
-                .build();
-        return new TbProtoQueueMsg<>(subscription.getEntityId().getId(), toCoreMsg);
+    private static Set<String> getKeys(List<? extends KvEntry> entries) {
+        Set<String> keys = new HashSet<>(entries.size() * 2);
+        for (KvEntry entry : entries) {
+            keys.add(entry.getKey());
+        }
+        return keys;
     }
 
     private TbProtoQueueMsg<ToCoreNotificationMsg> toProto(TbSubscription subscription, Alarm alarm, boolean deleted) {
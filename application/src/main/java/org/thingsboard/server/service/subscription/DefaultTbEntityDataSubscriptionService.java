@@ -28,7 +28,8 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.thingsboard.common.util.ThingsBoardThreadFactory;
-import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.audit.ActionType;
+import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
@@ -68,6 +69,7 @@ import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -92,6 +94,12 @@ import java.util.stream.Collectors;
 public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubscriptionService {
 
     private static final int DEFAULT_LIMIT = 100;
+    private static final Set<ActionType> DYNAMIC_QUERY_ACTIONS = EnumSet.of(ActionType.ADDED, ActionType.DELETED, ActionType.UPDATED,
+            ActionType.ATTRIBUTES_UPDATED, ActionType.ATTRIBUTES_DELETED, ActionType.ASSIGNED_TO_CUSTOMER, ActionType.UNASSIGNED_FROM_CUSTOMER,
+            ActionType.ASSIGNED_FROM_TENANT, ActionType.ASSIGNED_TO_TENANT,
+            ActionType.RELATION_ADD_OR_UPDATE, ActionType.RELATION_DELETED, ActionType.RELATIONS_DELETED);
+    private static final Set<ActionType> RELATION_ACTIONS = EnumSet.of(ActionType.RELATION_ADD_OR_UPDATE, ActionType.RELATION_DELETED,
+            ActionType.RELATIONS_DELETED);
     private final Map<String, Map<Integer, TbAbstractDataSubCtx>> subscriptionsBySessionId = new ConcurrentHashMap<>();
 
     @Autowired
@@ -126,6 +134,10 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
     private String databaseTsType;
     @Value("${server.ws.dynamic_page_link.refresh_interval:6}")
     private long dynamicPageLinkRefreshInterval;
+    @Value("${server.ws.dynamic_page_link.check_interval_ms:1000}")
+    private long dynamicPageLinkCheckInterval;
+    @Value("${server.ws.dynamic_page_link.min_refresh_interval_ms:5000}")
+    private long dynamicPageLinkMinRefreshInterval;
     @Value("${server.ws.dynamic_page_link.refresh_pool_size:1}")
     private int dynamicPageLinkRefreshPoolSize;
     @Value("${server.ws.max_entities_per_data_subscription:1000}")
@@ -137,6 +149,7 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
     private boolean tsInSqlDB;
     private String serviceId;
     private SubscriptionServiceStatistics stats = new SubscriptionServiceStatistics();
+    private TbEntityDataQueryCache dynamicQueryCache;
 
     @PostConstruct
     public void initExecutor() {
@@ -149,6 +162,9 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
         } else {
             scheduler = Executors.newScheduledThreadPool(dynamicPageLinkRefreshPoolSize, tbThreadFactory);
         }
+        dynamicQueryCache = new TbEntityDataQueryCache(entityService, stats, scheduler, TimeUnit.SECONDS.toMillis(dynamicPageLinkRefreshInterval),
+                dynamicPageLinkMinRefreshInterval);
+        scheduler.scheduleWithFixedDelay(this::refreshDynamicQueries, dynamicPageLinkCheckInterval, dynamicPageLinkCheckInterval, TimeUnit.MILLISECONDS);
     }
 
     @PreDestroy
@@ -181,8 +197,6 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
                 log.debug("[{}][{}] Updating data using query: {}", session.getSessionId(), cmd.getCmdId(), cmd.getQuery());
             }
             ctx.setAndResolveQuery(cmd.getQuery());
-            TenantId tenantId = ctx.getTenantId();
-            CustomerId customerId = ctx.getCustomerId();
             EntityDataQuery query = ctx.getQuery();
             //Step 1. Update existing query with the contents of LatestValueCmd
             if (cmd.getLatestCmd() != null) {
@@ -200,11 +214,9 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
             ctx.cancelTasks();
             if (ctx.getQuery().getPageLink().isDynamic()) {
                 //TODO: validate number of dynamic page links against rate limits. Ignore dynamic flag if limit is reached.
-                TbEntityDataSubCtx finalCtx = ctx;
-                ScheduledFuture<?> task = scheduler.scheduleWithFixedDelay(
-                        () -> refreshDynamicQuery(tenantId, customerId, finalCtx),
-                        dynamicPageLinkRefreshInterval, dynamicPageLinkRefreshInterval, TimeUnit.SECONDS);
-                finalCtx.setRefreshTask(task);
+                dynamicQueryCache.register(ctx);
+            } else {
+                dynamicQueryCache.unregister(ctx);
             }
         }
         ListenableFuture<TbEntityDataSubCtx> historyFuture;
@@ -267,15 +279,19 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
         }
     }
 
-    private void refreshDynamicQuery(TenantId tenantId, CustomerId customerId, TbEntityDataSubCtx finalCtx) {
+    private void refreshDynamicQueries() {
         try {
-            long start = System.currentTimeMillis();
-            finalCtx.update();
-            long end = System.currentTimeMillis();
-            stats.getDynamicQueryInvocationCnt().incrementAndGet();
-            stats.getDynamicQueryTimeSpent().addAndGet(end - start);
+            dynamicQueryCache.refresh();
         } catch (Exception e) {
-            log.warn("[{}][{}] Failed to refresh query", finalCtx.getSessionId(), finalCtx.getCmdId(), e);
+            log.warn("Failed to refresh dynamic queries", e);
+        }
+    }
+
+    @Override
+    public void onEntityAction(TenantId tenantId, EntityId entityId, ActionType actionType) {
+        if (DYNAMIC_QUERY_ACTIONS.contains(actionType)) {
+            log.trace("[{}][{}] Marking dynamic queries for refresh due to: {}", tenantId, entityId, actionType);
+            dynamicQueryCache.onEntityChange(tenantId, entityId, RELATION_ACTIONS.contains(actionType));
         }
     }
 
@@ -288,12 +304,13 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
         int dynamicQueryInvocationCntValue = stats.getDynamicQueryInvocationCnt().getAndSet(0);
         long dynamicQueryInvocationTimeValue = stats.getDynamicQueryTimeSpent().getAndSet(0);
         long dynamicQueryCnt = subscriptionsBySessionId.values().stream().map(Map::values).count();
+        int uniqueDynamicQueryCnt = dynamicQueryCache.size();
         if (regularQueryInvocationCntValue > 0 || dynamicQueryInvocationCntValue > 0 || dynamicQueryCnt > 0 || alarmQueryInvocationCntValue > 0) {
             log.info("Stats: regularQueryInvocationCnt = [{}], regularQueryInvocationTime = [{}], " +
-                            "dynamicQueryCnt = [{}] dynamicQueryInvocationCnt = [{}], dynamicQueryInvocationTime = [{}], " +
+                            "dynamicQueryCnt = [{}] uniqueDynamicQueryCnt = [{}], dynamicQueryInvocationCnt = [{}], dynamicQueryInvocationTime = [{}], " +
                             "alarmQueryInvocationCnt = [{}], alarmQueryInvocationTime = [{}]",
                     regularQueryInvocationCntValue, regularQueryInvocationTimeValue,
-                    dynamicQueryCnt, dynamicQueryInvocationCntValue, dynamicQueryInvocationTimeValue,
+                    dynamicQueryCnt, uniqueDynamicQueryCnt, dynamicQueryInvocationCntValue, dynamicQueryInvocationTimeValue,
                     alarmQueryInvocationCntValue, alarmQueryInvocationTimeValue);
         }
     }
@@ -464,6 +481,9 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
     private void cleanupAndCancel(TbAbstractDataSubCtx ctx) {
         if (ctx != null) {
             ctx.cancelTasks();
+            if (ctx instanceof TbEntityDataSubCtx) {
+                dynamicQueryCache.unregister((TbEntityDataSubCtx) ctx);
+            }
             ctx.clearEntitySubscriptions();
             ctx.clearDynamicValueSubscriptions();
         }
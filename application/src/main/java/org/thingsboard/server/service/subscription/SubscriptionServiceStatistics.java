@@ -28,4 +28,10 @@ public class SubscriptionServiceStatistics {
     private AtomicLong alarmQueryTimeSpent = new AtomicLong();
     private AtomicLong regularQueryTimeSpent = new AtomicLong();
     private AtomicLong dynamicQueryTimeSpent = new AtomicLong();
+    private AtomicInteger subscribedEntityCnt = new AtomicInteger();
+    private AtomicInteger entitySubscriptionCnt = new AtomicInteger();
+    private AtomicInteger maxSubscriptionsPerEntity = new AtomicInteger();
+    private AtomicInteger subscriptionUpdateCnt = new AtomicInteger();
+    private AtomicInteger subscriptionNotificationCnt = new AtomicInteger();
+    private AtomicLong subscriptionUpdateTimeSpent = new AtomicLong();
 }
@@ -0,0 +1,257 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.subscription;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.data.EntityType;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityDataQuery;
+import org.thingsboard.server.common.data.query.EntityFilter;
+import org.thingsboard.server.common.data.query.EntityKeyType;
+import org.thingsboard.server.common.data.query.EntityListFilter;
+import org.thingsboard.server.common.data.query.EntityNameFilter;
+import org.thingsboard.server.common.data.query.SingleEntityFilter;
+import org.thingsboard.server.common.data.query.TsValue;
+import org.thingsboard.server.dao.entity.EntityService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shared evaluation of dynamic entity data queries. Subscriptions with the same normalized query and security context
+ * are grouped, so the query is evaluated once per group and the result is delivered to every subscription of the group.
+ * A group is re-evaluated after a change of an entity its filter may match, but not more often than once per minRefreshIntervalMs,
+ * or once refreshIntervalMs elapsed since the last evaluation, to catch the changes not reported through
+ * {@link #onEntityChange(TenantId, EntityId, boolean)}.
+ * Queries with dynamic values in the key filters are not shared, since the resolved values depend on the subscription.
+ */
+@Slf4j
+public class TbEntityDataQueryCache {
+
+    private static final ObjectMapper mapper = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final EntityService entityService;
+    private final SubscriptionServiceStatistics stats;
+    private final ExecutorService executor;
+    private final long refreshIntervalMs;
+    private final long minRefreshIntervalMs;
+
+    private final ConcurrentMap<String, CachedQuery> queries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> queryKeysBySubscription = new ConcurrentHashMap<>();
+
+    public TbEntityDataQueryCache(EntityService entityService, SubscriptionServiceStatistics stats, ExecutorService executor,
+                                  long refreshIntervalMs, long minRefreshIntervalMs) {
+        this.entityService = entityService;
+        this.stats = stats;
+        this.executor = executor;
+        this.refreshIntervalMs = refreshIntervalMs;
+        this.minRefreshIntervalMs = minRefreshIntervalMs;
+    }
+
+    public void register(TbEntityDataSubCtx ctx) {
+        String subscriptionKey = getSubscriptionKey(ctx);
+        String queryKey = getQueryKey(ctx);
+        String oldQueryKey = queryKeysBySubscription.put(subscriptionKey, queryKey);
+        if (oldQueryKey != null && !oldQueryKey.equals(queryKey)) {
+            removeSubscriber(oldQueryKey, subscriptionKey);
+        }
+        queries.compute(queryKey, (key, query) -> {
+            if (query == null) {
+                query = new CachedQuery(ctx.getTenantId(), ctx.getCustomerId(), ctx.buildEntityDataQuery().getEntityFilter());
+            }
+            query.subscribers.put(subscriptionKey, ctx);
+            return query;
+        });
+    }
+
+    public void unregister(TbEntityDataSubCtx ctx) {
+        String subscriptionKey = getSubscriptionKey(ctx);
+        String queryKey = queryKeysBySubscription.remove(subscriptionKey);
+        if (queryKey != null) {
+            removeSubscriber(queryKey, subscriptionKey);
+        }
+    }
+
+    /**
+     * @param relationChange true if a relation of the entity was changed, which affects the queries that traverse relations
+     *                       regardless of the type of the entity.
+     */
+    public void onEntityChange(TenantId tenantId, EntityId entityId, boolean relationChange) {
+        for (CachedQuery query : queries.values()) {
+            if (!query.dirty && query.tenantId.equals(tenantId) && mayMatch(query.entityFilter, entityId, relationChange)) {
+                query.dirty = true;
+            }
+        }
+    }
+
+    public int size() {
+        return queries.size();
+    }
+
+    public void refresh() {
+        long now = System.currentTimeMillis();
+        for (CachedQuery query : queries.values()) {
+            long sinceLastRefresh = now - query.lastRefreshTs;
+            boolean refreshRequired = (query.dirty && sinceLastRefresh >= minRefreshIntervalMs) || sinceLastRefresh >= refreshIntervalMs;
+            if (refreshRequired && query.inProgress.compareAndSet(false, true)) {
+                query.dirty = false;
+                query.lastRefreshTs = now;
+                executor.submit(() -> {
+                    try {
+                        evaluate(query);
+                    } finally {
+                        query.inProgress.set(false);
+                    }
+                });
+            }
+        }
+    }
+
+    private void evaluate(CachedQuery query) {
+        Iterator<TbEntityDataSubCtx> subscribers = query.subscribers.values().iterator();
+        if (!subscribers.hasNext()) {
+            return;
+        }
+        PageData<EntityData> result;
+        try {
+            long start = System.currentTimeMillis();
+            result = entityService.findEntityDataByQuery(query.tenantId, query.customerId, subscribers.next().buildEntityDataQuery());
+            long end = System.currentTimeMillis();
+            stats.getDynamicQueryInvocationCnt().incrementAndGet();
+            stats.getDynamicQueryTimeSpent().addAndGet(end - start);
+        } catch (Exception e) {
+            log.warn("[{}][{}] Failed to refresh query", query.tenantId, query.customerId, e);
+            return;
+        }
+        for (TbEntityDataSubCtx ctx : query.subscribers.values()) {
+            try {
+                ctx.update(copy(result));
+            } catch (Exception e) {
+                log.warn("[{}][{}] Failed to refresh query", ctx.getSessionId(), ctx.getCmdId(), e);
+            }
+        }
+    }
+
+    private void removeSubscriber(String queryKey, String subscriptionKey) {
+        queries.computeIfPresent(queryKey, (key, query) -> {
+            query.subscribers.remove(subscriptionKey);
+            return query.subscribers.isEmpty() ? null : query;
+        });
+    }
+
+    static boolean mayMatch(EntityFilter filter, EntityId entityId, boolean relationChange) {
+        if (filter == null || filter.getType() == null || entityId == null) {
+            return true;
+        }
+        switch (filter.getType()) {
+            case SINGLE_ENTITY:
+                EntityId singleEntity = ((SingleEntityFilter) filter).getSingleEntity();
+                return singleEntity == null || singleEntity.getId().equals(entityId.getId());
+            case ENTITY_LIST:
+                EntityListFilter listFilter = (EntityListFilter) filter;
+                return entityId.getEntityType().equals(listFilter.getEntityType())
+                        && (listFilter.getEntityList() == null || listFilter.getEntityList().contains(entityId.getId().toString()));
+            case ENTITY_NAME:
+                return entityId.getEntityType().equals(((EntityNameFilter) filter).getEntityType());
+            case ASSET_TYPE:
+                return entityId.getEntityType() == EntityType.ASSET;
+            case DEVICE_TYPE:
+                return entityId.getEntityType() == EntityType.DEVICE;
+            case ENTITY_VIEW_TYPE:
+                return entityId.getEntityType() == EntityType.ENTITY_VIEW;
+            case API_USAGE_STATE:
+                return entityId.getEntityType() == EntityType.API_USAGE_STATE;
+            case ASSET_SEARCH_QUERY:
+                return relationChange || entityId.getEntityType() == EntityType.ASSET;
+            case DEVICE_SEARCH_QUERY:
+                return relationChange || entityId.getEntityType() == EntityType.DEVICE;
+            case ENTITY_VIEW_SEARCH_QUERY:
+                return relationChange || entityId.getEntityType() == EntityType.ENTITY_VIEW;
+            default:
+                // relations query may reach entities of any type
+                return true;
+        }
+    }
+
+    private static String getSubscriptionKey(TbEntityDataSubCtx ctx) {
+        return ctx.getSessionId() + ":" + ctx.getCmdId();
+    }
+
+    private static String getQueryKey(TbEntityDataSubCtx ctx) {
+        StringBuilder key = new StringBuilder();
+        key.append(ctx.getTenantId().getId()).append(':').append(ctx.getCustomerId() != null ? ctx.getCustomerId().getId() : null).append(':');
+        if (!ctx.getDynamicValues().isEmpty()) {
+            key.append(getSubscriptionKey(ctx)).append(':');
+        }
+        EntityDataQuery query = ctx.buildEntityDataQuery();
+        try {
+            key.append(mapper.writeValueAsString(query));
+        } catch (JsonProcessingException e) {
+            log.debug("[{}][{}] Failed to normalize query: {}", ctx.getSessionId(), ctx.getCmdId(), query, e);
+            key.append(getSubscriptionKey(ctx));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Every subscription gets its own copy of the result, since the latest values of the entities are updated in place.
+     */
+    private static PageData<EntityData> copy(PageData<EntityData> data) {
+        List<EntityData> entities = new ArrayList<>(data.getData().size());
+        for (EntityData entityData : data.getData()) {
+            Map<EntityKeyType, Map<String, TsValue>> latest = null;
+            if (entityData.getLatest() != null) {
+                latest = new HashMap<>();
+                for (Map.Entry<EntityKeyType, Map<String, TsValue>> entry : entityData.getLatest().entrySet()) {
+                    latest.put(entry.getKey(), new HashMap<>(entry.getValue()));
+                }
+            }
+            Map<String, TsValue[]> timeseries = entityData.getTimeseries() != null ? new HashMap<>(entityData.getTimeseries()) : null;
+            entities.add(new EntityData(entityData.getEntityId(), latest, timeseries));
+        }
+        return new PageData<>(entities, data.getTotalPages(), data.getTotalElements(), data.hasNext());
+    }
+
+    private static class CachedQuery {
+        private final TenantId tenantId;
+        private final CustomerId customerId;
+        private final ConcurrentMap<String, TbEntityDataSubCtx> subscribers = new ConcurrentHashMap<>();
+        private final EntityFilter entityFilter;
+        private final AtomicBoolean inProgress = new AtomicBoolean();
+        private volatile boolean dirty;
+        private volatile long lastRefreshTs = System.currentTimeMillis();
+
+        CachedQuery(TenantId tenantId, CustomerId customerId, EntityFilter entityFilter) {
+            this.tenantId = tenantId;
+            this.customerId = customerId;
+            this.entityFilter = entityFilter;
+        }
+    }
+}
@@ -15,6 +15,9 @@
  */
 package org.thingsboard.server.service.subscription;
 
+import org.thingsboard.server.common.data.audit.ActionType;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.service.telemetry.TelemetryWebSocketSessionRef;
 import org.thingsboard.server.service.telemetry.cmd.v2.AlarmDataCmd;
 import org.thingsboard.server.service.telemetry.cmd.v2.EntityDataCmd;
@@ -31,4 +34,6 @@ public interface TbEntityDataSubscriptionService {
 
     void cancelAllSessionSubscriptions(String sessionId);
 
+    void onEntityAction(TenantId tenantId, EntityId entityId, ActionType actionType);
+
 }
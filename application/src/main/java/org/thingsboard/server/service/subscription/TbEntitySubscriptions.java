@@ -0,0 +1,142 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.subscription;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Subscriptions of a single entity, indexed by type and by key, so that an update is matched
+ * only against the subscriptions interested in the updated keys.
+ */
+public class TbEntitySubscriptions {
+
+    private final Set<TbSubscription> all = ConcurrentHashMap.newKeySet();
+    private final KeyIndex<TbTimeseriesSubscription> timeseries = new KeyIndex<>();
+    private final KeyIndex<TbAttributeSubscription> attributes = new KeyIndex<>();
+    private final Set<TbAlarmsSubscription> alarms = ConcurrentHashMap.newKeySet();
+
+    public synchronized boolean add(TbSubscription subscription) {
+        if (!all.add(subscription)) {
+            return false;
+        }
+        switch (subscription.getType()) {
+            case TIMESERIES:
+                TbTimeseriesSubscription tsSub = (TbTimeseriesSubscription) subscription;
+                timeseries.add(tsSub, tsSub.isAllKeys(), tsSub.getKeyStates().keySet());
+                break;
+            case ATTRIBUTES:
+                TbAttributeSubscription attrSub = (TbAttributeSubscription) subscription;
+                attributes.add(attrSub, attrSub.isAllKeys(), attrSub.getKeyStates().keySet());
+                break;
+            case ALARMS:
+                alarms.add((TbAlarmsSubscription) subscription);
+                break;
+        }
+        return true;
+    }
+
+    public synchronized boolean remove(TbSubscription subscription) {
+        if (!all.remove(subscription)) {
+            return false;
+        }
+        switch (subscription.getType()) {
+            case TIMESERIES:
+                TbTimeseriesSubscription tsSub = (TbTimeseriesSubscription) subscription;
+                timeseries.remove(tsSub, tsSub.isAllKeys(), tsSub.getKeyStates().keySet());
+                break;
+            case ATTRIBUTES:
+                TbAttributeSubscription attrSub = (TbAttributeSubscription) subscription;
+                attributes.remove(attrSub, attrSub.isAllKeys(), attrSub.getKeyStates().keySet());
+                break;
+            case ALARMS:
+                alarms.remove(subscription);
+                break;
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return all.isEmpty();
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    public Collection<TbTimeseriesSubscription> getTimeseriesSubscriptions(Collection<String> keys) {
+        return timeseries.get(keys);
+    }
+
+    public Collection<TbAttributeSubscription> getAttributeSubscriptions(Collection<String> keys) {
+        return attributes.get(keys);
+    }
+
+    public Collection<TbAlarmsSubscription> getAlarmSubscriptions() {
+        return alarms;
+    }
+
+    private static class KeyIndex<T extends TbSubscription> {
+
+        private final Set<T> allKeys = ConcurrentHashMap.newKeySet();
+        private final Map<String, Set<T>> byKey = new ConcurrentHashMap<>();
+
+        void add(T subscription, boolean isAllKeys, Collection<String> keys) {
+            if (isAllKeys) {
+                allKeys.add(subscription);
+            } else {
+                for (String key : keys) {
+                    byKey.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(subscription);
+                }
+            }
+        }
+
+        void remove(T subscription, boolean isAllKeys, Collection<String> keys) {
+            if (isAllKeys) {
+                allKeys.remove(subscription);
+            } else {
+                for (String key : keys) {
+                    byKey.computeIfPresent(key, (k, subs) -> {
+                        subs.remove(subscription);
+                        return subs.isEmpty() ? null : subs;
+                    });
+                }
+            }
+        }
+
+        Collection<T> get(Collection<String> keys) {
+            Set<T> result = null;
+            for (String key : keys) {
+                Set<T> subs = byKey.get(key);
+                if (subs != null) {
+                    if (result == null) {
+                        result = new HashSet<>(allKeys);
+                    }
+                    result.addAll(subs);
+                }
+            }
+            if (result != null) {
+                return result;
+            } else {
+                return allKeys.isEmpty() ? Collections.emptySet() : allKeys;
+            }
+        }
+    }
+}
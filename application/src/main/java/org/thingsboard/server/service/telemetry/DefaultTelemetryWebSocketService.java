@@ -15,7 +15,6 @@
  */
 package org.thingsboard.server.service.telemetry;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Function;
 import com.google.common.util.concurrent.FutureCallback;
@@ -25,9 +24,11 @@ import com.google.common.util.concurrent.MoreExecutors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.socket.CloseStatus;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.common.data.DataConstants;
 import org.thingsboard.server.common.data.id.CustomerId;
 import org.thingsboard.server.common.data.id.EntityId;
@@ -89,6 +90,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -142,6 +144,12 @@ public class DefaultTelemetryWebSocketService implements TelemetryWebSocketServi
     private int maxSubscriptionsPerRegularUser;
     @Value("${server.ws.limits.max_subscriptions_per_public_user:0}")
     private int maxSubscriptionsPerPublicUser;
+    @Value("${server.ws.outbound.coalesce_window_ms:0}")
+    private long outboundCoalesceWindowMs;
+    @Value("${server.ws.outbound.max_values_per_key:1000}")
+    private int outboundMaxValuesPerKey;
+    @Value("${server.ws.outbound.max_pending_msgs:100}")
+    private int outboundMaxPendingMsgs;
 
     private ConcurrentMap<TenantId, Set<String>> tenantSubscriptionsMap = new ConcurrentHashMap<>();
     private ConcurrentMap<CustomerId, Set<String>> customerSubscriptionsMap = new ConcurrentHashMap<>();
@@ -149,12 +157,16 @@ public class DefaultTelemetryWebSocketService implements TelemetryWebSocketServi
     private ConcurrentMap<UserId, Set<String>> publicUserSubscriptionsMap = new ConcurrentHashMap<>();
 
     private ExecutorService executor;
+    private ScheduledExecutorService outboundScheduler;
     private String serviceId;
 
     @PostConstruct
     public void initExecutor() {
         serviceId = serviceInfoProvider.getServiceId();
         executor = Executors.newWorkStealingPool(50);
+        if (outboundCoalesceWindowMs > 0) {
+            outboundScheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("ws-outbound"));
+        }
     }
 
     @PreDestroy
@@ -162,6 +174,9 @@ public class DefaultTelemetryWebSocketService implements TelemetryWebSocketServi
         if (executor != null) {
             executor.shutdownNow();
         }
+        if (outboundScheduler != null) {
+            outboundScheduler.shutdownNow();
+        }
     }
 
     @Override
@@ -170,13 +185,22 @@ public class DefaultTelemetryWebSocketService implements TelemetryWebSocketServi
         log.debug(PROCESSING_MSG, sessionId, event);
         switch (event.getEventType()) {
             case ESTABLISHED:
-                wsSessionsMap.put(sessionId, new WsSessionMetaData(sessionRef));
+                WsSessionMetaData md = new WsSessionMetaData(sessionRef);
+                if (outboundScheduler != null) {
+                    md.setOutbox(new WsSessionOutbox(sessionId, outboundCoalesceWindowMs, outboundMaxValuesPerKey, outboundMaxPendingMsgs,
+                            outboundScheduler, () -> msgEndpoint.getPendingMsgCount(sessionRef),
+                            (cmdId, update) -> sendWsMsg(sessionRef, cmdId, update)));
+                }
+                wsSessionsMap.put(sessionId, md);
                 break;
             case ERROR:
                 log.debug("[{}] Unknown websocket session error: {}. ", sessionId, event.getError().orElse(null));
                 break;
             case CLOSED:
-                wsSessionsMap.remove(sessionId);
+                WsSessionMetaData closedMd = wsSessionsMap.remove(sessionId);
+                if (closedMd != null && closedMd.getOutbox() != null) {
+                    closedMd.getOutbox().close();
+                }
                 oldSubService.cancelAllSessionSubscriptions(sessionId);
                 entityDataSubService.cancelAllSessionSubscriptions(sessionId);
                 processSessionClose(sessionRef);
@@ -271,7 +295,37 @@ public class DefaultTelemetryWebSocketService implements TelemetryWebSocketServi
     private <T> void sendWsMsg(String sessionId, int cmdId, T update) {
         WsSessionMetaData md = wsSessionsMap.get(sessionId);
         if (md != null) {
-            sendWsMsg(md.getSessionRef(), cmdId, update);
+            if (md.getOutbox() != null) {
+                md.getOutbox().send(cmdId, update);
+            } else {
+                sendWsMsg(md.getSessionRef(), cmdId, update);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${server.ws.dynamic_page_link.stats:10000}")
+    public void printOutboundStats() {
+        if (outboundScheduler == null) {
+            return;
+        }
+        long receivedUpdates = 0;
+        long coalescedUpdates = 0;
+        long sentMsgs = 0;
+        long droppedValues = 0;
+        long deferredFlushes = 0;
+        for (WsSessionMetaData md : wsSessionsMap.values()) {
+            WsSessionOutbox outbox = md.getOutbox();
+            if (outbox != null) {
+                receivedUpdates += outbox.getReceivedUpdates().getAndSet(0);
+                coalescedUpdates += outbox.getCoalescedUpdates().getAndSet(0);
+                sentMsgs += outbox.getSentMsgs().getAndSet(0);
+                droppedValues += outbox.getDroppedValues().getAndSet(0);
+                deferredFlushes += outbox.getDeferredFlushes().getAndSet(0);
+            }
+        }
+        if (receivedUpdates > 0) {
+            log.info("Outbound stats: sessions = [{}], receivedUpdates = [{}], coalescedUpdates = [{}], sentMsgs = [{}], droppedValues = [{}], deferredFlushes = [{}]",
+                    wsSessionsMap.size(), receivedUpdates, coalescedUpdates, sentMsgs, droppedValues, deferredFlushes);
         }
     }
 
@@ -730,16 +784,28 @@ public class DefaultTelemetryWebSocketService implements TelemetryWebSocketServi
     }
 
     private void sendWsMsg(TelemetryWebSocketSessionRef sessionRef, int cmdId, Object update) {
+        TelemetryWebSocketProtocol protocol = sessionRef.getProtocol();
         try {
-            String msg = jsonMapper.writeValueAsString(update);
-            executor.submit(() -> {
-                try {
-                    msgEndpoint.send(sessionRef, cmdId, msg);
-                } catch (IOException e) {
-                    log.warn("[{}] Failed to send reply: {}", sessionRef.getSessionId(), update, e);
-                }
-            });
-        } catch (JsonProcessingException e) {
+            if (protocol.isBinary()) {
+                byte[] msg = TelemetryWebSocketProtoEncoder.encode(update, protocol.isDeflate());
+                executor.submit(() -> {
+                    try {
+                        msgEndpoint.send(sessionRef, cmdId, msg);
+                    } catch (IOException e) {
+                        log.warn("[{}] Failed to send reply: {}", sessionRef.getSessionId(), update, e);
+                    }
+                });
+            } else {
+                String msg = jsonMapper.writeValueAsString(update);
+                executor.submit(() -> {
+                    try {
+                        msgEndpoint.send(sessionRef, cmdId, msg);
+                    } catch (IOException e) {
+                        log.warn("[{}] Failed to send reply: {}", sessionRef.getSessionId(), update, e);
+                    }
+                });
+            }
+        } catch (IOException e) {
             log.warn("[{}] Failed to encode reply: {}", sessionRef.getSessionId(), update, e);
         }
     }
@@ -26,5 +26,9 @@ public interface TelemetryWebSocketMsgEndpoint {
 
     void send(TelemetryWebSocketSessionRef sessionRef, int subscriptionId, String msg) throws IOException;
 
+    void send(TelemetryWebSocketSessionRef sessionRef, int subscriptionId, byte[] msg) throws IOException;
+
     void close(TelemetryWebSocketSessionRef sessionRef, CloseStatus withReason) throws IOException;
+
+    int getPendingMsgCount(TelemetryWebSocketSessionRef sessionRef);
 }
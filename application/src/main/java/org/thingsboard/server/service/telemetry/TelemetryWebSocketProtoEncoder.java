@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.telemetry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityKeyType;
+import org.thingsboard.server.common.data.query.TsValue;
+import org.thingsboard.server.gen.ws.WsProtos.EntityDataPageProto;
+import org.thingsboard.server.gen.ws.WsProtos.EntityDataProto;
+import org.thingsboard.server.gen.ws.WsProtos.EntityDataUpdateProto;
+import org.thingsboard.server.gen.ws.WsProtos.EntityIdProto;
+import org.thingsboard.server.gen.ws.WsProtos.JsonUpdateProto;
+import org.thingsboard.server.gen.ws.WsProtos.LatestValuesProto;
+import org.thingsboard.server.gen.ws.WsProtos.TelemetrySubscriptionUpdateProto;
+import org.thingsboard.server.gen.ws.WsProtos.TsValueListProto;
+import org.thingsboard.server.gen.ws.WsProtos.WsUpdateMsg;
+import org.thingsboard.server.service.telemetry.cmd.v2.DataUpdate;
+import org.thingsboard.server.service.telemetry.cmd.v2.EntityDataUpdate;
+import org.thingsboard.server.service.telemetry.sub.TelemetrySubscriptionUpdate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes websocket updates for the binary sub-protocols, see ws.proto.
+ */
+public class TelemetryWebSocketProtoEncoder {
+
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+
+    public static byte[] encode(Object update, boolean deflate) throws IOException {
+        byte[] msg = toProto(update).toByteArray();
+        return deflate ? deflate(msg) : msg;
+    }
+
+    public static byte[] encodeError(int subscriptionId, int errorCode, String errorMsg, boolean deflate) {
+        byte[] msg = WsUpdateMsg.newBuilder().setTsSubUpdate(TelemetrySubscriptionUpdateProto.newBuilder()
+                .setSubscriptionId(subscriptionId)
+                .setErrorCode(errorCode)
+                .setErrorMsg(errorMsg)).build().toByteArray();
+        return deflate ? deflate(msg) : msg;
+    }
+
+    static WsUpdateMsg toProto(Object update) throws IOException {
+        WsUpdateMsg.Builder builder = WsUpdateMsg.newBuilder();
+        if (update instanceof TelemetrySubscriptionUpdate) {
+            builder.setTsSubUpdate(toProto((TelemetrySubscriptionUpdate) update));
+        } else if (update instanceof EntityDataUpdate) {
+            builder.setEntityDataUpdate(toProto((EntityDataUpdate) update));
+        } else if (update instanceof DataUpdate) {
+            builder.setJsonUpdate(JsonUpdateProto.newBuilder()
+                    .setCmdId(((DataUpdate<?>) update).getCmdId())
+                    .setJson(jsonMapper.writeValueAsString(update)));
+        } else {
+            throw new IllegalArgumentException("Unsupported update type: " + update.getClass().getSimpleName());
+        }
+        return builder.build();
+    }
+
+    private static TelemetrySubscriptionUpdateProto toProto(TelemetrySubscriptionUpdate update) {
+        TelemetrySubscriptionUpdateProto.Builder builder = TelemetrySubscriptionUpdateProto.newBuilder()
+                .setSubscriptionId(update.getSubscriptionId())
+                .setErrorCode(update.getErrorCode());
+        if (update.getErrorMsg() != null) {
+            builder.setErrorMsg(update.getErrorMsg());
+        }
+        if (update.getData() != null) {
+            update.getData().forEach((key, values) -> {
+                TsValueListProto.Builder valuesBuilder = TsValueListProto.newBuilder().setKey(key);
+                long prevTs = 0;
+                for (Object value : values) {
+                    Object[] tsValue = (Object[]) value;
+                    long ts = (long) tsValue[0];
+                    valuesBuilder.addTsDelta(ts - prevTs);
+                    addValue(valuesBuilder, tsValue[1]);
+                    prevTs = ts;
+                }
+                builder.addData(valuesBuilder);
+            });
+        }
+        return builder.build();
+    }
+
+    private static EntityDataUpdateProto toProto(EntityDataUpdate update) {
+        EntityDataUpdateProto.Builder builder = EntityDataUpdateProto.newBuilder()
+                .setCmdId(update.getCmdId())
+                .setErrorCode(update.getErrorCode())
+                .setAllowedEntities(update.getAllowedEntities());
+        if (update.getErrorMsg() != null) {
+            builder.setErrorMsg(update.getErrorMsg());
+        }
+        PageData<EntityData> data = update.getData();
+        if (data != null) {
+            EntityDataPageProto.Builder pageBuilder = EntityDataPageProto.newBuilder()
+                    .setTotalPages(data.getTotalPages())
+                    .setTotalElements(data.getTotalElements())
+                    .setHasNext(data.hasNext());
+            if (data.getData() != null) {
+                data.getData().forEach(entityData -> pageBuilder.addData(toProto(entityData)));
+            }
+            builder.setData(pageBuilder);
+        }
+        List<EntityData> entityUpdates = update.getUpdate();
+        if (entityUpdates != null) {
+            entityUpdates.forEach(entityData -> builder.addUpdate(toProto(entityData)));
+        }
+        return builder.build();
+    }
+
+    private static EntityDataProto toProto(EntityData entityData) {
+        EntityDataProto.Builder builder = EntityDataProto.newBuilder()
+                .setEntityId(EntityIdProto.newBuilder()
+                        .setEntityType(entityData.getEntityId().getEntityType().name())
+                        .setEntityIdMSB(entityData.getEntityId().getId().getMostSignificantBits())
+                        .setEntityIdLSB(entityData.getEntityId().getId().getLeastSignificantBits()));
+        if (entityData.getLatest() != null) {
+            for (Map.Entry<EntityKeyType, Map<String, TsValue>> latest : entityData.getLatest().entrySet()) {
+                LatestValuesProto.Builder latestBuilder = LatestValuesProto.newBuilder().setKeyType(latest.getKey().name());
+                latest.getValue().forEach((key, value) -> latestBuilder.addValues(toProto(key, value)));
+                builder.addLatest(latestBuilder);
+            }
+        }
+        if (entityData.getTimeseries() != null) {
+            entityData.getTimeseries().forEach((key, values) -> builder.addTimeseries(toProto(key, values)));
+        }
+        return builder.build();
+    }
+
+    private static TsValueListProto toProto(String key, TsValue... values) {
+        TsValueListProto.Builder builder = TsValueListProto.newBuilder().setKey(key);
+        long prevTs = 0;
+        for (TsValue value : values) {
+            builder.addTsDelta(value.getTs() - prevTs);
+            addValue(builder, value.getValue());
+            prevTs = value.getTs();
+        }
+        return builder.build();
+    }
+
+    private static void addValue(TsValueListProto.Builder builder, Object value) {
+        if (value == null) {
+            builder.addNullValueIdx(builder.getValueCount());
+            builder.addValue("");
+        } else {
+            builder.addValue(value.toString());
+        }
+    }
+
+    private static byte[] deflate(byte[] msg) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(msg);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, msg.length / 2));
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.telemetry;
+
+import lombok.Getter;
+
+public enum TelemetryWebSocketProtocol {
+
+    JSON(null, false, false),
+    PROTO("tb.proto.v1", true, false),
+    PROTO_DEFLATE("tb.proto.deflate.v1", true, true);
+
+    @Getter
+    private final String subProtocol;
+    @Getter
+    private final boolean binary;
+    @Getter
+    private final boolean deflate;
+
+    TelemetryWebSocketProtocol(String subProtocol, boolean binary, boolean deflate) {
+        this.subProtocol = subProtocol;
+        this.binary = binary;
+        this.deflate = deflate;
+    }
+
+    public static TelemetryWebSocketProtocol forSubProtocol(String subProtocol) {
+        if (subProtocol != null) {
+            for (TelemetryWebSocketProtocol protocol : values()) {
+                if (subProtocol.equals(protocol.subProtocol)) {
+                    return protocol;
+                }
+            }
+        }
+        return JSON;
+    }
+}
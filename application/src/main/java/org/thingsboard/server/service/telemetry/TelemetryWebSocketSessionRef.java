@@ -39,13 +39,21 @@ public class TelemetryWebSocketSessionRef {
     private final InetSocketAddress remoteAddress;
     @Getter
     private final AtomicInteger sessionSubIdSeq;
+    @Getter
+    private final TelemetryWebSocketProtocol protocol;
 
     public TelemetryWebSocketSessionRef(String sessionId, SecurityUser securityCtx, InetSocketAddress localAddress, InetSocketAddress remoteAddress) {
+        this(sessionId, securityCtx, localAddress, remoteAddress, TelemetryWebSocketProtocol.JSON);
+    }
+
+    public TelemetryWebSocketSessionRef(String sessionId, SecurityUser securityCtx, InetSocketAddress localAddress, InetSocketAddress remoteAddress,
+                                        TelemetryWebSocketProtocol protocol) {
         this.sessionId = sessionId;
         this.securityCtx = securityCtx;
         this.localAddress = localAddress;
         this.remoteAddress = remoteAddress;
         this.sessionSubIdSeq = new AtomicInteger();
+        this.protocol = protocol;
     }
 
     @Override
@@ -67,6 +75,7 @@ public class TelemetryWebSocketSessionRef {
                 "sessionId='" + sessionId + '\'' +
                 ", localAddress=" + localAddress +
                 ", remoteAddress=" + remoteAddress +
+                ", protocol=" + protocol +
                 '}';
     }
 }
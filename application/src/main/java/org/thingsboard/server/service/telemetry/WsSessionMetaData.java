@@ -22,6 +22,7 @@ package org.thingsboard.server.service.telemetry;
 public class WsSessionMetaData {
     private TelemetryWebSocketSessionRef sessionRef;
     private long lastActivityTime;
+    private WsSessionOutbox outbox;
 
     public WsSessionMetaData(TelemetryWebSocketSessionRef sessionRef) {
         super();
@@ -45,6 +46,14 @@ public class WsSessionMetaData {
         this.lastActivityTime = lastActivityTime;
     }
 
+    public WsSessionOutbox getOutbox() {
+        return outbox;
+    }
+
+    public void setOutbox(WsSessionOutbox outbox) {
+        this.outbox = outbox;
+    }
+
     @Override
     public String toString() {
         return "WsSessionMetaData [sessionRef=" + sessionRef + ", lastActivityTime=" + lastActivityTime + "]";
@@ -0,0 +1,277 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.telemetry;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.TsValue;
+import org.thingsboard.server.service.telemetry.cmd.v2.EntityDataUpdate;
+import org.thingsboard.server.service.telemetry.sub.SubscriptionErrorCode;
+import org.thingsboard.server.service.telemetry.sub.TelemetrySubscriptionUpdate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Outbound stage of a websocket session. Incremental subscription updates are coalesced per command within the configured
+ * window: latest values are replaced by newer ones and time series values are appended, keeping at most maxValuesPerKey
+ * values per key. While the endpoint has maxPendingMsgs or more messages queued for the session, the flush is postponed
+ * and the updates keep being conflated instead of growing the send queue.
+ * Errors, initial page data and alarm updates are not coalesced: pending updates of the command are sent before them.
+ */
+@Slf4j
+public class WsSessionOutbox {
+
+    private final String sessionId;
+    private final long windowMs;
+    private final int maxValuesPerKey;
+    private final int maxPendingMsgs;
+    private final ScheduledExecutorService scheduler;
+    private final IntSupplier endpointPendingMsgs;
+    private final BiConsumer<Integer, Object> sender;
+
+    private final Map<Integer, PendingUpdate> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+    private boolean closed;
+
+    @Getter
+    private final AtomicLong receivedUpdates = new AtomicLong();
+    @Getter
+    private final AtomicLong coalescedUpdates = new AtomicLong();
+    @Getter
+    private final AtomicLong sentMsgs = new AtomicLong();
+    @Getter
+    private final AtomicLong droppedValues = new AtomicLong();
+    @Getter
+    private final AtomicLong deferredFlushes = new AtomicLong();
+
+    public WsSessionOutbox(String sessionId, long windowMs, int maxValuesPerKey, int maxPendingMsgs, ScheduledExecutorService scheduler,
+                           IntSupplier endpointPendingMsgs, BiConsumer<Integer, Object> sender) {
+        this.sessionId = sessionId;
+        this.windowMs = windowMs;
+        this.maxValuesPerKey = maxValuesPerKey;
+        this.maxPendingMsgs = maxPendingMsgs;
+        this.scheduler = scheduler;
+        this.endpointPendingMsgs = endpointPendingMsgs;
+        this.sender = sender;
+    }
+
+    public void send(int cmdId, Object update) {
+        receivedUpdates.incrementAndGet();
+        PendingUpdate previous;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            PendingUpdate existing = pending.get(cmdId);
+            if (existing != null && existing.merge(update)) {
+                coalescedUpdates.incrementAndGet();
+                return;
+            }
+            previous = existing != null ? pending.remove(cmdId) : null;
+            PendingUpdate newPending = newPendingUpdate(cmdId, update);
+            if (newPending != null) {
+                pending.put(cmdId, newPending);
+                if (!flushScheduled) {
+                    flushScheduled = true;
+                    scheduler.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+                }
+                update = null;
+            }
+        }
+        if (previous != null) {
+            doSend(cmdId, previous.build());
+        }
+        if (update != null) {
+            doSend(cmdId, update);
+        }
+    }
+
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            pending.clear();
+        }
+        log.debug("[{}] Outbound stats: receivedUpdates = [{}], coalescedUpdates = [{}], sentMsgs = [{}], droppedValues = [{}], deferredFlushes = [{}]",
+                sessionId, receivedUpdates.get(), coalescedUpdates.get(), sentMsgs.get(), droppedValues.get(), deferredFlushes.get());
+    }
+
+    void flush() {
+        List<Map.Entry<Integer, PendingUpdate>> toSend;
+        synchronized (this) {
+            flushScheduled = false;
+            if (closed || pending.isEmpty()) {
+                return;
+            }
+            if (maxPendingMsgs > 0 && endpointPendingMsgs.getAsInt() >= maxPendingMsgs) {
+                deferredFlushes.incrementAndGet();
+                flushScheduled = true;
+                scheduler.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+                return;
+            }
+            toSend = new ArrayList<>(pending.entrySet());
+            pending.clear();
+        }
+        for (Map.Entry<Integer, PendingUpdate> entry : toSend) {
+            doSend(entry.getKey(), entry.getValue().build());
+        }
+    }
+
+    private void doSend(int cmdId, Object update) {
+        try {
+            sentMsgs.incrementAndGet();
+            sender.accept(cmdId, update);
+        } catch (Exception e) {
+            log.warn("[{}][{}] Failed to send update", sessionId, cmdId, e);
+        }
+    }
+
+    private PendingUpdate newPendingUpdate(int cmdId, Object update) {
+        if (update instanceof TelemetrySubscriptionUpdate) {
+            TelemetrySubscriptionUpdate tsUpdate = (TelemetrySubscriptionUpdate) update;
+            if (tsUpdate.getErrorCode() == SubscriptionErrorCode.NO_ERROR.getCode() && tsUpdate.getData() != null) {
+                PendingTelemetryUpdate result = new PendingTelemetryUpdate(cmdId);
+                result.merge(update);
+                return result;
+            }
+        } else if (update instanceof EntityDataUpdate) {
+            EntityDataUpdate dataUpdate = (EntityDataUpdate) update;
+            if (isIncrementalUpdate(dataUpdate)) {
+                PendingEntityDataUpdate result = new PendingEntityDataUpdate(cmdId);
+                result.merge(update);
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isIncrementalUpdate(EntityDataUpdate update) {
+        return update.getErrorCode() == SubscriptionErrorCode.NO_ERROR.getCode() && update.getData() == null && update.getUpdate() != null;
+    }
+
+    private interface PendingUpdate {
+
+        boolean merge(Object update);
+
+        Object build();
+    }
+
+    private class PendingTelemetryUpdate implements PendingUpdate {
+
+        private final int cmdId;
+        private final Map<String, List<Object>> data = new TreeMap<>();
+
+        PendingTelemetryUpdate(int cmdId) {
+            this.cmdId = cmdId;
+        }
+
+        @Override
+        public boolean merge(Object update) {
+            if (!(update instanceof TelemetrySubscriptionUpdate)) {
+                return false;
+            }
+            TelemetrySubscriptionUpdate tsUpdate = (TelemetrySubscriptionUpdate) update;
+            if (tsUpdate.getErrorCode() != SubscriptionErrorCode.NO_ERROR.getCode() || tsUpdate.getData() == null) {
+                return false;
+            }
+            tsUpdate.getData().forEach((key, values) -> {
+                List<Object> keyValues = data.computeIfAbsent(key, k -> new ArrayList<>());
+                keyValues.addAll(values);
+                int overflow = keyValues.size() - maxValuesPerKey;
+                if (maxValuesPerKey > 0 && overflow > 0) {
+                    keyValues.subList(0, overflow).clear();
+                    droppedValues.addAndGet(overflow);
+                }
+            });
+            return true;
+        }
+
+        @Override
+        public Object build() {
+            return new TelemetrySubscriptionUpdate(cmdId, data);
+        }
+    }
+
+    private class PendingEntityDataUpdate implements PendingUpdate {
+
+        private final int cmdId;
+        private final Map<EntityId, EntityData> data = new LinkedHashMap<>();
+        private long allowedEntities;
+
+        PendingEntityDataUpdate(int cmdId) {
+            this.cmdId = cmdId;
+        }
+
+        @Override
+        public boolean merge(Object update) {
+            if (!(update instanceof EntityDataUpdate) || !isIncrementalUpdate((EntityDataUpdate) update)) {
+                return false;
+            }
+            EntityDataUpdate dataUpdate = (EntityDataUpdate) update;
+            allowedEntities = dataUpdate.getAllowedEntities();
+            for (EntityData entityData : dataUpdate.getUpdate()) {
+                EntityData existing = data.get(entityData.getEntityId());
+                data.put(entityData.getEntityId(), existing == null ? copy(entityData) : merge(existing, entityData));
+            }
+            return true;
+        }
+
+        @Override
+        public Object build() {
+            return new EntityDataUpdate(cmdId, null, new ArrayList<>(data.values()), allowedEntities);
+        }
+
+        private EntityData copy(EntityData entityData) {
+            return merge(new EntityData(entityData.getEntityId(), new HashMap<>(), new HashMap<>()), entityData);
+        }
+
+        private EntityData merge(EntityData target, EntityData source) {
+            if (source.getLatest() != null) {
+                source.getLatest().forEach((keyType, values) -> {
+                    Map<String, TsValue> targetValues = target.getLatest().computeIfAbsent(keyType, k -> new HashMap<>());
+                    values.forEach((key, value) -> targetValues.merge(key, value, (a, b) -> b.getTs() >= a.getTs() ? b : a));
+                });
+            }
+            if (source.getTimeseries() != null) {
+                source.getTimeseries().forEach((key, values) -> target.getTimeseries().merge(key, values, this::concat));
+            }
+            return target;
+        }
+
+        private TsValue[] concat(TsValue[] existing, TsValue[] values) {
+            TsValue[] result = Arrays.copyOf(existing, existing.length + values.length);
+            System.arraycopy(values, 0, result, existing.length, values.length);
+            int overflow = result.length - maxValuesPerKey;
+            if (maxValuesPerKey > 0 && overflow > 0) {
+                droppedValues.addAndGet(overflow);
+                return Arrays.copyOfRange(result, overflow, result.length);
+            }
+            return result;
+        }
+    }
+}
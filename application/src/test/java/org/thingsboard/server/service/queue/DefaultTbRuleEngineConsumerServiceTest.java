@@ -0,0 +1,79 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+public class DefaultTbRuleEngineConsumerServiceTest {
+
+    @Test
+    public void testUnbatchKeepsMessageKeys() {
+        UUID batchKey = UUID.randomUUID();
+        UUID firstKey = UUID.randomUUID();
+        UUID secondKey = UUID.randomUUID();
+        ToRuleEngineMsg batch = ToRuleEngineMsg.newBuilder()
+                .addMsgs(msg(1, firstKey))
+                .addMsgs(msg(2, secondKey))
+                .build();
+        UUID plainKey = UUID.randomUUID();
+        ToRuleEngineMsg plain = ToRuleEngineMsg.newBuilder().setTenantIdMSB(3).build();
+
+        List<TbProtoQueueMsg<ToRuleEngineMsg>> result = DefaultTbRuleEngineConsumerService.unbatch(Arrays.asList(
+                new TbProtoQueueMsg<>(batchKey, batch), new TbProtoQueueMsg<>(plainKey, plain)));
+
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals(firstKey, result.get(0).getKey());
+        Assert.assertEquals(1, result.get(0).getValue().getTenantIdMSB());
+        Assert.assertEquals(secondKey, result.get(1).getKey());
+        Assert.assertEquals(2, result.get(1).getValue().getTenantIdMSB());
+        Assert.assertEquals(plainKey, result.get(2).getKey());
+    }
+
+    @Test
+    public void testUnbatchFallsBackToBatchKey() {
+        UUID batchKey = UUID.randomUUID();
+        ToRuleEngineMsg batch = ToRuleEngineMsg.newBuilder()
+                .addMsgs(ToRuleEngineMsg.newBuilder().setTenantIdMSB(1))
+                .addMsgs(ToRuleEngineMsg.newBuilder().setTenantIdMSB(2))
+                .build();
+
+        List<TbProtoQueueMsg<ToRuleEngineMsg>> result = DefaultTbRuleEngineConsumerService.unbatch(
+                Collections.singletonList(new TbProtoQueueMsg<>(batchKey, batch)));
+
+        Assert.assertEquals(2, result.size());
+        result.forEach(msg -> Assert.assertEquals(batchKey, msg.getKey()));
+    }
+
+    @Test
+    public void testUnbatchReturnsPlainMessagesAsIs() {
+        List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = Collections.singletonList(
+                new TbProtoQueueMsg<>(UUID.randomUUID(), ToRuleEngineMsg.newBuilder().setTenantIdMSB(1).build()));
+        Assert.assertSame(msgs, DefaultTbRuleEngineConsumerService.unbatch(msgs));
+    }
+
+    private static ToRuleEngineMsg msg(long tenantIdMsb, UUID key) {
+        return ToRuleEngineMsg.newBuilder().setTenantIdMSB(tenantIdMsb)
+                .setMsgKeyMSB(key.getMostSignificantBits()).setMsgKeyLSB(key.getLeastSignificantBits()).build();
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.queue.RuleEngineException;
+import org.thingsboard.server.gen.transport.TransportProtos;
+import org.thingsboard.server.queue.TbQueueConsumer;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.settings.TbRuleEngineQueueAckStrategyConfiguration;
+import org.thingsboard.server.queue.settings.TbRuleEngineQueueConfiguration;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineProcessingStrategyFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbRuleEngineConsumerPipelineTest {
+
+    private ScheduledExecutorService timeoutExecutor;
+    private ScheduledExecutorService retryExecutor;
+    private TbQueueConsumer<TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> consumer;
+    private final ConcurrentMap<UUID, TbMsgPackProcessingContext> contexts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, UUID> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger submitCount = new AtomicInteger();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        timeoutExecutor = Executors.newSingleThreadScheduledExecutor();
+        retryExecutor = Executors.newSingleThreadScheduledExecutor();
+        consumer = mock(TbQueueConsumer.class);
+    }
+
+    @After
+    public void after() {
+        timeoutExecutor.shutdownNow();
+        retryExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testCommitOfContiguousPolls() throws Exception {
+        TbRuleEngineConsumerPipeline pipeline = createPipeline("SKIP_ALL_FAILURES", 0);
+        List<TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> firstPoll = Arrays.asList(newMsg(), newMsg());
+        List<TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> secondPoll = Arrays.asList(newMsg(), newMsg());
+        Assert.assertTrue(pipeline.process(firstPoll, 1, () -> false));
+        Assert.assertTrue(pipeline.process(secondPoll, 2, () -> false));
+
+        secondPoll.forEach(this::onSuccess);
+        pipeline.commitCompleted();
+        Mockito.verify(consumer, Mockito.never()).commit(Mockito.anyLong());
+
+        onSuccess(firstPoll.get(0));
+        pipeline.commitCompleted();
+        Mockito.verify(consumer, Mockito.never()).commit(Mockito.anyLong());
+
+        onSuccess(firstPoll.get(1));
+        pipeline.commitCompleted();
+        Mockito.verify(consumer).commit(2L);
+    }
+
+    @Test
+    public void testRetryOfFailedMessage() throws Exception {
+        TbRuleEngineConsumerPipeline pipeline = createPipeline("RETRY_FAILED", 3);
+        TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg> msg = newMsg();
+        Assert.assertTrue(pipeline.process(Arrays.asList(msg), 1, () -> false));
+        Assert.assertEquals(1, submitCount.get());
+
+        contexts.get(msg.getKey()).onFailure(TenantId.SYS_TENANT_ID, ids.get(msg.getKey()), new RuleEngineException("failed"));
+        awaitSubmitCount(2);
+        pipeline.commitCompleted();
+        Mockito.verify(consumer, Mockito.never()).commit(Mockito.anyLong());
+
+        onSuccess(msg);
+        pipeline.commitCompleted();
+        Mockito.verify(consumer).commit(1L);
+    }
+
+    @Test
+    public void testRetryIsScheduledAfterPause() throws Exception {
+        TbRuleEngineConsumerPipeline pipeline = createPipeline("RETRY_FAILED", 3, 1);
+        TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg> msg = newMsg();
+        Assert.assertTrue(pipeline.process(Arrays.asList(msg), 1, () -> false));
+
+        long failedTs = System.currentTimeMillis();
+        contexts.get(msg.getKey()).onFailure(TenantId.SYS_TENANT_ID, ids.get(msg.getKey()), new RuleEngineException("failed"));
+        // the failure callback returns without waiting for the pause
+        Assert.assertTrue(System.currentTimeMillis() - failedTs < 500);
+        Assert.assertEquals(1, submitCount.get());
+
+        awaitSubmitCount(2);
+        Assert.assertTrue(System.currentTimeMillis() - failedTs >= 1000);
+    }
+
+    private TbRuleEngineConsumerPipeline createPipeline(String processingStrategyType, int retries) {
+        return createPipeline(processingStrategyType, retries, 0);
+    }
+
+    private TbRuleEngineConsumerPipeline createPipeline(String processingStrategyType, int retries, int pauseBetweenRetries) {
+        TbRuleEngineQueueAckStrategyConfiguration processingStrategy = new TbRuleEngineQueueAckStrategyConfiguration();
+        processingStrategy.setType(processingStrategyType);
+        processingStrategy.setRetries(retries);
+        processingStrategy.setPauseBetweenRetries(pauseBetweenRetries);
+        TbRuleEngineQueueConfiguration configuration = new TbRuleEngineQueueConfiguration();
+        configuration.setName("Main");
+        configuration.setPollInterval(10);
+        configuration.setPackProcessingTimeout(60000);
+        configuration.setMaxInFlightMsgs(10);
+        configuration.setProcessingStrategy(processingStrategy);
+        return new TbRuleEngineConsumerPipeline(configuration, consumer, new TbRuleEngineProcessingStrategyFactory(), null,
+                (ctx, id, msg) -> {
+                    contexts.put(msg.getKey(), ctx);
+                    ids.put(msg.getKey(), id);
+                    submitCount.incrementAndGet();
+                }, timeoutExecutor, retryExecutor);
+    }
+
+    private void onSuccess(TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg> msg) {
+        contexts.get(msg.getKey()).onSuccess(ids.get(msg.getKey()));
+    }
+
+    private void awaitSubmitCount(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && submitCount.get() < count; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(count, submitCount.get());
+    }
+
+    private static TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg> newMsg() {
+        return new TbProtoQueueMsg<>(UUID.randomUUID(), TransportProtos.ToRuleEngineMsg.getDefaultInstance());
+    }
+}
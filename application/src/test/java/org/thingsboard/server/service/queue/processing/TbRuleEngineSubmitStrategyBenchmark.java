@@ -0,0 +1,210 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue.processing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Processing of a whole pack by the index based submit strategies compared to the previous map based implementation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TbRuleEngineSubmitStrategyBenchmark {
+
+    private static final int TENANTS = 16;
+
+    @Param({"100", "1000", "10000"})
+    private int packSize;
+
+    @Param({"BURST", "SEQUENTIAL_BY_TENANT"})
+    private String strategyType;
+
+    @Param({"LEGACY", "INDEXED"})
+    private String implementation;
+
+    private List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs;
+
+    @Setup
+    public void setUp() {
+        List<UUID> tenants = new ArrayList<>(TENANTS);
+        for (int i = 0; i < TENANTS; i++) {
+            tenants.add(UUID.randomUUID());
+        }
+        msgs = new ArrayList<>(packSize);
+        for (int i = 0; i < packSize; i++) {
+            UUID tenantId = tenants.get(i % TENANTS);
+            msgs.add(new TbProtoQueueMsg<>(UUID.randomUUID(), ToRuleEngineMsg.newBuilder()
+                    .setTenantIdMSB(tenantId.getMostSignificantBits())
+                    .setTenantIdLSB(tenantId.getLeastSignificantBits()).build()));
+        }
+    }
+
+    @Benchmark
+    public void processPack(Blackhole blackhole) {
+        TbRuleEngineSubmitStrategy strategy = newStrategy();
+        strategy.init(msgs);
+        blackhole.consume(strategy.getPendingMap());
+        ArrayDeque<UUID> submitted = new ArrayDeque<>(packSize);
+        strategy.submitAttempt((id, msg) -> submitted.add(id));
+        UUID id;
+        while ((id = submitted.poll()) != null) {
+            strategy.onSuccess(id);
+        }
+        strategy.stop();
+    }
+
+    private TbRuleEngineSubmitStrategy newStrategy() {
+        boolean legacy = "LEGACY".equals(implementation);
+        if ("BURST".equals(strategyType)) {
+            return legacy ? new LegacyBurstStrategy() : new BurstTbRuleEngineSubmitStrategy("Main");
+        } else {
+            return legacy ? new LegacySequentialByTenantStrategy() : new SequentialByTenantIdTbRuleEngineSubmitStrategy("Main");
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TbRuleEngineSubmitStrategyBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static class IdMsgPair {
+        private final UUID uuid;
+        private final TbProtoQueueMsg<ToRuleEngineMsg> msg;
+
+        private IdMsgPair(UUID uuid, TbProtoQueueMsg<ToRuleEngineMsg> msg) {
+            this.uuid = uuid;
+            this.msg = msg;
+        }
+    }
+
+    /**
+     * The previous implementation of the submit strategies: random ids, pairs and maps.
+     */
+    private static class LegacyBurstStrategy implements TbRuleEngineSubmitStrategy {
+
+        protected List<IdMsgPair> orderedMsgList;
+
+        @Override
+        public void init(List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs) {
+            orderedMsgList = msgs.stream().map(msg -> new IdMsgPair(UUID.randomUUID(), msg)).collect(Collectors.toList());
+        }
+
+        @Override
+        public ConcurrentMap<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> getPendingMap() {
+            return orderedMsgList.stream().collect(Collectors.toConcurrentMap(pair -> pair.uuid, pair -> pair.msg));
+        }
+
+        @Override
+        public void submitAttempt(BiConsumer<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> msgConsumer) {
+            orderedMsgList.forEach(pair -> msgConsumer.accept(pair.uuid, pair.msg));
+        }
+
+        @Override
+        public void update(ConcurrentMap<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> reprocessMap) {
+        }
+
+        @Override
+        public void onSuccess(UUID id) {
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
+    private static class LegacySequentialByTenantStrategy extends LegacyBurstStrategy {
+
+        private volatile BiConsumer<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> msgConsumer;
+        private final ConcurrentMap<UUID, EntityId> msgToEntityIdMap = new ConcurrentHashMap<>();
+        private final ConcurrentMap<EntityId, Queue<IdMsgPair>> entityIdToListMap = new ConcurrentHashMap<>();
+
+        @Override
+        public void init(List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs) {
+            super.init(msgs);
+            for (IdMsgPair pair : orderedMsgList) {
+                ToRuleEngineMsg msg = pair.msg.getValue();
+                EntityId entityId = new TenantId(new UUID(msg.getTenantIdMSB(), msg.getTenantIdLSB()));
+                msgToEntityIdMap.put(pair.uuid, entityId);
+                entityIdToListMap.computeIfAbsent(entityId, id -> new LinkedList<>()).add(pair);
+            }
+        }
+
+        @Override
+        public void submitAttempt(BiConsumer<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> msgConsumer) {
+            this.msgConsumer = msgConsumer;
+            entityIdToListMap.forEach((entityId, queue) -> {
+                IdMsgPair msg = queue.peek();
+                if (msg != null) {
+                    msgConsumer.accept(msg.uuid, msg.msg);
+                }
+            });
+        }
+
+        @Override
+        public void onSuccess(UUID id) {
+            EntityId entityId = msgToEntityIdMap.get(id);
+            if (entityId != null) {
+                Queue<IdMsgPair> queue = entityIdToListMap.get(entityId);
+                if (queue != null) {
+                    IdMsgPair next = null;
+                    synchronized (queue) {
+                        IdMsgPair expected = queue.peek();
+                        if (expected != null && expected.uuid.equals(id)) {
+                            queue.poll();
+                            next = queue.peek();
+                        }
+                    }
+                    if (next != null) {
+                        msgConsumer.accept(next.uuid, next.msg);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue.processing;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class TbRuleEngineSubmitStrategyTest {
+
+    private static final UUID DEVICE_A = UUID.randomUUID();
+    private static final UUID DEVICE_B = UUID.randomUUID();
+
+    private final Map<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> submitted = new LinkedHashMap<>();
+    private int submitCount;
+
+    @Test
+    public void testStaleCallbackFromPreviousAttemptIgnored() {
+        List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = msgs(DEVICE_A, DEVICE_A);
+        SequentialTbRuleEngineSubmitStrategy strategy = new SequentialTbRuleEngineSubmitStrategy("Main");
+        strategy.init(msgs);
+        ConcurrentMap<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> pendingMap = strategy.getPendingMap();
+        strategy.submitAttempt(this::submit);
+        UUID firstAttemptId = lastSubmittedId();
+
+        // the first message timed out and is reprocessed together with the second one
+        strategy.update(new ConcurrentHashMap<>(pendingMap));
+        strategy.getPendingMap();
+        submitted.clear();
+        strategy.submitAttempt(this::submit);
+        Assert.assertEquals(1, submitted.size());
+        UUID secondAttemptId = lastSubmittedId();
+        Assert.assertNotEquals(firstAttemptId, secondAttemptId);
+
+        // late callback of the first attempt does not submit the second message
+        strategy.onSuccess(firstAttemptId);
+        Assert.assertEquals(1, submitted.size());
+        Assert.assertEquals(2, submitCount);
+
+        strategy.onSuccess(secondAttemptId);
+        Assert.assertEquals(2, submitted.size());
+        Assert.assertSame(msgs.get(1), submitted.get(lastSubmittedId()));
+    }
+
+    @Test
+    public void testSequentialByOriginatorOrder() {
+        List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = msgs(DEVICE_A, DEVICE_B, DEVICE_A, DEVICE_B, DEVICE_A);
+        TestSequentialByEntityIdStrategy strategy = new TestSequentialByEntityIdStrategy();
+        strategy.init(msgs);
+        strategy.getPendingMap();
+        strategy.submitAttempt(this::submit);
+        Assert.assertEquals(Arrays.asList(msgs.get(0), msgs.get(1)), new ArrayList<>(submitted.values()));
+
+        List<UUID> ids = new ArrayList<>(submitted.keySet());
+        strategy.onSuccess(ids.get(1));
+        Assert.assertSame(msgs.get(3), submitted.get(lastSubmittedId()));
+        strategy.onSuccess(ids.get(0));
+        Assert.assertSame(msgs.get(2), submitted.get(lastSubmittedId()));
+        strategy.onSuccess(lastSubmittedId());
+        Assert.assertSame(msgs.get(4), submitted.get(lastSubmittedId()));
+        Assert.assertEquals(5, submitted.size());
+
+        Assert.assertEquals(5, submitCount);
+
+        // duplicate callback does not submit the successor again
+        strategy.onSuccess(ids.get(0));
+        Assert.assertEquals(5, submitCount);
+    }
+
+    @Test
+    public void testMessagesWithoutOriginatorAreSequential() {
+        List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = msgs(null, DEVICE_A, null, null);
+        TestSequentialByEntityIdStrategy strategy = new TestSequentialByEntityIdStrategy();
+        strategy.init(msgs);
+        strategy.getPendingMap();
+        strategy.submitAttempt(this::submit);
+        Assert.assertEquals(Arrays.asList(msgs.get(0), msgs.get(1)), new ArrayList<>(submitted.values()));
+
+        strategy.onSuccess(submitted.keySet().iterator().next());
+        Assert.assertSame(msgs.get(2), submitted.get(lastSubmittedId()));
+        strategy.onSuccess(lastSubmittedId());
+        Assert.assertSame(msgs.get(3), submitted.get(lastSubmittedId()));
+        Assert.assertEquals(4, submitted.size());
+    }
+
+    @Test
+    public void testBatchSubmitsNextBatchWhenAllPendingProcessed() {
+        List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = msgs(DEVICE_A, DEVICE_B, DEVICE_A, DEVICE_B, DEVICE_A);
+        BatchTbRuleEngineSubmitStrategy strategy = new BatchTbRuleEngineSubmitStrategy("Main", 2);
+        strategy.init(msgs);
+        strategy.getPendingMap();
+        strategy.submitAttempt(this::submit);
+        Assert.assertEquals(2, submitted.size());
+
+        List<UUID> firstBatch = new ArrayList<>(submitted.keySet());
+        strategy.onSuccess(firstBatch.get(0));
+        // duplicate callback must not be counted twice
+        strategy.onSuccess(firstBatch.get(0));
+        Assert.assertEquals(2, submitCount);
+        strategy.onSuccess(firstBatch.get(1));
+        Assert.assertEquals(4, submitted.size());
+
+        List<UUID> secondBatch = new ArrayList<>(submitted.keySet()).subList(2, 4);
+        secondBatch.forEach(strategy::onSuccess);
+        Assert.assertEquals(5, submitted.size());
+        Assert.assertSame(msgs.get(4), submitted.get(lastSubmittedId()));
+    }
+
+    private void submit(UUID id, TbProtoQueueMsg<ToRuleEngineMsg> msg) {
+        submitted.put(id, msg);
+        submitCount++;
+    }
+
+    private UUID lastSubmittedId() {
+        UUID last = null;
+        for (UUID id : submitted.keySet()) {
+            last = id;
+        }
+        return last;
+    }
+
+    private static List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs(UUID... originators) {
+        List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = new ArrayList<>(originators.length);
+        for (UUID originator : originators) {
+            ToRuleEngineMsg.Builder builder = ToRuleEngineMsg.newBuilder();
+            if (originator != null) {
+                builder.setTenantIdMSB(originator.getMostSignificantBits()).setTenantIdLSB(originator.getLeastSignificantBits());
+            }
+            msgs.add(new TbProtoQueueMsg<>(UUID.randomUUID(), builder.build()));
+        }
+        return msgs;
+    }
+
+    /**
+     * Takes the originator from the tenant id fields of the message, messages without them have no originator.
+     */
+    private static class TestSequentialByEntityIdStrategy extends SequentialByEntityIdTbRuleEngineSubmitStrategy {
+
+        TestSequentialByEntityIdStrategy() {
+            super("Main");
+        }
+
+        @Override
+        protected EntityId getEntityId(ToRuleEngineMsg msg) {
+            if (msg.getTenantIdMSB() == 0 && msg.getTenantIdLSB() == 0) {
+                return null;
+            }
+            return new DeviceId(new UUID(msg.getTenantIdMSB(), msg.getTenantIdLSB()));
+        }
+    }
+}
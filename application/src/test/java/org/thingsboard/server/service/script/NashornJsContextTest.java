@@ -0,0 +1,68 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.script;
+
+import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+public class NashornJsContextTest {
+
+    private NashornJsContext context;
+
+    @Before
+    public void before() {
+        context = new NashornJsContext(null, new NashornScriptEngineFactory().getScriptEngine(new String[]{"--no-java"}), 2);
+    }
+
+    @Test
+    public void testLazyCompileAndEviction() throws Exception {
+        UUID id1 = UUID.randomUUID();
+        UUID id2 = UUID.randomUUID();
+        UUID id3 = UUID.randomUUID();
+        context.eval(id1, "f1", script("f1", 1));
+        context.eval(id2, "f2", script("f2", 2));
+        context.eval(id3, "f3", script("f3", 3));
+        Assert.assertEquals(2, context.size());
+
+        Assert.assertEquals(1, ((Number) context.invokeFunction(id1, "f1", script("f1", 1), new Object[0])).intValue());
+        Assert.assertEquals(2, context.size());
+        Assert.assertEquals(3, ((Number) context.invokeFunction(id3, "f3", script("f3", 3), new Object[0])).intValue());
+    }
+
+    @Test
+    public void testPurgeReleased() throws Exception {
+        UUID id1 = UUID.randomUUID();
+        UUID id2 = UUID.randomUUID();
+        context.eval(id1, "f1", script("f1", 1));
+        context.eval(id2, "f2", script("f2", 2));
+
+        Map<UUID, String> active = new HashMap<>();
+        active.put(id2, script("f2", 2));
+        context.purgeReleased(1, active);
+        Assert.assertEquals(1, context.size());
+        Assert.assertEquals(2, ((Number) context.invokeFunction(id2, "f2", script("f2", 2), new Object[0])).intValue());
+    }
+
+    private static String script(String functionName, int value) {
+        return "function " + functionName + "() { return " + value + "; }";
+    }
+}
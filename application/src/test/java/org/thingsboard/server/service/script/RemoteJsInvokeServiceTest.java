@@ -0,0 +1,190 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.script;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.gen.js.JsInvokeProtos;
+import org.thingsboard.server.queue.TbQueueRequestTemplate;
+import org.thingsboard.server.queue.common.TbProtoJsQueueMsg;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.usagestats.TbApiUsageClient;
+import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RemoteJsInvokeServiceTest {
+
+    private static final String FUNCTION_NAME = "invokeInternal_test";
+
+    private TbQueueRequestTemplate<TbProtoJsQueueMsg<JsInvokeProtos.RemoteJsRequest>, TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> requestTemplate;
+    private SettableFuture<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> responseFuture;
+    private RemoteJsInvokeService service;
+    private UUID scriptId;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        requestTemplate = mock(TbQueueRequestTemplate.class);
+        responseFuture = SettableFuture.create();
+        when(requestTemplate.send(any())).thenReturn(responseFuture);
+        scriptId = UUID.randomUUID();
+    }
+
+    @After
+    public void tearDown() {
+        if (service != null) {
+            service.destroy();
+        }
+    }
+
+    @Test
+    public void testBatchResponsesAreMatchedByIndex() throws Exception {
+        initService(10000, 3);
+        List<ListenableFuture<Object>> results = invoke(3);
+
+        JsInvokeProtos.JsBatchInvokeRequest request = captureRequest().getBatchInvokeRequest();
+        Assert.assertEquals(3, request.getInvocationsCount());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("arg" + i, request.getInvocations(i).getArgs(0));
+        }
+        Assert.assertTrue(request.getTimeout() > 0 && request.getTimeout() <= 10000);
+
+        responseFuture.set(toBatchResponse(success("r0"), failure("boom"), success("r2")));
+
+        Assert.assertEquals("r0", results.get(0).get(1, TimeUnit.SECONDS));
+        assertFailure(results.get(1), RuntimeException.class, "boom");
+        Assert.assertEquals("r2", results.get(2).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMissingBatchResponsesFailRemainingInvocations() throws Exception {
+        initService(10000, 3);
+        List<ListenableFuture<Object>> results = invoke(3);
+        captureRequest();
+
+        responseFuture.set(toBatchResponse(success("r0")));
+
+        Assert.assertEquals("r0", results.get(0).get(1, TimeUnit.SECONDS));
+        assertFailure(results.get(1), RuntimeException.class, "No response");
+        assertFailure(results.get(2), RuntimeException.class, "No response");
+    }
+
+    @Test
+    public void testBatchRequestFailureFailsAllInvocations() throws Exception {
+        initService(10000, 2);
+        List<ListenableFuture<Object>> results = invoke(2);
+        captureRequest();
+
+        responseFuture.setException(new RuntimeException("queue failure"));
+
+        assertFailure(results.get(0), RuntimeException.class, "queue failure");
+        assertFailure(results.get(1), RuntimeException.class, "queue failure");
+    }
+
+    @Test
+    public void testExpiredInvocationIsNotSent() throws Exception {
+        initService(100, 2);
+        List<ListenableFuture<Object>> results = new ArrayList<>(invoke(1));
+        Thread.sleep(200);
+        results.addAll(invoke(1));
+
+        JsInvokeProtos.RemoteJsRequest request = captureRequest();
+        Assert.assertTrue(request.hasInvokeRequest());
+        Assert.assertTrue(request.getInvokeRequest().getTimeout() <= 100);
+        assertFailure(results.get(0), TimeoutException.class, null);
+
+        responseFuture.set(new TbProtoQueueMsg<>(UUID.randomUUID(), JsInvokeProtos.RemoteJsResponse.newBuilder()
+                .setInvokeResponse(success("r1")).build()));
+        Assert.assertEquals("r1", results.get(1).get(1, TimeUnit.SECONDS));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void initService(long maxRequestsTimeout, int batchMaxSize) {
+        service = new RemoteJsInvokeService(mock(TbApiUsageStateService.class), mock(TbApiUsageClient.class));
+        ReflectionTestUtils.setField(service, "requestTemplate", requestTemplate);
+        ReflectionTestUtils.setField(service, "maxRequestsTimeout", maxRequestsTimeout);
+        ReflectionTestUtils.setField(service, "maxErrors", 100);
+        ReflectionTestUtils.setField(service, "batchLingerMs", 60000L);
+        ReflectionTestUtils.setField(service, "batchMaxSize", batchMaxSize);
+        service.init();
+        ((Map<UUID, String>) ReflectionTestUtils.getField(service, "scriptIdToBodysMap")).put(scriptId, "return msg;");
+    }
+
+    private List<ListenableFuture<Object>> invoke(int count) {
+        List<ListenableFuture<Object>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(service.doInvokeFunction(scriptId, FUNCTION_NAME, new Object[]{"arg" + i}));
+        }
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private JsInvokeProtos.RemoteJsRequest captureRequest() {
+        ArgumentCaptor<TbProtoJsQueueMsg> captor = ArgumentCaptor.forClass(TbProtoJsQueueMsg.class);
+        verify(requestTemplate, times(1)).send(captor.capture());
+        return (JsInvokeProtos.RemoteJsRequest) captor.getValue().getValue();
+    }
+
+    private static void assertFailure(ListenableFuture<Object> future, Class<? extends Throwable> expected, String message) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            Assert.fail("Invocation is expected to fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(expected.isInstance(e.getCause()));
+            if (message != null) {
+                Assert.assertTrue(e.getCause().getMessage().contains(message));
+            }
+        }
+    }
+
+    private static TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse> toBatchResponse(JsInvokeProtos.JsInvokeResponse... responses) {
+        JsInvokeProtos.JsBatchInvokeResponse.Builder batchResponse = JsInvokeProtos.JsBatchInvokeResponse.newBuilder();
+        for (JsInvokeProtos.JsInvokeResponse response : responses) {
+            batchResponse.addResponses(response);
+        }
+        return new TbProtoQueueMsg<>(UUID.randomUUID(), JsInvokeProtos.RemoteJsResponse.newBuilder()
+                .setBatchInvokeResponse(batchResponse).build());
+    }
+
+    private static JsInvokeProtos.JsInvokeResponse success(String result) {
+        return JsInvokeProtos.JsInvokeResponse.newBuilder().setSuccess(true).setResult(result).build();
+    }
+
+    private static JsInvokeProtos.JsInvokeResponse failure(String details) {
+        return JsInvokeProtos.JsInvokeResponse.newBuilder().setSuccess(false)
+                .setErrorCode(JsInvokeProtos.JsInvokeErrorCode.RUNTIME_ERROR).setErrorDetails(details).build();
+    }
+
+}
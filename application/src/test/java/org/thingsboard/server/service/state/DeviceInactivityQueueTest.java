@@ -0,0 +1,105 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.state;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+public class DeviceInactivityQueueTest {
+
+    private final DeviceInactivityQueue queue = new DeviceInactivityQueue();
+
+    @Test
+    public void testExpiredDevicesArePolledInDeadlineOrder() {
+        DeviceStateData first = stateData();
+        DeviceStateData second = stateData();
+        DeviceStateData third = stateData();
+        queue.schedule(third, 300);
+        queue.schedule(first, 100);
+        queue.schedule(second, 200);
+
+        Assert.assertEquals(Collections.emptyList(), queue.pollExpired(99));
+        Assert.assertEquals(Arrays.asList(first, second), queue.pollExpired(200));
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals(Collections.singletonList(third), queue.pollExpired(1000));
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testPolledDeviceIsNotScheduled() {
+        DeviceStateData stateData = stateData();
+        queue.schedule(stateData, 100);
+        Assert.assertEquals(100, stateData.getNextCheckTs());
+
+        queue.pollExpired(100);
+
+        Assert.assertEquals(0L, stateData.getNextCheckTs());
+        Assert.assertTrue(queue.pollExpired(1000).isEmpty());
+    }
+
+    @Test
+    public void testEarlierDeadlineReplacesScheduledCheck() {
+        DeviceStateData stateData = stateData();
+        queue.schedule(stateData, 300);
+        queue.schedule(stateData, 100);
+        Assert.assertEquals(100, stateData.getNextCheckTs());
+
+        Assert.assertEquals(Collections.singletonList(stateData), queue.pollExpired(100));
+        // The replaced entry is dropped without returning the device twice.
+        Assert.assertTrue(queue.pollExpired(300).isEmpty());
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testLaterDeadlineDoesNotPostponeScheduledCheck() {
+        DeviceStateData stateData = stateData();
+        queue.schedule(stateData, 100);
+        queue.schedule(stateData, 300);
+
+        Assert.assertEquals(100, stateData.getNextCheckTs());
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals(Collections.singletonList(stateData), queue.pollExpired(100));
+    }
+
+    @Test
+    public void testDueCheckIsRescheduledAfterActivity() {
+        DeviceStateData stateData = stateData();
+        queue.schedule(stateData, 100);
+
+        List<DeviceStateData> expired = queue.pollExpired(100);
+        Assert.assertEquals(Collections.singletonList(stateData), expired);
+        // The device reported activity after the check was scheduled, so the caller moves the deadline forward.
+        queue.schedule(stateData, 500);
+
+        Assert.assertEquals(500, stateData.getNextCheckTs());
+        Assert.assertTrue(queue.pollExpired(499).isEmpty());
+        Assert.assertEquals(Collections.singletonList(stateData), queue.pollExpired(500));
+    }
+
+    private static DeviceStateData stateData() {
+        return DeviceStateData.builder()
+                .tenantId(new TenantId(UUID.randomUUID()))
+                .deviceId(new DeviceId(UUID.randomUUID()))
+                .build();
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.state;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class DeviceStateWriteBufferTest {
+
+    private final TopicPartitionInfo tpi = new TopicPartitionInfo("tb_core", TenantId.SYS_TENANT_ID, 0, true);
+    private final DeviceStateWriteBuffer buffer = new DeviceStateWriteBuffer();
+
+    @Test
+    public void testNewerValueReplacesPendingOne() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        buffer.put(tpi, deviceId, entry("lastActivityTime", 1));
+        buffer.put(tpi, deviceId, entry("lastActivityTime", 2));
+        buffer.put(tpi, deviceId, entry("active", 1));
+
+        Map<DeviceId, List<TsKvEntry>> drained = buffer.drain(tpi);
+
+        Assert.assertEquals(1, drained.size());
+        List<TsKvEntry> entries = drained.get(deviceId);
+        Assert.assertEquals(2, entries.size());
+        Assert.assertEquals(Long.valueOf(2), entries.stream().filter(e -> e.getKey().equals("lastActivityTime")).findFirst().get().getLongValue().get());
+    }
+
+    @Test
+    public void testDrainRemovesPendingEntries() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        buffer.put(tpi, deviceId, entry("lastActivityTime", 1));
+
+        Assert.assertEquals(1, buffer.drain(tpi).size());
+        buffer.complete(deviceId);
+        Assert.assertTrue(buffer.drain(tpi).isEmpty());
+    }
+
+    @Test
+    public void testRemovedDeviceIsNotFlushed() {
+        DeviceId deletedId = new DeviceId(UUID.randomUUID());
+        DeviceId otherId = new DeviceId(UUID.randomUUID());
+        buffer.put(tpi, deletedId, entry("lastActivityTime", 1));
+        buffer.put(tpi, otherId, entry("lastActivityTime", 1));
+
+        buffer.remove(tpi, deletedId);
+        Map<DeviceId, List<TsKvEntry>> drained = buffer.drain(tpi);
+
+        Assert.assertEquals(1, drained.size());
+        Assert.assertTrue(drained.containsKey(otherId));
+    }
+
+    @Test
+    public void testDeviceIsNotDrainedWhileSaveInFlight() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        buffer.put(tpi, deviceId, entry("lastActivityTime", 1));
+        Assert.assertEquals(1, buffer.drain(tpi).size());
+
+        buffer.put(tpi, deviceId, entry("lastActivityTime", 2));
+        Assert.assertTrue(buffer.drain(tpi).isEmpty());
+
+        buffer.complete(deviceId);
+        Map<DeviceId, List<TsKvEntry>> drained = buffer.drain(tpi);
+        Assert.assertEquals(Long.valueOf(2), drained.get(deviceId).get(0).getLongValue().get());
+    }
+
+    @Test
+    public void testAwaitInFlightWaitsForCompletedSaves() throws Exception {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        buffer.put(tpi, deviceId, entry("lastActivityTime", 1));
+        buffer.drain(tpi);
+        buffer.put(tpi, deviceId, entry("lastActivityTime", 2));
+
+        Assert.assertFalse(buffer.awaitInFlight(10));
+
+        Thread completion = new Thread(() -> buffer.complete(deviceId));
+        completion.start();
+        Assert.assertTrue(buffer.awaitInFlight(5000));
+        Assert.assertFalse(buffer.isEmpty());
+        Assert.assertTrue(buffer.drain(tpi).containsKey(deviceId));
+        Assert.assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testPartitionsAreDrainedSeparately() {
+        TopicPartitionInfo otherTpi = new TopicPartitionInfo("tb_core", TenantId.SYS_TENANT_ID, 1, true);
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        DeviceId otherId = new DeviceId(UUID.randomUUID());
+        buffer.put(tpi, deviceId, entry("lastActivityTime", 1));
+        buffer.put(otherTpi, otherId, entry("lastActivityTime", 1));
+
+        Assert.assertEquals(2, buffer.getPartitions().size());
+        Assert.assertTrue(buffer.drain(tpi).containsKey(deviceId));
+        Assert.assertTrue(buffer.drain(otherTpi).containsKey(otherId));
+    }
+
+    private static TsKvEntry entry(String key, long value) {
+        return new BasicTsKvEntry(System.currentTimeMillis(), new LongDataEntry(key, value));
+    }
+}
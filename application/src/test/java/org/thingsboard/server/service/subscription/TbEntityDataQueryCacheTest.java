@@ -0,0 +1,173 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.subscription;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.thingsboard.server.common.data.id.AssetId;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.query.DeviceSearchQueryFilter;
+import org.thingsboard.server.common.data.query.DeviceTypeFilter;
+import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityDataPageLink;
+import org.thingsboard.server.common.data.query.EntityDataQuery;
+import org.thingsboard.server.common.data.query.SingleEntityFilter;
+import org.thingsboard.server.dao.entity.EntityService;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TbEntityDataQueryCacheTest {
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+
+    private EntityService entityService;
+    private TbEntityDataQueryCache cache;
+
+    @Before
+    public void before() {
+        entityService = Mockito.mock(EntityService.class);
+        when(entityService.findEntityDataByQuery(any(), any(), any())).thenReturn(new PageData<>());
+        cache = new TbEntityDataQueryCache(entityService, new SubscriptionServiceStatistics(), MoreExecutors.newDirectExecutorService(), Long.MAX_VALUE, 0);
+    }
+
+    @Test
+    public void testIdenticalQueriesEvaluatedOnce() {
+        TbEntityDataSubCtx first = subCtx("session1", 1, "thermostat");
+        TbEntityDataSubCtx second = subCtx("session2", 7, "thermostat");
+        TbEntityDataSubCtx other = subCtx("session2", 8, "meter");
+        cache.register(first);
+        cache.register(second);
+        cache.register(other);
+        Assert.assertEquals(2, cache.size());
+
+        cache.refresh();
+        verify(entityService, never()).findEntityDataByQuery(any(), any(), any());
+
+        cache.onEntityChange(tenantId, deviceId, false);
+        cache.refresh();
+        verify(entityService, times(2)).findEntityDataByQuery(eq(tenantId), any(), any());
+        verify(first).update(any());
+        verify(second).update(any());
+        verify(other).update(any());
+
+        cache.refresh();
+        verify(entityService, times(2)).findEntityDataByQuery(eq(tenantId), any(), any());
+    }
+
+    @Test
+    public void testChangesOfOtherTenantsIgnored() {
+        cache.register(subCtx("session1", 1, "thermostat"));
+        cache.onEntityChange(new TenantId(UUID.randomUUID()), deviceId, false);
+        cache.refresh();
+        verify(entityService, never()).findEntityDataByQuery(any(), any(), any());
+    }
+
+    @Test
+    public void testUnregister() {
+        TbEntityDataSubCtx first = subCtx("session1", 1, "thermostat");
+        TbEntityDataSubCtx second = subCtx("session2", 1, "thermostat");
+        cache.register(first);
+        cache.register(second);
+        cache.unregister(first);
+        Assert.assertEquals(1, cache.size());
+
+        cache.onEntityChange(tenantId, deviceId, false);
+        cache.refresh();
+        verify(first, never()).update(any());
+        verify(second).update(any());
+
+        cache.unregister(second);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testQueryChangeMovesSubscription() {
+        TbEntityDataSubCtx ctx = subCtx("session1", 1, "thermostat");
+        cache.register(ctx);
+        when(ctx.buildEntityDataQuery()).thenReturn(query("meter"));
+        cache.register(ctx);
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testChangesOfNotMatchingEntitiesIgnored() {
+        cache.register(subCtx("session1", 1, "thermostat"));
+        cache.onEntityChange(tenantId, new AssetId(UUID.randomUUID()), false);
+        cache.refresh();
+        verify(entityService, never()).findEntityDataByQuery(any(), any(), any());
+
+        cache.onEntityChange(tenantId, deviceId, false);
+        cache.refresh();
+        verify(entityService, times(1)).findEntityDataByQuery(any(), any(), any());
+    }
+
+    @Test
+    public void testDirtyQueryRefreshIsRateLimited() {
+        cache = new TbEntityDataQueryCache(entityService, new SubscriptionServiceStatistics(), MoreExecutors.newDirectExecutorService(), Long.MAX_VALUE, Long.MAX_VALUE);
+        cache.register(subCtx("session1", 1, "thermostat"));
+        cache.onEntityChange(tenantId, deviceId, false);
+        cache.refresh();
+        verify(entityService, never()).findEntityDataByQuery(any(), any(), any());
+    }
+
+    @Test
+    public void testMayMatch() {
+        SingleEntityFilter singleEntityFilter = new SingleEntityFilter();
+        singleEntityFilter.setSingleEntity(deviceId);
+        Assert.assertTrue(TbEntityDataQueryCache.mayMatch(singleEntityFilter, deviceId, false));
+        Assert.assertFalse(TbEntityDataQueryCache.mayMatch(singleEntityFilter, new DeviceId(UUID.randomUUID()), false));
+
+        AssetId assetId = new AssetId(UUID.randomUUID());
+        DeviceSearchQueryFilter searchQueryFilter = new DeviceSearchQueryFilter();
+        Assert.assertTrue(TbEntityDataQueryCache.mayMatch(searchQueryFilter, deviceId, false));
+        Assert.assertFalse(TbEntityDataQueryCache.mayMatch(searchQueryFilter, assetId, false));
+        Assert.assertTrue(TbEntityDataQueryCache.mayMatch(searchQueryFilter, assetId, true));
+
+        Assert.assertFalse(TbEntityDataQueryCache.mayMatch(new DeviceTypeFilter(), assetId, true));
+    }
+
+    private TbEntityDataSubCtx subCtx(String sessionId, int cmdId, String deviceType) {
+        TbEntityDataSubCtx ctx = Mockito.mock(TbEntityDataSubCtx.class);
+        when(ctx.getSessionId()).thenReturn(sessionId);
+        when(ctx.getCmdId()).thenReturn(cmdId);
+        when(ctx.getTenantId()).thenReturn(tenantId);
+        when(ctx.getDynamicValues()).thenReturn(Collections.emptyMap());
+        when(ctx.buildEntityDataQuery()).thenReturn(query(deviceType));
+        return ctx;
+    }
+
+    private static EntityDataQuery query(String deviceType) {
+        DeviceTypeFilter filter = new DeviceTypeFilter();
+        filter.setDeviceType(deviceType);
+        EntityDataPageLink pageLink = new EntityDataPageLink(10, 0, null, null);
+        pageLink.setDynamic(true);
+        return new EntityDataQuery(filter, pageLink, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+    }
+}
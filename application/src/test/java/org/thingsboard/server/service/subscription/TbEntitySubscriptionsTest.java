@@ -0,0 +1,96 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.subscription;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+public class TbEntitySubscriptionsTest {
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+
+    @Test
+    public void testTimeseriesSubscriptionsMatchedByKey() {
+        TbEntitySubscriptions subscriptions = new TbEntitySubscriptions();
+        TbTimeseriesSubscription temperature = tsSubscription(1, false, "temperature");
+        TbTimeseriesSubscription humidity = tsSubscription(2, false, "humidity", "temperature");
+        TbTimeseriesSubscription allKeys = tsSubscription(3, true);
+        Assert.assertTrue(subscriptions.add(temperature));
+        Assert.assertTrue(subscriptions.add(humidity));
+        Assert.assertTrue(subscriptions.add(allKeys));
+        Assert.assertFalse(subscriptions.add(allKeys));
+        Assert.assertEquals(3, subscriptions.size());
+
+        assertSubscriptions(subscriptions.getTimeseriesSubscriptions(Collections.singletonList("temperature")), temperature, humidity, allKeys);
+        assertSubscriptions(subscriptions.getTimeseriesSubscriptions(Collections.singletonList("humidity")), humidity, allKeys);
+        assertSubscriptions(subscriptions.getTimeseriesSubscriptions(Collections.singletonList("pressure")), allKeys);
+        assertSubscriptions(subscriptions.getAttributeSubscriptions(Collections.singletonList("temperature")));
+
+        Assert.assertTrue(subscriptions.remove(humidity));
+        assertSubscriptions(subscriptions.getTimeseriesSubscriptions(Arrays.asList("humidity", "temperature")), temperature, allKeys);
+        Assert.assertTrue(subscriptions.remove(temperature));
+        Assert.assertTrue(subscriptions.remove(allKeys));
+        Assert.assertTrue(subscriptions.isEmpty());
+        assertSubscriptions(subscriptions.getTimeseriesSubscriptions(Collections.singletonList("temperature")));
+    }
+
+    @Test
+    public void testSubscriptionsSeparatedByType() {
+        TbEntitySubscriptions subscriptions = new TbEntitySubscriptions();
+        TbTimeseriesSubscription tsSub = tsSubscription(1, false, "active");
+        TbAttributeSubscription attrSub = TbAttributeSubscription.builder()
+                .serviceId("service").sessionId("session").subscriptionId(2).tenantId(tenantId).entityId(deviceId)
+                .allKeys(false).keyStates(keyStates("active")).scope(TbAttributeSubscriptionScope.SERVER_SCOPE).build();
+        TbAlarmsSubscription alarmSub = TbAlarmsSubscription.builder()
+                .serviceId("service").sessionId("session").subscriptionId(3).tenantId(tenantId).entityId(deviceId).build();
+        subscriptions.add(tsSub);
+        subscriptions.add(attrSub);
+        subscriptions.add(alarmSub);
+
+        assertSubscriptions(subscriptions.getTimeseriesSubscriptions(Collections.singletonList("active")), tsSub);
+        assertSubscriptions(subscriptions.getAttributeSubscriptions(Collections.singletonList("active")), attrSub);
+        assertSubscriptions(subscriptions.getAlarmSubscriptions(), alarmSub);
+    }
+
+    private TbTimeseriesSubscription tsSubscription(int subscriptionId, boolean allKeys, String... keys) {
+        return TbTimeseriesSubscription.builder()
+                .serviceId("service").sessionId("session").subscriptionId(subscriptionId).tenantId(tenantId).entityId(deviceId)
+                .allKeys(allKeys).keyStates(keyStates(keys)).build();
+    }
+
+    private static Map<String, Long> keyStates(String... keys) {
+        Map<String, Long> keyStates = new HashMap<>();
+        for (String key : keys) {
+            keyStates.put(key, 0L);
+        }
+        return keyStates;
+    }
+
+    private static void assertSubscriptions(Collection<? extends TbSubscription> actual, TbSubscription... expected) {
+        Assert.assertEquals(expected.length, actual.size());
+        Assert.assertTrue(actual.containsAll(Arrays.asList(expected)));
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.telemetry;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityKeyType;
+import org.thingsboard.server.common.data.query.TsValue;
+import org.thingsboard.server.gen.ws.WsProtos.EntityDataProto;
+import org.thingsboard.server.gen.ws.WsProtos.TsValueListProto;
+import org.thingsboard.server.gen.ws.WsProtos.WsUpdateMsg;
+import org.thingsboard.server.service.telemetry.cmd.v2.EntityDataUpdate;
+import org.thingsboard.server.service.telemetry.sub.TelemetrySubscriptionUpdate;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.Inflater;
+
+public class TelemetryWebSocketProtoEncoderTest {
+
+    @Test
+    public void testTelemetryUpdateWithDeltaEncodedTs() throws Exception {
+        List<TsKvEntry> data = Arrays.asList(
+                new BasicTsKvEntry(1000L, new LongDataEntry("temperature", 20L)),
+                new BasicTsKvEntry(1500L, new LongDataEntry("temperature", 21L)),
+                new BasicTsKvEntry(1700L, new LongDataEntry("temperature", 22L)));
+        byte[] encoded = TelemetryWebSocketProtoEncoder.encode(new TelemetrySubscriptionUpdate(7, data), true);
+
+        WsUpdateMsg msg = WsUpdateMsg.parseFrom(inflate(encoded));
+        Assert.assertEquals(WsUpdateMsg.UpdateCase.TS_SUB_UPDATE, msg.getUpdateCase());
+        Assert.assertEquals(7, msg.getTsSubUpdate().getSubscriptionId());
+        TsValueListProto values = msg.getTsSubUpdate().getData(0);
+        Assert.assertEquals("temperature", values.getKey());
+        Assert.assertEquals(Arrays.asList(1000L, 500L, 200L), values.getTsDeltaList());
+        Assert.assertEquals(Arrays.asList("20", "21", "22"), values.getValueList());
+        Assert.assertEquals(0, values.getNullValueIdxCount());
+    }
+
+    @Test
+    public void testEntityDataUpdate() throws Exception {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        Map<EntityKeyType, Map<String, TsValue>> latest = new HashMap<>();
+        latest.put(EntityKeyType.TIME_SERIES, Collections.singletonMap("temperature", new TsValue(2000L, "25")));
+        Map<String, TsValue[]> timeseries = Collections.singletonMap("humidity",
+                new TsValue[]{new TsValue(1000L, "40"), new TsValue(1010L, null), new TsValue(1020L, "")});
+        EntityDataUpdate update = new EntityDataUpdate(3, null, Collections.singletonList(new EntityData(deviceId, latest, timeseries)), 100);
+
+        WsUpdateMsg msg = WsUpdateMsg.parseFrom(TelemetryWebSocketProtoEncoder.encode(update, false));
+        Assert.assertEquals(WsUpdateMsg.UpdateCase.ENTITY_DATA_UPDATE, msg.getUpdateCase());
+        Assert.assertFalse(msg.getEntityDataUpdate().hasData());
+        Assert.assertEquals(100, msg.getEntityDataUpdate().getAllowedEntities());
+        EntityDataProto entityData = msg.getEntityDataUpdate().getUpdate(0);
+        Assert.assertEquals(deviceId.getId(), new UUID(entityData.getEntityId().getEntityIdMSB(), entityData.getEntityId().getEntityIdLSB()));
+        Assert.assertEquals("TIME_SERIES", entityData.getLatest(0).getKeyType());
+        Assert.assertEquals("25", entityData.getLatest(0).getValues(0).getValue(0));
+        Assert.assertEquals(Arrays.asList(1000L, 10L, 10L), entityData.getTimeseries(0).getTsDeltaList());
+        Assert.assertEquals(Arrays.asList("40", "", ""), entityData.getTimeseries(0).getValueList());
+        Assert.assertEquals(Collections.singletonList(1), entityData.getTimeseries(0).getNullValueIdxList());
+    }
+
+    private static byte[] inflate(byte[] data) throws Exception {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        while (!inflater.finished()) {
+            out.write(buffer, 0, inflater.inflate(buffer));
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.telemetry;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.service.telemetry.sub.SubscriptionErrorCode;
+import org.thingsboard.server.service.telemetry.sub.TelemetrySubscriptionUpdate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WsSessionOutboxTest {
+
+    private ScheduledExecutorService scheduler;
+    private final List<Object> sent = new ArrayList<>();
+    private final AtomicInteger endpointPendingMsgs = new AtomicInteger();
+    private WsSessionOutbox outbox;
+
+    @Before
+    public void before() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        outbox = new WsSessionOutbox("session", 60000, 3, 10, scheduler, endpointPendingMsgs::get, (cmdId, update) -> sent.add(update));
+    }
+
+    @After
+    public void after() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testUpdatesCoalescedPerCommand() {
+        outbox.send(1, update(1, "temperature", 1, 20));
+        outbox.send(1, update(1, "temperature", 2, 21));
+        outbox.send(2, update(2, "humidity", 1, 40));
+        outbox.send(1, update(1, "pressure", 3, 1000));
+        Assert.assertTrue(sent.isEmpty());
+
+        outbox.flush();
+        Assert.assertEquals(2, sent.size());
+        Map<String, List<Object>> data = ((TelemetrySubscriptionUpdate) sent.get(0)).getData();
+        Assert.assertEquals(2, data.get("temperature").size());
+        Assert.assertEquals(1, data.get("pressure").size());
+        Assert.assertEquals(2, ((TelemetrySubscriptionUpdate) sent.get(1)).getSubscriptionId());
+        Assert.assertEquals(2, outbox.getCoalescedUpdates().get());
+    }
+
+    @Test
+    public void testOldestValuesDropped() {
+        for (int i = 0; i < 5; i++) {
+            outbox.send(1, update(1, "temperature", i, i));
+        }
+        outbox.flush();
+        List<Object> values = ((TelemetrySubscriptionUpdate) sent.get(0)).getData().get("temperature");
+        Assert.assertEquals(3, values.size());
+        Assert.assertEquals(2L, ((Object[]) values.get(0))[0]);
+        Assert.assertEquals(2, outbox.getDroppedValues().get());
+    }
+
+    @Test
+    public void testErrorSentAfterPendingUpdates() {
+        outbox.send(1, update(1, "temperature", 1, 20));
+        TelemetrySubscriptionUpdate error = new TelemetrySubscriptionUpdate(1, SubscriptionErrorCode.INTERNAL_ERROR);
+        outbox.send(1, error);
+        Assert.assertEquals(2, sent.size());
+        Assert.assertSame(error, sent.get(1));
+        outbox.flush();
+        Assert.assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void testFlushDeferredForSlowConsumer() {
+        endpointPendingMsgs.set(10);
+        outbox.send(1, update(1, "temperature", 1, 20));
+        outbox.flush();
+        Assert.assertTrue(sent.isEmpty());
+        Assert.assertEquals(1, outbox.getDeferredFlushes().get());
+
+        endpointPendingMsgs.set(0);
+        outbox.flush();
+        Assert.assertEquals(1, sent.size());
+    }
+
+    private static TelemetrySubscriptionUpdate update(int cmdId, String key, long ts, long value) {
+        List<TsKvEntry> data = Arrays.asList(new BasicTsKvEntry(ts, new LongDataEntry(key, value)));
+        return new TelemetrySubscriptionUpdate(cmdId, data);
+    }
+}
@@ -56,7 +56,7 @@ public class DefaultTbActorSystem implements TbActorSystem {
 
     @Override
     public void createDispatcher(String dispatcherId, ExecutorService executor) {
-        Dispatcher current = dispatchers.putIfAbsent(dispatcherId, new Dispatcher(dispatcherId, executor));
+        Dispatcher current = dispatchers.putIfAbsent(dispatcherId, new Dispatcher(dispatcherId, executor, settings.getMailboxType(dispatcherId)));
         if (current != null) {
             throw new RuntimeException("Dispatcher with id [" + dispatcherId + "] is already registered!");
         }
@@ -113,7 +113,7 @@ public class DefaultTbActorSystem implements TbActorSystem {
                             throw new TbActorNotRegisteredException(parent, "Parent Actor with id [" + parent + "] is not registered!");
                         }
                     }
-                    TbActorMailbox mailbox = new TbActorMailbox(this, settings, actorId, parentRef, actor, dispatcher);
+                    TbActorMailbox mailbox = new TbActorMailbox(this, settings, actorId, parentRef, actor, dispatcher, createMsgQueue(dispatcher));
                     actors.put(actorId, mailbox);
                     mailbox.initActor();
                     actorMailbox = mailbox;
@@ -131,6 +131,15 @@ public class DefaultTbActorSystem implements TbActorSystem {
         return actorMailbox;
     }
 
+    private TbActorMsgQueue createMsgQueue(Dispatcher dispatcher) {
+        switch (dispatcher.getMailboxType()) {
+            case MPSC:
+                return new MpscTbActorMsgQueue();
+            default:
+                return new DefaultTbActorMsgQueue();
+        }
+    }
+
     @Override
     public void tellWithHighPriority(TbActorId target, TbActorMsg actorMsg) {
         tell(target, actorMsg, true);
@@ -24,5 +24,6 @@ class Dispatcher {
 
     private final String dispatcherId;
     private final ExecutorService executor;
+    private final TbActorMailboxType mailboxType;
 
 }
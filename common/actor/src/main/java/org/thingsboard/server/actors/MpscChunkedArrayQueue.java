@@ -0,0 +1,137 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Unbounded multi-producer single-consumer queue backed by a linked list of fixed-size array chunks.
+ * Producers claim a slot with a single atomic increment, the consumer never uses CAS.
+ * {@link #poll()} must be called by a single consumer thread at a time.
+ */
+final class MpscChunkedArrayQueue<E> {
+
+    private static final int DEFAULT_CHUNK_SIZE = 32;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscChunkedArrayQueue, Chunk> TAIL_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(MpscChunkedArrayQueue.class, Chunk.class, "tail");
+
+    private final int chunkSize;
+
+    private volatile Chunk<E> tail;
+
+    private Chunk<E> head;
+    private int headIdx;
+
+    MpscChunkedArrayQueue() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    MpscChunkedArrayQueue(int chunkSize) {
+        this.chunkSize = chunkSize;
+        this.head = new Chunk<>(chunkSize);
+        this.tail = head;
+    }
+
+    void offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            Chunk<E> current = tail;
+            int idx = current.claim();
+            if (idx < chunkSize) {
+                current.slots.set(idx, element);
+                return;
+            }
+            Chunk<E> next = current.next;
+            if (next == null) {
+                Chunk<E> newChunk = new Chunk<>(chunkSize);
+                next = current.casNext(newChunk) ? newChunk : current.next;
+            }
+            TAIL_UPDATER.compareAndSet(this, current, next);
+        }
+    }
+
+    E poll() {
+        if (headIdx == chunkSize && !advance()) {
+            return null;
+        }
+        E element = head.slots.get(headIdx);
+        if (element != null) {
+            head.slots.lazySet(headIdx, null);
+            headIdx++;
+        }
+        return element;
+    }
+
+    /**
+     * Does not modify the consumer position, so it may be used as a hint outside of the consumer thread.
+     */
+    boolean isEmpty() {
+        Chunk<E> chunk = head;
+        int idx = headIdx;
+        if (idx == chunkSize) {
+            chunk = chunk.next;
+            if (chunk == null) {
+                return true;
+            }
+            idx = 0;
+        }
+        return chunk.slots.get(idx) == null;
+    }
+
+    private boolean advance() {
+        Chunk<E> next = head.next;
+        if (next == null) {
+            return false;
+        }
+        head = next;
+        headIdx = 0;
+        return true;
+    }
+
+    private static final class Chunk<E> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Chunk> CLAIMED_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Chunk.class, "claimed");
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Chunk, Chunk> NEXT_UPDATER =
+                AtomicReferenceFieldUpdater.newUpdater(Chunk.class, Chunk.class, "next");
+
+        private final AtomicReferenceArray<E> slots;
+        private volatile int claimed;
+        private volatile Chunk<E> next;
+
+        private Chunk(int size) {
+            this.slots = new AtomicReferenceArray<>(size);
+        }
+
+        @SuppressWarnings("unchecked")
+        private int claim() {
+            return CLAIMED_UPDATER.getAndIncrement(this);
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean casNext(Chunk<E> chunk) {
+            return NEXT_UPDATER.compareAndSet(this, null, chunk);
+        }
+    }
+}
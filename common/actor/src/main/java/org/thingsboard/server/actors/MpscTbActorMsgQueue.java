@@ -0,0 +1,47 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import org.thingsboard.server.common.msg.TbActorMsg;
+
+final class MpscTbActorMsgQueue implements TbActorMsgQueue {
+
+    private final MpscChunkedArrayQueue<TbActorMsg> highPriorityMsgs = new MpscChunkedArrayQueue<>();
+    private final MpscChunkedArrayQueue<TbActorMsg> normalPriorityMsgs = new MpscChunkedArrayQueue<>();
+
+    @Override
+    public void add(TbActorMsg msg, boolean highPriority) {
+        if (highPriority) {
+            highPriorityMsgs.offer(msg);
+        } else {
+            normalPriorityMsgs.offer(msg);
+        }
+    }
+
+    @Override
+    public TbActorMsg poll() {
+        TbActorMsg msg = highPriorityMsgs.poll();
+        if (msg == null) {
+            msg = normalPriorityMsgs.poll();
+        }
+        return msg;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return highPriorityMsgs.isEmpty() && normalPriorityMsgs.isEmpty();
+    }
+}
@@ -15,12 +15,13 @@
  */
 package org.thingsboard.server.actors;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.server.common.msg.TbActorMsg;
 
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
@@ -44,11 +45,12 @@ public final class TbActorMailbox implements TbActorCtx {
     private final TbActorRef parentRef;
     private final TbActor actor;
     private final Dispatcher dispatcher;
-    private final ConcurrentLinkedQueue<TbActorMsg> highPriorityMsgs = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<TbActorMsg> normalPriorityMsgs = new ConcurrentLinkedQueue<>();
+    private final TbActorMsgQueue msgs;
     private final AtomicBoolean busy = new AtomicBoolean(FREE);
     private final AtomicBoolean ready = new AtomicBoolean(NOT_READY);
     private final AtomicBoolean destroyInProgress = new AtomicBoolean();
+    @Getter(AccessLevel.NONE)
+    private final Runnable processMailboxTask = this::processMailbox;
 
     public void initActor() {
         dispatcher.getExecutor().execute(() -> tryInit(1));
@@ -84,19 +86,15 @@ public final class TbActorMailbox implements TbActorCtx {
     }
 
     private void enqueue(TbActorMsg msg, boolean highPriority) {
-        if (highPriority) {
-            highPriorityMsgs.add(msg);
-        } else {
-            normalPriorityMsgs.add(msg);
-        }
+        msgs.add(msg, highPriority);
         tryProcessQueue(true);
     }
 
     private void tryProcessQueue(boolean newMsg) {
         if (ready.get() == READY) {
-            if (newMsg || !highPriorityMsgs.isEmpty() || !normalPriorityMsgs.isEmpty()) {
+            if (newMsg || !msgs.isEmpty()) {
                 if (busy.compareAndSet(FREE, BUSY)) {
-                    dispatcher.getExecutor().execute(this::processMailbox);
+                    dispatcher.getExecutor().execute(processMailboxTask);
                 } else {
                     log.trace("[{}] MessageBox is busy, new msg: {}", selfId, newMsg);
                 }
@@ -109,23 +107,15 @@ public final class TbActorMailbox implements TbActorCtx {
     }
 
     private void processMailbox() {
+        if (dispatcher.getMailboxType() == TbActorMailboxType.MPSC) {
+            drainMailbox();
+            return;
+        }
         boolean noMoreElements = false;
         for (int i = 0; i < settings.getActorThroughput(); i++) {
-            TbActorMsg msg = highPriorityMsgs.poll();
-            if (msg == null) {
-                msg = normalPriorityMsgs.poll();
-            }
+            TbActorMsg msg = msgs.poll();
             if (msg != null) {
-                try {
-                    log.debug("[{}] Going to process message: {}", selfId, msg);
-                    actor.process(msg);
-                } catch (Throwable t) {
-                    log.debug("[{}] Failed to process message: {}", selfId, msg, t);
-                    ProcessFailureStrategy strategy = actor.onProcessFailure(t);
-                    if (strategy.isStop()) {
-                        system.stop(selfId);
-                    }
-                }
+                processMsg(msg);
             } else {
                 noMoreElements = true;
                 break;
@@ -135,7 +125,45 @@ public final class TbActorMailbox implements TbActorCtx {
             busy.set(FREE);
             dispatcher.getExecutor().execute(() -> tryProcessQueue(false));
         } else {
-            dispatcher.getExecutor().execute(this::processMailbox);
+            dispatcher.getExecutor().execute(processMailboxTask);
+        }
+    }
+
+    /**
+     * Processes messages in slices of actor throughput. The mailbox is resubmitted to the dispatcher only when a slice is exhausted,
+     * otherwise it is released and reacquired in place if new messages arrived meanwhile.
+     * The slice counts the messages of all the passes, so a steady trickle of messages does not hold the dispatcher thread.
+     */
+    private void drainMailbox() {
+        int throughput = settings.getActorThroughput();
+        int processed = 0;
+        while (true) {
+            TbActorMsg msg;
+            while (processed < throughput && (msg = msgs.poll()) != null) {
+                processMsg(msg);
+                processed++;
+            }
+            if (processed >= throughput) {
+                dispatcher.getExecutor().execute(processMailboxTask);
+                return;
+            }
+            busy.set(FREE);
+            if (ready.get() != READY || msgs.isEmpty() || !busy.compareAndSet(FREE, BUSY)) {
+                return;
+            }
+        }
+    }
+
+    private void processMsg(TbActorMsg msg) {
+        try {
+            log.debug("[{}] Going to process message: {}", selfId, msg);
+            actor.process(msg);
+        } catch (Throwable t) {
+            log.debug("[{}] Failed to process message: {}", selfId, msg, t);
+            ProcessFailureStrategy strategy = actor.onProcessFailure(t);
+            if (strategy.isStop()) {
+                system.stop(selfId);
+            }
         }
     }
 
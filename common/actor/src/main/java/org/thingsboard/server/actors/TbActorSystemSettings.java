@@ -17,11 +17,30 @@ package org.thingsboard.server.actors;
 
 import lombok.Data;
 
+import java.util.Collections;
+import java.util.Map;
+
 @Data
 public class TbActorSystemSettings {
 
     private final int actorThroughput;
     private final int schedulerPoolSize;
     private final int maxActorInitAttempts;
+    private final Map<String, TbActorMailboxType> mailboxTypes;
+
+    public TbActorSystemSettings(int actorThroughput, int schedulerPoolSize, int maxActorInitAttempts) {
+        this(actorThroughput, schedulerPoolSize, maxActorInitAttempts, Collections.emptyMap());
+    }
+
+    public TbActorSystemSettings(int actorThroughput, int schedulerPoolSize, int maxActorInitAttempts, Map<String, TbActorMailboxType> mailboxTypes) {
+        this.actorThroughput = actorThroughput;
+        this.schedulerPoolSize = schedulerPoolSize;
+        this.maxActorInitAttempts = maxActorInitAttempts;
+        this.mailboxTypes = mailboxTypes;
+    }
+
+    public TbActorMailboxType getMailboxType(String dispatcherId) {
+        return mailboxTypes.getOrDefault(dispatcherId, TbActorMailboxType.DEFAULT);
+    }
 
 }
@@ -0,0 +1,208 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.msg.TbActorMsg;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message throughput of {@link DefaultTbActorSystem} per mailbox type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActorSystemBenchmark {
+
+    private static final String DISPATCHER = "benchmark-dispatcher";
+    private static final int PING_PONG_MSGS = 100000;
+    private static final int FAN_IN_PRODUCERS = 4;
+    private static final int FAN_IN_MSGS_PER_PRODUCER = 25000;
+
+    @Param({"DEFAULT", "MPSC"})
+    private TbActorMailboxType mailboxType;
+
+    @Param({"5"})
+    private int throughput;
+
+    private TbActorSystem actorSystem;
+    private ExecutorService producers;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        int parallelism = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        actorSystem = new DefaultTbActorSystem(new TbActorSystemSettings(throughput, 1, 1, Collections.singletonMap(DISPATCHER, mailboxType)));
+        actorSystem.createDispatcher(DISPATCHER, Executors.newWorkStealingPool(parallelism));
+        producers = Executors.newFixedThreadPool(FAN_IN_PRODUCERS);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        actorSystem.stop();
+        producers.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PING_PONG_MSGS)
+    public void pingPong() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        TbActorId pingId = new TbEntityActorId(new DeviceId(UUID.randomUUID()));
+        TbActorId pongId = new TbEntityActorId(new DeviceId(UUID.randomUUID()));
+        TbActorRef ping = actorSystem.createRootActor(DISPATCHER, new PingPongActorCreator(pingId, pongId, latch));
+        actorSystem.createRootActor(DISPATCHER, new PingPongActorCreator(pongId, pingId, latch));
+        ping.tell(new IntTbActorMsg(PING_PONG_MSGS));
+        latch.await();
+        actorSystem.stop(pingId);
+        actorSystem.stop(pongId);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FAN_IN_PRODUCERS * FAN_IN_MSGS_PER_PRODUCER)
+    public void fanIn() throws InterruptedException {
+        int total = FAN_IN_PRODUCERS * FAN_IN_MSGS_PER_PRODUCER;
+        CountDownLatch latch = new CountDownLatch(1);
+        TbActorId actorId = new TbEntityActorId(new DeviceId(UUID.randomUUID()));
+        TbActorRef actor = actorSystem.createRootActor(DISPATCHER, new CountingActorCreator(actorId, total, latch));
+        IntTbActorMsg msg = new IntTbActorMsg(1);
+        for (int i = 0; i < FAN_IN_PRODUCERS; i++) {
+            producers.execute(() -> {
+                for (int j = 0; j < FAN_IN_MSGS_PER_PRODUCER; j++) {
+                    actor.tell(msg);
+                }
+            });
+        }
+        latch.await();
+        actorSystem.stop(actorId);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ActorSystemBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static class PingPongActor extends AbstractTbActor {
+
+        private final TbActorId peerId;
+        private final CountDownLatch latch;
+
+        PingPongActor(TbActorId peerId, CountDownLatch latch) {
+            this.peerId = peerId;
+            this.latch = latch;
+        }
+
+        @Override
+        public boolean process(TbActorMsg msg) {
+            int value = ((IntTbActorMsg) msg).getValue();
+            if (value > 0) {
+                ctx.tell(peerId, new IntTbActorMsg(value - 1));
+            } else {
+                latch.countDown();
+            }
+            return true;
+        }
+    }
+
+    private static class PingPongActorCreator implements TbActorCreator {
+
+        private final TbActorId actorId;
+        private final TbActorId peerId;
+        private final CountDownLatch latch;
+
+        PingPongActorCreator(TbActorId actorId, TbActorId peerId, CountDownLatch latch) {
+            this.actorId = actorId;
+            this.peerId = peerId;
+            this.latch = latch;
+        }
+
+        @Override
+        public TbActorId createActorId() {
+            return actorId;
+        }
+
+        @Override
+        public TbActor createActor() {
+            return new PingPongActor(peerId, latch);
+        }
+    }
+
+    private static class CountingActor extends AbstractTbActor {
+
+        private final int expected;
+        private final CountDownLatch latch;
+        private int count;
+
+        CountingActor(int expected, CountDownLatch latch) {
+            this.expected = expected;
+            this.latch = latch;
+        }
+
+        @Override
+        public boolean process(TbActorMsg msg) {
+            if (++count == expected) {
+                latch.countDown();
+            }
+            return true;
+        }
+    }
+
+    private static class CountingActorCreator implements TbActorCreator {
+
+        private final TbActorId actorId;
+        private final int expected;
+        private final CountDownLatch latch;
+
+        CountingActorCreator(TbActorId actorId, int expected, CountDownLatch latch) {
+            this.actorId = actorId;
+            this.expected = expected;
+            this.latch = latch;
+        }
+
+        @Override
+        public TbActorId createActorId() {
+            return actorId;
+        }
+
+        @Override
+        public TbActor createActor() {
+            return new CountingActor(expected, latch);
+        }
+    }
+}
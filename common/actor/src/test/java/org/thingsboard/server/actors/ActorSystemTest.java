@@ -25,6 +25,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.thingsboard.server.common.data.id.DeviceId;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
@@ -50,11 +51,15 @@ public class ActorSystemTest {
     public void initActorSystem() {
         int cores = Runtime.getRuntime().availableProcessors();
         parallelism = Math.max(2, cores / 2);
-        TbActorSystemSettings settings = new TbActorSystemSettings(5, parallelism, 42);
+        TbActorSystemSettings settings = new TbActorSystemSettings(5, parallelism, 42, Collections.singletonMap(ROOT_DISPATCHER, getMailboxType()));
         actorSystem = new DefaultTbActorSystem(settings);
         submitPool = Executors.newWorkStealingPool(parallelism);
     }
 
+    protected TbActorMailboxType getMailboxType() {
+        return TbActorMailboxType.DEFAULT;
+    }
+
     @After
     public void shutdownActorSystem() {
         actorSystem.stop();
@@ -13,19 +13,13 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package org.thingsboard.server.service.queue.processing;
+package org.thingsboard.server.actors;
 
-import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
-import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+public class MpscActorSystemTest extends ActorSystemTest {
 
-import java.util.UUID;
-
-public class IdMsgPair {
-    final UUID uuid;
-    final TbProtoQueueMsg<ToRuleEngineMsg> msg;
-
-    public IdMsgPair(UUID uuid, TbProtoQueueMsg<ToRuleEngineMsg> msg) {
-        this.uuid = uuid;
-        this.msg = msg;
+    @Override
+    protected TbActorMailboxType getMailboxType() {
+        return TbActorMailboxType.MPSC;
     }
+
 }
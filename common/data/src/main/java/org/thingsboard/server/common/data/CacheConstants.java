@@ -26,4 +26,6 @@ public class CacheConstants {
     public static final String SECURITY_SETTINGS_CACHE = "securitySettings";
     public static final String TENANT_PROFILE_CACHE = "tenantProfiles";
     public static final String DEVICE_PROFILE_CACHE = "deviceProfiles";
+    public static final String TS_LATEST_CACHE = "tsLatest";
+    public static final String ATTRIBUTES_CACHE = "attributes";
 }
@@ -16,6 +16,7 @@
 package org.thingsboard.server.common.data.page;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.thingsboard.server.common.data.BaseData;
 
@@ -28,20 +29,27 @@ public class PageData<T> {
     private final int totalPages;
     private final long totalElements;
     private final boolean hasNext;
+    private final String nextCursor;
 
     public PageData() {
         this(Collections.emptyList(), 0, 0, false);
     }
 
+    public PageData(List<T> data, int totalPages, long totalElements, boolean hasNext) {
+        this(data, totalPages, totalElements, hasNext, null);
+    }
+
     @JsonCreator
     public PageData(@JsonProperty("data") List<T> data,
                     @JsonProperty("totalPages") int totalPages,
                     @JsonProperty("totalElements") long totalElements,
-                    @JsonProperty("hasNext") boolean hasNext) {
+                    @JsonProperty("hasNext") boolean hasNext,
+                    @JsonProperty("nextCursor") String nextCursor) {
         this.data = data;
         this.totalPages = totalPages;
         this.totalElements = totalElements;
         this.hasNext = hasNext;
+        this.nextCursor = nextCursor;
     }
 
     public List<T> getData() {
@@ -61,4 +69,9 @@ public class PageData<T> {
         return hasNext;
     }
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
 }
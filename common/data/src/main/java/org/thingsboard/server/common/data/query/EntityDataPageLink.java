@@ -28,6 +28,9 @@ public class EntityDataPageLink {
     private String textSearch;
     private EntityDataSortOrder sortOrder;
     private boolean dynamic = false;
+    // Enables cursor based pagination instead of the page number: empty for the first page, PageData.nextCursor for the next pages.
+    // Only the first page is counted, the next pages return -1 as totalElements and totalPages
+    private String cursor;
 
     public EntityDataPageLink() {
     }
@@ -36,6 +39,10 @@ public class EntityDataPageLink {
         this(pageSize, page, textSearch, sortOrder, false);
     }
 
+    public EntityDataPageLink(int pageSize, int page, String textSearch, EntityDataSortOrder sortOrder, boolean dynamic) {
+        this(pageSize, page, textSearch, sortOrder, dynamic, null);
+    }
+
     @JsonIgnore
     public EntityDataPageLink nextPageLink() {
         return new EntityDataPageLink(this.pageSize, this.page + 1, this.textSearch, this.sortOrder);
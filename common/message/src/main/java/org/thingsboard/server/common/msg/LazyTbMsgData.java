@@ -0,0 +1,107 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.msg;
+
+import com.google.protobuf.ByteString;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Data of the {@link TbMsg}. Keeps the UTF-8 bytes received from the queue and decodes them on first access.
+ * The result of the last {@link #parse(Class, Function)} call is cached, so the rule nodes that receive
+ * the same data don't parse it again.
+ */
+final class LazyTbMsgData implements Serializable {
+
+    private volatile ByteString bytes;
+    private volatile String value;
+    private transient volatile ParsedData parsed;
+
+    private LazyTbMsgData(ByteString bytes, String value) {
+        this.bytes = bytes;
+        this.value = value;
+    }
+
+    static LazyTbMsgData of(String value) {
+        return new LazyTbMsgData(null, value);
+    }
+
+    static LazyTbMsgData of(ByteString bytes) {
+        return new LazyTbMsgData(bytes, null);
+    }
+
+    String get() {
+        String result = value;
+        if (result == null && bytes != null) {
+            result = bytes.toStringUtf8();
+            value = result;
+        }
+        return result;
+    }
+
+    ByteString toByteString() {
+        ByteString result = bytes;
+        if (result == null) {
+            result = value != null ? ByteString.copyFromUtf8(value) : ByteString.EMPTY;
+            bytes = result;
+        }
+        return result;
+    }
+
+    boolean isSameAs(String data) {
+        return data != null && data == value;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T parse(Class<T> type, Function<String, T> parser) {
+        ParsedData current = parsed;
+        if (current != null && current.type == type) {
+            return (T) current.value;
+        }
+        T result = parser.apply(get());
+        parsed = new ParsedData(type, result);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Objects.equals(get(), ((LazyTbMsgData) o).get());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(get());
+    }
+
+    @Override
+    public String toString() {
+        return get();
+    }
+
+    private static final class ParsedData {
+        private final Class<?> type;
+        private final Object value;
+
+        private ParsedData(Class<?> type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.msg;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.thingsboard.server.common.msg.gen.MsgProtos;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Metadata of the {@link TbMsg}. Keeps the serialized metadata received from the queue until it is accessed.
+ * Once materialized, the metadata may be modified, so it is serialized again on every call of {@link #toByteString()}.
+ */
+final class LazyTbMsgMetaData implements Serializable {
+
+    private ByteString bytes;
+    private TbMsgMetaData value;
+
+    private LazyTbMsgMetaData(ByteString bytes, TbMsgMetaData value) {
+        this.bytes = bytes;
+        this.value = value;
+    }
+
+    static LazyTbMsgMetaData of(TbMsgMetaData value) {
+        return new LazyTbMsgMetaData(null, value);
+    }
+
+    static LazyTbMsgMetaData of(ByteString bytes) {
+        return new LazyTbMsgMetaData(bytes, null);
+    }
+
+    synchronized TbMsgMetaData get() {
+        if (bytes != null) {
+            try {
+                value = new TbMsgMetaData(MsgProtos.TbMsgMetaDataProto.parseFrom(bytes).getDataMap());
+            } catch (InvalidProtocolBufferException e) {
+                throw new IllegalStateException("Could not parse protobuf for TbMsgMetaData", e);
+            }
+            bytes = null;
+        }
+        return value;
+    }
+
+    synchronized ByteString toByteString() {
+        if (bytes != null) {
+            return bytes;
+        } else if (value != null) {
+            return MsgProtos.TbMsgMetaDataProto.newBuilder().putAllData(value.getData()).build().toByteString();
+        } else {
+            return ByteString.EMPTY;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Objects.equals(get(), ((LazyTbMsgMetaData) o).get());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(get());
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(get());
+    }
+}
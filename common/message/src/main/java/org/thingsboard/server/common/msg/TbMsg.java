@@ -34,6 +34,7 @@ import org.thingsboard.server.common.msg.queue.TbMsgCallback;
 import java.io.Serializable;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * Created by ashvayka on 13.01.18.
@@ -47,9 +48,11 @@ public final class TbMsg implements Serializable {
     private final long ts;
     private final String type;
     private final EntityId originator;
-    private final TbMsgMetaData metaData;
+    @Getter(value = AccessLevel.NONE)
+    private final LazyTbMsgMetaData metaData;
     private final TbMsgDataType dataType;
-    private final String data;
+    @Getter(value = AccessLevel.NONE)
+    private final LazyTbMsgData data;
     private final RuleChainId ruleChainId;
     private final RuleNodeId ruleNodeId;
     @Getter(value = AccessLevel.NONE)
@@ -59,6 +62,22 @@ public final class TbMsg implements Serializable {
         return ruleNodeExecCounter.getAndIncrement();
     }
 
+    public TbMsgMetaData getMetaData() {
+        return metaData.get();
+    }
+
+    public String getData() {
+        return data.get();
+    }
+
+    /**
+     * Returns the msg data parsed by the given parser. The result is shared by all copies of the msg that keep
+     * the same data, so it must not be modified. A parser of another type replaces the cached result.
+     */
+    public <T> T getParsedData(Class<T> type, Function<String, T> parser) {
+        return data.parse(type, parser);
+    }
+
     //This field is not serialized because we use queues and there is no need to do it
     @JsonIgnore
     transient private final TbMsgCallback callback;
@@ -93,8 +112,8 @@ public final class TbMsg implements Serializable {
     }
 
     public static TbMsg transformMsg(TbMsg tbMsg, String type, EntityId originator, TbMsgMetaData metaData, String data) {
-        return new TbMsg(tbMsg.getQueueName(), tbMsg.getId(), tbMsg.getTs(), type, originator, metaData.copy(), tbMsg.getDataType(),
-                data, tbMsg.getRuleChainId(), tbMsg.getRuleNodeId(), tbMsg.ruleNodeExecCounter.get(), tbMsg.getCallback());
+        return new TbMsg(tbMsg.getQueueName(), tbMsg.getId(), tbMsg.getTs(), type, originator, LazyTbMsgMetaData.of(metaData.copy()), tbMsg.getDataType(),
+                tbMsg.data.isSameAs(data) ? tbMsg.data : LazyTbMsgData.of(data), tbMsg.getRuleChainId(), tbMsg.getRuleNodeId(), tbMsg.ruleNodeExecCounter.get(), tbMsg.getCallback());
     }
 
     public static TbMsg transformMsg(TbMsg tbMsg, RuleChainId ruleChainId) {
@@ -113,12 +132,18 @@ public final class TbMsg implements Serializable {
     }
 
     public static TbMsg newMsg(TbMsg tbMsg, RuleChainId ruleChainId, RuleNodeId ruleNodeId) {
-        return new TbMsg(tbMsg.getQueueName(), UUID.randomUUID(), tbMsg.getTs(), tbMsg.getType(), tbMsg.getOriginator(), tbMsg.getMetaData().copy(),
-                tbMsg.getDataType(), tbMsg.getData(), ruleChainId, ruleNodeId, tbMsg.ruleNodeExecCounter.get(), TbMsgCallback.EMPTY);
+        return new TbMsg(tbMsg.getQueueName(), UUID.randomUUID(), tbMsg.getTs(), tbMsg.getType(), tbMsg.getOriginator(), LazyTbMsgMetaData.of(tbMsg.getMetaData().copy()),
+                tbMsg.getDataType(), tbMsg.data, ruleChainId, ruleNodeId, tbMsg.ruleNodeExecCounter.get(), TbMsgCallback.EMPTY);
     }
 
     private TbMsg(String queueName, UUID id, long ts, String type, EntityId originator, TbMsgMetaData metaData, TbMsgDataType dataType, String data,
                   RuleChainId ruleChainId, RuleNodeId ruleNodeId, int ruleNodeExecCounter, TbMsgCallback callback) {
+        this(queueName, id, ts, type, originator, LazyTbMsgMetaData.of(metaData), dataType, LazyTbMsgData.of(data),
+                ruleChainId, ruleNodeId, ruleNodeExecCounter, callback);
+    }
+
+    private TbMsg(String queueName, UUID id, long ts, String type, EntityId originator, LazyTbMsgMetaData metaData, TbMsgDataType dataType, LazyTbMsgData data,
+                  RuleChainId ruleChainId, RuleNodeId ruleNodeId, int ruleNodeExecCounter, TbMsgCallback callback) {
         this.id = id;
         this.queueName = queueName;
         if (ts > 0) {
@@ -142,10 +167,14 @@ public final class TbMsg implements Serializable {
     }
 
     public static ByteString toByteString(TbMsg msg) {
-        return ByteString.copyFrom(toByteArray(msg));
+        return toProto(msg).toByteString();
     }
 
     public static byte[] toByteArray(TbMsg msg) {
+        return toProto(msg).toByteArray();
+    }
+
+    private static MsgProtos.TbMsgProto toProto(TbMsg msg) {
         MsgProtos.TbMsgProto.Builder builder = MsgProtos.TbMsgProto.newBuilder();
         builder.setId(msg.getId().toString());
         builder.setTs(msg.getTs());
@@ -164,20 +193,17 @@ public final class TbMsg implements Serializable {
             builder.setRuleNodeIdLSB(msg.getRuleNodeId().getId().getLeastSignificantBits());
         }
 
-        if (msg.getMetaData() != null) {
-            builder.setMetaData(MsgProtos.TbMsgMetaDataProto.newBuilder().putAllData(msg.getMetaData().getData()).build());
-        }
-
+        builder.setMetaData(msg.metaData.toByteString());
         builder.setDataType(msg.getDataType().ordinal());
-        builder.setData(msg.getData());
+        builder.setData(msg.data.toByteString());
         builder.setRuleNodeExecCounter(msg.ruleNodeExecCounter.get());
-        return builder.build().toByteArray();
+        return builder.build();
     }
 
     public static TbMsg fromBytes(String queueName, byte[] data, TbMsgCallback callback) {
         try {
             MsgProtos.TbMsgProto proto = MsgProtos.TbMsgProto.parseFrom(data);
-            TbMsgMetaData metaData = new TbMsgMetaData(proto.getMetaData().getDataMap());
+            LazyTbMsgMetaData metaData = LazyTbMsgMetaData.of(proto.getMetaData());
             EntityId entityId = EntityIdFactory.getByTypeAndUuid(proto.getEntityType(), new UUID(proto.getEntityIdMSB(), proto.getEntityIdLSB()));
             RuleChainId ruleChainId = null;
             RuleNodeId ruleNodeId = null;
@@ -188,7 +214,8 @@ public final class TbMsg implements Serializable {
                 ruleNodeId = new RuleNodeId(new UUID(proto.getRuleNodeIdMSB(), proto.getRuleNodeIdLSB()));
             }
             TbMsgDataType dataType = TbMsgDataType.values()[proto.getDataType()];
-            return new TbMsg(queueName, UUID.fromString(proto.getId()), proto.getTs(), proto.getType(), entityId, metaData, dataType, proto.getData(), ruleChainId, ruleNodeId, proto.getRuleNodeExecCounter(), callback);
+            return new TbMsg(queueName, UUID.fromString(proto.getId()), proto.getTs(), proto.getType(), entityId, metaData, dataType, LazyTbMsgData.of(proto.getData()),
+                    ruleChainId, ruleNodeId, proto.getRuleNodeExecCounter(), callback);
         } catch (InvalidProtocolBufferException e) {
             throw new IllegalStateException("Could not parse protobuf for TbMsg", e);
         }
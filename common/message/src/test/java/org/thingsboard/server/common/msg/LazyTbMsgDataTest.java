@@ -0,0 +1,163 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.msg;
+
+import com.google.protobuf.ByteString;
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.msg.gen.MsgProtos;
+import org.thingsboard.server.common.msg.queue.TbMsgCallback;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class LazyTbMsgDataTest {
+
+    private static final String DATA = "{\"temperature\":42,\"name\":\"Температура\"}";
+
+    @Test
+    public void testMsgRoundtrip() {
+        TbMsg msg = TbMsg.newMsg("POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), metaData("deviceName", "Device A"), DATA);
+
+        TbMsg restored = TbMsg.fromBytes("Main", TbMsg.toByteArray(msg), TbMsgCallback.EMPTY);
+
+        Assert.assertEquals(msg.getId(), restored.getId());
+        Assert.assertEquals(msg.getType(), restored.getType());
+        Assert.assertEquals(msg.getOriginator(), restored.getOriginator());
+        Assert.assertEquals(msg.getDataType(), restored.getDataType());
+        Assert.assertEquals(DATA, restored.getData());
+        Assert.assertEquals("Device A", restored.getMetaData().getValue("deviceName"));
+    }
+
+    @Test
+    public void testUntouchedMsgIsSerializedToSameBytes() {
+        TbMsg msg = TbMsg.newMsg("POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), metaData("deviceName", "Device A"), DATA);
+        byte[] bytes = TbMsg.toByteArray(msg);
+
+        TbMsg restored = TbMsg.fromBytes("Main", bytes, TbMsgCallback.EMPTY);
+
+        Assert.assertArrayEquals(bytes, TbMsg.toByteArray(restored));
+    }
+
+    @Test
+    public void testModifiedMetaDataIsSerializedAgain() {
+        TbMsg msg = TbMsg.newMsg("POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), metaData("deviceName", "Device A"), DATA);
+        TbMsg restored = TbMsg.fromBytes("Main", TbMsg.toByteArray(msg), TbMsgCallback.EMPTY);
+
+        restored.getMetaData().putValue("deviceName", "Device B");
+        TbMsg forwarded = TbMsg.fromBytes("Main", TbMsg.toByteArray(restored), TbMsgCallback.EMPTY);
+
+        Assert.assertEquals("Device B", forwarded.getMetaData().getValue("deviceName"));
+        Assert.assertEquals(DATA, forwarded.getData());
+    }
+
+    @Test
+    public void testMetaDataWireFormatIsCompatible() {
+        ByteString metaDataBytes = MsgProtos.TbMsgMetaDataProto.newBuilder().putData("deviceName", "Device A").build().toByteString();
+
+        LazyTbMsgMetaData metaData = LazyTbMsgMetaData.of(metaDataBytes);
+
+        Assert.assertEquals(metaDataBytes, metaData.toByteString());
+        Assert.assertEquals("Device A", metaData.get().getValue("deviceName"));
+        Assert.assertEquals(metaDataBytes, metaData.toByteString());
+    }
+
+    @Test
+    public void testDataIsDecodedAndEncodedAsUtf8() {
+        LazyTbMsgData fromBytes = LazyTbMsgData.of(ByteString.copyFromUtf8(DATA));
+        LazyTbMsgData fromString = LazyTbMsgData.of(DATA);
+
+        Assert.assertEquals(DATA, fromBytes.get());
+        Assert.assertEquals(ByteString.copyFromUtf8(DATA), fromString.toByteString());
+        Assert.assertEquals(fromBytes, fromString);
+        Assert.assertEquals(fromBytes.hashCode(), fromString.hashCode());
+    }
+
+    @Test
+    public void testNullDataIsSerializedAsEmpty() {
+        Assert.assertEquals(ByteString.EMPTY, LazyTbMsgData.of((String) null).toByteString());
+        Assert.assertEquals("", LazyTbMsgData.of(ByteString.EMPTY).get());
+    }
+
+    @Test
+    public void testParsedDataIsCachedPerType() {
+        LazyTbMsgData data = LazyTbMsgData.of(ByteString.copyFromUtf8(DATA));
+        AtomicInteger parseCount = new AtomicInteger();
+        Function<String, Integer> lengthParser = value -> {
+            parseCount.incrementAndGet();
+            return value.length();
+        };
+
+        Assert.assertEquals(Integer.valueOf(DATA.length()), data.parse(Integer.class, lengthParser));
+        Assert.assertEquals(Integer.valueOf(DATA.length()), data.parse(Integer.class, lengthParser));
+        Assert.assertEquals(1, parseCount.get());
+
+        Assert.assertEquals(DATA, data.parse(String.class, Function.identity()));
+        data.parse(Integer.class, lengthParser);
+        Assert.assertEquals(2, parseCount.get());
+    }
+
+    @Test
+    public void testParsedDataIsSharedByCopiesWithSameData() {
+        TbMsg msg = TbMsg.fromBytes("Main", TbMsg.toByteArray(TbMsg.newMsg("POST_TELEMETRY_REQUEST",
+                new DeviceId(UUID.randomUUID()), metaData("deviceName", "Device A"), DATA)), TbMsgCallback.EMPTY);
+        Object parsed = msg.getParsedData(Object.class, value -> new Object());
+
+        TbMsg sameData = TbMsg.transformMsg(msg, msg.getType(), msg.getOriginator(), msg.getMetaData(), msg.getData());
+        TbMsg otherData = TbMsg.transformMsg(msg, msg.getType(), msg.getOriginator(), msg.getMetaData(), "{}");
+
+        Assert.assertSame(parsed, sameData.getParsedData(Object.class, value -> new Object()));
+        Assert.assertNotSame(parsed, otherData.getParsedData(Object.class, value -> new Object()));
+    }
+
+    @Test
+    public void testJavaSerializationRoundtrip() throws Exception {
+        LazyTbMsgData data = LazyTbMsgData.of(ByteString.copyFromUtf8(DATA));
+        Object parsed = data.parse(Object.class, value -> new Object());
+
+        LazyTbMsgData restored = javaRoundtrip(data);
+
+        Assert.assertEquals(DATA, restored.get());
+        Assert.assertEquals(data, restored);
+        Assert.assertNotSame(parsed, restored.parse(Object.class, value -> new Object()));
+
+        LazyTbMsgMetaData metaData = javaRoundtrip(LazyTbMsgMetaData.of(metaData("deviceName", "Device A")));
+        Assert.assertEquals("Device A", metaData.get().getValue("deviceName"));
+    }
+
+    private static TbMsgMetaData metaData(String key, String value) {
+        TbMsgMetaData metaData = new TbMsgMetaData();
+        metaData.putValue(key, value);
+        return metaData;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T javaRoundtrip(T value) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(value);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            return (T) ois.readObject();
+        }
+    }
+}
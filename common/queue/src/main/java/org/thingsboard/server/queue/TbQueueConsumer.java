@@ -34,4 +34,26 @@ public interface TbQueueConsumer<T extends TbQueueMsg> {
 
     void commit();
 
+    /**
+     * Returns true if the consumer is able to commit the messages returned by a particular poll
+     * while the messages returned by the subsequent polls are still being processed.
+     */
+    default boolean isPartialCommitSupported() {
+        return false;
+    }
+
+    /**
+     * Returns the id of the last poll that returned messages. Ids grow monotonically.
+     */
+    default long getLastPollId() {
+        return 0L;
+    }
+
+    /**
+     * Commits the messages returned by the polls up to and including the poll with the given id.
+     */
+    default void commit(long pollId) {
+        commit();
+    }
+
 }
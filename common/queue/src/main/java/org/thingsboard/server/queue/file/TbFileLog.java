@@ -0,0 +1,259 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.file;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.queue.TbQueueMsg;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Append-only log of a single topic partition, split into memory mapped segments named by their base offset.
+ * Committed offsets of the consumer groups are stored next to the segments.
+ */
+@Slf4j
+public class TbFileLog {
+
+    private static final String OFFSETS_DIR = "offsets";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    @Getter
+    private final String topic;
+    private final File dir;
+    private final File offsetsDir;
+    private final TbFileQueueSettings settings;
+    private final ConcurrentNavigableMap<Long, TbFileLogSegment> segments = new ConcurrentSkipListMap<>();
+    private final Set<Runnable> appendListeners = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, CommittedOffset> committedOffsets = new ConcurrentHashMap<>();
+    private volatile TbFileLogSegment active;
+
+    TbFileLog(String topic, File dir, TbFileQueueSettings settings) throws IOException {
+        this.topic = topic;
+        this.dir = dir;
+        this.offsetsDir = new File(dir, OFFSETS_DIR);
+        this.settings = settings;
+        Files.createDirectories(offsetsDir.toPath());
+        File[] files = dir.listFiles((d, name) -> name.endsWith(TbFileLogSegment.SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                TbFileLogSegment segment = TbFileLogSegment.open(dir, TbFileLogSegment.parseBaseOffset(file), settings.getSegmentSizeBytes());
+                segments.put(segment.getBaseOffset(), segment);
+            }
+        }
+        if (segments.isEmpty()) {
+            TbFileLogSegment segment = TbFileLogSegment.open(dir, 0L, settings.getSegmentSizeBytes());
+            segments.put(segment.getBaseOffset(), segment);
+        }
+        active = segments.lastEntry().getValue();
+        File[] offsetFiles = offsetsDir.listFiles((d, name) -> !name.endsWith(TMP_SUFFIX));
+        if (offsetFiles != null) {
+            for (File file : offsetFiles) {
+                Long offset = readOffsetFile(file.toPath());
+                if (offset != null) {
+                    committedOffsets.put(file.getName(), new CommittedOffset(offset, file.lastModified()));
+                }
+            }
+        }
+        log.info("[{}] Opened log with {} segment(s), next offset: {}", topic, segments.size(), active.getNextOffset());
+    }
+
+    public synchronized long append(TbQueueMsg msg) throws IOException {
+        if (!active.append(msg)) {
+            if (active.isEmpty()) {
+                throw new IOException("Message of " + msg.getData().length + " bytes does not fit into the segment of " + settings.getSegmentSizeBytes() + " bytes");
+            }
+            roll();
+            if (!active.append(msg)) {
+                throw new IOException("Message of " + msg.getData().length + " bytes does not fit into the segment of " + settings.getSegmentSizeBytes() + " bytes");
+            }
+        }
+        appendListeners.forEach(Runnable::run);
+        return active.getNextOffset() - 1;
+    }
+
+    /**
+     * Reads up to maxRecords messages starting at the cursor position and moves the cursor forward.
+     */
+    int read(TbFileLogCursor cursor, int maxRecords, List<TbFileQueueMsg> result) {
+        if (cursor.getSegment() == null || cursor.getSegment().isDeleted()) {
+            seek(cursor, cursor.getOffset());
+        }
+        int count = 0;
+        while (count < maxRecords) {
+            TbFileLogSegment segment = cursor.getSegment();
+            int position = cursor.getPosition();
+            if (position < segment.getWritePosition()) {
+                result.add(segment.read(position, cursor.getOffset()));
+                cursor.moveTo(segment, segment.nextPosition(position), cursor.getOffset() + 1);
+                count++;
+            } else {
+                Map.Entry<Long, TbFileLogSegment> next = segments.higherEntry(segment.getBaseOffset());
+                // The next segment is created only after the last append to this one, so re-check the write position.
+                if (next == null) {
+                    break;
+                }
+                if (position < segment.getWritePosition()) {
+                    continue;
+                }
+                cursor.moveTo(next.getValue(), 0, next.getKey());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Positions the cursor at the given offset. Offsets that are already removed by the retention are moved to the
+     * earliest available record, offsets beyond the end of the log are moved to the end.
+     */
+    void seek(TbFileLogCursor cursor, long offset) {
+        Map.Entry<Long, TbFileLogSegment> entry = segments.floorEntry(offset);
+        if (entry == null) {
+            entry = segments.firstEntry();
+            if (offset > 0) {
+                log.warn("[{}] Offset {} is no longer available, skipping to {}", topic, offset, entry.getKey());
+            }
+        }
+        TbFileLogSegment segment = entry.getValue();
+        int position = 0;
+        long current = segment.getBaseOffset();
+        while (current < offset && position < segment.getWritePosition()) {
+            position = segment.nextPosition(position);
+            current++;
+        }
+        cursor.moveTo(segment, position, current);
+    }
+
+    long readCommittedOffset(String groupId) {
+        CommittedOffset committed = committedOffsets.get(groupId);
+        return committed != null ? committed.offset : 0L;
+    }
+
+    void commit(String groupId, long offset) throws IOException {
+        Path path = new File(offsetsDir, groupId).toPath();
+        Path tmp = new File(offsetsDir, groupId + TMP_SUFFIX).toPath();
+        Files.write(tmp, Long.toString(offset).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committedOffsets.put(groupId, new CommittedOffset(offset, System.currentTimeMillis()));
+    }
+
+    void addAppendListener(Runnable listener) {
+        appendListeners.add(listener);
+    }
+
+    void removeAppendListener(Runnable listener) {
+        appendListeners.remove(listener);
+    }
+
+    void flush() {
+        active.flush();
+    }
+
+    /**
+     * Removes the oldest sealed segments that exceed the retention time or the max number of segments.
+     * The active segment is never removed, as well as the segments that are not yet committed by every consumer group
+     * that committed within the retention time. Groups that did not commit for longer are considered abandoned.
+     */
+    synchronized void applyRetention(long ts) {
+        long minCommittedOffset = getMinCommittedOffset(ts);
+        for (TbFileLogSegment segment : segments.values()) {
+            if (segment == active) {
+                break;
+            }
+            boolean expired = ts - segment.getLastAppendTs() > settings.getRetentionMs();
+            boolean exceeded = settings.getRetentionSegments() > 0 && segments.size() > settings.getRetentionSegments();
+            if (!expired && !exceeded) {
+                break;
+            }
+            if (segment.getNextOffset() > minCommittedOffset) {
+                log.warn("[{}] Keeping {} segment(s) with offsets {}-{} beyond the retention, they are not committed by all consumer groups yet",
+                        topic, segments.headMap(active.getBaseOffset()).tailMap(segment.getBaseOffset()).size(),
+                        segment.getBaseOffset(), active.getBaseOffset() - 1);
+                break;
+            }
+            segments.remove(segment.getBaseOffset());
+            try {
+                segment.delete();
+                log.debug("[{}] Removed segment {}", topic, segment.getFile());
+            } catch (IOException e) {
+                log.warn("[{}] Failed to remove segment {}", topic, segment.getFile(), e);
+            }
+        }
+    }
+
+    synchronized void close() {
+        for (TbFileLogSegment segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                log.warn("[{}] Failed to close segment {}", topic, segment.getFile(), e);
+            }
+        }
+    }
+
+    private long getMinCommittedOffset(long ts) {
+        long min = Long.MAX_VALUE;
+        for (CommittedOffset committed : committedOffsets.values()) {
+            if (ts - committed.ts <= settings.getRetentionMs()) {
+                min = Math.min(min, committed.offset);
+            }
+        }
+        return min;
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    private Long readOffsetFile(Path path) {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            log.warn("[{}] Failed to read committed offset {}, the group starts from the earliest record", topic, path, e);
+            return null;
+        }
+    }
+
+    private void roll() throws IOException {
+        active.flush();
+        TbFileLogSegment segment = TbFileLogSegment.open(dir, active.getNextOffset(), settings.getSegmentSizeBytes());
+        segments.put(segment.getBaseOffset(), segment);
+        active = segment;
+        log.debug("[{}] Rolled new segment {}", topic, segment.getFile());
+    }
+
+    private static class CommittedOffset {
+        private final long offset;
+        private final long ts;
+
+        private CommittedOffset(long offset, long ts) {
+            this.offset = offset;
+            this.ts = ts;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.file;
+
+import lombok.Getter;
+
+/**
+ * Read position of a consumer group within a {@link TbFileLog}.
+ */
+@Getter
+final class TbFileLogCursor {
+
+    private final TbFileLog log;
+    private TbFileLogSegment segment;
+    private int position;
+    private long offset;
+    private long committedOffset;
+
+    TbFileLogCursor(TbFileLog log, long committedOffset) {
+        this.log = log;
+        this.offset = committedOffset;
+        this.committedOffset = committedOffset;
+    }
+
+    void moveTo(TbFileLogSegment segment, int position, long offset) {
+        this.segment = segment;
+        this.position = position;
+        this.offset = offset;
+    }
+
+    void setCommittedOffset(long committedOffset) {
+        this.committedOffset = committedOffset;
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.file;
+
+import lombok.Getter;
+import org.thingsboard.server.queue.TbQueueMsg;
+import org.thingsboard.server.queue.TbQueueMsgHeaders;
+import org.thingsboard.server.queue.common.DefaultTbQueueMsgHeaders;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Memory mapped, append-only segment of a {@link TbFileLog}.
+ * <p>
+ * Each record is stored as [length:int][crc32:int][msb:long][lsb:long][headers count:int]
+ * ([key length:int][key][value length:int][value])*[data]. The mapped file is zero filled,
+ * so a zero length marks the end of the written records. Records with a wrong checksum are
+ * treated as the torn tail of a crashed write and are overwritten by the next append.
+ */
+final class TbFileLogSegment {
+
+    static final String SUFFIX = ".log";
+    static final int RECORD_HEADER_SIZE = 8;
+
+    @Getter
+    private final File file;
+    @Getter
+    private final long baseOffset;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer writeBuffer;
+    private final ByteBuffer readBuffer;
+    private final CRC32 crc = new CRC32();
+    private volatile int writePosition;
+    private volatile int recordCount;
+    @Getter
+    private volatile long lastAppendTs;
+    @Getter
+    private volatile boolean deleted;
+
+    private TbFileLogSegment(File file, long baseOffset, int capacity) throws IOException {
+        this.file = file;
+        this.baseOffset = baseOffset;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), capacity));
+        this.writeBuffer = buffer.duplicate();
+        this.readBuffer = buffer.asReadOnlyBuffer();
+        this.lastAppendTs = file.lastModified();
+        recover();
+    }
+
+    static TbFileLogSegment open(File dir, long baseOffset, int capacity) throws IOException {
+        return new TbFileLogSegment(new File(dir, String.format("%020d%s", baseOffset, SUFFIX)), baseOffset, capacity);
+    }
+
+    static long parseBaseOffset(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    long getNextOffset() {
+        return baseOffset + recordCount;
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    boolean isEmpty() {
+        return recordCount == 0;
+    }
+
+    /**
+     * Appends the message unless the segment does not have enough space left. Not thread safe, the owning log serializes appends.
+     */
+    boolean append(TbQueueMsg msg) {
+        Map<String, byte[]> headers = msg.getHeaders().getData();
+        byte[] data = msg.getData();
+        List<byte[]> headerKeys = new ArrayList<>(headers.size());
+        int length = 16 + 4 + data.length;
+        for (Map.Entry<String, byte[]> header : headers.entrySet()) {
+            byte[] key = header.getKey().getBytes(StandardCharsets.UTF_8);
+            headerKeys.add(key);
+            length += 4 + key.length + 4 + header.getValue().length;
+        }
+        int position = writePosition;
+        if (position + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+            return false;
+        }
+        writeBuffer.clear();
+        writeBuffer.position(position + RECORD_HEADER_SIZE);
+        writeBuffer.putLong(msg.getKey().getMostSignificantBits());
+        writeBuffer.putLong(msg.getKey().getLeastSignificantBits());
+        writeBuffer.putInt(headers.size());
+        int i = 0;
+        for (byte[] value : headers.values()) {
+            byte[] key = headerKeys.get(i++);
+            writeBuffer.putInt(key.length);
+            writeBuffer.put(key);
+            writeBuffer.putInt(value.length);
+            writeBuffer.put(value);
+        }
+        writeBuffer.put(data);
+        buffer.putInt(position + 4, checksum(position + RECORD_HEADER_SIZE, length));
+        buffer.putInt(position, length);
+        recordCount++;
+        lastAppendTs = System.currentTimeMillis();
+        writePosition = position + RECORD_HEADER_SIZE + length;
+        return true;
+    }
+
+    /**
+     * Returns the position of the record that follows the one at the given position.
+     */
+    int nextPosition(int position) {
+        return position + RECORD_HEADER_SIZE + readBuffer.getInt(position);
+    }
+
+    /**
+     * Reads the record at the given position. The payload of the returned message is a view of the mapped file.
+     */
+    TbFileQueueMsg read(int position, long offset) {
+        ByteBuffer record = slice(position + RECORD_HEADER_SIZE, readBuffer.getInt(position));
+        UUID key = new UUID(record.getLong(), record.getLong());
+        int headersCount = record.getInt();
+        TbQueueMsgHeaders headers = new DefaultTbQueueMsgHeaders();
+        for (int i = 0; i < headersCount; i++) {
+            byte[] headerKey = new byte[record.getInt()];
+            record.get(headerKey);
+            byte[] headerValue = new byte[record.getInt()];
+            record.get(headerValue);
+            headers.put(new String(headerKey, StandardCharsets.UTF_8), headerValue);
+        }
+        return new TbFileQueueMsg(key, headers, record.slice(), offset);
+    }
+
+    void flush() {
+        if (!deleted) {
+            buffer.force();
+        }
+    }
+
+    void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        deleted = true;
+        channel.close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private void recover() {
+        int capacity = buffer.capacity();
+        int position = 0;
+        int count = 0;
+        while (position + RECORD_HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > capacity - position - RECORD_HEADER_SIZE
+                    || checksum(position + RECORD_HEADER_SIZE, length) != buffer.getInt(position + 4)) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+            count++;
+        }
+        writePosition = position;
+        recordCount = count;
+    }
+
+    private int checksum(int position, int length) {
+        crc.reset();
+        crc.update(slice(position, length));
+        return (int) crc.getValue();
+    }
+
+    private ByteBuffer slice(int position, int length) {
+        ByteBuffer view = readBuffer.duplicate();
+        view.position(position);
+        view.limit(position + length);
+        return view.slice();
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.file;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.queue.TbQueueMsg;
+import org.thingsboard.server.queue.common.AbstractTbQueueConsumerTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the file logs of the subscribed partitions. Like Kafka, {@link #commit()} stores the offsets of everything
+ * returned by the previous polls, so uncommitted messages are delivered again after a restart.
+ */
+@Slf4j
+public class TbFileQueueConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQueueConsumerTemplate<TbFileQueueMsg, T> {
+
+    private final TbFileQueueStorage storage;
+    private final TbFileQueueDecoder<T> decoder;
+    private final String groupId;
+    private final int maxPollRecords;
+    private final Semaphore appended = new Semaphore(0);
+    private final Runnable appendListener = this::onAppend;
+    private List<TbFileLogCursor> cursors = Collections.emptyList();
+
+    @Builder
+    private TbFileQueueConsumerTemplate(TbFileQueueStorage storage, TbFileQueueDecoder<T> decoder, String groupId, String topic) {
+        super(topic);
+        this.storage = storage;
+        this.decoder = decoder;
+        this.groupId = groupId;
+        this.maxPollRecords = storage.getSettings().getMaxPollRecords();
+    }
+
+    @Override
+    protected void doSubscribe(List<String> topicNames) {
+        removeListeners();
+        List<TbFileLogCursor> newCursors = new ArrayList<>(topicNames.size());
+        for (String topicName : topicNames) {
+            TbFileLog tbFileLog = storage.getLog(topicName);
+            TbFileLogCursor cursor = new TbFileLogCursor(tbFileLog, tbFileLog.readCommittedOffset(groupId));
+            tbFileLog.seek(cursor, cursor.getOffset());
+            tbFileLog.addAppendListener(appendListener);
+            newCursors.add(cursor);
+        }
+        cursors = newCursors;
+    }
+
+    @Override
+    protected List<TbFileQueueMsg> doPoll(long durationInMillis) {
+        appended.drainPermits();
+        List<TbFileQueueMsg> records = readAll();
+        if (records.isEmpty()) {
+            try {
+                if (appended.tryAcquire(durationInMillis, TimeUnit.MILLISECONDS)) {
+                    records = readAll();
+                }
+            } catch (InterruptedException e) {
+                if (!stopped) {
+                    log.error("[{}] Poll was interrupted.", groupId, e);
+                }
+            }
+        }
+        return records;
+    }
+
+    @Override
+    protected T decode(TbFileQueueMsg record) throws IOException {
+        return decoder.decode(record);
+    }
+
+    @Override
+    protected void doCommit() {
+        for (TbFileLogCursor cursor : cursors) {
+            if (cursor.getOffset() != cursor.getCommittedOffset()) {
+                try {
+                    cursor.getLog().commit(groupId, cursor.getOffset());
+                    cursor.setCommittedOffset(cursor.getOffset());
+                } catch (IOException e) {
+                    log.warn("[{}][{}] Failed to commit offset {}", cursor.getLog().getTopic(), groupId, cursor.getOffset(), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void doUnsubscribe() {
+        removeListeners();
+        cursors = Collections.emptyList();
+    }
+
+    private List<TbFileQueueMsg> readAll() {
+        List<TbFileQueueMsg> records = new ArrayList<>();
+        for (TbFileLogCursor cursor : cursors) {
+            cursor.getLog().read(cursor, maxPollRecords, records);
+        }
+        return records;
+    }
+
+    private void removeListeners() {
+        cursors.forEach(cursor -> cursor.getLog().removeAppendListener(appendListener));
+    }
+
+    private void onAppend() {
+        if (appended.availablePermits() == 0) {
+            appended.release();
+        }
+    }
+}
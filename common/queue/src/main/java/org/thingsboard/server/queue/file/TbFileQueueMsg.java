@@ -0,0 +1,57 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.file;
+
+import lombok.Getter;
+import org.thingsboard.server.queue.TbQueueMsg;
+import org.thingsboard.server.queue.TbQueueMsgHeaders;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * A record read from the file log. The payload is a read-only view of the mapped segment,
+ * so decoders should parse {@link #getDataBuffer()} directly instead of copying it with {@link #getData()}.
+ */
+public class TbFileQueueMsg implements TbQueueMsg {
+
+    @Getter
+    private final UUID key;
+    @Getter
+    private final TbQueueMsgHeaders headers;
+    private final ByteBuffer data;
+    @Getter
+    private final long offset;
+
+    public TbFileQueueMsg(UUID key, TbQueueMsgHeaders headers, ByteBuffer data, long offset) {
+        this.key = key;
+        this.headers = headers;
+        this.data = data;
+        this.offset = offset;
+    }
+
+    public ByteBuffer getDataBuffer() {
+        return data.duplicate();
+    }
+
+    @Override
+    public byte[] getData() {
+        ByteBuffer buffer = data.duplicate();
+        byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+}
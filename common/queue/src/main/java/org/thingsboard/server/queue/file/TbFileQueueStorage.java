@@ -0,0 +1,94 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.file;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+@ConditionalOnExpression("'${queue.type:null}'=='file'")
+public class TbFileQueueStorage {
+
+    @Getter
+    private final TbFileQueueSettings settings;
+    private final ConcurrentMap<String, TbFileLog> logs = new ConcurrentHashMap<>();
+    private File root;
+    private ScheduledExecutorService scheduler;
+
+    public TbFileQueueStorage(TbFileQueueSettings settings) {
+        this.settings = settings;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = new File(settings.getDir());
+        Files.createDirectories(root.toPath());
+        log.info("Using file queue storage: {}", root.getAbsolutePath());
+        scheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("file-queue-scheduler"));
+        if (settings.getFlushIntervalMs() > 0) {
+            scheduler.scheduleWithFixedDelay(this::flush, settings.getFlushIntervalMs(), settings.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleWithFixedDelay(this::applyRetention, settings.getRetentionCheckIntervalMs(), settings.getRetentionCheckIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        logs.values().forEach(TbFileLog::close);
+    }
+
+    public TbFileLog getLog(String topic) {
+        return logs.computeIfAbsent(topic, t -> {
+            try {
+                return new TbFileLog(t, new File(root, t), settings);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to open log for topic " + t, e);
+            }
+        });
+    }
+
+    private void flush() {
+        logs.values().forEach(tbFileLog -> {
+            try {
+                tbFileLog.flush();
+            } catch (Exception e) {
+                log.warn("[{}] Failed to flush log", tbFileLog.getTopic(), e);
+            }
+        });
+    }
+
+    private void applyRetention() {
+        long ts = System.currentTimeMillis();
+        logs.values().forEach(tbFileLog -> tbFileLog.applyRetention(ts));
+    }
+}
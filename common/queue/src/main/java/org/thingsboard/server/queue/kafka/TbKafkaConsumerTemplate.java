@@ -17,10 +17,14 @@ package org.thingsboard.server.queue.kafka;
 
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
 import org.thingsboard.server.queue.TbQueueAdmin;
 import org.thingsboard.server.queue.TbQueueMsg;
 import org.thingsboard.server.queue.common.AbstractTbQueueConsumerTemplate;
@@ -28,9 +32,15 @@ import org.thingsboard.server.queue.common.AbstractTbQueueConsumerTemplate;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * Created by ashvayka on 24.09.18.
@@ -39,15 +49,29 @@ import java.util.Properties;
 public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQueueConsumerTemplate<ConsumerRecord<String, byte[]>, T> {
 
     private final TbQueueAdmin admin;
-    private final KafkaConsumer<String, byte[]> consumer;
+    private final Consumer<String, byte[]> consumer;
     private final TbKafkaDecoder<T> decoder;
+    private final boolean autoCommit;
+    private final TreeMap<Long, Map<TopicPartition, OffsetAndMetadata>> pollOffsets = new TreeMap<>();
+    private long lastPollId;
 
     @Builder
     private TbKafkaConsumerTemplate(TbKafkaSettings settings, TbKafkaDecoder<T> decoder,
                                     String clientId, String groupId, String topic,
                                     boolean autoCommit, int autoCommitIntervalMs,
                                     TbQueueAdmin admin) {
+        this(topic, new KafkaConsumer<>(toProps(settings, clientId, groupId, autoCommit, autoCommitIntervalMs)), decoder, autoCommit, admin);
+    }
+
+    TbKafkaConsumerTemplate(String topic, Consumer<String, byte[]> consumer, TbKafkaDecoder<T> decoder, boolean autoCommit, TbQueueAdmin admin) {
         super(topic);
+        this.admin = admin;
+        this.consumer = consumer;
+        this.decoder = decoder;
+        this.autoCommit = autoCommit;
+    }
+
+    private static Properties toProps(TbKafkaSettings settings, String clientId, String groupId, boolean autoCommit, int autoCommitIntervalMs) {
         Properties props = settings.toProps();
         props.put(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
         if (groupId != null) {
@@ -63,16 +87,24 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
         props.put(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG, autoCommitIntervalMs);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringDeserializer");
         props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.ByteArrayDeserializer");
-        this.admin = admin;
-        this.consumer = new KafkaConsumer<>(props);
-        this.decoder = decoder;
+        return props;
     }
 
     @Override
     protected void doSubscribe(List<String> topicNames) {
         if (!topicNames.isEmpty()) {
             topicNames.forEach(admin::createTopicIfNotExists);
-            consumer.subscribe(topicNames);
+            pollOffsets.clear();
+            consumer.subscribe(topicNames, new ConsumerRebalanceListener() {
+                @Override
+                public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                    dropPollOffsets(partitions);
+                }
+
+                @Override
+                public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                }
+            });
         } else {
             consumer.unsubscribe();
         }
@@ -86,6 +118,15 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
         } else {
             List<ConsumerRecord<String, byte[]>> recordList = new ArrayList<>(256);
             records.forEach(recordList::add);
+            lastPollId++;
+            if (!autoCommit) {
+                Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+                for (TopicPartition tp : records.partitions()) {
+                    List<ConsumerRecord<String, byte[]>> partitionRecords = records.records(tp);
+                    offsets.put(tp, new OffsetAndMetadata(partitionRecords.get(partitionRecords.size() - 1).offset() + 1));
+                }
+                pollOffsets.put(lastPollId, offsets);
+            }
             return recordList;
         }
     }
@@ -97,9 +138,64 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
 
     @Override
     protected void doCommit() {
+        pollOffsets.clear();
         consumer.commitAsync();
     }
 
+    @Override
+    public boolean isPartialCommitSupported() {
+        return !autoCommit;
+    }
+
+    @Override
+    public long getLastPollId() {
+        consumerLock.lock();
+        try {
+            return lastPollId;
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    @Override
+    public void commit(long pollId) {
+        consumerLock.lock();
+        try {
+            SortedMap<Long, Map<TopicPartition, OffsetAndMetadata>> committed = pollOffsets.headMap(pollId, true);
+            if (committed.isEmpty()) {
+                return;
+            }
+            Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+            committed.values().forEach(offsets::putAll);
+            committed.clear();
+            if (offsets.isEmpty()) {
+                return;
+            }
+            consumer.commitAsync(offsets, (result, e) -> {
+                if (e != null) {
+                    log.debug("[{}] Failed to commit offsets: {}", getTopic(), result, e);
+                }
+            });
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    /**
+     * Forgets the uncommitted offsets of the revoked partitions, so a partial commit can't move back the offsets
+     * of the partitions that are already consumed by another consumer. Invoked from the poll, under the consumer lock.
+     */
+    void dropPollOffsets(Collection<TopicPartition> partitions) {
+        Iterator<Map<TopicPartition, OffsetAndMetadata>> iterator = pollOffsets.values().iterator();
+        while (iterator.hasNext()) {
+            Map<TopicPartition, OffsetAndMetadata> offsets = iterator.next();
+            offsets.keySet().removeAll(partitions);
+            if (offsets.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
     @Override
     protected void doUnsubscribe() {
         if (consumer != null) {
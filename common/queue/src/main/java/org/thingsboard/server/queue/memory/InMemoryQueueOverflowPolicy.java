@@ -0,0 +1,33 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.memory;
+
+public enum InMemoryQueueOverflowPolicy {
+
+    /**
+     * New message is rejected and the producer callback fails.
+     */
+    REJECT,
+    /**
+     * The oldest message of the topic is dropped to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * The producer waits up to the offer timeout for free space and the message is rejected afterwards.
+     */
+    BLOCK
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.memory;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wakes up a consumer waiting for messages in any of its subscribed topics.
+ */
+final class InMemoryQueueSignal {
+
+    private final Semaphore semaphore = new Semaphore(0);
+
+    void signal() {
+        if (semaphore.availablePermits() == 0) {
+            semaphore.release();
+        }
+    }
+
+    void reset() {
+        semaphore.drainPermits();
+    }
+
+    boolean await(long timeoutMs) throws InterruptedException {
+        return semaphore.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
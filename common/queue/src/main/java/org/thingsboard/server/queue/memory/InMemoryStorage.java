@@ -17,29 +17,42 @@ package org.thingsboard.server.queue.memory;
 
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.server.queue.TbQueueMsg;
+import org.thingsboard.server.queue.settings.TbQueueInMemorySettings;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
 
 @Slf4j
 public final class InMemoryStorage {
-    private static InMemoryStorage instance;
-    private final ConcurrentHashMap<String, BlockingQueue<TbQueueMsg>> storage;
+    private static final int DEFAULT_MAX_POLL_RECORDS = 1000;
+
+    private static volatile InMemoryStorage instance;
+    private final ConcurrentHashMap<String, InMemoryTopicQueue> storage;
+
+    private volatile int capacity;
+    private volatile InMemoryQueueOverflowPolicy overflowPolicy = InMemoryQueueOverflowPolicy.REJECT;
+    private volatile long offerTimeoutMs;
+    private volatile int maxPollRecords = DEFAULT_MAX_POLL_RECORDS;
 
     private InMemoryStorage() {
         storage = new ConcurrentHashMap<>();
     }
 
+    /**
+     * Applies the settings to topics created afterwards.
+     */
+    public void configure(TbQueueInMemorySettings settings) {
+        this.capacity = settings.getCapacity();
+        this.overflowPolicy = settings.getOverflowPolicy();
+        this.offerTimeoutMs = settings.getOfferTimeoutMs();
+        this.maxPollRecords = settings.getMaxPollRecords() > 0 ? settings.getMaxPollRecords() : DEFAULT_MAX_POLL_RECORDS;
+    }
+
     public void printStats() {
-        storage.forEach((topic, queue) -> {
-            if (queue.size() > 0) {
-                log.debug("[{}] Queue Size [{}]", topic, queue.size());
-            }
-        });
+        storage.values().forEach(InMemoryTopicQueue::printStats);
     }
 
     public static InMemoryStorage getInstance() {
@@ -54,34 +67,54 @@ public final class InMemoryStorage {
     }
 
     public boolean put(String topic, TbQueueMsg msg) {
-        return storage.computeIfAbsent(topic, (t) -> new LinkedBlockingQueue<>()).add(msg);
+        return getOrCreateTopic(topic).put(msg);
     }
 
-    public <T extends TbQueueMsg> List<T> get(String topic) throws InterruptedException {
-        if (storage.containsKey(topic)) {
-            List<T> entities;
-            T first = (T) storage.get(topic).poll();
-            if (first != null) {
-                entities = new ArrayList<>();
-                entities.add(first);
-                List<TbQueueMsg> otherList = new ArrayList<>();
-                storage.get(topic).drainTo(otherList, 999);
-                for (TbQueueMsg other : otherList) {
-                    entities.add((T) other);
-                }
-            } else {
-                entities = Collections.emptyList();
-            }
+    public <T extends TbQueueMsg> List<T> get(String topic) {
+        InMemoryTopicQueue topicQueue = storage.get(topic);
+        if (topicQueue != null) {
+            List<T> entities = new ArrayList<>();
+            topicQueue.drainTo(entities, maxPollRecords);
             return entities;
         }
         return Collections.emptyList();
     }
 
+    <T extends TbQueueMsg> void drainTo(Collection<String> topics, List<T> result) {
+        for (String topic : topics) {
+            InMemoryTopicQueue topicQueue = storage.get(topic);
+            if (topicQueue != null) {
+                topicQueue.drainTo(result, maxPollRecords);
+            }
+        }
+    }
+
+    void subscribe(Collection<String> topics, InMemoryQueueSignal signal) {
+        topics.forEach(topic -> getOrCreateTopic(topic).addSignal(signal));
+    }
+
+    void unsubscribe(Collection<String> topics, InMemoryQueueSignal signal) {
+        topics.forEach(topic -> {
+            InMemoryTopicQueue topicQueue = storage.get(topic);
+            if (topicQueue != null) {
+                topicQueue.removeSignal(signal);
+            }
+        });
+    }
+
+    private InMemoryTopicQueue getOrCreateTopic(String topic) {
+        InMemoryTopicQueue topicQueue = storage.get(topic);
+        if (topicQueue == null) {
+            topicQueue = storage.computeIfAbsent(topic, t -> new InMemoryTopicQueue(t, capacity, overflowPolicy, offerTimeoutMs));
+        }
+        return topicQueue;
+    }
+
     /**
      * Used primarily for testing.
      */
     public void cleanup() {
-        storage.clear();
+        storage.values().forEach(InMemoryTopicQueue::clear);
     }
 
 }
@@ -20,6 +20,7 @@ import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
 import org.thingsboard.server.queue.TbQueueConsumer;
 import org.thingsboard.server.queue.TbQueueMsg;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -28,7 +29,8 @@ import java.util.stream.Collectors;
 @Slf4j
 public class InMemoryTbQueueConsumer<T extends TbQueueMsg> implements TbQueueConsumer<T> {
     private final InMemoryStorage storage = InMemoryStorage.getInstance();
-    private volatile Set<TopicPartitionInfo> partitions;
+    private final InMemoryQueueSignal signal = new InMemoryQueueSignal();
+    private volatile List<String> topics = Collections.emptyList();
     private volatile boolean stopped;
     private volatile boolean subscribed;
 
@@ -46,46 +48,42 @@ public class InMemoryTbQueueConsumer<T extends TbQueueMsg> implements TbQueueCon
 
     @Override
     public void subscribe() {
-        partitions = Collections.singleton(new TopicPartitionInfo(topic, null, null, true));
-        subscribed = true;
+        subscribe(Collections.singleton(new TopicPartitionInfo(topic, null, null, true)));
     }
 
     @Override
-    public void subscribe(Set<TopicPartitionInfo> partitions) {
-        this.partitions = partitions;
+    public synchronized void subscribe(Set<TopicPartitionInfo> partitions) {
+        List<String> newTopics = partitions.stream().map(TopicPartitionInfo::getFullTopicName).collect(Collectors.toList());
+        storage.unsubscribe(topics, signal);
+        storage.subscribe(newTopics, signal);
+        topics = newTopics;
         subscribed = true;
     }
 
     @Override
-    public void unsubscribe() {
+    public synchronized void unsubscribe() {
         stopped = true;
+        storage.unsubscribe(topics, signal);
     }
 
     @Override
     public List<T> poll(long durationInMillis) {
         if (subscribed) {
-            List<T> messages = partitions
-                    .stream()
-                    .map(tpi -> {
-                        try {
-                            return storage.get(tpi.getFullTopicName());
-                        } catch (InterruptedException e) {
-                            if (!stopped) {
-                                log.error("Queue was interrupted.", e);
-                            }
-                            return Collections.emptyList();
-                        }
-                    })
-                    .flatMap(List::stream)
-                    .map(msg -> (T) msg).collect(Collectors.toList());
+            signal.reset();
+            List<String> currentTopics = topics;
+            List<T> messages = new ArrayList<>();
+            storage.drainTo(currentTopics, messages);
             if (messages.size() > 0) {
                 return messages;
             }
             try {
-                Thread.sleep(durationInMillis);
+                if (signal.await(durationInMillis)) {
+                    storage.drainTo(currentTopics, messages);
+                    return messages;
+                }
             } catch (InterruptedException e) {
                 if (!stopped) {
-                    log.error("Failed to sleep.", e);
+                    log.error("Queue was interrupted.", e);
                 }
             }
         }
@@ -0,0 +1,159 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.memory;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.queue.TbQueueMsg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single partition of the in-memory queue. Bounded topics are backed by an array ring buffer.
+ */
+@Slf4j
+final class InMemoryTopicQueue {
+
+    @Getter
+    private final String topic;
+    private final int capacity;
+    private final InMemoryQueueOverflowPolicy overflowPolicy;
+    private final long offerTimeoutMs;
+    private final BlockingQueue<Entry> queue;
+    private final Set<InMemoryQueueSignal> signals = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger added = new AtomicInteger();
+    private final AtomicInteger consumed = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final LongAdder totalWaitTime = new LongAdder();
+    private final LongAccumulator maxWaitTime = new LongAccumulator(Long::max, 0L);
+
+    InMemoryTopicQueue(String topic, int capacity, InMemoryQueueOverflowPolicy overflowPolicy, long offerTimeoutMs) {
+        this.topic = topic;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.queue = capacity > 0 ? new ArrayBlockingQueue<>(capacity) : new LinkedBlockingQueue<>();
+    }
+
+    boolean put(TbQueueMsg msg) {
+        Entry entry = new Entry(msg, System.currentTimeMillis());
+        boolean result;
+        if (capacity <= 0) {
+            result = queue.add(entry);
+        } else {
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    while (!queue.offer(entry)) {
+                        if (queue.poll() != null) {
+                            dropped.incrementAndGet();
+                        }
+                    }
+                    result = true;
+                    break;
+                case BLOCK:
+                    try {
+                        result = queue.offer(entry, offerTimeoutMs, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        result = false;
+                    }
+                    break;
+                default:
+                    result = queue.offer(entry);
+            }
+        }
+        if (result) {
+            added.incrementAndGet();
+            signals.forEach(InMemoryQueueSignal::signal);
+        } else {
+            rejected.incrementAndGet();
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends TbQueueMsg> void drainTo(List<T> result, int maxRecords) {
+        List<Entry> entries = new ArrayList<>(Math.min(maxRecords, Math.max(queue.size(), 1)));
+        queue.drainTo(entries, maxRecords);
+        if (!entries.isEmpty()) {
+            long ts = System.currentTimeMillis();
+            for (Entry entry : entries) {
+                long waitTime = ts - entry.getTs();
+                totalWaitTime.add(waitTime);
+                maxWaitTime.accumulate(waitTime);
+                result.add((T) entry.getMsg());
+            }
+            consumed.addAndGet(entries.size());
+        }
+    }
+
+    void addSignal(InMemoryQueueSignal signal) {
+        signals.add(signal);
+        if (!queue.isEmpty()) {
+            signal.signal();
+        }
+    }
+
+    void removeSignal(InMemoryQueueSignal signal) {
+        signals.remove(signal);
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    void printStats() {
+        int addedCnt = added.getAndSet(0);
+        int consumedCnt = consumed.getAndSet(0);
+        int rejectedCnt = rejected.getAndSet(0);
+        int droppedCnt = dropped.getAndSet(0);
+        long waitTime = totalWaitTime.sumThenReset();
+        long maxWait = maxWaitTime.getThenReset();
+        int size = queue.size();
+        if (size > 0 || addedCnt > 0 || rejectedCnt > 0) {
+            log.debug("[{}] Queue Size [{}] capacity [{}] added [{}] consumed [{}] rejected [{}] dropped [{}] avgWaitMs [{}] maxWaitMs [{}]",
+                    topic, size, capacity > 0 ? capacity : "unbounded", addedCnt, consumedCnt, rejectedCnt, droppedCnt,
+                    consumedCnt > 0 ? waitTime / consumedCnt : 0, maxWait);
+        }
+    }
+
+    void clear() {
+        queue.clear();
+    }
+
+    @Getter
+    private static final class Entry {
+        private final TbQueueMsg msg;
+        private final long ts;
+
+        private Entry(TbQueueMsg msg, long ts) {
+            this.msg = msg;
+            this.ts = ts;
+        }
+    }
+}
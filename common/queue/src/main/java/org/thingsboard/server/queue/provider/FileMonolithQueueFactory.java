@@ -0,0 +1,186 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.provider;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.gen.js.JsInvokeProtos;
+import org.thingsboard.server.gen.transport.TransportProtos.ToCoreMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ToCoreNotificationMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineNotificationMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ToTransportMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ToUsageStatsServiceMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.TransportApiRequestMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.TransportApiResponseMsg;
+import org.thingsboard.server.queue.TbQueueConsumer;
+import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.TbQueueRequestTemplate;
+import org.thingsboard.server.queue.common.TbProtoJsQueueMsg;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.discovery.PartitionService;
+import org.thingsboard.server.queue.discovery.TbServiceInfoProvider;
+import org.thingsboard.server.queue.file.TbFileQueueConsumerTemplate;
+import org.thingsboard.server.queue.file.TbFileQueueProducerTemplate;
+import org.thingsboard.server.queue.file.TbFileQueueStorage;
+import org.thingsboard.server.queue.memory.InMemoryStorage;
+import org.thingsboard.server.queue.memory.InMemoryTbQueueConsumer;
+import org.thingsboard.server.queue.memory.InMemoryTbQueueProducer;
+import org.thingsboard.server.queue.settings.TbQueueCoreSettings;
+import org.thingsboard.server.queue.settings.TbQueueInMemorySettings;
+import org.thingsboard.server.queue.settings.TbQueueRuleEngineSettings;
+import org.thingsboard.server.queue.settings.TbQueueTransportApiSettings;
+import org.thingsboard.server.queue.settings.TbQueueTransportNotificationSettings;
+import org.thingsboard.server.queue.settings.TbRuleEngineQueueConfiguration;
+
+/**
+ * Persists the rule engine, core and usage stats messages in the local file log, so they survive a restart.
+ * Notifications and transport API calls are only meaningful to the running process and stay in memory.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("'${queue.type:null}'=='file' && '${service.type:null}'=='monolith'")
+public class FileMonolithQueueFactory implements TbCoreQueueFactory, TbRuleEngineQueueFactory {
+
+    private final PartitionService partitionService;
+    private final TbQueueCoreSettings coreSettings;
+    private final TbServiceInfoProvider serviceInfoProvider;
+    private final TbQueueRuleEngineSettings ruleEngineSettings;
+    private final TbQueueTransportApiSettings transportApiSettings;
+    private final TbQueueTransportNotificationSettings transportNotificationSettings;
+    private final TbFileQueueStorage fileStorage;
+    private final InMemoryStorage inMemoryStorage;
+
+    public FileMonolithQueueFactory(PartitionService partitionService, TbQueueCoreSettings coreSettings,
+                                    TbQueueRuleEngineSettings ruleEngineSettings,
+                                    TbServiceInfoProvider serviceInfoProvider,
+                                    TbQueueTransportApiSettings transportApiSettings,
+                                    TbQueueTransportNotificationSettings transportNotificationSettings,
+                                    TbQueueInMemorySettings inMemorySettings,
+                                    TbFileQueueStorage fileStorage) {
+        this.partitionService = partitionService;
+        this.coreSettings = coreSettings;
+        this.serviceInfoProvider = serviceInfoProvider;
+        this.ruleEngineSettings = ruleEngineSettings;
+        this.transportApiSettings = transportApiSettings;
+        this.transportNotificationSettings = transportNotificationSettings;
+        this.fileStorage = fileStorage;
+        this.inMemoryStorage = InMemoryStorage.getInstance();
+        this.inMemoryStorage.configure(inMemorySettings);
+    }
+
+    @Override
+    public TbQueueProducer<TbProtoQueueMsg<ToTransportMsg>> createTransportNotificationsMsgProducer() {
+        return new InMemoryTbQueueProducer<>(transportNotificationSettings.getNotificationsTopic());
+    }
+
+    @Override
+    public TbQueueProducer<TbProtoQueueMsg<ToRuleEngineMsg>> createRuleEngineMsgProducer() {
+        TbFileQueueProducerTemplate.TbFileQueueProducerTemplateBuilder<TbProtoQueueMsg<ToRuleEngineMsg>> producerBuilder = TbFileQueueProducerTemplate.builder();
+        producerBuilder.storage(fileStorage);
+        producerBuilder.defaultTopic(ruleEngineSettings.getTopic());
+        return producerBuilder.build();
+    }
+
+    @Override
+    public TbQueueProducer<TbProtoQueueMsg<ToRuleEngineNotificationMsg>> createRuleEngineNotificationsMsgProducer() {
+        return new InMemoryTbQueueProducer<>(ruleEngineSettings.getTopic());
+    }
+
+    @Override
+    public TbQueueProducer<TbProtoQueueMsg<ToCoreMsg>> createTbCoreMsgProducer() {
+        TbFileQueueProducerTemplate.TbFileQueueProducerTemplateBuilder<TbProtoQueueMsg<ToCoreMsg>> producerBuilder = TbFileQueueProducerTemplate.builder();
+        producerBuilder.storage(fileStorage);
+        producerBuilder.defaultTopic(coreSettings.getTopic());
+        return producerBuilder.build();
+    }
+
+    @Override
+    public TbQueueProducer<TbProtoQueueMsg<ToCoreNotificationMsg>> createTbCoreNotificationsMsgProducer() {
+        return new InMemoryTbQueueProducer<>(coreSettings.getTopic());
+    }
+
+    @Override
+    public TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> createToRuleEngineMsgConsumer(TbRuleEngineQueueConfiguration configuration) {
+        TbFileQueueConsumerTemplate.TbFileQueueConsumerTemplateBuilder<TbProtoQueueMsg<ToRuleEngineMsg>> consumerBuilder = TbFileQueueConsumerTemplate.builder();
+        consumerBuilder.storage(fileStorage);
+        consumerBuilder.topic(ruleEngineSettings.getTopic());
+        consumerBuilder.groupId("re-" + configuration.getName() + "-consumer");
+        consumerBuilder.decoder(msg -> new TbProtoQueueMsg<>(msg.getKey(), ToRuleEngineMsg.parseFrom(msg.getDataBuffer()), msg.getHeaders()));
+        return consumerBuilder.build();
+    }
+
+    @Override
+    public TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineNotificationMsg>> createToRuleEngineNotificationsMsgConsumer() {
+        return new InMemoryTbQueueConsumer<>(partitionService.getNotificationsTopic(ServiceType.TB_RULE_ENGINE, serviceInfoProvider.getServiceId()).getFullTopicName());
+    }
+
+    @Override
+    public TbQueueConsumer<TbProtoQueueMsg<ToCoreMsg>> createToCoreMsgConsumer() {
+        TbFileQueueConsumerTemplate.TbFileQueueConsumerTemplateBuilder<TbProtoQueueMsg<ToCoreMsg>> consumerBuilder = TbFileQueueConsumerTemplate.builder();
+        consumerBuilder.storage(fileStorage);
+        consumerBuilder.topic(coreSettings.getTopic());
+        consumerBuilder.groupId("monolith-core-consumer");
+        consumerBuilder.decoder(msg -> new TbProtoQueueMsg<>(msg.getKey(), ToCoreMsg.parseFrom(msg.getDataBuffer()), msg.getHeaders()));
+        return consumerBuilder.build();
+    }
+
+    @Override
+    public TbQueueConsumer<TbProtoQueueMsg<ToCoreNotificationMsg>> createToCoreNotificationsMsgConsumer() {
+        return new InMemoryTbQueueConsumer<>(partitionService.getNotificationsTopic(ServiceType.TB_CORE, serviceInfoProvider.getServiceId()).getFullTopicName());
+    }
+
+    @Override
+    public TbQueueConsumer<TbProtoQueueMsg<TransportApiRequestMsg>> createTransportApiRequestConsumer() {
+        return new InMemoryTbQueueConsumer<>(transportApiSettings.getRequestsTopic());
+    }
+
+    @Override
+    public TbQueueProducer<TbProtoQueueMsg<TransportApiResponseMsg>> createTransportApiResponseProducer() {
+        return new InMemoryTbQueueProducer<>(transportApiSettings.getResponsesTopic());
+    }
+
+    @Override
+    public TbQueueRequestTemplate<TbProtoJsQueueMsg<JsInvokeProtos.RemoteJsRequest>, TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> createRemoteJsRequestTemplate() {
+        return null;
+    }
+
+    @Override
+    public TbQueueConsumer<TbProtoQueueMsg<ToUsageStatsServiceMsg>> createToUsageStatsServiceMsgConsumer() {
+        TbFileQueueConsumerTemplate.TbFileQueueConsumerTemplateBuilder<TbProtoQueueMsg<ToUsageStatsServiceMsg>> consumerBuilder = TbFileQueueConsumerTemplate.builder();
+        consumerBuilder.storage(fileStorage);
+        consumerBuilder.topic(coreSettings.getUsageStatsTopic());
+        consumerBuilder.groupId("monolith-us-consumer");
+        consumerBuilder.decoder(msg -> new TbProtoQueueMsg<>(msg.getKey(), ToUsageStatsServiceMsg.parseFrom(msg.getDataBuffer()), msg.getHeaders()));
+        return consumerBuilder.build();
+    }
+
+    @Override
+    public TbQueueProducer<TbProtoQueueMsg<ToUsageStatsServiceMsg>> createToUsageStatsServiceMsgProducer() {
+        TbFileQueueProducerTemplate.TbFileQueueProducerTemplateBuilder<TbProtoQueueMsg<ToUsageStatsServiceMsg>> producerBuilder = TbFileQueueProducerTemplate.builder();
+        producerBuilder.storage(fileStorage);
+        producerBuilder.defaultTopic(coreSettings.getUsageStatsTopic());
+        return producerBuilder.build();
+    }
+
+    @Scheduled(fixedRateString = "${queue.in_memory.stats.print-interval-ms:60000}")
+    private void printInMemoryStats() {
+        inMemoryStorage.printStats();
+    }
+}
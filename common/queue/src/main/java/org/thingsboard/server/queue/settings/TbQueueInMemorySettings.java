@@ -0,0 +1,38 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.settings;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.thingsboard.server.queue.memory.InMemoryQueueOverflowPolicy;
+
+@Data
+@Component
+public class TbQueueInMemorySettings {
+
+    @Value("${queue.in_memory.capacity:0}")
+    private int capacity;
+
+    @Value("${queue.in_memory.overflow_policy:REJECT}")
+    private InMemoryQueueOverflowPolicy overflowPolicy;
+
+    @Value("${queue.in_memory.offer_timeout_ms:100}")
+    private long offerTimeoutMs;
+
+    @Value("${queue.in_memory.max_poll_records:1000}")
+    private int maxPollRecords;
+}
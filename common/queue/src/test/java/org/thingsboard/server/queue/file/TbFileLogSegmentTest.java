@@ -0,0 +1,135 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.file;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.thingsboard.server.queue.common.DefaultTbQueueMsgHeaders;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+public class TbFileLogSegmentTest {
+
+    private static final int CAPACITY = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private TbFileLogSegment segment;
+
+    @Before
+    public void before() throws IOException {
+        dir = folder.newFolder();
+        segment = TbFileLogSegment.open(dir, 100L, CAPACITY);
+    }
+
+    @After
+    public void after() throws IOException {
+        segment.close();
+    }
+
+    @Test
+    public void testAppendAndRead() {
+        UUID key = UUID.randomUUID();
+        DefaultTbQueueMsgHeaders headers = new DefaultTbQueueMsgHeaders();
+        headers.put("header", "value".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(segment.isEmpty());
+        Assert.assertTrue(segment.append(new TbFileQueueMsg(key, headers, ByteBuffer.wrap(bytes("first")), 0)));
+        Assert.assertTrue(segment.append(msg("second")));
+
+        Assert.assertFalse(segment.isEmpty());
+        Assert.assertEquals(102L, segment.getNextOffset());
+
+        TbFileQueueMsg first = segment.read(0, 100L);
+        Assert.assertEquals(key, first.getKey());
+        Assert.assertEquals(100L, first.getOffset());
+        Assert.assertArrayEquals(bytes("value"), first.getHeaders().get("header"));
+        Assert.assertArrayEquals(bytes("first"), first.getData());
+
+        int secondPosition = segment.nextPosition(0);
+        TbFileQueueMsg second = segment.read(secondPosition, 101L);
+        Assert.assertArrayEquals(bytes("second"), second.getData());
+        Assert.assertEquals(segment.getWritePosition(), segment.nextPosition(secondPosition));
+    }
+
+    @Test
+    public void testAppendFailsWhenSegmentIsFull() {
+        int count = 0;
+        while (segment.append(msg("payload"))) {
+            count++;
+        }
+        Assert.assertTrue(count > 0);
+        Assert.assertEquals(100L + count, segment.getNextOffset());
+        Assert.assertTrue(segment.getWritePosition() <= CAPACITY);
+    }
+
+    @Test
+    public void testRecoverAfterReopen() throws IOException {
+        segment.append(msg("first"));
+        segment.append(msg("second"));
+        segment.close();
+
+        segment = TbFileLogSegment.open(dir, 100L, CAPACITY);
+
+        Assert.assertEquals(102L, segment.getNextOffset());
+        Assert.assertArrayEquals(bytes("second"), segment.read(segment.nextPosition(0), 101L).getData());
+        Assert.assertTrue(segment.append(msg("third")));
+        Assert.assertEquals(103L, segment.getNextOffset());
+    }
+
+    @Test
+    public void testTornTailIsDiscardedOnRecover() throws IOException {
+        segment.append(msg("first"));
+        segment.append(msg("second"));
+        int secondPosition = segment.nextPosition(0);
+        segment.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(segment.getFile(), "rw")) {
+            // corrupt the payload of the second record, so its checksum no longer matches
+            file.seek(secondPosition + TbFileLogSegment.RECORD_HEADER_SIZE + 20);
+            file.write(0xFF);
+        }
+        segment = TbFileLogSegment.open(dir, 100L, CAPACITY);
+
+        Assert.assertEquals(101L, segment.getNextOffset());
+        Assert.assertEquals(secondPosition, segment.getWritePosition());
+        Assert.assertTrue(segment.append(msg("replacement")));
+        Assert.assertArrayEquals(bytes("replacement"), segment.read(secondPosition, 101L).getData());
+    }
+
+    @Test
+    public void testParseBaseOffset() {
+        Assert.assertEquals(100L, TbFileLogSegment.parseBaseOffset(segment.getFile()));
+    }
+
+    private static TbFileQueueMsg msg(String data) {
+        return new TbFileQueueMsg(UUID.randomUUID(), new DefaultTbQueueMsgHeaders(), ByteBuffer.wrap(bytes(data)), 0);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.file;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.thingsboard.server.queue.common.DefaultTbQueueMsgHeaders;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class TbFileLogTest {
+
+    private static final long RETENTION_MS = 60000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private TbFileQueueSettings settings;
+    private TbFileLog log;
+
+    @Before
+    public void before() throws IOException {
+        dir = folder.newFolder();
+        settings = new TbFileQueueSettings();
+        settings.setSegmentSizeBytes(256);
+        settings.setRetentionMs(RETENTION_MS);
+        settings.setRetentionSegments(0);
+        log = new TbFileLog("test", dir, settings);
+    }
+
+    @After
+    public void after() {
+        log.close();
+    }
+
+    @Test
+    public void testAppendReadAcrossSegments() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(i, log.append(msg(i)));
+        }
+        Assert.assertTrue(log.getSegmentCount() > 1);
+
+        TbFileLogCursor cursor = new TbFileLogCursor(log, 0L);
+        List<TbFileQueueMsg> result = new ArrayList<>();
+        Assert.assertEquals(15, log.read(cursor, 15, result));
+        Assert.assertEquals(5, log.read(cursor, 15, result));
+        Assert.assertEquals(0, log.read(cursor, 15, result));
+
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(i, result.get(i).getOffset());
+            Assert.assertArrayEquals(data(i), result.get(i).getData());
+        }
+        Assert.assertEquals(20L, cursor.getOffset());
+    }
+
+    @Test
+    public void testSeek() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            log.append(msg(i));
+        }
+        TbFileLogCursor cursor = new TbFileLogCursor(log, 0L);
+        log.seek(cursor, 13L);
+
+        List<TbFileQueueMsg> result = new ArrayList<>();
+        log.read(cursor, 1, result);
+        Assert.assertEquals(13L, result.get(0).getOffset());
+
+        log.seek(cursor, 100L);
+        Assert.assertEquals(20L, cursor.getOffset());
+    }
+
+    @Test
+    public void testRestartRecoversRecordsAndCommittedOffsets() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            log.append(msg(i));
+        }
+        log.commit("group", 7L);
+        log.close();
+
+        log = new TbFileLog("test", dir, settings);
+
+        Assert.assertEquals(7L, log.readCommittedOffset("group"));
+        Assert.assertEquals(0L, log.readCommittedOffset("other"));
+        Assert.assertEquals(20L, log.append(msg(20)));
+
+        TbFileLogCursor cursor = new TbFileLogCursor(log, 7L);
+        log.seek(cursor, 7L);
+        List<TbFileQueueMsg> result = new ArrayList<>();
+        Assert.assertEquals(14, log.read(cursor, 100, result));
+        Assert.assertArrayEquals(data(7), result.get(0).getData());
+        Assert.assertArrayEquals(data(20), result.get(13).getData());
+    }
+
+    @Test
+    public void testRetentionRemovesExpiredSegments() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            log.append(msg(i));
+        }
+        log.applyRetention(System.currentTimeMillis() + RETENTION_MS + 1);
+
+        Assert.assertEquals(1, log.getSegmentCount());
+        // the cursor moves from the removed records to the earliest available one
+        TbFileLogCursor cursor = new TbFileLogCursor(log, 0L);
+        List<TbFileQueueMsg> result = new ArrayList<>();
+        log.read(cursor, 100, result);
+        Assert.assertFalse(result.isEmpty());
+        Assert.assertEquals(19L, result.get(result.size() - 1).getOffset());
+        Assert.assertTrue(result.get(0).getOffset() > 0);
+    }
+
+    @Test
+    public void testRetentionBySegmentCount() throws IOException {
+        settings.setRetentionSegments(2);
+        for (int i = 0; i < 20; i++) {
+            log.append(msg(i));
+        }
+        log.applyRetention(System.currentTimeMillis());
+        Assert.assertEquals(2, log.getSegmentCount());
+    }
+
+    @Test
+    public void testRetentionKeepsUncommittedSegments() throws IOException {
+        settings.setRetentionSegments(1);
+        for (int i = 0; i < 20; i++) {
+            log.append(msg(i));
+        }
+        int segmentCount = log.getSegmentCount();
+        log.commit("group", 0L);
+        log.commit("other", 20L);
+
+        log.applyRetention(System.currentTimeMillis());
+        Assert.assertEquals(segmentCount, log.getSegmentCount());
+
+        // only the first segment is fully committed by the slowest group
+        log.commit("group", 7L);
+        log.applyRetention(System.currentTimeMillis());
+        Assert.assertEquals(segmentCount - 1, log.getSegmentCount());
+
+        log.commit("group", 20L);
+        log.applyRetention(System.currentTimeMillis());
+        Assert.assertEquals(1, log.getSegmentCount());
+    }
+
+    @Test
+    public void testRetentionIgnoresAbandonedGroups() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            log.append(msg(i));
+        }
+        log.commit("abandoned", 0L);
+
+        log.applyRetention(System.currentTimeMillis() + RETENTION_MS + 1000);
+        Assert.assertEquals(1, log.getSegmentCount());
+    }
+
+    private static TbFileQueueMsg msg(int i) {
+        return new TbFileQueueMsg(UUID.randomUUID(), new DefaultTbQueueMsgHeaders(), ByteBuffer.wrap(data(i)), 0);
+    }
+
+    private static byte[] data(int i) {
+        return ("message-" + i).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.file;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.queue.common.DefaultTbQueueMsg;
+import org.thingsboard.server.queue.common.DefaultTbQueueMsgHeaders;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class TbFileQueueConsumerTemplateTest {
+
+    private static final String TOPIC = "tb_test";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TbFileQueueSettings settings;
+    private TbFileQueueStorage storage;
+    private TbFileQueueProducerTemplate<TbFileQueueMsg> producer;
+
+    @Before
+    public void before() throws IOException {
+        settings = new TbFileQueueSettings();
+        settings.setDir(folder.newFolder().getAbsolutePath());
+        settings.setSegmentSizeBytes(4096);
+        settings.setRetentionMs(60000);
+        settings.setMaxPollRecords(10);
+        settings.setRetentionCheckIntervalMs(60000);
+        storage = newStorage();
+        producer = TbFileQueueProducerTemplate.<TbFileQueueMsg>builder().storage(storage).defaultTopic(TOPIC).build();
+    }
+
+    @After
+    public void after() {
+        storage.destroy();
+    }
+
+    @Test
+    public void testPollAndCommit() {
+        send(0, 5);
+        TbFileQueueConsumerTemplate<DefaultTbQueueMsg> consumer = newConsumer("group");
+
+        Assert.assertEquals(data(0, 5), poll(consumer));
+        consumer.commit();
+
+        send(5, 7);
+        Assert.assertEquals(data(5, 7), poll(consumer));
+        Assert.assertTrue(consumer.poll(1).isEmpty());
+        consumer.unsubscribe();
+    }
+
+    @Test
+    public void testConsumerGroupsAreIndependent() {
+        send(0, 3);
+        TbFileQueueConsumerTemplate<DefaultTbQueueMsg> first = newConsumer("first");
+        TbFileQueueConsumerTemplate<DefaultTbQueueMsg> second = newConsumer("second");
+
+        Assert.assertEquals(data(0, 3), poll(first));
+        first.commit();
+        Assert.assertEquals(data(0, 3), poll(second));
+        first.unsubscribe();
+        second.unsubscribe();
+    }
+
+    @Test
+    public void testUncommittedMessagesAreRedeliveredAfterRestart() throws IOException {
+        send(0, 5);
+        TbFileQueueConsumerTemplate<DefaultTbQueueMsg> consumer = newConsumer("group");
+        Assert.assertEquals(data(0, 5), poll(consumer));
+        consumer.commit();
+        send(5, 8);
+        Assert.assertEquals(data(5, 8), poll(consumer));
+        consumer.unsubscribe();
+        storage.destroy();
+
+        storage = newStorage();
+        consumer = newConsumer("group");
+        Assert.assertEquals(data(5, 8), poll(consumer));
+        consumer.unsubscribe();
+    }
+
+    @Test
+    public void testPollWakesUpOnAppend() throws InterruptedException {
+        TbFileQueueConsumerTemplate<DefaultTbQueueMsg> consumer = newConsumer("group");
+        Assert.assertTrue(consumer.poll(1).isEmpty());
+
+        Thread sender = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            send(0, 1);
+        });
+        sender.start();
+        long startTs = System.currentTimeMillis();
+        List<DefaultTbQueueMsg> msgs = consumer.poll(10000);
+        sender.join();
+
+        Assert.assertEquals(1, msgs.size());
+        Assert.assertTrue(System.currentTimeMillis() - startTs < 10000);
+        consumer.unsubscribe();
+    }
+
+    private TbFileQueueStorage newStorage() throws IOException {
+        TbFileQueueStorage storage = new TbFileQueueStorage(settings);
+        storage.init();
+        return storage;
+    }
+
+    private TbFileQueueConsumerTemplate<DefaultTbQueueMsg> newConsumer(String groupId) {
+        TbFileQueueConsumerTemplate<DefaultTbQueueMsg> consumer = TbFileQueueConsumerTemplate.<DefaultTbQueueMsg>builder()
+                .storage(storage).decoder(DefaultTbQueueMsg::new).groupId(groupId).topic(TOPIC).build();
+        consumer.subscribe();
+        return consumer;
+    }
+
+    private void send(int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte[] data = ("message-" + i).getBytes(StandardCharsets.UTF_8);
+            producer.send(new TopicPartitionInfo(TOPIC, null, null, true),
+                    new TbFileQueueMsg(UUID.randomUUID(), new DefaultTbQueueMsgHeaders(), ByteBuffer.wrap(data), 0), null);
+        }
+    }
+
+    private static List<String> poll(TbFileQueueConsumerTemplate<DefaultTbQueueMsg> consumer) {
+        List<String> result = new ArrayList<>();
+        consumer.poll(1000).forEach(msg -> result.add(new String(msg.getData(), StandardCharsets.UTF_8)));
+        return result;
+    }
+
+    private static List<String> data(int from, int to) {
+        List<String> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            result.add("message-" + i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.kafka;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.thingsboard.server.queue.TbQueueAdmin;
+import org.thingsboard.server.queue.common.DefaultTbQueueMsg;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.mockito.Mockito.mock;
+
+public class TbKafkaConsumerTemplateTest {
+
+    private static final String TOPIC = "tb_rule_engine.main.0";
+    private static final TopicPartition TP_0 = new TopicPartition(TOPIC, 0);
+    private static final TopicPartition TP_1 = new TopicPartition(TOPIC, 1);
+
+    private Consumer<String, byte[]> kafkaConsumer;
+    private TbKafkaConsumerTemplate<DefaultTbQueueMsg> consumer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        kafkaConsumer = mock(Consumer.class);
+        consumer = new TbKafkaConsumerTemplate<>(TOPIC, kafkaConsumer, DefaultTbQueueMsg::new, false, mock(TbQueueAdmin.class));
+        consumer.subscribe();
+    }
+
+    @Test
+    public void testPartialCommit() {
+        Assert.assertTrue(consumer.isPartialCommitSupported());
+        Assert.assertEquals(3, poll(records(TP_0, 0, 2), records(TP_1, 0, 1)).size());
+        long firstPollId = consumer.getLastPollId();
+        Assert.assertEquals(2, poll(records(TP_0, 2, 2)).size());
+        long secondPollId = consumer.getLastPollId();
+        Assert.assertTrue(secondPollId > firstPollId);
+
+        consumer.commit(firstPollId);
+        Map<TopicPartition, OffsetAndMetadata> committed = captureCommit();
+        Assert.assertEquals(2L, committed.get(TP_0).offset());
+        Assert.assertEquals(1L, committed.get(TP_1).offset());
+
+        consumer.commit(secondPollId);
+        committed = captureCommit();
+        Assert.assertEquals(1, committed.size());
+        Assert.assertEquals(4L, committed.get(TP_0).offset());
+    }
+
+    @Test
+    public void testCommitOfLaterPollIncludesEarlierPolls() {
+        poll(records(TP_0, 0, 1));
+        poll(records(TP_1, 0, 3));
+
+        consumer.commit(consumer.getLastPollId());
+        Map<TopicPartition, OffsetAndMetadata> committed = captureCommit();
+        Assert.assertEquals(1L, committed.get(TP_0).offset());
+        Assert.assertEquals(3L, committed.get(TP_1).offset());
+    }
+
+    @Test
+    public void testCommitOfCommittedPollIsIgnored() {
+        poll(records(TP_0, 0, 1));
+        long pollId = consumer.getLastPollId();
+        consumer.commit(pollId);
+        captureCommit();
+
+        consumer.commit(pollId);
+        Mockito.verify(kafkaConsumer, Mockito.times(1)).commitAsync(Matchers.<Map<TopicPartition, OffsetAndMetadata>>any(), Matchers.any(OffsetCommitCallback.class));
+    }
+
+    @Test
+    public void testRevokedPartitionsAreNotCommitted() {
+        poll(records(TP_0, 0, 2), records(TP_1, 0, 2));
+        long firstPollId = consumer.getLastPollId();
+        poll(records(TP_1, 2, 1));
+        long secondPollId = consumer.getLastPollId();
+
+        captureRebalanceListener().onPartitionsRevoked(Collections.singletonList(TP_1));
+
+        consumer.commit(secondPollId);
+        Map<TopicPartition, OffsetAndMetadata> committed = captureCommit();
+        Assert.assertEquals(1, committed.size());
+        Assert.assertEquals(2L, committed.get(TP_0).offset());
+        Assert.assertTrue(firstPollId < secondPollId);
+    }
+
+    @Test
+    public void testNothingIsCommittedWhenAllPartitionsAreRevoked() {
+        poll(records(TP_1, 0, 2));
+
+        captureRebalanceListener().onPartitionsRevoked(Collections.singletonList(TP_1));
+        consumer.commit(consumer.getLastPollId());
+
+        Mockito.verify(kafkaConsumer, Mockito.never()).commitAsync(Matchers.<Map<TopicPartition, OffsetAndMetadata>>any(), Matchers.any(OffsetCommitCallback.class));
+    }
+
+    @SafeVarargs
+    private final List<DefaultTbQueueMsg> poll(List<ConsumerRecord<String, byte[]>>... partitionRecords) {
+        Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> records = new HashMap<>();
+        for (List<ConsumerRecord<String, byte[]>> list : partitionRecords) {
+            ConsumerRecord<String, byte[]> first = list.get(0);
+            records.put(new TopicPartition(first.topic(), first.partition()), list);
+        }
+        Mockito.when(kafkaConsumer.poll(Matchers.any(Duration.class))).thenReturn(new ConsumerRecords<>(records));
+        return consumer.poll(1);
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> captureCommit() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<TopicPartition, OffsetAndMetadata>> captor = ArgumentCaptor.forClass((Class) Map.class);
+        Mockito.verify(kafkaConsumer, Mockito.atLeastOnce()).commitAsync(captor.capture(), Matchers.any(OffsetCommitCallback.class));
+        return captor.getValue();
+    }
+
+    private ConsumerRebalanceListener captureRebalanceListener() {
+        ArgumentCaptor<ConsumerRebalanceListener> captor = ArgumentCaptor.forClass(ConsumerRebalanceListener.class);
+        Mockito.verify(kafkaConsumer).subscribe(Matchers.eq(Collections.singletonList(TOPIC)), captor.capture());
+        return captor.getValue();
+    }
+
+    private static List<ConsumerRecord<String, byte[]>> records(TopicPartition tp, long fromOffset, int count) {
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(new ConsumerRecord<>(tp.topic(), tp.partition(), fromOffset + i, UUID.randomUUID().toString(), new byte[0]));
+        }
+        return records;
+    }
+}
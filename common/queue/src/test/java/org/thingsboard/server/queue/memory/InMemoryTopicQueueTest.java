@@ -0,0 +1,196 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.memory;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.queue.TbQueueMsg;
+import org.thingsboard.server.queue.TbQueueMsgHeaders;
+import org.thingsboard.server.queue.common.DefaultTbQueueMsgHeaders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class InMemoryTopicQueueTest {
+
+    @Test
+    public void testUnboundedQueueKeepsOrderAndLimitsPollRecords() {
+        InMemoryTopicQueue queue = new InMemoryTopicQueue("test", 0, InMemoryQueueOverflowPolicy.REJECT, 0);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(queue.put(msg(i)));
+        }
+        Assert.assertEquals(5, queue.size());
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2), drain(queue, 3));
+        Assert.assertEquals(Arrays.asList(3, 4), drain(queue, 3));
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testRejectPolicyKeepsExistingMessages() {
+        InMemoryTopicQueue queue = new InMemoryTopicQueue("test", 2, InMemoryQueueOverflowPolicy.REJECT, 0);
+        Assert.assertTrue(queue.put(msg(0)));
+        Assert.assertTrue(queue.put(msg(1)));
+        Assert.assertFalse(queue.put(msg(2)));
+
+        Assert.assertEquals(Arrays.asList(0, 1), drain(queue, 10));
+        Assert.assertTrue(queue.put(msg(3)));
+    }
+
+    @Test
+    public void testDropOldestPolicyKeepsNewestMessages() {
+        InMemoryTopicQueue queue = new InMemoryTopicQueue("test", 2, InMemoryQueueOverflowPolicy.DROP_OLDEST, 0);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(queue.put(msg(i)));
+        }
+        Assert.assertEquals(2, queue.size());
+
+        Assert.assertEquals(Arrays.asList(3, 4), drain(queue, 10));
+    }
+
+    @Test
+    public void testBlockPolicyRejectsAfterOfferTimeout() {
+        InMemoryTopicQueue queue = new InMemoryTopicQueue("test", 1, InMemoryQueueOverflowPolicy.BLOCK, 50);
+        Assert.assertTrue(queue.put(msg(0)));
+
+        long startTs = System.currentTimeMillis();
+        Assert.assertFalse(queue.put(msg(1)));
+        Assert.assertTrue(System.currentTimeMillis() - startTs >= 50);
+        Assert.assertEquals(Arrays.asList(0), drain(queue, 10));
+    }
+
+    @Test
+    public void testBlockPolicyWaitsForFreeSpace() throws Exception {
+        InMemoryTopicQueue queue = new InMemoryTopicQueue("test", 1, InMemoryQueueOverflowPolicy.BLOCK, 10000);
+        Assert.assertTrue(queue.put(msg(0)));
+
+        CompletableFuture<Boolean> blockedPut = CompletableFuture.supplyAsync(() -> queue.put(msg(1)));
+        Thread.sleep(100);
+        Assert.assertFalse(blockedPut.isDone());
+
+        Assert.assertEquals(Arrays.asList(0), drain(queue, 10));
+        Assert.assertTrue(blockedPut.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList(1), drain(queue, 10));
+    }
+
+    @Test
+    public void testSignalIsRaisedOnPut() throws Exception {
+        InMemoryTopicQueue queue = new InMemoryTopicQueue("test", 0, InMemoryQueueOverflowPolicy.REJECT, 0);
+        InMemoryQueueSignal signal = new InMemoryQueueSignal();
+        queue.addSignal(signal);
+        Assert.assertFalse(signal.await(0));
+
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return signal.await(5000);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(50);
+        queue.put(msg(0));
+        Assert.assertTrue(waiter.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSignalsAreCoalesced() throws Exception {
+        InMemoryTopicQueue queue = new InMemoryTopicQueue("test", 0, InMemoryQueueOverflowPolicy.REJECT, 0);
+        InMemoryQueueSignal signal = new InMemoryQueueSignal();
+        queue.addSignal(signal);
+        for (int i = 0; i < 3; i++) {
+            queue.put(msg(i));
+        }
+        Assert.assertTrue(signal.await(0));
+        Assert.assertFalse(signal.await(0));
+
+        queue.put(msg(3));
+        signal.reset();
+        Assert.assertFalse(signal.await(0));
+    }
+
+    @Test
+    public void testSignalIsRaisedOnSubscriptionToNonEmptyQueue() throws Exception {
+        InMemoryTopicQueue queue = new InMemoryTopicQueue("test", 0, InMemoryQueueOverflowPolicy.REJECT, 0);
+        queue.put(msg(0));
+
+        InMemoryQueueSignal signal = new InMemoryQueueSignal();
+        queue.addSignal(signal);
+        Assert.assertTrue(signal.await(0));
+    }
+
+    @Test
+    public void testRemovedSignalIsNotRaised() throws Exception {
+        InMemoryTopicQueue queue = new InMemoryTopicQueue("test", 0, InMemoryQueueOverflowPolicy.REJECT, 0);
+        InMemoryQueueSignal signal = new InMemoryQueueSignal();
+        queue.addSignal(signal);
+        queue.removeSignal(signal);
+
+        queue.put(msg(0));
+        Assert.assertFalse(signal.await(0));
+    }
+
+    @Test
+    public void testRejectedMessageDoesNotRaiseSignal() throws Exception {
+        InMemoryTopicQueue queue = new InMemoryTopicQueue("test", 1, InMemoryQueueOverflowPolicy.REJECT, 0);
+        queue.put(msg(0));
+        InMemoryQueueSignal signal = new InMemoryQueueSignal();
+        queue.addSignal(signal);
+        signal.reset();
+
+        Assert.assertFalse(queue.put(msg(1)));
+        Assert.assertFalse(signal.await(0));
+    }
+
+    private static List<Integer> drain(InMemoryTopicQueue queue, int maxRecords) {
+        List<TestMsg> result = new ArrayList<>();
+        queue.drainTo(result, maxRecords);
+        List<Integer> ids = new ArrayList<>(result.size());
+        result.forEach(msg -> ids.add(msg.id));
+        return ids;
+    }
+
+    private static TestMsg msg(int id) {
+        return new TestMsg(id);
+    }
+
+    private static class TestMsg implements TbQueueMsg {
+        private final int id;
+        private final UUID key = UUID.randomUUID();
+
+        private TestMsg(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public UUID getKey() {
+            return key;
+        }
+
+        @Override
+        public TbQueueMsgHeaders getHeaders() {
+            return new DefaultTbQueueMsgHeaders();
+        }
+
+        @Override
+        public byte[] getData() {
+            return new byte[]{(byte) id};
+        }
+    }
+}
@@ -84,19 +84,20 @@ import org.thingsboard.server.queue.util.TbTransportComponent;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * Created by ashvayka on 17.10.18.
@@ -110,10 +111,18 @@ public class DefaultTransportService implements TransportService {
     private long sessionInactivityTimeout;
     @Value("${transport.sessions.report_timeout}")
     private long sessionReportTimeout;
+    @Value("${transport.sessions.report_batch_enabled:false}")
+    private boolean sessionReportBatchEnabled;
+    @Value("${transport.sessions.report_batch_size:1000}")
+    private int sessionReportBatchSize;
     @Value("${transport.client_side_rpc.timeout:60000}")
     private long clientSideRpcTimeout;
     @Value("${queue.transport.poll_interval}")
     private int notificationsPollDuration;
+    @Value("${transport.batch.max_size:100}")
+    private int batchMaxSize;
+    @Value("${transport.batch.linger_ms:0}")
+    private long batchLingerMs;
 
     private final Gson gson = new Gson();
     private final TbTransportQueueFactory queueProvider;
@@ -132,6 +141,8 @@ public class DefaultTransportService implements TransportService {
     protected TbQueueProducer<TbProtoQueueMsg<ToRuleEngineMsg>> ruleEngineMsgProducer;
     protected TbQueueProducer<TbProtoQueueMsg<ToCoreMsg>> tbCoreMsgProducer;
     protected TbQueueConsumer<TbProtoQueueMsg<ToTransportMsg>> transportNotificationsConsumer;
+    private TransportQueueBatcher<ToRuleEngineMsg, ToRuleEngineMsg> ruleEngineMsgBatcher;
+    private TransportQueueBatcher<TransportToDeviceActorMsg, ToCoreMsg> tbCoreMsgBatcher;
 
     protected MessagesStats ruleEngineProducerStats;
     protected MessagesStats tbCoreProducerStats;
@@ -140,7 +151,7 @@ public class DefaultTransportService implements TransportService {
     protected ExecutorService transportCallbackExecutor;
     private ExecutorService mainConsumerExecutor;
 
-    private final ConcurrentMap<UUID, SessionMetaData> sessions = new ConcurrentHashMap<>();
+    private final TransportSessionRegistry sessions = new TransportSessionRegistry();
     private final Map<String, RpcRequestMetadata> toServerRpcPendingMap = new ConcurrentHashMap<>();
 
     private volatile boolean stopped = false;
@@ -178,6 +189,10 @@ public class DefaultTransportService implements TransportService {
         transportApiRequestTemplate.setMessagesStats(transportApiStats);
         ruleEngineMsgProducer = producerProvider.getRuleEngineMsgProducer();
         tbCoreMsgProducer = producerProvider.getTbCoreMsgProducer();
+        ruleEngineMsgBatcher = new TransportQueueBatcher<>(StatsType.RULE_ENGINE.getName(), ruleEngineMsgProducer, scheduler, batchMaxSize, batchLingerMs,
+                Function.identity(), DefaultTransportService::toRuleEngineBatchMsg);
+        tbCoreMsgBatcher = new TransportQueueBatcher<>(StatsType.CORE.getName(), tbCoreMsgProducer, scheduler, batchMaxSize, batchLingerMs,
+                msg -> ToCoreMsg.newBuilder().setToDeviceActorMsg(msg).build(), (keys, msgs) -> ToCoreMsg.newBuilder().addAllToDeviceActorMsgs(msgs).build());
         transportNotificationsConsumer = queueProvider.createTransportNotificationsConsumer();
         TopicPartitionInfo tpi = partitionService.getNotificationsTopic(ServiceType.TB_TRANSPORT, serviceInfoProvider.getServiceId());
         transportNotificationsConsumer.subscribe(Collections.singleton(tpi));
@@ -216,6 +231,12 @@ public class DefaultTransportService implements TransportService {
     public void destroy() {
         stopped = true;
 
+        if (ruleEngineMsgBatcher != null) {
+            ruleEngineMsgBatcher.flushAll();
+        }
+        if (tbCoreMsgBatcher != null) {
+            tbCoreMsgBatcher.flushAll();
+        }
         if (transportNotificationsConsumer != null) {
             transportNotificationsConsumer.unsubscribe();
         }
@@ -232,7 +253,8 @@ public class DefaultTransportService implements TransportService {
 
     @Override
     public void registerAsyncSession(TransportProtos.SessionInfoProto sessionInfo, SessionMsgListener listener) {
-        sessions.putIfAbsent(toSessionId(sessionInfo), new SessionMetaData(sessionInfo, TransportProtos.SessionType.ASYNC, listener));
+        sessions.putIfAbsent(sessionInfo.getSessionIdMSB(), sessionInfo.getSessionIdLSB(),
+                new SessionMetaData(sessionInfo, TransportProtos.SessionType.ASYNC, listener), System.currentTimeMillis());
     }
 
     @Override
@@ -495,59 +517,102 @@ public class DefaultTransportService implements TransportService {
     }
 
     private SessionMetaData reportActivityInternal(TransportProtos.SessionInfoProto sessionInfo) {
-        UUID sessionId = toSessionId(sessionInfo);
-        SessionMetaData sessionMetaData = sessions.get(sessionId);
-        if (sessionMetaData != null) {
-            sessionMetaData.updateLastActivityTime();
-        }
-        return sessionMetaData;
+        return sessions.touch(sessionInfo.getSessionIdMSB(), sessionInfo.getSessionIdLSB(), System.currentTimeMillis());
     }
 
     private void checkInactivityAndReportActivity() {
         long expTime = System.currentTimeMillis() - sessionInactivityTimeout;
-        sessions.forEach((uuid, sessionMD) -> {
-            long lastActivityTime = sessionMD.getLastActivityTime();
+        Map<TopicPartitionInfo, Map<TenantId, TransportProtos.SessionActivityBatchProto.Builder>> batches = new HashMap<>();
+        sessions.forEachActivity((sessionMD, sessionLastActivityTime, lastReportedActivityTime) -> {
+            long lastActivityTime = sessionLastActivityTime;
             TransportProtos.SessionInfoProto sessionInfo = sessionMD.getSessionInfo();
             if (sessionInfo.getGwSessionIdMSB() > 0 &&
                     sessionInfo.getGwSessionIdLSB() > 0) {
-                SessionMetaData gwMetaData = sessions.get(new UUID(sessionInfo.getGwSessionIdMSB(), sessionInfo.getGwSessionIdLSB()));
-                if (gwMetaData != null) {
-                    lastActivityTime = Math.max(gwMetaData.getLastActivityTime(), lastActivityTime);
-                }
+                lastActivityTime = Math.max(sessions.getLastActivityTime(sessionInfo.getGwSessionIdMSB(), sessionInfo.getGwSessionIdLSB()), lastActivityTime);
             }
             if (lastActivityTime < expTime) {
                 if (log.isDebugEnabled()) {
                     log.debug("[{}] Session has expired due to last activity time: {}", toSessionId(sessionInfo), lastActivityTime);
                 }
                 process(sessionInfo, getSessionEventMsg(TransportProtos.SessionEvent.CLOSED), null);
-                sessions.remove(uuid);
+                sessions.remove(sessionInfo.getSessionIdMSB(), sessionInfo.getSessionIdLSB());
                 sessionMD.getListener().onRemoteSessionCloseCommand(TransportProtos.SessionCloseNotificationProto.getDefaultInstance());
-            } else {
-                if (lastActivityTime > sessionMD.getLastReportedActivityTime()) {
-                    final long lastActivityTimeFinal = lastActivityTime;
-                    process(sessionInfo, TransportProtos.SubscriptionInfoProto.newBuilder()
-                            .setAttributeSubscription(sessionMD.isSubscribedToAttributes())
-                            .setRpcSubscription(sessionMD.isSubscribedToRPC())
-                            .setLastActivityTime(lastActivityTime).build(), new TransportServiceCallback<Void>() {
-                        @Override
-                        public void onSuccess(Void msg) {
-                            sessionMD.setLastReportedActivityTime(lastActivityTimeFinal);
-                        }
-
-                        @Override
-                        public void onError(Throwable e) {
-                            log.warn("[{}] Failed to report last activity time", uuid, e);
-                        }
-                    });
+            } else if (lastActivityTime > lastReportedActivityTime) {
+                if (sessionReportBatchEnabled) {
+                    addToActivityBatch(batches, sessionMD, lastActivityTime);
+                } else {
+                    reportSessionActivity(sessionMD, lastActivityTime);
                 }
             }
         });
+        batches.forEach((tpi, tenantBatches) -> tenantBatches.forEach((tenantId, batch) -> sendActivityBatch(tpi, tenantId, batch.build())));
+    }
+
+    private void reportSessionActivity(SessionMetaData sessionMD, long lastActivityTime) {
+        TransportProtos.SessionInfoProto sessionInfo = sessionMD.getSessionInfo();
+        process(sessionInfo, TransportProtos.SubscriptionInfoProto.newBuilder()
+                .setAttributeSubscription(sessionMD.isSubscribedToAttributes())
+                .setRpcSubscription(sessionMD.isSubscribedToRPC())
+                .setLastActivityTime(lastActivityTime).build(), new TransportServiceCallback<Void>() {
+            @Override
+            public void onSuccess(Void msg) {
+                sessions.setLastReportedActivityTime(sessionInfo.getSessionIdMSB(), sessionInfo.getSessionIdLSB(), lastActivityTime);
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                log.warn("[{}] Failed to report last activity time", toSessionId(sessionInfo), e);
+            }
+        });
+    }
+
+    private void addToActivityBatch(Map<TopicPartitionInfo, Map<TenantId, TransportProtos.SessionActivityBatchProto.Builder>> batches,
+                                    SessionMetaData sessionMD, long lastActivityTime) {
+        TransportProtos.SessionInfoProto sessionInfo = sessionMD.getSessionInfo();
+        TenantId tenantId = getTenantId(sessionInfo);
+        TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenantId, getDeviceId(sessionInfo));
+        Map<TenantId, TransportProtos.SessionActivityBatchProto.Builder> tenantBatches = batches.computeIfAbsent(tpi, k -> new HashMap<>());
+        TransportProtos.SessionActivityBatchProto.Builder batch = tenantBatches.computeIfAbsent(tenantId, k -> TransportProtos.SessionActivityBatchProto.newBuilder());
+        batch.addSessions(TransportProtos.SessionSubscriptionInfoProto.newBuilder()
+                .setSessionInfo(sessionInfo)
+                .setSubscriptionInfo(TransportProtos.SubscriptionInfoProto.newBuilder()
+                        .setAttributeSubscription(sessionMD.isSubscribedToAttributes())
+                        .setRpcSubscription(sessionMD.isSubscribedToRPC())
+                        .setLastActivityTime(lastActivityTime).build()));
+        if (batch.getSessionsCount() >= sessionReportBatchSize) {
+            tenantBatches.remove(tenantId);
+            sendActivityBatch(tpi, tenantId, batch.build());
+        }
+    }
+
+    private void sendActivityBatch(TopicPartitionInfo tpi, TenantId tenantId, TransportProtos.SessionActivityBatchProto batch) {
+        if (log.isTraceEnabled()) {
+            log.trace("[{}] Pushing to topic {} activity of {} sessions", tenantId, tpi.getFullTopicName(), batch.getSessionsCount());
+        }
+        tbCoreProducerStats.incrementTotal();
+        StatsCallback wrappedCallback = new StatsCallback(new TbQueueCallback() {
+            @Override
+            public void onSuccess(TbQueueMsgMetadata metadata) {
+                for (TransportProtos.SessionSubscriptionInfoProto session : batch.getSessionsList()) {
+                    sessions.setLastReportedActivityTime(session.getSessionInfo().getSessionIdMSB(), session.getSessionInfo().getSessionIdLSB(),
+                            session.getSubscriptionInfo().getLastActivityTime());
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.warn("[{}] Failed to report last activity time of {} sessions", tenantId, batch.getSessionsCount(), t);
+            }
+        }, tbCoreProducerStats);
+        tbCoreMsgProducer.send(tpi,
+                new TbProtoQueueMsg<>(tenantId.getId(), ToCoreMsg.newBuilder().setSessionActivityBatch(batch).build()),
+                wrappedCallback);
     }
 
     @Override
     public void registerSyncSession(TransportProtos.SessionInfoProto sessionInfo, SessionMsgListener listener, long timeout) {
         SessionMetaData currentSession = new SessionMetaData(sessionInfo, TransportProtos.SessionType.SYNC, listener);
-        sessions.putIfAbsent(toSessionId(sessionInfo), currentSession);
+        sessions.putIfAbsent(sessionInfo.getSessionIdMSB(), sessionInfo.getSessionIdLSB(), currentSession, System.currentTimeMillis());
 
         ScheduledFuture executorFuture = scheduler.schedule(() -> {
             listener.onRemoteSessionCloseCommand(TransportProtos.SessionCloseNotificationProto.getDefaultInstance());
@@ -559,12 +624,11 @@ public class DefaultTransportService implements TransportService {
 
     @Override
     public void deregisterSession(TransportProtos.SessionInfoProto sessionInfo) {
-        SessionMetaData currentSession = sessions.get(toSessionId(sessionInfo));
+        SessionMetaData currentSession = sessions.remove(sessionInfo.getSessionIdMSB(), sessionInfo.getSessionIdLSB());
         if (currentSession != null && currentSession.hasScheduledFuture()) {
             log.debug("Stopping scheduler to avoid resending response if request has been ack.");
             currentSession.getScheduledFuture().cancel(false);
         }
-        sessions.remove(toSessionId(sessionInfo));
     }
 
     private boolean checkLimits(TransportProtos.SessionInfoProto sessionInfo, Object msg, TransportServiceCallback<Void> callback) {
@@ -591,7 +655,7 @@ public class DefaultTransportService implements TransportService {
 
     protected void processToTransportMsg(TransportProtos.ToTransportMsg toSessionMsg) {
         UUID sessionId = new UUID(toSessionMsg.getSessionIdMSB(), toSessionMsg.getSessionIdLSB());
-        SessionMetaData md = sessions.get(sessionId);
+        SessionMetaData md = sessions.get(toSessionMsg.getSessionIdMSB(), toSessionMsg.getSessionIdLSB());
         if (md != null) {
             SessionMsgListener listener = md.getListener();
             transportCallbackExecutor.submit(() -> {
@@ -667,7 +731,7 @@ public class DefaultTransportService implements TransportService {
     private void onProfileUpdate(DeviceProfile deviceProfile) {
         long deviceProfileIdMSB = deviceProfile.getId().getId().getMostSignificantBits();
         long deviceProfileIdLSB = deviceProfile.getId().getId().getLeastSignificantBits();
-        sessions.forEach((id, md) -> {
+        sessions.forEach(md -> {
             if (md.getSessionInfo().getDeviceProfileIdMSB() == deviceProfileIdMSB
                     && md.getSessionInfo().getDeviceProfileIdLSB() == deviceProfileIdLSB) {
                 transportCallbackExecutor.submit(() -> md.getListener().onProfileUpdate(deviceProfile));
@@ -706,10 +770,16 @@ public class DefaultTransportService implements TransportService {
                 new TransportTbQueueCallback(callback) : null;
         tbCoreProducerStats.incrementTotal();
         StatsCallback wrappedCallback = new StatsCallback(transportTbQueueCallback, tbCoreProducerStats);
-        tbCoreMsgProducer.send(tpi,
-                new TbProtoQueueMsg<>(getRoutingKey(sessionInfo),
-                        ToCoreMsg.newBuilder().setToDeviceActorMsg(toDeviceActorMsg).build()),
-                wrappedCallback);
+        tbCoreMsgBatcher.send(tpi, getRoutingKey(sessionInfo), toDeviceActorMsg, wrappedCallback);
+    }
+
+    static ToRuleEngineMsg toRuleEngineBatchMsg(List<UUID> keys, List<ToRuleEngineMsg> msgs) {
+        ToRuleEngineMsg.Builder builder = ToRuleEngineMsg.newBuilder();
+        for (int i = 0; i < msgs.size(); i++) {
+            UUID key = keys.get(i);
+            builder.addMsgs(msgs.get(i).toBuilder().setMsgKeyMSB(key.getMostSignificantBits()).setMsgKeyLSB(key.getLeastSignificantBits()));
+        }
+        return builder.build();
     }
 
     protected void sendToRuleEngine(TenantId tenantId, TbMsg tbMsg, TbQueueCallback callback) {
@@ -722,7 +792,7 @@ public class DefaultTransportService implements TransportService {
                 .setTenantIdLSB(tenantId.getId().getLeastSignificantBits()).build();
         ruleEngineProducerStats.incrementTotal();
         StatsCallback wrappedCallback = new StatsCallback(callback, ruleEngineProducerStats);
-        ruleEngineMsgProducer.send(tpi, new TbProtoQueueMsg<>(tbMsg.getId(), msg), wrappedCallback);
+        ruleEngineMsgBatcher.send(tpi, tbMsg.getId(), msg, wrappedCallback);
     }
 
     protected void sendToRuleEngine(TenantId tenantId, DeviceId deviceId, TransportProtos.SessionInfoProto sessionInfo, JsonObject json,
@@ -33,8 +33,6 @@ class SessionMetaData {
 
     private ScheduledFuture scheduledFuture;
 
-    private volatile long lastActivityTime;
-    private volatile long lastReportedActivityTime;
     private volatile boolean subscribedToAttributes;
     private volatile boolean subscribedToRPC;
 
@@ -46,14 +44,9 @@ class SessionMetaData {
         this.sessionInfo = sessionInfo;
         this.sessionType = sessionType;
         this.listener = listener;
-        this.lastActivityTime = System.currentTimeMillis();
         this.scheduledFuture = null;
     }
 
-    void updateLastActivityTime() {
-        this.lastActivityTime = System.currentTimeMillis();
-    }
-
     void setScheduledFuture(ScheduledFuture scheduledFuture) { this.scheduledFuture = scheduledFuture; }
 
     public ScheduledFuture getScheduledFuture() {
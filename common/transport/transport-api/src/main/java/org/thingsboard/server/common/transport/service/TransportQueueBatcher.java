@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport.service;
+
+import com.google.protobuf.GeneratedMessageV3;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.queue.TbQueueCallback;
+import org.thingsboard.server.queue.TbQueueMsgMetadata;
+import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.scheduler.SchedulerComponent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Gathers messages addressed to the same topic partition and publishes them as a single queue record
+ * once either the batch is full or the linger time has passed since the first message of the batch.
+ * Every message keeps its own callback, which is notified with the outcome of the batch record.
+ * Batches of the same partition are published under the partition lock, so they reach the queue in the order of {@link #send}.
+ */
+@Slf4j
+class TransportQueueBatcher<E, M extends GeneratedMessageV3> {
+
+    private final String name;
+    private final TbQueueProducer<TbProtoQueueMsg<M>> producer;
+    private final SchedulerComponent scheduler;
+    private final int maxBatchSize;
+    private final long lingerMs;
+    private final Function<E, M> singleMsgBuilder;
+    private final BiFunction<List<UUID>, List<E>, M> batchMsgBuilder;
+    private final ConcurrentMap<TopicPartitionInfo, Batch> batches = new ConcurrentHashMap<>();
+
+    TransportQueueBatcher(String name, TbQueueProducer<TbProtoQueueMsg<M>> producer, SchedulerComponent scheduler,
+                          int maxBatchSize, long lingerMs,
+                          Function<E, M> singleMsgBuilder, BiFunction<List<UUID>, List<E>, M> batchMsgBuilder) {
+        this.name = name;
+        this.producer = producer;
+        this.scheduler = scheduler;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMs = lingerMs;
+        this.singleMsgBuilder = singleMsgBuilder;
+        this.batchMsgBuilder = batchMsgBuilder;
+    }
+
+    void send(TopicPartitionInfo tpi, UUID key, E msg, TbQueueCallback callback) {
+        if (lingerMs <= 0 || maxBatchSize <= 1) {
+            producer.send(tpi, new TbProtoQueueMsg<>(key, singleMsgBuilder.apply(msg)), callback);
+            return;
+        }
+        Batch batch = batches.computeIfAbsent(tpi, Batch::new);
+        synchronized (batch) {
+            batch.add(key, msg, callback);
+            if (batch.msgs.size() >= maxBatchSize) {
+                publish(tpi, batch.drain());
+            } else if (batch.msgs.size() == 1) {
+                long generation = batch.generation;
+                scheduler.schedule(() -> flush(batch, generation), lingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    void flushAll() {
+        batches.values().forEach(batch -> {
+            synchronized (batch) {
+                PendingBatch pending = batch.drain();
+                if (pending != null) {
+                    publish(batch.tpi, pending);
+                }
+            }
+        });
+    }
+
+    private void flush(Batch batch, long generation) {
+        synchronized (batch) {
+            if (batch.generation != generation) {
+                return;
+            }
+            PendingBatch pending = batch.drain();
+            if (pending != null) {
+                publish(batch.tpi, pending);
+            }
+        }
+    }
+
+    private void publish(TopicPartitionInfo tpi, PendingBatch pending) {
+        List<E> msgs = pending.msgs;
+        List<TbQueueCallback> callbacks = pending.callbacks;
+        if (msgs.size() == 1) {
+            producer.send(tpi, new TbProtoQueueMsg<>(pending.keys.get(0), singleMsgBuilder.apply(msgs.get(0))), callbacks.get(0));
+            return;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("[{}] Pushing batch of {} messages to topic {}", name, msgs.size(), tpi.getFullTopicName());
+        }
+        // A batch holds messages of a single partition only, but of many entities. The record key merely routes the record
+        // to that partition; consumers must take the entity of every message from the per-message keys of the batch.
+        UUID routingKey = pending.keys.get(0);
+        producer.send(tpi, new TbProtoQueueMsg<>(routingKey, batchMsgBuilder.apply(pending.keys, msgs)), new TbQueueCallback() {
+            @Override
+            public void onSuccess(TbQueueMsgMetadata metadata) {
+                for (TbQueueCallback callback : callbacks) {
+                    if (callback != null) {
+                        callback.onSuccess(metadata);
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                for (TbQueueCallback callback : callbacks) {
+                    if (callback != null) {
+                        callback.onFailure(t);
+                    }
+                }
+            }
+        });
+    }
+
+    private class Batch {
+
+        private final TopicPartitionInfo tpi;
+        private List<UUID> keys = new ArrayList<>();
+        private List<E> msgs = new ArrayList<>();
+        private List<TbQueueCallback> callbacks = new ArrayList<>();
+        private long generation;
+
+        private Batch(TopicPartitionInfo tpi) {
+            this.tpi = tpi;
+        }
+
+        private void add(UUID key, E msg, TbQueueCallback callback) {
+            keys.add(key);
+            msgs.add(msg);
+            callbacks.add(callback);
+        }
+
+        private PendingBatch drain() {
+            if (msgs.isEmpty()) {
+                return null;
+            }
+            PendingBatch pending = new PendingBatch(keys, msgs, callbacks);
+            keys = new ArrayList<>();
+            msgs = new ArrayList<>();
+            callbacks = new ArrayList<>();
+            generation++;
+            return pending;
+        }
+    }
+
+    private class PendingBatch {
+
+        private final List<UUID> keys;
+        private final List<E> msgs;
+        private final List<TbQueueCallback> callbacks;
+
+        private PendingBatch(List<UUID> keys, List<E> msgs, List<TbQueueCallback> callbacks) {
+            this.keys = keys;
+            this.msgs = msgs;
+            this.callbacks = callbacks;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport.service;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Session registry keyed by the two longs of the session UUID.
+ * <p>
+ * Each segment is an open-addressing (linear probing) table backed by parallel primitive arrays,
+ * so there are no per-session map nodes or UUID keys, and the activity timestamps of all sessions
+ * are stored in plain {@code long[]} slots that the periodic activity sweep scans sequentially.
+ */
+class TransportSessionRegistry {
+
+    private static final int SEGMENTS = 64;
+    private static final int SEGMENT_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENTS);
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    TransportSessionRegistry() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    SessionMetaData get(UUID sessionId) {
+        return get(sessionId.getMostSignificantBits(), sessionId.getLeastSignificantBits());
+    }
+
+    SessionMetaData get(long msb, long lsb) {
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).get(hash, msb, lsb);
+    }
+
+    SessionMetaData putIfAbsent(long msb, long lsb, SessionMetaData md, long ts) {
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).putIfAbsent(hash, msb, lsb, md, ts);
+    }
+
+    SessionMetaData remove(long msb, long lsb) {
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).remove(hash, msb, lsb);
+    }
+
+    /**
+     * Updates the last activity time of the session and returns its metadata, or null if the session is not registered.
+     */
+    SessionMetaData touch(long msb, long lsb, long ts) {
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).touch(hash, msb, lsb, ts);
+    }
+
+    /**
+     * Returns the last activity time of the session or 0 if the session is not registered.
+     */
+    long getLastActivityTime(long msb, long lsb) {
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).getLastActivityTime(hash, msb, lsb);
+    }
+
+    void setLastReportedActivityTime(long msb, long lsb, long ts) {
+        int hash = hash(msb, lsb);
+        segmentFor(hash).setLastReportedActivityTime(hash, msb, lsb, ts);
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    void forEach(Consumer<SessionMetaData> consumer) {
+        forEachActivity((md, lastActivityTime, lastReportedActivityTime) -> consumer.accept(md));
+    }
+
+    /**
+     * Visits every registered session with its activity timestamps.
+     * Each segment is copied under its lock and visited outside of it,
+     * so the visitor is free to call back into the registry.
+     */
+    void forEachActivity(ActivityVisitor visitor) {
+        SessionMetaData[] values = new SessionMetaData[0];
+        long[] lastActivity = new long[0];
+        long[] lastReported = new long[0];
+        for (Segment segment : segments) {
+            int count;
+            synchronized (segment) {
+                if (segment.size == 0) {
+                    continue;
+                }
+                if (values.length < segment.size) {
+                    values = new SessionMetaData[segment.values.length];
+                    lastActivity = new long[segment.values.length];
+                    lastReported = new long[segment.values.length];
+                }
+                count = 0;
+                for (int i = 0; i < segment.values.length; i++) {
+                    SessionMetaData md = segment.values[i];
+                    if (md != null) {
+                        values[count] = md;
+                        lastActivity[count] = segment.lastActivity[i];
+                        lastReported[count] = segment.lastReported[i];
+                        count++;
+                    }
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                visitor.visit(values[i], lastActivity[i], lastReported[i]);
+            }
+            Arrays.fill(values, 0, count, null);
+        }
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> SEGMENT_SHIFT];
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    interface ActivityVisitor {
+
+        void visit(SessionMetaData md, long lastActivityTime, long lastReportedActivityTime);
+
+    }
+
+    private static final class Segment {
+
+        private long[] msbs = new long[INITIAL_CAPACITY];
+        private long[] lsbs = new long[INITIAL_CAPACITY];
+        private long[] lastActivity = new long[INITIAL_CAPACITY];
+        private long[] lastReported = new long[INITIAL_CAPACITY];
+        private SessionMetaData[] values = new SessionMetaData[INITIAL_CAPACITY];
+        private int size;
+
+        synchronized SessionMetaData get(int hash, long msb, long lsb) {
+            int slot = find(hash, msb, lsb);
+            return slot >= 0 ? values[slot] : null;
+        }
+
+        synchronized SessionMetaData touch(int hash, long msb, long lsb, long ts) {
+            int slot = find(hash, msb, lsb);
+            if (slot < 0) {
+                return null;
+            }
+            if (ts > lastActivity[slot]) {
+                lastActivity[slot] = ts;
+            }
+            return values[slot];
+        }
+
+        synchronized long getLastActivityTime(int hash, long msb, long lsb) {
+            int slot = find(hash, msb, lsb);
+            return slot >= 0 ? lastActivity[slot] : 0L;
+        }
+
+        synchronized void setLastReportedActivityTime(int hash, long msb, long lsb, long ts) {
+            int slot = find(hash, msb, lsb);
+            if (slot >= 0 && ts > lastReported[slot]) {
+                lastReported[slot] = ts;
+            }
+        }
+
+        synchronized SessionMetaData putIfAbsent(int hash, long msb, long lsb, SessionMetaData md, long ts) {
+            int mask = values.length - 1;
+            int slot = hash & mask;
+            while (values[slot] != null) {
+                if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            msbs[slot] = msb;
+            lsbs[slot] = lsb;
+            lastActivity[slot] = ts;
+            lastReported[slot] = 0L;
+            values[slot] = md;
+            if (++size * 2 > values.length) {
+                resize(values.length * 2);
+            }
+            return null;
+        }
+
+        synchronized SessionMetaData remove(int hash, long msb, long lsb) {
+            int slot = find(hash, msb, lsb);
+            if (slot < 0) {
+                return null;
+            }
+            SessionMetaData removed = values[slot];
+            values[slot] = null;
+            size--;
+            shiftBack(slot);
+            return removed;
+        }
+
+        private int find(int hash, long msb, long lsb) {
+            int mask = values.length - 1;
+            int slot = hash & mask;
+            while (values[slot] != null) {
+                if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Backward shift deletion: moves the entries following the freed slot so that probe sequences stay unbroken without tombstones.
+         */
+        private void shiftBack(int free) {
+            int mask = values.length - 1;
+            int slot = free;
+            while (true) {
+                slot = (slot + 1) & mask;
+                if (values[slot] == null) {
+                    return;
+                }
+                int home = hash(msbs[slot], lsbs[slot]) & mask;
+                boolean inPlace = free <= slot ? (free < home && home <= slot) : (free < home || home <= slot);
+                if (!inPlace) {
+                    move(slot, free);
+                    free = slot;
+                }
+            }
+        }
+
+        private void move(int from, int to) {
+            msbs[to] = msbs[from];
+            lsbs[to] = lsbs[from];
+            lastActivity[to] = lastActivity[from];
+            lastReported[to] = lastReported[from];
+            values[to] = values[from];
+            values[from] = null;
+        }
+
+        private void resize(int capacity) {
+            long[] oldMsbs = msbs;
+            long[] oldLsbs = lsbs;
+            long[] oldLastActivity = lastActivity;
+            long[] oldLastReported = lastReported;
+            SessionMetaData[] oldValues = values;
+            msbs = new long[capacity];
+            lsbs = new long[capacity];
+            lastActivity = new long[capacity];
+            lastReported = new long[capacity];
+            values = new SessionMetaData[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    int slot = hash(oldMsbs[i], oldLsbs[i]) & mask;
+                    while (values[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    msbs[slot] = oldMsbs[i];
+                    lsbs[slot] = oldLsbs[i];
+                    lastActivity[slot] = oldLastActivity[i];
+                    lastReported[slot] = oldLastReported[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport.service;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
+import org.thingsboard.server.queue.TbQueueCallback;
+import org.thingsboard.server.queue.TbQueueMsgMetadata;
+import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.scheduler.SchedulerComponent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TransportQueueBatcherTest {
+
+    private static final long LINGER_MS = 10;
+    private static final int MAX_SIZE = 3;
+
+    private final TopicPartitionInfo tpi = new TopicPartitionInfo("tb_rule_engine", null, 1, true);
+    private final List<TbProtoQueueMsg<ToRuleEngineMsg>> sent = new ArrayList<>();
+    private final List<TbQueueCallback> sentCallbacks = new ArrayList<>();
+    private SchedulerComponent scheduler;
+    private TransportQueueBatcher<ToRuleEngineMsg, ToRuleEngineMsg> batcher;
+
+    @Before
+    public void before() {
+        scheduler = mock(SchedulerComponent.class);
+        TbQueueProducer<TbProtoQueueMsg<ToRuleEngineMsg>> producer = new TbQueueProducer<TbProtoQueueMsg<ToRuleEngineMsg>>() {
+            @Override
+            public void init() {
+            }
+
+            @Override
+            public String getDefaultTopic() {
+                return tpi.getFullTopicName();
+            }
+
+            @Override
+            public void send(TopicPartitionInfo tpi, TbProtoQueueMsg<ToRuleEngineMsg> msg, TbQueueCallback callback) {
+                sent.add(msg);
+                sentCallbacks.add(callback);
+            }
+
+            @Override
+            public void stop() {
+            }
+        };
+        batcher = new TransportQueueBatcher<>(ServiceType.TB_RULE_ENGINE.name(), producer, scheduler, MAX_SIZE, LINGER_MS,
+                Function.identity(), DefaultTransportService::toRuleEngineBatchMsg);
+    }
+
+    @Test
+    public void testFlushOnMaxSize() {
+        List<UUID> keys = new ArrayList<>();
+        AtomicInteger succeeded = new AtomicInteger();
+        for (int i = 0; i < MAX_SIZE; i++) {
+            UUID key = UUID.randomUUID();
+            keys.add(key);
+            batcher.send(tpi, key, msg(i), new CountingCallback(succeeded));
+        }
+
+        Assert.assertEquals(1, sent.size());
+        TbProtoQueueMsg<ToRuleEngineMsg> batch = sent.get(0);
+        Assert.assertEquals(keys.get(0), batch.getKey());
+        Assert.assertEquals(MAX_SIZE, batch.getValue().getMsgsCount());
+        for (int i = 0; i < MAX_SIZE; i++) {
+            ToRuleEngineMsg msg = batch.getValue().getMsgs(i);
+            Assert.assertEquals(i, msg.getTenantIdMSB());
+            Assert.assertEquals(keys.get(i), new UUID(msg.getMsgKeyMSB(), msg.getMsgKeyLSB()));
+        }
+
+        sentCallbacks.get(0).onSuccess(null);
+        Assert.assertEquals(MAX_SIZE, succeeded.get());
+    }
+
+    @Test
+    public void testFlushOnLinger() {
+        UUID key = UUID.randomUUID();
+        batcher.send(tpi, key, msg(0), null);
+        batcher.send(tpi, UUID.randomUUID(), msg(1), null);
+        Assert.assertTrue(sent.isEmpty());
+
+        ArgumentCaptor<Runnable> flushTask = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(1)).schedule(flushTask.capture(), eq(LINGER_MS), eq(TimeUnit.MILLISECONDS));
+        flushTask.getValue().run();
+
+        Assert.assertEquals(1, sent.size());
+        Assert.assertEquals(key, sent.get(0).getKey());
+        Assert.assertEquals(2, sent.get(0).getValue().getMsgsCount());
+
+        // the batch is already published, so the stale task must not publish anything
+        flushTask.getValue().run();
+        Assert.assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void testSingleMsgIsSentAsIs() {
+        UUID key = UUID.randomUUID();
+        batcher.send(tpi, key, msg(7), null);
+        batcher.flushAll();
+
+        Assert.assertEquals(1, sent.size());
+        Assert.assertEquals(key, sent.get(0).getKey());
+        Assert.assertEquals(0, sent.get(0).getValue().getMsgsCount());
+        Assert.assertEquals(7, sent.get(0).getValue().getTenantIdMSB());
+    }
+
+    @Test
+    public void testBatchFailureIsReportedToEveryCallback() {
+        AtomicInteger failed = new AtomicInteger();
+        TbQueueCallback callback = new TbQueueCallback() {
+            @Override
+            public void onSuccess(TbQueueMsgMetadata metadata) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failed.incrementAndGet();
+            }
+        };
+        for (int i = 0; i < MAX_SIZE; i++) {
+            batcher.send(tpi, UUID.randomUUID(), msg(i), callback);
+        }
+        sentCallbacks.get(0).onFailure(new RuntimeException());
+        Assert.assertEquals(MAX_SIZE, failed.get());
+    }
+
+    private static ToRuleEngineMsg msg(int i) {
+        return ToRuleEngineMsg.newBuilder().setTenantIdMSB(i).build();
+    }
+
+    private static class CountingCallback implements TbQueueCallback {
+
+        private final AtomicInteger counter;
+
+        private CountingCallback(AtomicInteger counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public void onSuccess(TbQueueMsgMetadata metadata) {
+            counter.incrementAndGet();
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+        }
+    }
+}
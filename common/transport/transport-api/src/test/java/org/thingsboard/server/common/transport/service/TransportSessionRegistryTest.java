@@ -0,0 +1,144 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.gen.transport.TransportProtos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class TransportSessionRegistryTest {
+
+    private static final int SESSIONS = 10000;
+
+    private final TransportSessionRegistry registry = new TransportSessionRegistry();
+
+    @Test
+    public void testPutIfAbsentAndGet() {
+        UUID sessionId = UUID.randomUUID();
+        SessionMetaData md = sessionMetaData(sessionId);
+        Assert.assertNull(registry.putIfAbsent(sessionId.getMostSignificantBits(), sessionId.getLeastSignificantBits(), md, 1L));
+        Assert.assertSame(md, registry.get(sessionId));
+
+        SessionMetaData duplicate = sessionMetaData(sessionId);
+        Assert.assertSame(md, registry.putIfAbsent(sessionId.getMostSignificantBits(), sessionId.getLeastSignificantBits(), duplicate, 2L));
+        Assert.assertSame(md, registry.get(sessionId));
+        Assert.assertEquals(1L, registry.getLastActivityTime(sessionId.getMostSignificantBits(), sessionId.getLeastSignificantBits()));
+        Assert.assertEquals(1, registry.size());
+
+        Assert.assertNull(registry.get(UUID.randomUUID()));
+    }
+
+    @Test
+    public void testResizeKeepsAllSessions() {
+        Map<UUID, SessionMetaData> expected = putSessions(SESSIONS);
+        Assert.assertEquals(SESSIONS, registry.size());
+        expected.forEach((sessionId, md) -> Assert.assertSame(md, registry.get(sessionId)));
+    }
+
+    @Test
+    public void testRemoveKeepsProbeSequences() {
+        Map<UUID, SessionMetaData> expected = putSessions(SESSIONS);
+        List<UUID> removed = new ArrayList<>();
+        int i = 0;
+        for (UUID sessionId : expected.keySet()) {
+            if (i++ % 2 == 0) {
+                removed.add(sessionId);
+            }
+        }
+        for (UUID sessionId : removed) {
+            Assert.assertSame(expected.remove(sessionId), registry.remove(sessionId.getMostSignificantBits(), sessionId.getLeastSignificantBits()));
+        }
+        Assert.assertEquals(expected.size(), registry.size());
+        removed.forEach(sessionId -> Assert.assertNull(registry.get(sessionId)));
+        expected.forEach((sessionId, md) -> Assert.assertSame(md, registry.get(sessionId)));
+
+        UUID sessionId = removed.get(0);
+        Assert.assertNull(registry.remove(sessionId.getMostSignificantBits(), sessionId.getLeastSignificantBits()));
+        SessionMetaData md = sessionMetaData(sessionId);
+        Assert.assertNull(registry.putIfAbsent(sessionId.getMostSignificantBits(), sessionId.getLeastSignificantBits(), md, 1L));
+        Assert.assertSame(md, registry.get(sessionId));
+    }
+
+    @Test
+    public void testActivityTimestamps() {
+        UUID sessionId = UUID.randomUUID();
+        long msb = sessionId.getMostSignificantBits();
+        long lsb = sessionId.getLeastSignificantBits();
+        Assert.assertNull(registry.touch(msb, lsb, 10L));
+        Assert.assertEquals(0L, registry.getLastActivityTime(msb, lsb));
+
+        SessionMetaData md = sessionMetaData(sessionId);
+        registry.putIfAbsent(msb, lsb, md, 10L);
+        Assert.assertSame(md, registry.touch(msb, lsb, 20L));
+        Assert.assertSame(md, registry.touch(msb, lsb, 15L));
+        Assert.assertEquals(20L, registry.getLastActivityTime(msb, lsb));
+
+        registry.setLastReportedActivityTime(msb, lsb, 20L);
+        registry.setLastReportedActivityTime(msb, lsb, 5L);
+        registry.forEachActivity((visited, lastActivityTime, lastReportedActivityTime) -> {
+            Assert.assertSame(md, visited);
+            Assert.assertEquals(20L, lastActivityTime);
+            Assert.assertEquals(20L, lastReportedActivityTime);
+        });
+    }
+
+    @Test
+    public void testIterationVisitsEverySessionOnce() {
+        Map<UUID, SessionMetaData> expected = putSessions(SESSIONS);
+        Map<UUID, Long> visited = new HashMap<>();
+        registry.forEachActivity((md, lastActivityTime, lastReportedActivityTime) -> {
+            UUID sessionId = new UUID(md.getSessionInfo().getSessionIdMSB(), md.getSessionInfo().getSessionIdLSB());
+            Assert.assertNull(visited.put(sessionId, lastActivityTime));
+            Assert.assertSame(expected.get(sessionId), md);
+        });
+        Assert.assertEquals(expected.size(), visited.size());
+        visited.forEach((sessionId, lastActivityTime) -> Assert.assertEquals(sessionId.getLeastSignificantBits(), lastActivityTime.longValue()));
+    }
+
+    @Test
+    public void testIterationAllowsRemoval() {
+        Map<UUID, SessionMetaData> expected = putSessions(SESSIONS);
+        registry.forEach(md -> registry.remove(md.getSessionInfo().getSessionIdMSB(), md.getSessionInfo().getSessionIdLSB()));
+        Assert.assertEquals(0, registry.size());
+        expected.keySet().forEach(sessionId -> Assert.assertNull(registry.get(sessionId)));
+    }
+
+    private Map<UUID, SessionMetaData> putSessions(int count) {
+        Map<UUID, SessionMetaData> sessions = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            UUID sessionId = UUID.randomUUID();
+            SessionMetaData md = sessionMetaData(sessionId);
+            sessions.put(sessionId, md);
+            // the last activity time is derived from the key to check that the timestamps move together with the sessions
+            Assert.assertNull(registry.putIfAbsent(sessionId.getMostSignificantBits(), sessionId.getLeastSignificantBits(), md, sessionId.getLeastSignificantBits()));
+        }
+        return sessions;
+    }
+
+    private static SessionMetaData sessionMetaData(UUID sessionId) {
+        TransportProtos.SessionInfoProto sessionInfo = TransportProtos.SessionInfoProto.newBuilder()
+                .setSessionIdMSB(sessionId.getMostSignificantBits())
+                .setSessionIdLSB(sessionId.getLeastSignificantBits())
+                .build();
+        return new SessionMetaData(sessionInfo, TransportProtos.SessionType.ASYNC, null);
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.attributes;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.stereotype.Component;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.kv.AttributeKvEntry;
+import org.thingsboard.server.dao.cache.AbstractDaoCache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.thingsboard.server.common.data.CacheConstants.ATTRIBUTES_CACHE;
+
+/**
+ * Cache of attribute values keyed by entity id, scope and attribute key. Missing attributes are cached as well.
+ * Enabled by {@code cache.attributes.enabled}.
+ */
+@Component
+public class AttributesCache extends AbstractDaoCache {
+
+    public AttributesCache(@Value("${cache.attributes.enabled:false}") boolean enabled,
+                           @Value("${cache.attributes.redis_ttl_sec:86400}") long redisTtlSec) {
+        super(ATTRIBUTES_CACHE, enabled, redisTtlSec);
+    }
+
+    /**
+     * @return null if the attribute is not cached, otherwise a wrapper of the attribute or of null if the attribute does not exist.
+     */
+    public Cache.ValueWrapper get(EntityId entityId, String scope, String key) {
+        return getValue(toCacheKey(entityId, scope, key));
+    }
+
+    /**
+     * @return the version to pass to {@link #putIfAbsent}, has to be taken before the database read.
+     */
+    public long getVersion(EntityId entityId, String scope, String key) {
+        return getVersion(toCacheKey(entityId, scope, key));
+    }
+
+    /**
+     * Caches the value loaded from the database unless it was changed or invalidated since the version was taken.
+     */
+    public void putIfAbsent(EntityId entityId, String scope, String key, AttributeKvEntry attribute, long version) {
+        List<Object> cacheKey = toCacheKey(entityId, scope, key);
+        putValueIfAbsent(cacheKey, attribute, cacheKey, version);
+    }
+
+    public void put(EntityId entityId, String scope, AttributeKvEntry attribute) {
+        putValue(toCacheKey(entityId, scope, attribute.getKey()), attribute);
+    }
+
+    public void evict(EntityId entityId, String scope, Collection<String> keys) {
+        keys.forEach(key -> evictValue(toCacheKey(entityId, scope, key)));
+    }
+
+    private static List<Object> toCacheKey(EntityId entityId, String scope, String key) {
+        return Arrays.asList(entityId, scope, key);
+    }
+}
@@ -18,7 +18,9 @@ package org.thingsboard.server.dao.attributes;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
 import org.springframework.stereotype.Service;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
@@ -26,9 +28,13 @@ import org.thingsboard.server.common.data.kv.AttributeKvEntry;
 import org.thingsboard.server.dao.exception.IncorrectParameterException;
 import org.thingsboard.server.dao.service.Validator;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * @author Andrew Shvayka
@@ -39,23 +45,70 @@ public class BaseAttributesService implements AttributesService {
     @Autowired
     private AttributesDao attributesDao;
 
+    @Autowired
+    private AttributesCache attributesCache;
+
+    @Autowired(required = false)
+    private AttributesCacheInvalidationService cacheInvalidationService;
+
     @Override
     public ListenableFuture<Optional<AttributeKvEntry>> find(TenantId tenantId, EntityId entityId, String scope, String attributeKey) {
         validate(entityId, scope);
         Validator.validateString(attributeKey, "Incorrect attribute key " + attributeKey);
-        return attributesDao.find(tenantId, entityId, scope, attributeKey);
+        if (!attributesCache.isEnabled()) {
+            return attributesDao.find(tenantId, entityId, scope, attributeKey);
+        }
+        Cache.ValueWrapper cached = attributesCache.get(entityId, scope, attributeKey);
+        if (cached != null) {
+            return Futures.immediateFuture(Optional.ofNullable((AttributeKvEntry) cached.get()));
+        }
+        long version = attributesCache.getVersion(entityId, scope, attributeKey);
+        return Futures.transform(attributesDao.find(tenantId, entityId, scope, attributeKey), attribute -> {
+            attributesCache.putIfAbsent(entityId, scope, attributeKey, attribute.orElse(null), version);
+            return attribute;
+        }, MoreExecutors.directExecutor());
     }
 
     @Override
     public ListenableFuture<List<AttributeKvEntry>> find(TenantId tenantId, EntityId entityId, String scope, Collection<String> attributeKeys) {
         validate(entityId, scope);
         attributeKeys.forEach(attributeKey -> Validator.validateString(attributeKey, "Incorrect attribute key " + attributeKey));
-        return attributesDao.find(tenantId, entityId, scope, attributeKeys);
+        if (!attributesCache.isEnabled()) {
+            return attributesDao.find(tenantId, entityId, scope, attributeKeys);
+        }
+        List<AttributeKvEntry> cachedAttributes = new ArrayList<>(attributeKeys.size());
+        List<String> notCachedKeys = new ArrayList<>();
+        Map<String, Long> versions = new HashMap<>();
+        for (String attributeKey : attributeKeys) {
+            Cache.ValueWrapper cached = attributesCache.get(entityId, scope, attributeKey);
+            if (cached == null) {
+                notCachedKeys.add(attributeKey);
+                versions.put(attributeKey, attributesCache.getVersion(entityId, scope, attributeKey));
+            } else if (cached.get() != null) {
+                cachedAttributes.add((AttributeKvEntry) cached.get());
+            }
+        }
+        if (notCachedKeys.isEmpty()) {
+            return Futures.immediateFuture(cachedAttributes);
+        }
+        return Futures.transform(attributesDao.find(tenantId, entityId, scope, notCachedKeys), attributes -> {
+            List<String> missingKeys = new ArrayList<>(notCachedKeys);
+            for (AttributeKvEntry attribute : attributes) {
+                attributesCache.putIfAbsent(entityId, scope, attribute.getKey(), attribute, versions.get(attribute.getKey()));
+                missingKeys.remove(attribute.getKey());
+            }
+            missingKeys.forEach(attributeKey -> attributesCache.putIfAbsent(entityId, scope, attributeKey, null, versions.get(attributeKey)));
+            List<AttributeKvEntry> result = new ArrayList<>(cachedAttributes.size() + attributes.size());
+            result.addAll(cachedAttributes);
+            result.addAll(attributes);
+            return result;
+        }, MoreExecutors.directExecutor());
     }
 
     @Override
     public ListenableFuture<List<AttributeKvEntry>> findAll(TenantId tenantId, EntityId entityId, String scope) {
         validate(entityId, scope);
+        // not cached: the keys are unknown before the read, so there are no versions to check the loaded values against
         return attributesDao.findAll(tenantId, entityId, scope);
     }
 
@@ -65,15 +118,44 @@ public class BaseAttributesService implements AttributesService {
         attributes.forEach(attribute -> validate(attribute));
         List<ListenableFuture<Void>> futures = Lists.newArrayListWithExpectedSize(attributes.size());
         for (AttributeKvEntry attribute : attributes) {
-            futures.add(attributesDao.save(tenantId, entityId, scope, attribute));
+            ListenableFuture<Void> future = attributesDao.save(tenantId, entityId, scope, attribute);
+            if (attributesCache.isEnabled()) {
+                // the dao completes the future once the value is written, so the cache never gets ahead of the database
+                future = Futures.transform(future, v -> {
+                    attributesCache.put(entityId, scope, attribute);
+                    return v;
+                }, MoreExecutors.directExecutor());
+            }
+            futures.add(future);
+        }
+        ListenableFuture<List<Void>> result = Futures.allAsList(futures);
+        if (attributesCache.isEnabled()) {
+            result = Futures.transform(result, v -> {
+                broadcastInvalidation(tenantId, entityId, scope, attributes.stream().map(AttributeKvEntry::getKey).collect(Collectors.toList()));
+                return v;
+            }, MoreExecutors.directExecutor());
         }
-        return Futures.allAsList(futures);
+        return result;
     }
 
     @Override
     public ListenableFuture<List<Void>> removeAll(TenantId tenantId, EntityId entityId, String scope, List<String> keys) {
         validate(entityId, scope);
-        return attributesDao.removeAll(tenantId, entityId, scope, keys);
+        ListenableFuture<List<Void>> future = attributesDao.removeAll(tenantId, entityId, scope, keys);
+        if (attributesCache.isEnabled()) {
+            future = Futures.transform(future, v -> {
+                attributesCache.evict(entityId, scope, keys);
+                broadcastInvalidation(tenantId, entityId, scope, keys);
+                return v;
+            }, MoreExecutors.directExecutor());
+        }
+        return future;
+    }
+
+    private void broadcastInvalidation(TenantId tenantId, EntityId entityId, String scope, Collection<String> keys) {
+        if (cacheInvalidationService != null && attributesCache.isLocal() && !keys.isEmpty()) {
+            cacheInvalidationService.broadcastInvalidation(tenantId, entityId, scope, keys);
+        }
     }
 
     private static void validate(EntityId id, String scope) {
@@ -0,0 +1,233 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.common.stats.StatsType;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Base of the caches that sit in front of a DAO. The cache is disabled unless it is enabled explicitly,
+ * and when the caffeine cache has zero size.
+ * <p>
+ * Values loaded from the database are cached with {@link #putValueIfAbsent(Object, Object, Object, long)} and the version
+ * taken before the database read. Every {@link #putValue(Object, Object, Object...)} and {@link #evictValue(Object, Object...)}
+ * bumps the versions, so a value read before a concurrent change is dropped instead of overwriting the change.
+ * Versions of the local caches are kept in memory, versions of the redis cache are kept in redis next to the values.
+ * <p>
+ * Updates of the redis cache are made by the cache threads, so they do not block the DAO threads.
+ * The updates of the same key are made by the same thread in the submission order.
+ */
+@Slf4j
+public abstract class AbstractDaoCache {
+
+    private static final String CACHE_NAME_TAG = "cacheName";
+    private static final String RESULT_TAG = "result";
+    private static final String VERSION_KEY_SEPARATOR = "::version::";
+    private static final int VERSION_STRIPES = 1024;
+    private static final int UPDATE_THREADS = 4;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private StatsFactory statsFactory;
+
+    @Autowired(required = false)
+    private RedisConnectionFactory redisConnectionFactory;
+
+    private final String cacheName;
+    private final boolean enabled;
+    private final long redisTtlSec;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    private Cache cache;
+    private StringRedisTemplate redisVersions;
+    private ExecutorService[] updateExecutors;
+    private DefaultCounter hits;
+    private DefaultCounter misses;
+
+    protected AbstractDaoCache(String cacheName, boolean enabled, long redisTtlSec) {
+        this.cacheName = cacheName;
+        this.enabled = enabled;
+        this.redisTtlSec = redisTtlSec;
+    }
+
+    @PostConstruct
+    public void init() {
+        cache = enabled ? cacheManager.getCache(cacheName) : null;
+        if (cache instanceof CaffeineCache && ((CaffeineCache) cache).getNativeCache().policy().eviction()
+                .map(eviction -> eviction.getMaximum() == 0).orElse(false)) {
+            cache = null;
+        }
+        if (cache == null) {
+            log.info("[{}] Cache is disabled", cacheName);
+        } else if (cache instanceof RedisCache) {
+            redisVersions = new StringRedisTemplate(redisConnectionFactory);
+            updateExecutors = new ExecutorService[UPDATE_THREADS];
+            for (int i = 0; i < UPDATE_THREADS; i++) {
+                updateExecutors[i] = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName(cacheName + "-cache-" + i));
+            }
+        }
+        hits = statsFactory.createDefaultCounter(StatsType.CACHE.getName(), CACHE_NAME_TAG, cacheName, RESULT_TAG, "hit");
+        misses = statsFactory.createDefaultCounter(StatsType.CACHE.getName(), CACHE_NAME_TAG, cacheName, RESULT_TAG, "miss");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (updateExecutors != null) {
+            for (ExecutorService executor : updateExecutors) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * @return true if each node has its own copy of the cache, so changes have to be broadcast to the other nodes.
+     */
+    public boolean isLocal() {
+        return cache != null && !(cache instanceof RedisCache);
+    }
+
+    protected Cache.ValueWrapper getValue(Object cacheKey) {
+        if (cache == null) {
+            return null;
+        }
+        Cache.ValueWrapper wrapper = cache.get(cacheKey);
+        if (wrapper != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return wrapper;
+    }
+
+    /**
+     * @return the version to pass to {@link #putValueIfAbsent(Object, Object, Object, long)}, has to be taken before the database read.
+     */
+    protected long getVersion(Object versionKey) {
+        if (redisVersions != null) {
+            String version = redisVersions.opsForValue().get(toRedisVersionKey(versionKey));
+            return version != null ? Long.parseLong(version) : 0L;
+        }
+        return versions.get(stripe(versionKey));
+    }
+
+    /**
+     * Caches the value loaded from the database unless the version of {@code versionKey} was changed since it was taken.
+     */
+    protected void putValueIfAbsent(Object cacheKey, Object value, Object versionKey, long version) {
+        if (cache != null) {
+            execute(cacheKey, () -> {
+                cache.putIfAbsent(cacheKey, value);
+                if (getVersion(versionKey) != version) {
+                    // the key was changed or invalidated while the value was read, the value may be stale
+                    cache.evict(cacheKey);
+                }
+            });
+        }
+    }
+
+    /**
+     * Caches the saved value and bumps the versions of the cache key and of the given version keys.
+     */
+    protected void putValue(Object cacheKey, Object value, Object... versionKeys) {
+        if (cache != null) {
+            execute(cacheKey, () -> {
+                incrementVersions(cacheKey, versionKeys);
+                cache.put(cacheKey, value);
+            });
+        }
+    }
+
+    protected void evictValue(Object cacheKey, Object... versionKeys) {
+        if (cache != null) {
+            execute(cacheKey, () -> {
+                incrementVersions(cacheKey, versionKeys);
+                cache.evict(cacheKey);
+            });
+        }
+    }
+
+    private void incrementVersions(Object cacheKey, Object... versionKeys) {
+        if (redisVersions == null) {
+            versions.incrementAndGet(stripe(cacheKey));
+            for (Object versionKey : versionKeys) {
+                versions.incrementAndGet(stripe(versionKey));
+            }
+        } else {
+            redisVersions.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                incrementRedisVersion(stringConnection, cacheKey);
+                for (Object versionKey : versionKeys) {
+                    incrementRedisVersion(stringConnection, versionKey);
+                }
+                return null;
+            });
+        }
+    }
+
+    private void incrementRedisVersion(StringRedisConnection connection, Object versionKey) {
+        String key = toRedisVersionKey(versionKey);
+        connection.incr(key);
+        if (redisTtlSec > 0) {
+            connection.expire(key, redisTtlSec);
+        }
+    }
+
+    private void execute(Object cacheKey, Runnable update) {
+        if (updateExecutors == null) {
+            update.run();
+        } else {
+            updateExecutors[stripe(cacheKey) % UPDATE_THREADS].execute(() -> {
+                try {
+                    update.run();
+                } catch (Exception e) {
+                    log.warn("[{}][{}] Failed to update cache", cacheName, cacheKey, e);
+                }
+            });
+        }
+    }
+
+    private String toRedisVersionKey(Object versionKey) {
+        return cacheName + VERSION_KEY_SEPARATOR + versionKey;
+    }
+
+    private static int stripe(Object key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % VERSION_STRIPES;
+    }
+}
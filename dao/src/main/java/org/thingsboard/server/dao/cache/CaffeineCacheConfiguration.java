@@ -30,6 +30,7 @@ import org.springframework.cache.interceptor.KeyGenerator;
 import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.thingsboard.server.common.data.kv.KvEntry;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -46,6 +47,8 @@ import java.util.stream.Collectors;
 @Slf4j
 public class CaffeineCacheConfiguration {
 
+    private static final int KV_ENTRY_WEIGHT_UNIT = 1024;
+
     private Map<String, CacheSpecs> specs;
 
     @Bean
@@ -88,6 +91,10 @@ public class CaffeineCacheConfiguration {
             if(value instanceof Collection) {
                 return ((Collection) value).size();
             }
+            if (value instanceof KvEntry) {
+                String strValue = ((KvEntry) value).getValueAsString();
+                return strValue != null ? 1 + strValue.length() / KV_ENTRY_WEIGHT_UNIT : 1;
+            }
             return 1;
         };
     }
@@ -34,6 +34,13 @@ import org.springframework.util.Assert;
 import org.thingsboard.server.common.data.id.EntityId;
 import redis.clients.jedis.JedisPoolConfig;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.thingsboard.server.common.data.CacheConstants.ATTRIBUTES_CACHE;
+import static org.thingsboard.server.common.data.CacheConstants.TS_LATEST_CACHE;
+
 @Configuration
 @ConditionalOnProperty(prefix = "cache", value = "type", havingValue = "redis", matchIfMissing = false)
 @EnableCaching
@@ -73,6 +80,12 @@ public abstract class TBRedisCacheConfiguration {
     @Value("${redis.pool_config.blockWhenExhausted}")
     private boolean blockWhenExhausted;
 
+    @Value("${cache.ts_latest.redis_ttl_sec:86400}")
+    private long tsLatestTtlSec;
+
+    @Value("${cache.attributes.redis_ttl_sec:86400}")
+    private long attributesTtlSec;
+
     @Bean
     public RedisConnectionFactory redisConnectionFactory() {
         return loadFactory();
@@ -86,7 +99,14 @@ public abstract class TBRedisCacheConfiguration {
         RedisCacheConfiguration.registerDefaultConverters(redisConversionService);
         registerDefaultConverters(redisConversionService);
         RedisCacheConfiguration configuration = RedisCacheConfiguration.defaultCacheConfig().withConversionService(redisConversionService);
-        return RedisCacheManager.builder(cf).cacheDefaults(configuration).build();
+        Map<String, RedisCacheConfiguration> cacheConfigurations = new HashMap<>();
+        if (tsLatestTtlSec > 0) {
+            cacheConfigurations.put(TS_LATEST_CACHE, configuration.entryTtl(Duration.ofSeconds(tsLatestTtlSec)));
+        }
+        if (attributesTtlSec > 0) {
+            cacheConfigurations.put(ATTRIBUTES_CACHE, configuration.entryTtl(Duration.ofSeconds(attributesTtlSec)));
+        }
+        return RedisCacheManager.builder(cf).cacheDefaults(configuration).withInitialCacheConfigurations(cacheConfigurations).build();
     }
 
     @Bean
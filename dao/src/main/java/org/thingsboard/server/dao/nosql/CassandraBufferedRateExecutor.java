@@ -15,6 +15,13 @@
  */
 package org.thingsboard.server.dao.nosql;
 
+import com.datastax.oss.driver.api.core.DriverTimeoutException;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.datastax.oss.driver.api.core.servererrors.OverloadedException;
+import com.datastax.oss.driver.api.core.servererrors.ReadTimeoutException;
+import com.datastax.oss.driver.api.core.servererrors.WriteTimeoutException;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import lombok.extern.slf4j.Slf4j;
@@ -43,6 +50,8 @@ import java.util.Map;
 @NoSqlAnyDao
 public class CassandraBufferedRateExecutor extends AbstractBufferedRateExecutor<CassandraStatementTask, TbResultSetFuture, TbResultSet> {
 
+    private static final String SELECT = "SELECT";
+
     @Autowired
     private EntityService entityService;
     private Map<TenantId, String> tenantNamesCache = new HashMap<>();
@@ -55,13 +64,16 @@ public class CassandraBufferedRateExecutor extends AbstractBufferedRateExecutor<
             @Value("${cassandra.query.permit_max_wait_time}") long maxWaitTime,
             @Value("${cassandra.query.dispatcher_threads:2}") int dispatcherThreads,
             @Value("${cassandra.query.callback_threads:4}") int callbackThreads,
-            @Value("${cassandra.query.poll_ms:50}") long pollMs,
+            @Value("${cassandra.query.adaptive_concurrency.enabled:false}") boolean adaptiveConcurrency,
+            @Value("${cassandra.query.adaptive_concurrency.min_limit:16}") int minConcurrencyLimit,
+            @Value("${cassandra.query.adaptive_concurrency.rtt_tolerance:2.0}") double rttTolerance,
+            @Value("${cassandra.query.read_priority_weight:4}") int readPriorityWeight,
             @Value("${cassandra.query.tenant_rate_limits.enabled}") boolean tenantRateLimitsEnabled,
             @Value("${cassandra.query.tenant_rate_limits.configuration}") String tenantRateLimitsConfiguration,
             @Value("${cassandra.query.tenant_rate_limits.print_tenant_names}") boolean printTenantNames,
             @Value("${cassandra.query.print_queries_freq:0}") int printQueriesFreq,
             @Autowired StatsFactory statsFactory) {
-        super(queueLimit, concurrencyLimit, maxWaitTime, dispatcherThreads, callbackThreads, pollMs, tenantRateLimitsEnabled, tenantRateLimitsConfiguration, printQueriesFreq, statsFactory);
+        super(queueLimit, concurrencyLimit, maxWaitTime, dispatcherThreads, callbackThreads, adaptiveConcurrency, minConcurrencyLimit, rttTolerance, readPriorityWeight, tenantRateLimitsEnabled, tenantRateLimitsConfiguration, printQueriesFreq, statsFactory);
         this.printTenantNames = printTenantNames;
     }
 
@@ -85,6 +97,7 @@ public class CassandraBufferedRateExecutor extends AbstractBufferedRateExecutor<
             });
             statsBuilder.append("totalRateLimitedTenants").append(" = [").append(rateLimitedTenantsCount).append("] ");
             statsBuilder.append(CONCURRENCY_LEVEL).append(" = [").append(concurrencyLevel.get()).append("] ");
+            statsBuilder.append("currLimit").append(" = [").append(stats.getConcurrencyLimit().get()).append("] ");
 
             stats.getStatsCounters().forEach(StatsCounter::clear);
             log.info("Permits {}", statsBuilder);
@@ -128,6 +141,26 @@ public class CassandraBufferedRateExecutor extends AbstractBufferedRateExecutor<
         return new TbResultSetFuture(future);
     }
 
+    @Override
+    protected boolean isPriorityTask(CassandraStatementTask task) {
+        Statement statement = task.getStatement();
+        String query;
+        if (statement instanceof BoundStatement) {
+            query = ((BoundStatement) statement).getPreparedStatement().getQuery();
+        } else if (statement instanceof SimpleStatement) {
+            query = ((SimpleStatement) statement).getQuery();
+        } else {
+            return false;
+        }
+        return query.regionMatches(true, 0, SELECT, 0, SELECT.length());
+    }
+
+    @Override
+    protected boolean isOverloaded(Throwable t) {
+        return super.isOverloaded(t) || t instanceof DriverTimeoutException || t instanceof ReadTimeoutException
+                || t instanceof WriteTimeoutException || t instanceof OverloadedException;
+    }
+
     @Override
     protected ListenableFuture<TbResultSet> execute(AsyncTaskContext<CassandraStatementTask, TbResultSet> taskCtx) {
         CassandraStatementTask task = taskCtx.getTask();
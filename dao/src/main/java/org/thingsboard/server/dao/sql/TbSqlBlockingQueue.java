@@ -17,6 +17,7 @@ package org.thingsboard.server.dao.sql;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.common.stats.MessagesStats;
@@ -24,11 +25,13 @@ import org.thingsboard.server.common.stats.MessagesStats;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -36,15 +39,30 @@ import java.util.stream.Stream;
 @Slf4j
 public class TbSqlBlockingQueue<E> implements TbSqlQueue<E> {
 
-    private final BlockingQueue<TbSqlQueueElement<E>> queue = new LinkedBlockingQueue<>();
+    private static final int MIN_ADAPTIVE_BATCH_SIZE = 16;
+
+    private final BlockingQueue<TbSqlQueueElement<E>> queue;
     private final TbSqlBlockingQueueParams params;
 
     private ExecutorService executor;
     private final MessagesStats stats;
+    private final AtomicInteger queueSize;
+    private final Timer flushTimer;
+
+    private volatile int currentBatchSize;
+    private volatile long lastFlushLatency;
 
     public TbSqlBlockingQueue(TbSqlBlockingQueueParams params, MessagesStats stats) {
+        this(params, stats, new AtomicInteger(), null);
+    }
+
+    public TbSqlBlockingQueue(TbSqlBlockingQueueParams params, MessagesStats stats, AtomicInteger queueSize, Timer flushTimer) {
         this.params = params;
         this.stats = stats;
+        this.queueSize = queueSize;
+        this.flushTimer = flushTimer;
+        this.queue = params.isBounded() ? new ArrayBlockingQueue<>(params.getMaxQueueSize()) : new LinkedBlockingQueue<>();
+        this.currentBatchSize = params.getBatchSize();
     }
 
     @Override
@@ -64,17 +82,26 @@ public class TbSqlBlockingQueue<E> implements TbSqlQueue<E> {
                     } else {
                         entities.add(attr);
                     }
-                    queue.drainTo(entities, batchSize - 1);
-                    boolean fullPack = entities.size() == batchSize;
+                    boolean fullPack;
+                    if (params.isBounded()) {
+                        // the queue is FIFO, so the first element is the oldest one
+                        fullPack = collectPack(entities, attr.getEnqueueTs());
+                    } else {
+                        queue.drainTo(entities, batchSize - 1);
+                        fullPack = entities.size() == batchSize;
+                    }
+                    queueSize.set(queue.size());
                     log.debug("[{}] Going to save {} entities", logName, entities.size());
                     Stream<E> entitiesStream = entities.stream().map(TbSqlQueueElement::getEntity);
+                    long flushStartTs = System.nanoTime();
                     saveFunction.accept(
                             (params.isBatchSortEnabled() ? entitiesStream.sorted(batchUpdateComparator) : entitiesStream)
                                     .collect(Collectors.toList())
                     );
+                    onFlushed(System.nanoTime() - flushStartTs, fullPack);
                     entities.forEach(v -> v.getFuture().set(null));
                     stats.incrementSuccessful(entities.size());
-                    if (!fullPack) {
+                    if (!fullPack && !params.isBounded()) {
                         long remainingDelay = maxDelay - (System.currentTimeMillis() - currentTs);
                         if (remainingDelay > 0) {
                             Thread.sleep(remainingDelay);
@@ -97,8 +124,14 @@ public class TbSqlBlockingQueue<E> implements TbSqlQueue<E> {
 
         logExecutor.scheduleAtFixedRate(() -> {
             if (queue.size() > 0 || stats.getTotal() > 0 || stats.getSuccessful() > 0 || stats.getFailed() > 0) {
-                log.info("Queue-{} [{}] queueSize [{}] totalAdded [{}] totalSaved [{}] totalFailed [{}]", index,
-                        params.getLogName(), queue.size(), stats.getTotal(), stats.getSuccessful(), stats.getFailed());
+                if (params.isBounded()) {
+                    log.info("Queue-{} [{}] queueSize [{}/{}] batchSize [{}] lastFlushMs [{}] totalAdded [{}] totalSaved [{}] totalFailed [{}]", index,
+                            params.getLogName(), queue.size(), params.getMaxQueueSize(), currentBatchSize, lastFlushLatency,
+                            stats.getTotal(), stats.getSuccessful(), stats.getFailed());
+                } else {
+                    log.info("Queue-{} [{}] queueSize [{}] totalAdded [{}] totalSaved [{}] totalFailed [{}]", index,
+                            params.getLogName(), queue.size(), stats.getTotal(), stats.getSuccessful(), stats.getFailed());
+                }
                 stats.reset();
             }
         }, params.getStatsPrintIntervalMs(), params.getStatsPrintIntervalMs(), TimeUnit.MILLISECONDS);
@@ -114,8 +147,72 @@ public class TbSqlBlockingQueue<E> implements TbSqlQueue<E> {
     @Override
     public ListenableFuture<Void> add(E element) {
         SettableFuture<Void> future = SettableFuture.create();
-        queue.add(new TbSqlQueueElement<>(future, element));
         stats.incrementTotal();
+        TbSqlQueueElement<E> queueElement = new TbSqlQueueElement<>(future, element);
+        if (params.isBounded()) {
+            boolean added;
+            try {
+                added = params.getMaxQueueOfferTimeoutMs() > 0 ?
+                        queue.offer(queueElement, params.getMaxQueueOfferTimeoutMs(), TimeUnit.MILLISECONDS) : queue.offer(queueElement);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                added = false;
+            }
+            if (!added) {
+                stats.incrementFailed();
+                future.setException(new IllegalStateException("[" + params.getLogName() + "] Queue is full, max queue size: " + params.getMaxQueueSize()));
+            }
+        } else {
+            queue.add(queueElement);
+        }
+        queueSize.set(queue.size());
         return future;
     }
+
+    /**
+     * Collects elements until the pack reaches the current batch size or the oldest element exceeds the max delay.
+     *
+     * @return true if the pack was flushed because of its size
+     */
+    private boolean collectPack(List<TbSqlQueueElement<E>> entities, long oldestEnqueueTs) throws InterruptedException {
+        int batchSize = currentBatchSize;
+        long deadline = oldestEnqueueTs + params.getMaxDelay();
+        while (entities.size() < batchSize) {
+            if (queue.drainTo(entities, batchSize - entities.size()) > 0) {
+                continue;
+            }
+            long remainingDelay = deadline - System.currentTimeMillis();
+            if (remainingDelay <= 0) {
+                break;
+            }
+            TbSqlQueueElement<E> element = queue.poll(remainingDelay, TimeUnit.MILLISECONDS);
+            if (element == null) {
+                break;
+            }
+            entities.add(element);
+        }
+        return entities.size() >= batchSize;
+    }
+
+    private void onFlushed(long latencyNanos, boolean fullPack) {
+        if (flushTimer != null) {
+            flushTimer.record(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+        lastFlushLatency = latencyMs;
+        if (params.isBounded() && params.isAdaptiveBatchSizeEnabled()) {
+            int maxBatchSize = params.getBatchSize();
+            int minBatchSize = Math.min(MIN_ADAPTIVE_BATCH_SIZE, maxBatchSize);
+            int batchSize = currentBatchSize;
+            if (latencyMs > params.getBatchTargetLatencyMs()) {
+                batchSize = Math.max(minBatchSize, batchSize / 2);
+            } else if (fullPack) {
+                batchSize = Math.min(maxBatchSize, batchSize + Math.max(1, batchSize / 8));
+            }
+            if (batchSize != currentBatchSize) {
+                log.trace("[{}] Batch size changed from {} to {}, last flush took {} ms", params.getLogName(), currentBatchSize, batchSize, latencyMs);
+                currentBatchSize = batchSize;
+            }
+        }
+    }
 }
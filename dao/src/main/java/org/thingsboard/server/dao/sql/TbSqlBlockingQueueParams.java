@@ -32,4 +32,12 @@ public class TbSqlBlockingQueueParams {
     private final long statsPrintIntervalMs;
     private final String statsNamePrefix;
     private final boolean batchSortEnabled;
+    private final int maxQueueSize;
+    private final long maxQueueOfferTimeoutMs;
+    private final boolean adaptiveBatchSizeEnabled;
+    private final long batchTargetLatencyMs;
+
+    public boolean isBounded() {
+        return maxQueueSize > 0;
+    }
 }
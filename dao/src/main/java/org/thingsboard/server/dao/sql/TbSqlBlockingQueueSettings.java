@@ -0,0 +1,38 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings shared by the bounded SQL blocking queues of all entity types.
+ */
+@Data
+@Component
+public class TbSqlBlockingQueueSettings {
+
+    @Value("${sql.batch_max_queue_offer_timeout_ms:0}")
+    private long maxQueueOfferTimeoutMs;
+
+    @Value("${sql.batch_adaptive_size:false}")
+    private boolean adaptiveBatchSizeEnabled;
+
+    @Value("${sql.batch_target_latency_ms:100}")
+    private long batchTargetLatencyMs;
+
+}
@@ -23,10 +23,13 @@ public final class TbSqlQueueElement<E> {
     private final SettableFuture<Void> future;
     @Getter
     private final E entity;
+    @Getter
+    private final long enqueueTs;
 
     public TbSqlQueueElement(SettableFuture<Void> future, E entity) {
         this.future = future;
         this.entity = entity;
+        this.enqueueTs = System.currentTimeMillis();
     }
 }
 
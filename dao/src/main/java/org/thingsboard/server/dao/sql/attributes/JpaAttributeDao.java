@@ -33,6 +33,7 @@ import org.thingsboard.server.dao.model.sql.AttributeKvEntity;
 import org.thingsboard.server.dao.sql.JpaAbstractDaoListeningExecutorService;
 import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueSettings;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
 
 import javax.annotation.PostConstruct;
@@ -51,6 +52,9 @@ public class JpaAttributeDao extends JpaAbstractDaoListeningExecutorService impl
     @Autowired
     ScheduledLogExecutorComponent logExecutor;
 
+    @Autowired
+    private TbSqlBlockingQueueSettings queueSettings;
+
     @Autowired
     private AttributeKvRepository attributeKvRepository;
 
@@ -72,6 +76,9 @@ public class JpaAttributeDao extends JpaAbstractDaoListeningExecutorService impl
     @Value("${sql.attributes.batch_threads:4}")
     private int batchThreads;
 
+    @Value("${sql.attributes.batch_max_queue_size:0}")
+    private int maxQueueSize;
+
     @Value("${sql.batch_sort:false}")
     private boolean batchSortEnabled;
 
@@ -86,6 +93,10 @@ public class JpaAttributeDao extends JpaAbstractDaoListeningExecutorService impl
                 .statsPrintIntervalMs(statsPrintIntervalMs)
                 .statsNamePrefix("attributes")
                 .batchSortEnabled(batchSortEnabled)
+                .maxQueueSize(maxQueueSize)
+                .maxQueueOfferTimeoutMs(queueSettings.getMaxQueueOfferTimeoutMs())
+                .adaptiveBatchSizeEnabled(queueSettings.isAdaptiveBatchSizeEnabled())
+                .batchTargetLatencyMs(queueSettings.getBatchTargetLatencyMs())
                 .build();
 
         Function<AttributeKvEntity, Integer> hashcodeFunction = entity -> entity.getId().getEntityId().hashCode();
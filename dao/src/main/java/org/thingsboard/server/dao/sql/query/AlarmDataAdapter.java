@@ -50,12 +50,25 @@ public class AlarmDataAdapter {
     public static PageData<AlarmData> createAlarmData(EntityDataPageLink pageLink,
                                                       List<Map<String, Object>> rows,
                                                       int totalElements, Collection<EntityId> orderedEntityIds) {
-        Map<UUID, EntityId> entityIdMap = orderedEntityIds.stream().collect(Collectors.toMap(EntityId::getId, Function.identity()));
-        int totalPages = pageLink.getPageSize() > 0 ? (int) Math.ceil((float) totalElements / pageLink.getPageSize()) : 1;
         int startIndex = pageLink.getPageSize() * pageLink.getPage();
         boolean hasNext = pageLink.getPageSize() > 0 && totalElements > startIndex + rows.size();
+        return createAlarmData(pageLink, rows, totalElements, orderedEntityIds, hasNext, null);
+    }
+
+    public static PageData<AlarmData> createAlarmData(EntityDataPageLink pageLink,
+                                                      List<Map<String, Object>> rows,
+                                                      int totalElements, Collection<EntityId> orderedEntityIds,
+                                                      boolean hasNext, String nextCursor) {
+        Map<UUID, EntityId> entityIdMap = orderedEntityIds.stream().collect(Collectors.toMap(EntityId::getId, Function.identity()));
+        int totalPages;
+        if (totalElements < 0) {
+            // the total is not counted for the next pages of the cursor pagination
+            totalPages = -1;
+        } else {
+            totalPages = pageLink.getPageSize() > 0 ? (int) Math.ceil((float) totalElements / pageLink.getPageSize()) : 1;
+        }
         List<AlarmData> entitiesData = convertListToAlarmData(rows, entityIdMap);
-        return new PageData<>(entitiesData, totalPages, totalElements, hasNext);
+        return new PageData<>(entitiesData, totalPages, totalElements, hasNext, nextCursor);
     }
 
     private static List<AlarmData> convertListToAlarmData(List<Map<String, Object>> result, Map<UUID, EntityId> entityIdMap) {
@@ -38,6 +38,7 @@ import org.thingsboard.server.common.data.query.AlarmDataQuery;
 import org.thingsboard.server.common.data.query.EntityDataSortOrder;
 import org.thingsboard.server.common.data.query.EntityKey;
 import org.thingsboard.server.common.data.query.EntityKeyType;
+import org.thingsboard.server.dao.exception.IncorrectParameterException;
 import org.thingsboard.server.dao.model.ModelConstants;
 
 import java.util.ArrayList;
@@ -50,6 +51,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Repository
@@ -77,6 +79,10 @@ public class DefaultAlarmQueryRepository implements AlarmQueryRepository {
         alarmFieldColumnMap.put("originator", "originator_name");
     }
 
+    private static final Set<String> NUMERIC_ALARM_COLUMNS = new HashSet<>(Arrays.asList(ModelConstants.CREATED_TIME_PROPERTY,
+            ModelConstants.ALARM_ACK_TS_PROPERTY, ModelConstants.ALARM_CLEAR_TS_PROPERTY, ModelConstants.ALARM_END_TS_PROPERTY,
+            ModelConstants.ALARM_START_TS_PROPERTY, ModelConstants.ALARM_ORIGINATOR_TYPE_PROPERTY));
+
     private static final String SELECT_ORIGINATOR_NAME = " COALESCE(CASE" +
             " WHEN a.originator_type = " + EntityType.TENANT.ordinal() +
             " THEN (select title from tenant where id = a.originator_id)" +
@@ -145,6 +151,16 @@ public class DefaultAlarmQueryRepository implements AlarmQueryRepository {
                 selectPart.append(" a.originator_id as entity_id ");
             }
             EntityDataSortOrder sortOrder = pageLink.getSortOrder();
+            boolean cursorPagination = pageLink.getCursor() != null;
+            String cursorSortColumn = null;
+            if (cursorPagination) {
+                if (sortOrder != null && sortOrder.getKey().getType().equals(EntityKeyType.ALARM_FIELD)) {
+                    cursorSortColumn = alarmFieldColumnMap.get(sortOrder.getKey().getKey());
+                }
+                if (cursorSortColumn == null || cursorSortColumn.equals(ModelConstants.ALARM_ORIGINATOR_ID_PROPERTY)) {
+                    throw new IncorrectParameterException("Cursor pagination is supported only for sort order by alarm field!");
+                }
+            }
             if (sortOrder != null && sortOrder.getKey().getType().equals(EntityKeyType.ALARM_FIELD)) {
                 String sortOrderKey = sortOrder.getKey().getKey();
                 sortPart.append(alarmFieldColumnMap.getOrDefault(sortOrderKey, sortOrderKey))
@@ -231,23 +247,46 @@ public class DefaultAlarmQueryRepository implements AlarmQueryRepository {
             if (!textSearchQuery.isEmpty()) {
                 mainQuery = String.format("select * from (%s) a WHERE %s", mainQuery, textSearchQuery);
             }
-            String countQuery = String.format("select count(*) from (%s) result", mainQuery);
-            long queryTs = System.currentTimeMillis();
-            int totalElements;
-            try {
-                totalElements = jdbcTemplate.queryForObject(countQuery, ctx, Integer.class);
-            } finally {
-                queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - queryTs);
-            }
-            if (totalElements == 0) {
-                return AlarmDataAdapter.createAlarmData(pageLink, Collections.emptyList(), totalElements, orderedEntityIds);
+            long queryTs;
+            int totalElements = -1;
+            // Only the first page of the cursor pagination is counted, the next pages report the total as unknown
+            if (!cursorPagination || pageLink.getCursor().isEmpty()) {
+                String countQuery = String.format("select count(*) from (%s) result", mainQuery);
+                queryTs = System.currentTimeMillis();
+                try {
+                    totalElements = jdbcTemplate.queryForObject(countQuery, ctx, Integer.class);
+                } finally {
+                    queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - queryTs);
+                }
+                if (totalElements == 0) {
+                    return AlarmDataAdapter.createAlarmData(pageLink, Collections.emptyList(), totalElements, orderedEntityIds);
+                }
             }
 
-            String dataQuery = mainQuery + sortPart;
-
-            int startIndex = pageLink.getPageSize() * pageLink.getPage();
-            if (pageLink.getPageSize() > 0) {
-                dataQuery = String.format("%s limit %s offset %s", dataQuery, pageLink.getPageSize(), startIndex);
+            String dataQuery;
+            if (cursorPagination) {
+                // Rows are unique by alarm id and entity id, since a propagated alarm is returned for each related entity
+                dataQuery = String.format("select * from (%s) a", mainQuery);
+                boolean sortAsc = sortOrder.getDirection() == EntityDataSortOrder.Direction.ASC;
+                if (!pageLink.getCursor().isEmpty()) {
+                    dataQuery += " where " + QueryCursor.decode(pageLink.getCursor(), 2).toSeekQuery(ctx, "a." + cursorSortColumn,
+                            NUMERIC_ALARM_COLUMNS.contains(cursorSortColumn), Arrays.asList("a.id", "a.entity_id"), sortAsc);
+                }
+                String direction = sortOrder.getDirection().name();
+                dataQuery = String.format("%s order by %s %s, id %s, entity_id %s", dataQuery, cursorSortColumn, direction, direction, direction);
+                if (pageLink.getPageSize() > 0) {
+                    // One extra row tells whether the next page exists
+                    ctx.addIntParameter("page_limit", pageLink.getPageSize() + 1);
+                    dataQuery = String.format("%s limit :page_limit", dataQuery);
+                }
+            } else {
+                dataQuery = mainQuery + sortPart;
+                int startIndex = pageLink.getPageSize() * pageLink.getPage();
+                if (pageLink.getPageSize() > 0) {
+                    ctx.addIntParameter("page_limit", pageLink.getPageSize());
+                    ctx.addIntParameter("page_offset", startIndex);
+                    dataQuery = String.format("%s limit :page_limit offset :page_offset", dataQuery);
+                }
             }
             queryTs = System.currentTimeMillis();
             List<Map<String, Object>> rows;
@@ -256,6 +295,17 @@ public class DefaultAlarmQueryRepository implements AlarmQueryRepository {
             } finally {
                 queryLog.logQuery(ctx, dataQuery, System.currentTimeMillis() - queryTs);
             }
+            if (cursorPagination) {
+                boolean hasNext = pageLink.getPageSize() > 0 && rows.size() > pageLink.getPageSize();
+                String nextCursor = null;
+                if (hasNext) {
+                    rows = rows.subList(0, pageLink.getPageSize());
+                    Map<String, Object> lastRow = rows.get(rows.size() - 1);
+                    nextCursor = QueryCursor.encode(lastRow.get(cursorSortColumn),
+                            Arrays.asList((UUID) lastRow.get(ModelConstants.ID_PROPERTY), (UUID) lastRow.get("entity_id")));
+                }
+                return AlarmDataAdapter.createAlarmData(pageLink, rows, totalElements, orderedEntityIds, hasNext, nextCursor);
+            }
             return AlarmDataAdapter.createAlarmData(pageLink, rows, totalElements, orderedEntityIds);
         });
     }
@@ -17,6 +17,7 @@ package org.thingsboard.server.dao.sql.query;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.support.TransactionTemplate;
@@ -46,6 +47,8 @@ import org.thingsboard.server.common.data.query.RelationsQueryFilter;
 import org.thingsboard.server.common.data.query.SingleEntityFilter;
 import org.thingsboard.server.common.data.relation.EntitySearchDirection;
 import org.thingsboard.server.common.data.relation.EntityTypeFilter;
+import org.thingsboard.server.dao.exception.IncorrectParameterException;
+import org.thingsboard.server.dao.model.ModelConstants;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -239,6 +242,9 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
     private final TransactionTemplate transactionTemplate;
     private final DefaultQueryLogComponent queryLog;
 
+    @Value("${sql.entity_query.window_count:false}")
+    private boolean windowCount;
+
     public DefaultEntityQueryRepository(NamedParameterJdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, DefaultQueryLogComponent queryLog) {
         this.jdbcTemplate = jdbcTemplate;
         this.transactionTemplate = transactionTemplate;
@@ -304,6 +310,17 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
             } else {
                 entityFieldsSelection = String.format("e.id id, %s entity_type", entityTypeStr);
             }
+            boolean cursorPagination = pageLink.getCursor() != null;
+            EntityDataSortOrder sortOrder = pageLink.getSortOrder();
+            String cursorSortColumn = null;
+            if (cursorPagination && sortOrder != null) {
+                cursorSortColumn = mappings.stream().filter(EntityKeyMapping::isSortOrder).findFirst()
+                        .map(mapping -> mapping.toColumn(query.getEntityFilter().getType(), entityType)).orElse(null);
+                if (cursorSortColumn == null) {
+                    throw new IncorrectParameterException("Cursor pagination is supported only for sort order by entity field!");
+                }
+                entityFieldsSelection = String.format("%s, e.%s sort_key", entityFieldsSelection, cursorSortColumn);
+            }
             String latestSelection = EntityKeyMapping.buildSelections(latestSelectionMapping, query.getEntityFilter().getType(), entityType);
             String topSelection = "entities.*";
             if (!StringUtils.isEmpty(latestSelection)) {
@@ -332,21 +349,41 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
             }
             String countQuery = String.format("select count(id) %s", fromClauseCount);
 
-            long startTs = System.currentTimeMillis();
-            int totalElements;
-            try {
-                totalElements = jdbcTemplate.queryForObject(countQuery, ctx, Integer.class);
-            } finally {
-                queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - startTs);
+            boolean sortAsc = sortOrder == null || sortOrder.getDirection() == EntityDataSortOrder.Direction.ASC;
+            if (cursorPagination && !pageLink.getCursor().isEmpty()) {
+                String seekQuery = QueryCursor.decode(pageLink.getCursor(), 1).toSeekQuery(ctx, cursorSortColumn,
+                        ModelConstants.CREATED_TIME_PROPERTY.equals(cursorSortColumn), Collections.singletonList("e.id"), sortAsc);
+                fromClauseData = String.format("from (select %s from (select %s from %s e where %s and %s) entities %s ) result %s",
+                        topSelection,
+                        entityFieldsSelection,
+                        addEntityTableQuery(ctx, query.getEntityFilter()),
+                        entityWhereClause,
+                        seekQuery,
+                        latestJoinsData,
+                        textSearchQuery);
             }
 
-            if (totalElements == 0) {
-                return new PageData<>();
+            // The window function would count only the rows after the cursor
+            boolean useWindowCount = windowCount && !cursorPagination;
+            // Only the first page of the cursor pagination is counted, the next pages report the total as unknown
+            boolean countTotal = !cursorPagination || pageLink.getCursor().isEmpty();
+            int totalElements = countTotal ? 0 : -1;
+            if (!useWindowCount && countTotal) {
+                totalElements = count(ctx, countQuery);
+                if (totalElements == 0) {
+                    return new PageData<>();
+                }
             }
-            String dataQuery = String.format("select * %s", fromClauseData);
+            String dataQuery = String.format(useWindowCount ? "select *, count(*) over() as total_count %s" : "select * %s", fromClauseData);
 
-            EntityDataSortOrder sortOrder = pageLink.getSortOrder();
-            if (sortOrder != null) {
+            if (cursorPagination) {
+                String direction = sortAsc ? "asc" : "desc";
+                if (cursorSortColumn != null) {
+                    dataQuery = String.format("%s order by sort_key %s, id %s", dataQuery, direction, direction);
+                } else {
+                    dataQuery = String.format("%s order by id %s", dataQuery, direction);
+                }
+            } else if (sortOrder != null) {
                 Optional<EntityKeyMapping> sortOrderMappingOpt = mappings.stream().filter(EntityKeyMapping::isSortOrder).findFirst();
                 if (sortOrderMappingOpt.isPresent()) {
                     EntityKeyMapping sortOrderMapping = sortOrderMappingOpt.get();
@@ -360,20 +397,57 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
                 }
             }
             int startIndex = pageLink.getPageSize() * pageLink.getPage();
-            if (pageLink.getPageSize() > 0) {
-                dataQuery = String.format("%s limit %s offset %s", dataQuery, pageLink.getPageSize(), startIndex);
+            if (cursorPagination) {
+                if (pageLink.getPageSize() > 0) {
+                    // One extra row tells whether the next page exists
+                    ctx.addIntParameter("page_limit", pageLink.getPageSize() + 1);
+                    dataQuery = String.format("%s limit :page_limit", dataQuery);
+                }
+            } else if (pageLink.getPageSize() > 0) {
+                ctx.addIntParameter("page_limit", pageLink.getPageSize());
+                ctx.addIntParameter("page_offset", startIndex);
+                dataQuery = String.format("%s limit :page_limit offset :page_offset", dataQuery);
             }
-            startTs = System.currentTimeMillis();
+            long startTs = System.currentTimeMillis();
             List<Map<String, Object>> rows;
             try {
                 rows = jdbcTemplate.queryForList(dataQuery, ctx);
             } finally {
-                queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - startTs);
+                queryLog.logQuery(ctx, dataQuery, System.currentTimeMillis() - startTs);
+            }
+            if (useWindowCount) {
+                if (!rows.isEmpty()) {
+                    totalElements = ((Number) rows.get(0).get("total_count")).intValue();
+                } else if (startIndex > 0) {
+                    // The requested page is out of range, so the window function had no rows to count.
+                    totalElements = count(ctx, countQuery);
+                } else {
+                    return new PageData<>();
+                }
+            }
+            if (cursorPagination) {
+                boolean hasNext = pageLink.getPageSize() > 0 && rows.size() > pageLink.getPageSize();
+                String nextCursor = null;
+                if (hasNext) {
+                    rows = rows.subList(0, pageLink.getPageSize());
+                    Map<String, Object> lastRow = rows.get(rows.size() - 1);
+                    nextCursor = QueryCursor.encode(lastRow.get("sort_key"), Collections.singletonList((UUID) lastRow.get("id")));
+                }
+                return EntityDataAdapter.createEntityData(pageLink, selectionMapping, rows, totalElements, hasNext, nextCursor);
             }
             return EntityDataAdapter.createEntityData(pageLink, selectionMapping, rows, totalElements);
         });
     }
 
+    private int count(QueryContext ctx, String countQuery) {
+        long startTs = System.currentTimeMillis();
+        try {
+            return jdbcTemplate.queryForObject(countQuery, ctx, Integer.class);
+        } finally {
+            queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - startTs);
+        }
+    }
+
     private String buildEntityWhere(QueryContext ctx, EntityFilter entityFilter, List<EntityKeyMapping> entityFieldsFilters) {
         String permissionQuery = this.buildPermissionQuery(ctx, entityFilter);
         String entityFilterQuery = this.buildEntityFilterQuery(ctx, entityFilter);
@@ -462,7 +536,7 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
 
     private String entitySearchQuery(QueryContext ctx, EntitySearchQueryFilter entityFilter, EntityType entityType, List<String> types) {
         EntityId rootId = entityFilter.getRootEntity();
-        String lvlFilter = getLvlFilter(entityFilter.getMaxLevel());
+        String lvlFilter = getLvlFilter(ctx, entityFilter.getMaxLevel());
         String selectFields = "SELECT tenant_id, customer_id, id, created_time, type, name, additional_info "
                 + (entityType.equals(EntityType.ENTITY_VIEW) ? "" : ", label ")
                 + "FROM " + entityType.name() + " WHERE id in ( SELECT entity_id";
@@ -485,7 +559,8 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
                     .append("nr.").append(fromOrTo).append("_type").append(" = re.").append(toOrFrom).append("_type");
 
             notExistsPart.append(")");
-            whereFilter += " and ( re.lvl = " + entityFilter.getMaxLevel() + " OR " + notExistsPart.toString() + ")";
+            ctx.addIntParameter("relation_last_level", entityFilter.getMaxLevel());
+            whereFilter += " and ( re.lvl = :relation_last_level OR " + notExistsPart.toString() + ")";
         }
         from = String.format(from, lvlFilter, whereFilter);
         String query = "( " + selectFields + from + ")";
@@ -502,7 +577,7 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
 
     private String relationQuery(QueryContext ctx, RelationsQueryFilter entityFilter) {
         EntityId rootId = entityFilter.getRootEntity();
-        String lvlFilter = getLvlFilter(entityFilter.getMaxLevel());
+        String lvlFilter = getLvlFilter(ctx, entityFilter.getMaxLevel());
         String selectFields = SELECT_TENANT_ID + ", " + SELECT_CUSTOMER_ID
                 + ", " + SELECT_CREATED_TIME + ", " +
                 " entity.entity_id as id,"
@@ -564,7 +639,8 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
                     .append(whereFilter.toString().replaceAll("re\\.", "nr\\."));
 
             notExistsPart.append(")");
-            whereFilter.append(" and ( re.lvl = ").append(entityFilter.getMaxLevel()).append(" OR ").append(notExistsPart.toString()).append(")");
+            ctx.addIntParameter("relation_last_level", entityFilter.getMaxLevel());
+            whereFilter.append(" and ( re.lvl = :relation_last_level OR ").append(notExistsPart.toString()).append(")");
         }
         from = String.format(from, lvlFilter, " WHERE " + whereFilter);
         return "( " + selectFields + from + ")";
@@ -598,8 +674,13 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
         return whereFilter.toString();
     }
 
-    private String getLvlFilter(int maxLevel) {
-        return maxLevel > 0 ? ("and lvl <= " + (maxLevel - 1)) : "";
+    private String getLvlFilter(QueryContext ctx, int maxLevel) {
+        if (maxLevel > 0) {
+            ctx.addIntParameter("relation_max_level", maxLevel - 1);
+            return "and lvl <= :relation_max_level";
+        } else {
+            return "";
+        }
     }
 
     private String getQueryTemplate(EntitySearchDirection direction) {
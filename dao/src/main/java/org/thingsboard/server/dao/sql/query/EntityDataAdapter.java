@@ -40,11 +40,24 @@ public class EntityDataAdapter {
                                                         List<EntityKeyMapping> selectionMapping,
                                                         List<Map<String, Object>> rows,
                                                         int totalElements) {
-        int totalPages = pageLink.getPageSize() > 0 ? (int) Math.ceil((float) totalElements / pageLink.getPageSize()) : 1;
         int startIndex = pageLink.getPageSize() * pageLink.getPage();
         boolean hasNext = pageLink.getPageSize() > 0 && totalElements > startIndex + rows.size();
+        return createEntityData(pageLink, selectionMapping, rows, totalElements, hasNext, null);
+    }
+
+    public static PageData<EntityData> createEntityData(EntityDataPageLink pageLink,
+                                                        List<EntityKeyMapping> selectionMapping,
+                                                        List<Map<String, Object>> rows,
+                                                        int totalElements, boolean hasNext, String nextCursor) {
+        int totalPages;
+        if (totalElements < 0) {
+            // the total is not counted for the next pages of the cursor pagination
+            totalPages = -1;
+        } else {
+            totalPages = pageLink.getPageSize() > 0 ? (int) Math.ceil((float) totalElements / pageLink.getPageSize()) : 1;
+        }
         List<EntityData> entitiesData = convertListToEntityData(rows, selectionMapping);
-        return new PageData<>(entitiesData, totalPages, totalElements, hasNext);
+        return new PageData<>(entitiesData, totalPages, totalElements, hasNext, nextCursor);
     }
 
     private static List<EntityData> convertListToEntityData(List<Map<String, Object>> result, List<EntityKeyMapping> selectionMapping) {
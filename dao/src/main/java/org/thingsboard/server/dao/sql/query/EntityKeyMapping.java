@@ -189,6 +189,18 @@ public class EntityKeyMapping {
         }
     }
 
+    /**
+     * Returns the entity table column of the entity field or null if the field is not stored in a column.
+     */
+    public String toColumn(EntityFilterType filterType, EntityType entityType) {
+        if (!entityKey.getType().equals(EntityKeyType.ENTITY_FIELD)
+                || (entityKey.getKey().equals("entityType") && !filterType.equals(EntityFilterType.RELATIONS_QUERY))) {
+            return null;
+        }
+        String alias = getEntityFieldAlias(filterType, entityType);
+        return getExistingEntityFields(filterType, entityType).contains(alias) ? entityFieldColumnMap.get(alias) : null;
+    }
+
     private String getEntityFieldAlias(EntityFilterType filterType, EntityType entityType) {
         String alias;
         if (filterType.equals(EntityFilterType.RELATIONS_QUERY)) {
@@ -102,6 +102,10 @@ public class QueryContext implements SqlParameterSource {
         addParameter(name, value, Types.DOUBLE, "DOUBLE");
     }
 
+    public void addIntParameter(String name, int value) {
+        addParameter(name, value, Types.INTEGER, "INTEGER");
+    }
+
     public void addLongParameter(String name, long value) {
         addParameter(name, value, Types.BIGINT, "BIGINT");
     }
@@ -0,0 +1,106 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.query;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.thingsboard.server.dao.exception.IncorrectParameterException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Position of the last row of a page for the cursor based pagination: the value of the sort column followed by the ids
+ * that break the ties. The next page seeks past this position instead of skipping the previous rows with an offset.
+ * Null sort values are expected to be sorted last in ascending order and first in descending order, as PostgreSQL does.
+ */
+class QueryCursor {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final String sortValue;
+    private final List<UUID> ids;
+
+    private QueryCursor(String sortValue, List<UUID> ids) {
+        this.sortValue = sortValue;
+        this.ids = ids;
+    }
+
+    static String encode(Object sortValue, List<UUID> ids) {
+        List<String> values = new ArrayList<>(ids.size() + 1);
+        values.add(sortValue != null ? sortValue.toString() : null);
+        ids.forEach(id -> values.add(id.toString()));
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(mapper.writeValueAsBytes(values));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode cursor!", e);
+        }
+    }
+
+    static QueryCursor decode(String cursor, int idCount) {
+        try {
+            List<String> values = mapper.readValue(Base64.getUrlDecoder().decode(cursor), new TypeReference<List<String>>() {});
+            if (values.size() != idCount + 1) {
+                throw new IncorrectParameterException("Incorrect cursor: " + cursor);
+            }
+            List<UUID> ids = new ArrayList<>(idCount);
+            for (int i = 1; i < values.size(); i++) {
+                ids.add(UUID.fromString(values.get(i)));
+            }
+            return new QueryCursor(values.get(0), ids);
+        } catch (IOException | IllegalArgumentException | NullPointerException e) {
+            throw new IncorrectParameterException("Incorrect cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * Builds the condition that selects the rows after the cursor. The sort column is optional, the rows are then
+     * ordered by the ids only.
+     */
+    String toSeekQuery(QueryContext ctx, String sortColumn, boolean numericSort, List<String> idColumns, boolean asc) {
+        String operation = asc ? ">" : "<";
+        List<String> idParams = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            String paramName = "cursor_id_" + i;
+            ctx.addUuidParameter(paramName, ids.get(i));
+            idParams.add(":" + paramName);
+        }
+        if (sortColumn == null) {
+            return String.format("(%s) %s (%s)", String.join(", ", idColumns), operation, String.join(", ", idParams));
+        }
+        if (sortValue != null) {
+            if (numericSort) {
+                try {
+                    ctx.addLongParameter("cursor_sort_value", Long.parseLong(sortValue));
+                } catch (NumberFormatException e) {
+                    throw new IncorrectParameterException("Incorrect cursor sort value: " + sortValue, e);
+                }
+            } else {
+                ctx.addStringParameter("cursor_sort_value", sortValue);
+            }
+            String query = String.format("(%s, %s) %s (:cursor_sort_value, %s)",
+                    sortColumn, String.join(", ", idColumns), operation, String.join(", ", idParams));
+            return asc ? String.format("(%s or %s is null)", query, sortColumn) : query;
+        } else {
+            String query = String.format("(%s is null and (%s) %s (%s))",
+                    sortColumn, String.join(", ", idColumns), operation, String.join(", ", idParams));
+            return asc ? query : String.format("(%s or %s is not null)", query, sortColumn);
+        }
+    }
+}
@@ -69,6 +69,10 @@ public abstract class AbstractChunkedAggregationTimeseriesDao extends AbstractSq
                 .statsPrintIntervalMs(tsStatsPrintIntervalMs)
                 .statsNamePrefix("ts")
                 .batchSortEnabled(batchSortEnabled)
+                .maxQueueSize(tsMaxQueueSize)
+                .maxQueueOfferTimeoutMs(queueSettings.getMaxQueueOfferTimeoutMs())
+                .adaptiveBatchSizeEnabled(queueSettings.isAdaptiveBatchSizeEnabled())
+                .batchTargetLatencyMs(queueSettings.getBatchTargetLatencyMs())
                 .build();
 
         Function<TsKvEntity, Integer> hashcodeFunction = entity -> entity.getEntityId().hashCode();
@@ -26,6 +26,7 @@ import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
 import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueSettings;
 
 import javax.annotation.Nullable;
 import java.util.List;
@@ -41,6 +42,9 @@ public abstract class AbstractSqlTimeseriesDao extends BaseAbstractSqlTimeseries
     @Autowired
     protected ScheduledLogExecutorComponent logExecutor;
 
+    @Autowired
+    protected TbSqlBlockingQueueSettings queueSettings;
+
     @Value("${sql.ts.batch_size:1000}")
     protected int tsBatchSize;
 
@@ -53,6 +57,9 @@ public abstract class AbstractSqlTimeseriesDao extends BaseAbstractSqlTimeseries
     @Value("${sql.ts.batch_threads:4}")
     protected int tsBatchThreads;
 
+    @Value("${sql.ts.batch_max_queue_size:0}")
+    protected int tsMaxQueueSize;
+
     @Value("${sql.timescale.batch_threads:4}")
     protected int timescaleBatchThreads;
 
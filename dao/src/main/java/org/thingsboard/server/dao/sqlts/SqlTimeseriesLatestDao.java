@@ -40,6 +40,7 @@ import org.thingsboard.server.dao.model.sqlts.latest.TsKvLatestCompositeKey;
 import org.thingsboard.server.dao.model.sqlts.latest.TsKvLatestEntity;
 import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueSettings;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
 import org.thingsboard.server.dao.sqlts.insert.latest.InsertLatestTsRepository;
 import org.thingsboard.server.dao.sqlts.latest.SearchTsKvLatestRepository;
@@ -89,12 +90,18 @@ public class SqlTimeseriesLatestDao extends BaseAbstractSqlTimeseriesDao impleme
     @Value("${sql.ts_latest.batch_threads:4}")
     private int tsLatestBatchThreads;
 
+    @Value("${sql.ts_latest.batch_max_queue_size:0}")
+    private int tsLatestMaxQueueSize;
+
     @Value("${sql.batch_sort:false}")
     protected boolean batchSortEnabled;
 
     @Autowired
     protected ScheduledLogExecutorComponent logExecutor;
 
+    @Autowired
+    protected TbSqlBlockingQueueSettings queueSettings;
+
     @Autowired
     private StatsFactory statsFactory;
 
@@ -107,6 +114,10 @@ public class SqlTimeseriesLatestDao extends BaseAbstractSqlTimeseriesDao impleme
                 .statsPrintIntervalMs(tsLatestStatsPrintIntervalMs)
                 .statsNamePrefix("ts.latest")
                 .batchSortEnabled(false)
+                .maxQueueSize(tsLatestMaxQueueSize)
+                .maxQueueOfferTimeoutMs(queueSettings.getMaxQueueOfferTimeoutMs())
+                .adaptiveBatchSizeEnabled(queueSettings.isAdaptiveBatchSizeEnabled())
+                .batchTargetLatencyMs(queueSettings.getBatchTargetLatencyMs())
                 .build();
 
         java.util.function.Function<TsKvLatestEntity, Integer> hashcodeFunction = entity -> entity.getEntityId().hashCode();
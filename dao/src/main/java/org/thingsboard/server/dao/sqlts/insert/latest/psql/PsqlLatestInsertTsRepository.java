@@ -15,14 +15,15 @@
  */
 package org.thingsboard.server.dao.sqlts.insert.latest.psql;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.thingsboard.server.dao.model.sqlts.latest.TsKvLatestEntity;
-import org.thingsboard.server.dao.sqlts.insert.AbstractInsertRepository;
 import org.thingsboard.server.dao.sqlts.insert.latest.InsertLatestTsRepository;
+import org.thingsboard.server.dao.sqlts.insert.psql.AbstractPsqlCopyInsertRepository;
 import org.thingsboard.server.dao.util.PsqlTsLatestAnyDao;
 
 import java.sql.PreparedStatement;
@@ -35,7 +36,7 @@ import java.util.List;
 @PsqlTsLatestAnyDao
 @Repository
 @Transactional
-public class PsqlLatestInsertTsRepository extends AbstractInsertRepository implements InsertLatestTsRepository {
+public class PsqlLatestInsertTsRepository extends AbstractPsqlCopyInsertRepository<TsKvLatestEntity> implements InsertLatestTsRepository {
 
     private static final String BATCH_UPDATE =
             "UPDATE ts_kv_latest SET ts = ?, bool_v = ?, str_v = ?, long_v = ?, dbl_v = ?, json_v = cast(? AS json) WHERE entity_id = ? and key = ?";
@@ -45,11 +46,22 @@ public class PsqlLatestInsertTsRepository extends AbstractInsertRepository imple
             "INSERT INTO ts_kv_latest (entity_id, key, ts, bool_v, str_v, long_v, dbl_v,  json_v) VALUES(?, ?, ?, ?, ?, ?, ?, cast(? AS json)) " +
                     "ON CONFLICT (entity_id, key) DO UPDATE SET ts = ?, bool_v = ?, str_v = ?, long_v = ?, dbl_v = ?, json_v = cast(? AS json);";
 
+    private static final String MERGE_FROM_COPY = "INSERT INTO ts_kv_latest (entity_id, key, ts, bool_v, str_v, long_v, dbl_v, json_v) " +
+            "SELECT entity_id, key, ts, bool_v, str_v, long_v, dbl_v, json_v FROM ts_kv_latest_copy " +
+            "ON CONFLICT (entity_id, key) DO UPDATE SET ts = excluded.ts, bool_v = excluded.bool_v, str_v = excluded.str_v, " +
+            "long_v = excluded.long_v, dbl_v = excluded.dbl_v, json_v = excluded.json_v;";
+
+    @Value("${sql.ts_latest.copy_enabled:false}")
+    private boolean copyEnabled;
+
     @Override
     public void saveOrUpdate(List<TsKvLatestEntity> entities) {
         transactionTemplate.execute(new TransactionCallbackWithoutResult() {
             @Override
             protected void doInTransactionWithoutResult(TransactionStatus status) {
+                if (copyEnabled && copyAndMerge(entities, "ts_kv_latest_copy", "ts_kv_latest", MERGE_FROM_COPY)) {
+                    return;
+                }
                 int[] result = jdbcTemplate.batchUpdate(BATCH_UPDATE, new BatchPreparedStatementSetter() {
                     @Override
                     public void setValues(PreparedStatement ps, int i) throws SQLException {
@@ -0,0 +1,129 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.insert.psql;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.thingsboard.server.dao.model.sql.AbstractTsKvEntity;
+import org.thingsboard.server.dao.sqlts.insert.AbstractInsertRepository;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Streams a batch of timeseries entities into a temporary staging table using the PostgreSQL COPY protocol
+ * and merges the staging table into the target table with a single statement.
+ * Must be invoked inside a transaction: the staging table is created with ON COMMIT DELETE ROWS.
+ */
+@Slf4j
+public abstract class AbstractPsqlCopyInsertRepository<T extends AbstractTsKvEntity> extends AbstractInsertRepository {
+
+    private static final String CARDINALITY_VIOLATION = "21000";
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    @Value("${sql.copy_min_batch_size:100}")
+    private int copyMinBatchSize;
+
+    /**
+     * Saves entities through the staging table.
+     *
+     * @return false if the merge failed because of conflicting rows inside the batch and nothing was saved,
+     * so the caller should fall back to the regular batch insert
+     */
+    protected boolean copyAndMerge(List<T> entities, String stagingTable, String targetTable, String mergeSql) {
+        if (entities.size() < copyMinBatchSize) {
+            return false;
+        }
+        String csv = toCsv(entities);
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TEMP TABLE IF NOT EXISTS " + stagingTable +
+                        " (LIKE " + targetTable + " INCLUDING DEFAULTS) ON COMMIT DELETE ROWS");
+                connection.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                        "COPY " + stagingTable + " (entity_id, key, ts, bool_v, str_v, long_v, dbl_v, json_v) FROM STDIN WITH (FORMAT csv)",
+                        new StringReader(csv));
+                statement.executeUpdate(mergeSql);
+                connection.releaseSavepoint(savepoint);
+                return true;
+            } catch (SQLException e) {
+                if (isConflict(e)) {
+                    log.debug("[{}] Failed to merge {} entities from staging table, falling back to batch insert", targetTable, entities.size(), e);
+                    connection.rollback(savepoint);
+                    return false;
+                }
+                throw e;
+            } catch (IOException e) {
+                throw new SQLException("Failed to copy entities into " + stagingTable, e);
+            }
+        });
+    }
+
+    private boolean isConflict(SQLException e) {
+        String sqlState = e.getSQLState();
+        return CARDINALITY_VIOLATION.equals(sqlState) || UNIQUE_VIOLATION.equals(sqlState);
+    }
+
+    private String toCsv(List<T> entities) {
+        StringBuilder sb = new StringBuilder(entities.size() * 64);
+        for (T entity : entities) {
+            sb.append(entity.getEntityId()).append(',')
+                    .append(entity.getKey()).append(',')
+                    .append(entity.getTs()).append(',');
+            if (entity.getBooleanValue() != null) {
+                sb.append(entity.getBooleanValue());
+            }
+            sb.append(',');
+            appendQuoted(sb, replaceNullChars(entity.getStrValue()));
+            sb.append(',');
+            if (entity.getLongValue() != null) {
+                sb.append(entity.getLongValue());
+            }
+            sb.append(',');
+            if (entity.getDoubleValue() != null) {
+                sb.append(entity.getDoubleValue());
+            }
+            sb.append(',');
+            appendQuoted(sb, replaceNullChars(entity.getJsonValue()));
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Null values are written as an unquoted empty field, while empty strings are quoted, as required by the COPY csv format.
+     */
+    private static void appendQuoted(StringBuilder sb, String value) {
+        if (value == null) {
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+}
@@ -77,6 +77,10 @@ public class TimescaleTimeseriesDao extends AbstractSqlTimeseriesDao implements
                 .statsPrintIntervalMs(tsStatsPrintIntervalMs)
                 .statsNamePrefix("ts.timescale")
                 .batchSortEnabled(batchSortEnabled)
+                .maxQueueSize(tsMaxQueueSize)
+                .maxQueueOfferTimeoutMs(queueSettings.getMaxQueueOfferTimeoutMs())
+                .adaptiveBatchSizeEnabled(queueSettings.isAdaptiveBatchSizeEnabled())
+                .batchTargetLatencyMs(queueSettings.getBatchTargetLatencyMs())
                 .build();
 
         Function<TimescaleTsKvEntity, Integer> hashcodeFunction = entity -> entity.getEntityId().hashCode();
@@ -84,6 +84,12 @@ public class BaseTimeseriesService implements TimeseriesService {
     @Autowired
     private EntityViewService entityViewService;
 
+    @Autowired(required = false)
+    private TsRollupService rollupService;
+
+    @Autowired
+    private TimeseriesLatestCache latestCache;
+
     @Override
     public ListenableFuture<List<TsKvEntry>> findAll(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries) {
         validate(entityId);
@@ -96,9 +102,25 @@ public class BaseTimeseriesService implements TimeseriesService {
                     queries.stream()
                             .filter(query -> keys.isEmpty() || keys.contains(query.getKey()))
                             .collect(Collectors.toList());
-            return timeseriesDao.findAllAsync(tenantId, entityView.getEntityId(), updateQueriesForEntityView(entityView, filteredQueries));
+            return findAllAsync(tenantId, entityView.getEntityId(), updateQueriesForEntityView(entityView, filteredQueries));
+        }
+        return findAllAsync(tenantId, entityId, queries);
+    }
+
+    private ListenableFuture<List<TsKvEntry>> findAllAsync(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries) {
+        if (rollupService == null || queries.stream().allMatch(query -> Aggregation.NONE.equals(query.getAggregation()))) {
+            return timeseriesDao.findAllAsync(tenantId, entityId, queries);
         }
-        return timeseriesDao.findAllAsync(tenantId, entityId, queries);
+        List<ListenableFuture<List<TsKvEntry>>> futures = Lists.newArrayListWithExpectedSize(queries.size());
+        for (ReadTsKvQuery query : queries) {
+            if (Aggregation.NONE.equals(query.getAggregation())) {
+                futures.add(timeseriesDao.findAllAsync(tenantId, entityId, Collections.singletonList(query)));
+            } else {
+                futures.add(rollupService.findAllAsync(tenantId, entityId, query));
+            }
+        }
+        return Futures.transform(Futures.allAsList(futures),
+                results -> results.stream().flatMap(List::stream).collect(Collectors.toList()), MoreExecutors.directExecutor());
     }
 
     @Override
@@ -106,14 +128,38 @@ public class BaseTimeseriesService implements TimeseriesService {
         validate(entityId);
         List<ListenableFuture<TsKvEntry>> futures = Lists.newArrayListWithExpectedSize(keys.size());
         keys.forEach(key -> Validator.validateString(key, "Incorrect key " + key));
-        keys.forEach(key -> futures.add(timeseriesLatestDao.findLatest(tenantId, entityId, key)));
+        keys.forEach(key -> futures.add(findLatest(tenantId, entityId, key)));
         return Futures.allAsList(futures);
     }
 
+    private ListenableFuture<TsKvEntry> findLatest(TenantId tenantId, EntityId entityId, String key) {
+        TsKvEntry cached = latestCache.get(entityId, key);
+        if (cached != null) {
+            return Futures.immediateFuture(cached);
+        }
+        long version = latestCache.getVersion(entityId, key);
+        ListenableFuture<TsKvEntry> future = timeseriesLatestDao.findLatest(tenantId, entityId, key);
+        if (latestCache.isEnabled()) {
+            future = Futures.transform(future, entry -> {
+                latestCache.putIfAbsent(entityId, entry, version);
+                return entry;
+            }, MoreExecutors.directExecutor());
+        }
+        return future;
+    }
+
     @Override
     public ListenableFuture<List<TsKvEntry>> findAllLatest(TenantId tenantId, EntityId entityId) {
         validate(entityId);
-        return timeseriesLatestDao.findAllLatest(tenantId, entityId);
+        if (!latestCache.isEnabled()) {
+            return timeseriesLatestDao.findAllLatest(tenantId, entityId);
+        }
+        // the keys are unknown before the read, so the loaded values are checked against the version of the entity
+        long version = latestCache.getVersion(entityId);
+        return Futures.transform(timeseriesLatestDao.findAllLatest(tenantId, entityId), entries -> {
+            latestCache.putAllIfAbsent(entityId, entries, version);
+            return entries;
+        }, MoreExecutors.directExecutor());
     }
 
     @Override
@@ -146,7 +192,7 @@ public class BaseTimeseriesService implements TimeseriesService {
             if (tsKvEntry == null) {
                 throw new IncorrectParameterException("Key value entry can't be null");
             }
-            futures.add(timeseriesLatestDao.saveLatest(tenantId, entityId, tsKvEntry));
+            futures.add(saveLatest(tenantId, entityId, tsKvEntry));
         }
         return Futures.allAsList(futures);
     }
@@ -155,9 +201,41 @@ public class BaseTimeseriesService implements TimeseriesService {
         if (entityId.getEntityType().equals(EntityType.ENTITY_VIEW)) {
             throw new IncorrectParameterException("Telemetry data can't be stored for entity view. Read only");
         }
-        futures.add(timeseriesDao.savePartition(tenantId, entityId, tsKvEntry.getTs(), tsKvEntry.getKey(), ttl));
-        futures.add(Futures.transform(timeseriesLatestDao.saveLatest(tenantId, entityId, tsKvEntry), v -> 0, MoreExecutors.directExecutor()));
-        futures.add(timeseriesDao.save(tenantId, entityId, tsKvEntry, ttl));
+        ListenableFuture<Integer> partitionFuture = timeseriesDao.savePartition(tenantId, entityId, tsKvEntry.getTs(), tsKvEntry.getKey(), ttl);
+        futures.add(partitionFuture);
+        futures.add(Futures.transform(saveLatest(tenantId, entityId, tsKvEntry), v -> 0, MoreExecutors.directExecutor()));
+        ListenableFuture<Integer> future = timeseriesDao.save(tenantId, entityId, tsKvEntry, ttl);
+        if (rollupService != null) {
+            // rollups are recomputed from raw data, so the point has to be readable before its series is marked dirty
+            future = Futures.transform(Futures.allAsList(partitionFuture, future), results -> {
+                rollupService.onSave(tenantId, entityId, tsKvEntry);
+                return results.get(1);
+            }, MoreExecutors.directExecutor());
+        }
+        futures.add(future);
+    }
+
+    private ListenableFuture<Void> saveLatest(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry) {
+        ListenableFuture<Void> future = timeseriesLatestDao.saveLatest(tenantId, entityId, tsKvEntry);
+        if (latestCache.isEnabled()) {
+            future = Futures.transform(future, v -> {
+                latestCache.put(entityId, tsKvEntry);
+                return v;
+            }, MoreExecutors.directExecutor());
+        }
+        return future;
+    }
+
+    private ListenableFuture<Void> removeLatest(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query) {
+        ListenableFuture<Void> future = timeseriesLatestDao.removeLatest(tenantId, entityId, query);
+        if (latestCache.isEnabled()) {
+            // the removed value may be replaced by the previous one, so the next read reloads it
+            future = Futures.transform(future, v -> {
+                latestCache.evict(entityId, query.getKey());
+                return v;
+            }, MoreExecutors.directExecutor());
+        }
+        return future;
     }
 
     private List<ReadTsKvQuery> updateQueriesForEntityView(EntityView entityView, List<ReadTsKvQuery> queries) {
@@ -196,7 +274,7 @@ public class BaseTimeseriesService implements TimeseriesService {
         List<ListenableFuture<Void>> futures = Lists.newArrayListWithExpectedSize(keys.size());
         for (String key : keys) {
             DeleteTsKvQuery query = new BaseDeleteTsKvQuery(key, 0, System.currentTimeMillis(), false);
-            futures.add(timeseriesLatestDao.removeLatest(tenantId, entityId, query));
+            futures.add(removeLatest(tenantId, entityId, query));
         }
         return Futures.allAsList(futures);
     }
@@ -215,8 +293,15 @@ public class BaseTimeseriesService implements TimeseriesService {
     }
 
     private void deleteAndRegisterFutures(TenantId tenantId, List<ListenableFuture<Void>> futures, EntityId entityId, DeleteTsKvQuery query) {
-        futures.add(timeseriesDao.remove(tenantId, entityId, query));
-        futures.add(timeseriesLatestDao.removeLatest(tenantId, entityId, query));
+        ListenableFuture<Void> future = timeseriesDao.remove(tenantId, entityId, query);
+        if (rollupService != null) {
+            future = Futures.transform(future, v -> {
+                rollupService.onRemove(tenantId, entityId, query);
+                return v;
+            }, MoreExecutors.directExecutor());
+        }
+        futures.add(future);
+        futures.add(removeLatest(tenantId, entityId, query));
         futures.add(timeseriesDao.removePartition(tenantId, entityId, query));
     }
 
@@ -22,17 +22,21 @@ import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.Row;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
 import com.datastax.oss.driver.api.querybuilder.select.Select;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.base.Function;
 import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.Aggregation;
@@ -60,6 +64,11 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -91,6 +100,22 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
     @Value("${cassandra.query.set_null_values_enabled}")
     private boolean setNullValuesEnabled;
 
+    @Value("${cassandra.query.ts_batch.linger_ms:0}")
+    private long batchLingerMs;
+
+    @Value("${cassandra.query.ts_batch.max_size:100}")
+    private int batchMaxSize;
+
+    @Value("${cassandra.query.ts_partitions_cache.max_size:0}")
+    private long partitionsCacheMaxSize;
+
+    @Value("${cassandra.query.ts_partitions_cache.expiration_sec:3600}")
+    private long partitionsCacheExpirationSec;
+
+    private ScheduledExecutorService batchScheduler;
+    private CassandraTsWriteBatcher writeBatcher;
+    private Cache<PartitionsCacheKey, Set<Long>> partitionsCache;
+
     private NoSqlTsPartitionDate tsFormat;
 
     private PreparedStatement partitionInsertStmt;
@@ -119,11 +144,25 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
             log.warn("Incorrect configuration of partitioning {}", partitioning);
             throw new RuntimeException("Failed to parse partitioning property: " + partitioning + "!");
         }
+        if (batchLingerMs > 0) {
+            batchScheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("ts-write-batcher"));
+        }
+        writeBatcher = new CassandraTsWriteBatcher((tenantId, stmt) -> getFuture(executeAsyncWrite(tenantId, stmt), rs -> null),
+                batchScheduler, batchLingerMs, batchMaxSize);
+        if (partitionsCacheMaxSize > 0) {
+            partitionsCache = Caffeine.newBuilder()
+                    .maximumSize(partitionsCacheMaxSize)
+                    .expireAfterWrite(partitionsCacheExpirationSec, TimeUnit.SECONDS)
+                    .build();
+        }
     }
 
     @PreDestroy
     public void stop() {
         super.stopExecutor();
+        if (batchScheduler != null) {
+            batchScheduler.shutdownNow();
+        }
     }
 
     @Override
@@ -145,13 +184,13 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
 
     @Override
     public ListenableFuture<Integer> save(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry, long ttl) {
-        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        List<BoundStatement> stmts = new ArrayList<>();
         ttl = computeTtl(ttl);
         int dataPointDays = tsKvEntry.getDataPoints() * Math.max(1, (int) (ttl / SECONDS_IN_DAY));
         long partition = toPartitionTs(tsKvEntry.getTs());
         DataType type = tsKvEntry.getDataType();
         if (setNullValuesEnabled) {
-            processSetNullValues(tenantId, entityId, tsKvEntry, ttl, futures, partition, type);
+            processSetNullValues(entityId, tsKvEntry, ttl, stmts, partition, type);
         }
         BoundStatementBuilder stmtBuilder = new BoundStatementBuilder((ttl == 0 ? getSaveStmt(type) : getSaveTtlStmt(type)).bind());
         stmtBuilder.setString(0, entityId.getEntityType().name())
@@ -163,9 +202,9 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
         if (ttl > 0) {
             stmtBuilder.setInt(6, (int) ttl);
         }
-        BoundStatement stmt = stmtBuilder.build();
-        futures.add(getFuture(executeAsyncWrite(tenantId, stmt), rs -> null));
-        return Futures.transform(Futures.allAsList(futures), result -> dataPointDays, MoreExecutors.directExecutor());
+        stmts.add(stmtBuilder.build());
+        CassandraTsWriteBatcher.PartitionKey partitionKey = new CassandraTsWriteBatcher.PartitionKey(entityId.getEntityType().name(), entityId.getId(), tsKvEntry.getKey(), partition);
+        return Futures.transform(writeBatcher.write(tenantId, partitionKey, tsKvEntry.getTs(), stmts), result -> dataPointDays, MoreExecutors.directExecutor());
     }
 
     @Override
@@ -175,6 +214,17 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
         }
         ttl = computeTtl(ttl);
         long partition = toPartitionTs(tsKvEntryTs);
+        PartitionsCacheKey cacheKey = new PartitionsCacheKey(entityId.getEntityType().name(), entityId.getId(), key);
+        if (partitionsCache != null) {
+            Set<Long> cachedPartitions = partitionsCache.getIfPresent(cacheKey);
+            if (cachedPartitions != null && cachedPartitions.contains(partition)) {
+                return Futures.immediateFuture(0);
+            }
+            if (ttl > 0) {
+                // keep the partition record alive for as long as the data written while the partition is cached
+                ttl += partitionsCacheExpirationSec;
+            }
+        }
         log.debug("Saving partition {} for the entity [{}-{}] and key {}", partition, entityId.getEntityType(), entityId.getId(), key);
         BoundStatementBuilder stmtBuilder = new BoundStatementBuilder((ttl == 0 ? getPartitionInsertStmt() : getPartitionInsertTtlStmt()).bind());
         stmtBuilder.setString(0, entityId.getEntityType().name())
@@ -185,7 +235,14 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
             stmtBuilder.setInt(4, (int) ttl);
         }
         BoundStatement stmt = stmtBuilder.build();
-        return getFuture(executeAsyncWrite(tenantId, stmt), rs -> 0);
+        ListenableFuture<Integer> future = getFuture(executeAsyncWrite(tenantId, stmt), rs -> 0);
+        if (partitionsCache != null) {
+            future = Futures.transform(future, result -> {
+                partitionsCache.get(cacheKey, k -> ConcurrentHashMap.newKeySet()).add(partition);
+                return result;
+            }, MoreExecutors.directExecutor());
+        }
+        return future;
     }
 
     @Override
@@ -220,6 +277,10 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
         if (minPartition == maxPartition) {
             return Futures.immediateFuture(null);
         } else {
+            PartitionsCacheKey cacheKey = new PartitionsCacheKey(entityId.getEntityType().name(), entityId.getId(), query.getKey());
+            if (partitionsCache != null) {
+                partitionsCache.invalidate(cacheKey);
+            }
             TbResultSetFuture partitionsFuture = fetchPartitions(tenantId, entityId, query.getKey(), minPartition, maxPartition);
 
             final SimpleListenableFuture<Void> resultFuture = new SimpleListenableFuture<>();
@@ -245,6 +306,10 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
                     log.error("[{}][{}] Failed to fetch partitions for interval {}-{}", entityId.getEntityType().name(), entityId.getId(), minPartition, maxPartition, t);
                 }
             }, readResultsProcessingExecutor);
+            if (partitionsCache != null) {
+                // partitions saved while the delete was in flight may already be gone, so forget them once it completes
+                resultFuture.addListener(() -> partitionsCache.invalidate(cacheKey), MoreExecutors.directExecutor());
+            }
             return resultFuture;
         }
     }
@@ -411,42 +476,42 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
         return tsFormat.getTruncateUnit().equals(ChronoUnit.FOREVER);
     }
 
-    private void processSetNullValues(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry, long ttl, List<ListenableFuture<Void>> futures, long partition, DataType type) {
+    private void processSetNullValues(EntityId entityId, TsKvEntry tsKvEntry, long ttl, List<BoundStatement> stmts, long partition, DataType type) {
         switch (type) {
             case LONG:
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.BOOLEAN));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.DOUBLE));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.STRING));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.JSON));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.BOOLEAN));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.DOUBLE));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.STRING));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.JSON));
                 break;
             case BOOLEAN:
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.DOUBLE));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.LONG));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.STRING));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.JSON));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.DOUBLE));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.LONG));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.STRING));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.JSON));
                 break;
             case DOUBLE:
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.BOOLEAN));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.LONG));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.STRING));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.JSON));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.BOOLEAN));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.LONG));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.STRING));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.JSON));
                 break;
             case STRING:
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.BOOLEAN));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.DOUBLE));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.LONG));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.JSON));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.BOOLEAN));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.DOUBLE));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.LONG));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.JSON));
                 break;
             case JSON:
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.BOOLEAN));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.DOUBLE));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.LONG));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.STRING));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.BOOLEAN));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.DOUBLE));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.LONG));
+                stmts.add(buildNullStmt(entityId, tsKvEntry, ttl, partition, DataType.STRING));
                 break;
         }
     }
 
-    private ListenableFuture<Void> saveNull(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry, long ttl, long partition, DataType type) {
+    private BoundStatement buildNullStmt(EntityId entityId, TsKvEntry tsKvEntry, long ttl, long partition, DataType type) {
         BoundStatementBuilder stmtBuilder = new BoundStatementBuilder((ttl == 0 ? getSaveStmt(type) : getSaveTtlStmt(type)).bind());
         stmtBuilder.setString(0, entityId.getEntityType().name())
                 .setUuid(1, entityId.getId())
@@ -457,8 +522,7 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
         if (ttl > 0) {
             stmtBuilder.setInt(6, (int) ttl);
         }
-        BoundStatement stmt = stmtBuilder.build();
-        return getFuture(executeAsyncWrite(tenantId, stmt), rs -> null);
+        return stmtBuilder.build();
     }
 
     private long computeTtl(long ttl) {
@@ -705,4 +769,12 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
         }
         return fetchStmts;
     }
+
+    @Data
+    private static class PartitionsCacheKey {
+        private final String entityType;
+        private final UUID entityId;
+        private final String key;
+    }
+
 }
@@ -0,0 +1,152 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.Data;
+import org.thingsboard.server.common.data.id.TenantId;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Groups writes to the same timeseries partition into unlogged batches.
+ * All statements of an unlogged batch share the partition key, so Cassandra applies them as a single mutation on one replica set.
+ * Writes of subsequent calls are gathered for {@code lingerMs}; with {@code lingerMs <= 0} only statements of a single call are grouped.
+ * <p>
+ * All statements of a batch get the same write timestamp, so Cassandra would resolve two writes of the same cell by their values
+ * instead of their order. A write of a timestamp that is already pending sends the pending batch first and starts a new one,
+ * so the writes of the same cell are executed in their order and get increasing timestamps.
+ */
+class CassandraTsWriteBatcher {
+
+    private final BiFunction<TenantId, Statement<?>, ListenableFuture<Void>> writeFunction;
+    private final ScheduledExecutorService scheduler;
+    private final long lingerMs;
+    private final int maxSize;
+    private final ConcurrentMap<PartitionKey, PendingBatch> pendingBatches = new ConcurrentHashMap<>();
+
+    CassandraTsWriteBatcher(BiFunction<TenantId, Statement<?>, ListenableFuture<Void>> writeFunction, ScheduledExecutorService scheduler, long lingerMs, int maxSize) {
+        this.writeFunction = writeFunction;
+        this.scheduler = scheduler;
+        this.lingerMs = lingerMs;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param ts timestamp of the timeseries row the statements write to.
+     */
+    ListenableFuture<Void> write(TenantId tenantId, PartitionKey key, long ts, List<? extends BatchableStatement<?>> statements) {
+        if (lingerMs <= 0) {
+            return execute(tenantId, statements);
+        }
+        SettableFuture<Void> result = SettableFuture.create();
+        PendingBatch[] readyBatches = new PendingBatch[2];
+        pendingBatches.compute(key, (k, batch) -> {
+            if (batch != null && batch.timestamps.contains(ts)) {
+                readyBatches[0] = batch;
+                batch = null;
+            }
+            if (batch == null) {
+                PendingBatch newBatch = new PendingBatch(tenantId);
+                scheduler.schedule(() -> flush(k, newBatch), lingerMs, TimeUnit.MILLISECONDS);
+                batch = newBatch;
+            }
+            batch.statements.addAll(statements);
+            batch.timestamps.add(ts);
+            batch.results.add(result);
+            if (batch.statements.size() >= maxSize) {
+                readyBatches[1] = batch;
+                return null;
+            }
+            return batch;
+        });
+        for (PendingBatch batch : readyBatches) {
+            if (batch != null) {
+                send(batch);
+            }
+        }
+        return result;
+    }
+
+    private void flush(PartitionKey key, PendingBatch batch) {
+        if (pendingBatches.remove(key, batch)) {
+            send(batch);
+        }
+    }
+
+    private void send(PendingBatch batch) {
+        Futures.addCallback(execute(batch.tenantId, batch.statements), new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(@Nullable Void result) {
+                batch.results.forEach(future -> future.set(null));
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                batch.results.forEach(future -> future.setException(t));
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<Void> execute(TenantId tenantId, List<? extends BatchableStatement<?>> statements) {
+        if (statements.size() == 1) {
+            return writeFunction.apply(tenantId, statements.get(0));
+        }
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < statements.size(); i += maxSize) {
+            List<BatchableStatement<?>> chunk = new ArrayList<>(statements.subList(i, Math.min(statements.size(), i + maxSize)));
+            futures.add(writeFunction.apply(tenantId, BatchStatement.newInstance(DefaultBatchType.UNLOGGED, chunk)));
+        }
+        return Futures.transform(Futures.allAsList(futures), result -> null, MoreExecutors.directExecutor());
+    }
+
+    @Data
+    static class PartitionKey {
+        private final String entityType;
+        private final UUID entityId;
+        private final String key;
+        private final long partition;
+    }
+
+    private static class PendingBatch {
+        private final TenantId tenantId;
+        private final List<BatchableStatement<?>> statements = new ArrayList<>();
+        private final Set<Long> timestamps = new HashSet<>();
+        private final List<SettableFuture<Void>> results = new ArrayList<>();
+
+        private PendingBatch(TenantId tenantId) {
+            this.tenantId = tenantId;
+        }
+    }
+}
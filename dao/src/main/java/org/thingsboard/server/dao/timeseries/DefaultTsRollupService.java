@@ -0,0 +1,631 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.BaseDeleteTsKvQuery;
+import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.DataType;
+import org.thingsboard.server.common.data.kv.DeleteTsKvQuery;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.JsonDataEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps minute, hour and day rollups of numeric timeseries as JSON entries of derived keys
+ * ({@code <key>$rollup_1m} etc.) in the regular timeseries storage, so it works with every {@link TimeseriesDao}.
+ * <p>
+ * Saved entries mark their series dirty; dirty ranges are periodically recomputed from raw data (minutes)
+ * and from the finer rollups (hours from minutes, days from hours), so recomputation is idempotent and safe to run on any node.
+ * The first recomputation of a series stores a {@code <key>$rollup_start} marker: rollups are complete after it,
+ * aggregated reads use raw data before it and for the intervals that are not covered by whole rollup buckets.
+ * <p>
+ * Dirty ranges are kept in memory only, so recomputation also stores a {@code <key>$rollup_to} watermark:
+ * rollups are complete up to it and reads use raw data after it. The next recomputation of the series starts from the watermark,
+ * so the ranges that were dirty before a restart are recomputed once the series gets new data.
+ * Writes and removals before the watermark move it back. Otherwise it is advanced in whole hours only,
+ * and the node continues from an in-memory cursor in between.
+ * <p>
+ * Series are recomputed asynchronously, {@code threads} of them at a time and at most {@code max_series_per_flush} per flush.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "database.ts_rollup", value = "enabled", havingValue = "true")
+public class DefaultTsRollupService implements TsRollupService {
+
+    private static final String MARKER_SUFFIX = TsRollupResolution.KEY_SEPARATOR + "start";
+    private static final String WATERMARK_SUFFIX = TsRollupResolution.KEY_SEPARATOR + "to";
+    private static final long MARKER_TS = 1L;
+    private static final long NO_ROLLUPS = Long.MAX_VALUE;
+    private static final long MIN_RAW_AGGREGATION_MS = 1000;
+    private static final String ASC_ORDER = "ASC";
+
+    @Value("${database.ts_rollup.flush_interval_ms:60000}")
+    private long flushIntervalMs;
+
+    @Value("${database.ts_rollup.threads:4}")
+    private int threads;
+
+    @Value("${database.ts_rollup.max_series_per_flush:10000}")
+    private int maxSeriesPerFlush;
+
+    @Value("${database.ts_rollup.state_cache_size:100000}")
+    private long stateCacheSize;
+
+    @Value("${database.ts_rollup.backfill_days:0}")
+    private int backfillDays;
+
+    @Value("${database.ts_rollup.fetch_limit:10000}")
+    private int fetchLimit;
+
+    @Value("${database.ts_rollup.minute_ttl_sec:2592000}")
+    private long minuteTtlSec;
+
+    @Value("${database.ts_rollup.hour_ttl_sec:31536000}")
+    private long hourTtlSec;
+
+    @Value("${database.ts_rollup.day_ttl_sec:0}")
+    private long dayTtlSec;
+
+    @Autowired
+    private TimeseriesDao timeseriesDao;
+
+    private final ConcurrentMap<SeriesKey, long[]> dirtyRanges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SeriesKey, Long> lateWrites = new ConcurrentHashMap<>();
+    private Cache<SeriesKey, RollupState> states;
+    private Cache<SeriesKey, RollupCursor> cursors;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        // watermarks are moved back by the node that receives late data, so other nodes re-read them every flush interval
+        states = Caffeine.newBuilder()
+                .maximumSize(stateCacheSize)
+                .expireAfterWrite(flushIntervalMs, TimeUnit.MILLISECONDS)
+                .build();
+        cursors = Caffeine.newBuilder()
+                .maximumSize(stateCacheSize)
+                .build();
+        executor = Executors.newFixedThreadPool(threads, ThingsBoardThreadFactory.forName("ts-rollup-recompute"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("ts-rollup"));
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void onSave(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry) {
+        if (TsRollup.isNumeric(tsKvEntry)) {
+            SeriesKey series = new SeriesKey(tenantId, entityId, tsKvEntry.getKey());
+            markDirty(series, tsKvEntry.getTs(), tsKvEntry.getTs());
+            onWrite(series, tsKvEntry.getTs());
+        }
+    }
+
+    @Override
+    public void onRemove(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query) {
+        SeriesKey series = new SeriesKey(tenantId, entityId, query.getKey());
+        onWrite(series, query.getStartTs() + 1);
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        for (TsRollupResolution resolution : TsRollupResolution.values()) {
+            futures.add(timeseriesDao.remove(tenantId, entityId, new BaseDeleteTsKvQuery(resolution.getRollupKey(query.getKey()),
+                    resolution.floor(query.getStartTs()), resolution.ceil(query.getEndTs()))));
+        }
+        // buckets on the edges of the removed interval may still have raw data
+        Futures.whenAllComplete(futures).run(() ->
+                markDirty(series, query.getStartTs() + 1, query.getEndTs()), MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Dirty ranges are {@code [minTs, maxTs, dirtySince]}, the series that wait longest are recomputed first.
+     */
+    private void markDirty(SeriesKey series, long minTs, long maxTs) {
+        markDirty(series, new long[]{minTs, maxTs, System.currentTimeMillis()});
+    }
+
+    private void markDirty(SeriesKey series, long[] range) {
+        dirtyRanges.merge(series, range, (a, b) -> new long[]{Math.min(a[0], b[0]), Math.max(a[1], b[1]), Math.min(a[2], b[2])});
+    }
+
+    /**
+     * Moves the watermark back right away when the data before it changes, so that rollups are not trusted
+     * for the changed range even if the in-memory dirty range is lost.
+     */
+    private void onWrite(SeriesKey series, long ts) {
+        RollupState state = states.getIfPresent(series);
+        if (state != null && (state.getStart() == NO_ROLLUPS || ts > state.getTo())) {
+            return;
+        }
+        if (lateWrites.putIfAbsent(series, ts) == null) {
+            scheduler.execute(this::moveWatermarksBack);
+        } else {
+            lateWrites.merge(series, ts, Math::min);
+        }
+    }
+
+    private void moveWatermarksBack() {
+        for (SeriesKey series : new ArrayList<>(lateWrites.keySet())) {
+            Long ts = lateWrites.remove(series);
+            if (ts == null) {
+                continue;
+            }
+            ListenableFuture<Void> future = Futures.transformAsync(getState(series), state -> {
+                if (state.getStart() != NO_ROLLUPS && ts <= state.getTo()) {
+                    return saveWatermark(series, state, TsRollupResolution.MINUTE.bucketEnd(ts) - TsRollupResolution.MINUTE.getIntervalMs());
+                }
+                return Futures.immediateFuture(null);
+            }, MoreExecutors.directExecutor());
+            Futures.addCallback(future, new FutureCallback<Void>() {
+                @Override
+                public void onSuccess(@Nullable Void result) {
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    log.warn("[{}][{}][{}] Failed to move rollups watermark", series.getTenantId(), series.getEntityId(), series.getKey(), t);
+                    lateWrites.merge(series, ts, Math::min);
+                }
+            }, MoreExecutors.directExecutor());
+        }
+    }
+
+    /**
+     * Recomputes up to {@code max_series_per_flush} dirty series, {@code threads} of them at a time.
+     * Returns once all of them are done, so the same series is never recomputed concurrently.
+     */
+    void flush() {
+        moveWatermarksBack();
+        List<SeriesKey> batch = new ArrayList<>(dirtyRanges.keySet());
+        if (batch.size() > maxSeriesPerFlush) {
+            batch = dirtyRanges.entrySet().stream()
+                    .sorted(Comparator.comparingLong((Map.Entry<SeriesKey, long[]> entry) -> entry.getValue()[2]))
+                    .limit(maxSeriesPerFlush)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+            log.debug("Rollups of {} series are postponed to the next flush", dirtyRanges.size() - batch.size());
+        }
+        Semaphore permits = new Semaphore(threads);
+        try {
+            for (SeriesKey series : batch) {
+                permits.acquire();
+                long[] range = dirtyRanges.remove(series);
+                if (range == null) {
+                    permits.release();
+                    continue;
+                }
+                Futures.addCallback(flush(series, range), new FutureCallback<Void>() {
+                    @Override
+                    public void onSuccess(@Nullable Void result) {
+                        permits.release();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        log.warn("[{}][{}][{}] Failed to update rollups", series.getTenantId(), series.getEntityId(), series.getKey(), t);
+                        markDirty(series, range);
+                        permits.release();
+                    }
+                }, MoreExecutors.directExecutor());
+            }
+            permits.acquire(threads);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ListenableFuture<Void> flush(SeriesKey series, long[] range) {
+        long now = System.currentTimeMillis();
+        long from = TsRollupResolution.MINUTE.bucketEnd(range[0]) - TsRollupResolution.MINUTE.getIntervalMs();
+        long to = Math.max(TsRollupResolution.MINUTE.bucketEnd(range[1]), TsRollupResolution.MINUTE.floor(now));
+        return Futures.transformAsync(getState(series), state -> {
+            if (state.getStart() == NO_ROLLUPS) {
+                long start = backfillDays > 0 ?
+                        TsRollupResolution.DAY.floor(now - TimeUnit.DAYS.toMillis(backfillDays)) : from;
+                return Futures.transformAsync(recompute(series, Math.min(from, start), to),
+                        v -> Futures.transformAsync(saveMarker(series, start), marker -> updateWatermark(series, marker, now), MoreExecutors.directExecutor()),
+                        MoreExecutors.directExecutor());
+            }
+            return Futures.transformAsync(recompute(series, Math.min(from, getRecomputedTo(series, state)), to),
+                    v -> updateWatermark(series, state, now), MoreExecutors.directExecutor());
+        }, MoreExecutors.directExecutor());
+    }
+
+    private long getRecomputedTo(SeriesKey series, RollupState state) {
+        RollupCursor cursor = cursors.getIfPresent(series);
+        // a watermark moved by late data or by another node invalidates the cursor
+        return cursor != null && cursor.getWatermark() == state.getTo() ? cursor.getRecomputedTo() : state.getTo();
+    }
+
+    /**
+     * The stored watermark stays valid while nothing before it changes, so it is advanced in whole hours only
+     * and the node keeps recomputing from its in-memory cursor in between.
+     */
+    private ListenableFuture<Void> updateWatermark(SeriesKey series, RollupState state, long now) {
+        long watermark = TsRollupResolution.MINUTE.floor(now);
+        // data saved while recomputing is not covered yet
+        long[] pending = dirtyRanges.get(series);
+        if (pending != null) {
+            watermark = Math.min(watermark, TsRollupResolution.MINUTE.bucketEnd(pending[0]) - TsRollupResolution.MINUTE.getIntervalMs());
+        }
+        if (watermark < state.getTo() || watermark - state.getTo() >= TsRollupResolution.HOUR.getIntervalMs()) {
+            long to = watermark;
+            return Futures.transform(saveWatermark(series, state, to), v -> {
+                cursors.put(series, new RollupCursor(to, to));
+                return null;
+            }, MoreExecutors.directExecutor());
+        }
+        cursors.put(series, new RollupCursor(state.getTo(), watermark));
+        return Futures.immediateFuture(null);
+    }
+
+    private ListenableFuture<Void> recompute(SeriesKey series, long from, long to) {
+        ListenableFuture<Void> future = Futures.immediateFuture(null);
+        for (TsRollupResolution resolution : TsRollupResolution.values()) {
+            future = Futures.transformAsync(future, v -> recompute(series, resolution, resolution.floor(from), resolution.ceil(to)), MoreExecutors.directExecutor());
+        }
+        return future;
+    }
+
+    private ListenableFuture<Void> recompute(SeriesKey series, TsRollupResolution resolution, long from, long to) {
+        Map<Long, TsRollup> buckets = new TreeMap<>();
+        TsRollupResolution source = resolution.getSource();
+        ListenableFuture<Void> fetched;
+        if (source == null) {
+            fetched = fetch(series, series.getKey(), from, to, entry ->
+                    buckets.computeIfAbsent(resolution.bucketEnd(entry.getTs()), ts -> new TsRollup()).add(entry));
+        } else {
+            fetched = fetch(series, source.getRollupKey(series.getKey()), from, to, entry ->
+                    buckets.computeIfAbsent(resolution.bucketEnd(entry.getTs()), ts -> new TsRollup()).merge(parse(entry)));
+        }
+        String rollupKey = resolution.getRollupKey(series.getKey());
+        long ttl = getTtlSec(resolution);
+        return Futures.transformAsync(fetched, v -> {
+            List<ListenableFuture<Integer>> futures = new ArrayList<>();
+            for (Map.Entry<Long, TsRollup> bucket : buckets.entrySet()) {
+                if (!bucket.getValue().isEmpty()) {
+                    futures.add(save(series, new BasicTsKvEntry(bucket.getKey(), new JsonDataEntry(rollupKey, bucket.getValue().toJson())), ttl));
+                }
+            }
+            return Futures.transform(Futures.allAsList(futures), results -> null, MoreExecutors.directExecutor());
+        }, executor);
+    }
+
+    private ListenableFuture<Integer> save(SeriesKey series, TsKvEntry entry, long ttl) {
+        return Futures.transformAsync(timeseriesDao.savePartition(series.getTenantId(), series.getEntityId(), entry.getTs(), entry.getKey(), ttl),
+                v -> timeseriesDao.save(series.getTenantId(), series.getEntityId(), entry, ttl), MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<Void> fetch(SeriesKey series, String key, long from, long to, Consumer<TsKvEntry> consumer) {
+        if (from >= to) {
+            return Futures.immediateFuture(null);
+        }
+        ReadTsKvQuery query = new BaseReadTsKvQuery(key, from, to, to - from, fetchLimit, Aggregation.NONE, ASC_ORDER);
+        return Futures.transformAsync(timeseriesDao.findAllAsync(series.getTenantId(), series.getEntityId(), Collections.singletonList(query)), entries -> {
+            entries.forEach(consumer);
+            if (entries.size() < fetchLimit) {
+                return Futures.immediateFuture(null);
+            }
+            return fetch(series, key, entries.get(entries.size() - 1).getTs(), to, consumer);
+        }, executor);
+    }
+
+    private ListenableFuture<RollupState> getState(SeriesKey series) {
+        RollupState state = states.getIfPresent(series);
+        if (state != null) {
+            return Futures.immediateFuture(state);
+        }
+        List<ReadTsKvQuery> queries = Arrays.asList(
+                new BaseReadTsKvQuery(series.getKey() + MARKER_SUFFIX, MARKER_TS - 1, MARKER_TS, 1, 1, Aggregation.NONE, ASC_ORDER),
+                new BaseReadTsKvQuery(series.getKey() + WATERMARK_SUFFIX, MARKER_TS - 1, MARKER_TS, 1, 1, Aggregation.NONE, ASC_ORDER));
+        return Futures.transform(timeseriesDao.findAllAsync(series.getTenantId(), series.getEntityId(), queries), entries -> {
+            long start = getLongValue(entries, series.getKey() + MARKER_SUFFIX).orElse(NO_ROLLUPS);
+            // rollups stored without a watermark are recomputed from the start marker
+            long to = getLongValue(entries, series.getKey() + WATERMARK_SUFFIX).orElse(start);
+            RollupState loaded = new RollupState(start, to);
+            // keeps a watermark saved while the state was being read
+            RollupState current = states.asMap().putIfAbsent(series, loaded);
+            return current != null ? current : loaded;
+        }, MoreExecutors.directExecutor());
+    }
+
+    private static Optional<Long> getLongValue(List<TsKvEntry> entries, String key) {
+        return entries.stream().filter(entry -> key.equals(entry.getKey())).findFirst().flatMap(TsKvEntry::getLongValue);
+    }
+
+    private ListenableFuture<RollupState> saveMarker(SeriesKey series, long start) {
+        return Futures.transform(save(series, new BasicTsKvEntry(MARKER_TS, new LongDataEntry(series.getKey() + MARKER_SUFFIX, start)), 0), v -> {
+            RollupState state = new RollupState(start, start);
+            states.put(series, state);
+            return state;
+        }, MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<Void> saveWatermark(SeriesKey series, RollupState state, long to) {
+        return Futures.transform(save(series, new BasicTsKvEntry(MARKER_TS, new LongDataEntry(series.getKey() + WATERMARK_SUFFIX, to)), 0), v -> {
+            states.put(series, new RollupState(state.getStart(), to));
+            return null;
+        }, MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public ListenableFuture<List<TsKvEntry>> findAllAsync(TenantId tenantId, EntityId entityId, ReadTsKvQuery query) {
+        SeriesKey series = new SeriesKey(tenantId, entityId, query.getKey());
+        return Futures.transformAsync(getState(series), state -> {
+            // keys without rollups, e.g. the string ones, are aggregated by the storage as before
+            if (state.getStart() == NO_ROLLUPS) {
+                return timeseriesDao.findAllAsync(tenantId, entityId, Collections.singletonList(query));
+            }
+            long now = System.currentTimeMillis();
+            long[] validFrom = new long[TsRollupResolution.values().length];
+            for (TsRollupResolution resolution : TsRollupResolution.values()) {
+                long ttl = getTtlSec(resolution);
+                validFrom[resolution.ordinal()] = ttl > 0 ? Math.max(state.getStart(), now - TimeUnit.SECONDS.toMillis(ttl)) : state.getStart();
+            }
+            long validTo = state.getTo();
+            long step = Math.max(query.getInterval(), MIN_RAW_AGGREGATION_MS);
+            List<List<Segment>> steps = new ArrayList<>();
+            boolean rawOnly = true;
+            for (long stepTs = query.getStartTs(); stepTs < query.getEndTs(); stepTs += step) {
+                List<Segment> segments = new ArrayList<>();
+                decompose(stepTs, stepTs + step, TsRollupResolution.values().length - 1, validFrom, validTo, segments);
+                rawOnly &= segments.size() == 1 && segments.get(0).getResolution() == null;
+                steps.add(segments);
+            }
+            if (rawOnly) {
+                return timeseriesDao.findAllAsync(tenantId, entityId, Collections.singletonList(query));
+            }
+            List<ListenableFuture<Optional<TsKvEntry>>> futures = new ArrayList<>();
+            for (List<Segment> segments : steps) {
+                long startTs = segments.get(0).getFrom();
+                long endTs = segments.get(segments.size() - 1).getTo();
+                futures.add(aggregate(series, segments, query.getAggregation(), startTs + (endTs - startTs) / 2));
+            }
+            return Futures.transform(Futures.allAsList(futures),
+                    entries -> entries.stream().filter(Optional::isPresent).map(Optional::get).collect(Collectors.toList()),
+                    MoreExecutors.directExecutor());
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Splits the {@code (from, to]} interval into the coarsest rollup buckets that are valid for the interval and raw data on the edges.
+     */
+    static void decompose(long from, long to, int level, long[] validFrom, long validTo, List<Segment> segments) {
+        if (from >= to) {
+            return;
+        }
+        if (level < 0 || validFrom[level] >= to || validTo <= from) {
+            if (level < 0) {
+                segments.add(new Segment(null, from, to));
+            } else {
+                decompose(from, to, level - 1, validFrom, validTo, segments);
+            }
+            return;
+        }
+        TsRollupResolution resolution = TsRollupResolution.values()[level];
+        long start = resolution.ceil(Math.max(from, validFrom[level]));
+        long end = resolution.floor(Math.min(to, validTo));
+        if (start >= end) {
+            decompose(from, to, level - 1, validFrom, validTo, segments);
+            return;
+        }
+        decompose(from, start, level - 1, validFrom, validTo, segments);
+        segments.add(new Segment(resolution, start, end));
+        decompose(end, to, level - 1, validFrom, validTo, segments);
+    }
+
+    private ListenableFuture<Optional<TsKvEntry>> aggregate(SeriesKey series, List<Segment> segments, Aggregation aggregation, long ts) {
+        // average is computed from the sum and count of the same segments
+        List<Aggregation> aggregations = aggregation == Aggregation.AVG ?
+                Arrays.asList(Aggregation.SUM, Aggregation.COUNT) : Collections.singletonList(aggregation);
+        List<ListenableFuture<List<Optional<TsKvEntry>>>> futures = segments.stream()
+                .map(segment -> aggregateSegment(series, segment, aggregations))
+                .collect(Collectors.toList());
+        return Futures.transform(Futures.allAsList(futures), parts -> {
+            if (aggregation != Aggregation.AVG) {
+                return combine(series.getKey(), ts, aggregation, getParts(parts, 0));
+            }
+            Optional<TsKvEntry> sumEntry = combine(series.getKey(), ts, Aggregation.SUM, getParts(parts, 0));
+            Optional<TsKvEntry> countEntry = combine(series.getKey(), ts, Aggregation.COUNT, getParts(parts, 1));
+            if (!sumEntry.isPresent() || !countEntry.isPresent() || countEntry.get().getLongValue().orElse(0L) == 0) {
+                return Optional.<TsKvEntry>empty();
+            }
+            double total = sumEntry.get().getDataType() == DataType.DOUBLE ?
+                    sumEntry.get().getDoubleValue().orElse(0.0) : sumEntry.get().getLongValue().orElse(0L);
+            return Optional.<TsKvEntry>of(new BasicTsKvEntry(ts, new DoubleDataEntry(series.getKey(), total / countEntry.get().getLongValue().get())));
+        }, MoreExecutors.directExecutor());
+    }
+
+    private static List<Optional<TsKvEntry>> getParts(List<List<Optional<TsKvEntry>>> parts, int index) {
+        return parts.stream().map(part -> part.get(index)).collect(Collectors.toList());
+    }
+
+    /**
+     * @return results of the given aggregations over the segment, in the same order. Rollups and short raw intervals are read once for all of them.
+     */
+    private ListenableFuture<List<Optional<TsKvEntry>>> aggregateSegment(SeriesKey series, Segment segment, List<Aggregation> aggregations) {
+        long length = segment.getTo() - segment.getFrom();
+        if (segment.getResolution() != null) {
+            int limit = (int) (length / segment.getResolution().getIntervalMs());
+            ReadTsKvQuery query = new BaseReadTsKvQuery(segment.getResolution().getRollupKey(series.getKey()), segment.getFrom(), segment.getTo(), length, limit, Aggregation.NONE, ASC_ORDER);
+            return Futures.transform(timeseriesDao.findAllAsync(series.getTenantId(), series.getEntityId(), Collections.singletonList(query)), entries -> {
+                TsRollup rollup = new TsRollup();
+                entries.forEach(entry -> rollup.merge(parse(entry)));
+                return toTsKvEntries(rollup, series.getKey(), segment.getTo(), aggregations);
+            }, MoreExecutors.directExecutor());
+        } else if (length >= MIN_RAW_AGGREGATION_MS) {
+            List<ListenableFuture<Optional<TsKvEntry>>> futures = aggregations.stream().map(aggregation -> {
+                ReadTsKvQuery query = new BaseReadTsKvQuery(series.getKey(), segment.getFrom(), segment.getTo(), length, 1, aggregation, ASC_ORDER);
+                return Futures.transform(timeseriesDao.findAllAsync(series.getTenantId(), series.getEntityId(), Collections.singletonList(query)),
+                        entries -> entries.stream().findFirst(), MoreExecutors.directExecutor());
+            }).collect(Collectors.toList());
+            return Futures.allAsList(futures);
+        } else {
+            ReadTsKvQuery query = new BaseReadTsKvQuery(series.getKey(), segment.getFrom(), segment.getTo(), length, fetchLimit, Aggregation.NONE, ASC_ORDER);
+            return Futures.transform(timeseriesDao.findAllAsync(series.getTenantId(), series.getEntityId(), Collections.singletonList(query)), entries -> {
+                TsRollup rollup = new TsRollup();
+                entries.forEach(rollup::add);
+                return toTsKvEntries(rollup, series.getKey(), segment.getTo(), aggregations);
+            }, MoreExecutors.directExecutor());
+        }
+    }
+
+    private static List<Optional<TsKvEntry>> toTsKvEntries(TsRollup rollup, String key, long ts, List<Aggregation> aggregations) {
+        return aggregations.stream().map(aggregation -> rollup.toTsKvEntry(key, ts, aggregation)).collect(Collectors.toList());
+    }
+
+    /**
+     * Combines partial SUM, COUNT, MIN or MAX results keeping the long type unless any part is a double.
+     * A single non-numeric part, e.g. MIN or MAX of a string raw segment, is kept as it is.
+     */
+    static Optional<TsKvEntry> combine(String key, long ts, Aggregation aggregation, List<Optional<TsKvEntry>> parts) {
+        List<TsKvEntry> present = parts.stream().filter(Optional::isPresent).map(Optional::get).collect(Collectors.toList());
+        if (present.size() == 1 && !TsRollup.isNumeric(present.get(0))) {
+            return Optional.of(new BasicTsKvEntry(ts, present.get(0)));
+        }
+        boolean numeric = false;
+        boolean hasDouble = false;
+        long lValue = 0;
+        double dValue = 0;
+        Long lExtreme = null;
+        Double dExtreme = null;
+        for (Optional<TsKvEntry> part : parts) {
+            if (!part.isPresent()) {
+                continue;
+            }
+            TsKvEntry entry = part.get();
+            Optional<Long> l = entry.getDataType() == DataType.LONG ? entry.getLongValue() : Optional.empty();
+            Optional<Double> d = entry.getDataType() == DataType.DOUBLE ? entry.getDoubleValue() : Optional.empty();
+            if (!l.isPresent() && !d.isPresent()) {
+                continue;
+            }
+            numeric = true;
+            hasDouble |= d.isPresent();
+            if (aggregation == Aggregation.SUM || aggregation == Aggregation.COUNT) {
+                lValue += l.orElse(0L);
+                dValue += d.orElse(0.0);
+            } else if (l.isPresent()) {
+                lExtreme = lExtreme == null ? l.get() : (aggregation == Aggregation.MIN ? Math.min(lExtreme, l.get()) : Math.max(lExtreme, l.get()));
+            } else {
+                dExtreme = dExtreme == null ? d.get() : (aggregation == Aggregation.MIN ? Math.min(dExtreme, d.get()) : Math.max(dExtreme, d.get()));
+            }
+        }
+        if (!numeric) {
+            return Optional.empty();
+        }
+        if (aggregation == Aggregation.SUM || aggregation == Aggregation.COUNT) {
+            return Optional.of(new BasicTsKvEntry(ts, hasDouble ? new DoubleDataEntry(key, dValue + lValue) : new LongDataEntry(key, lValue)));
+        }
+        if (!hasDouble) {
+            return Optional.of(new BasicTsKvEntry(ts, new LongDataEntry(key, lExtreme)));
+        }
+        double result = lExtreme == null ? dExtreme : (aggregation == Aggregation.MIN ? Math.min(dExtreme, lExtreme) : Math.max(dExtreme, lExtreme));
+        return Optional.of(new BasicTsKvEntry(ts, new DoubleDataEntry(key, result)));
+    }
+
+    private long getTtlSec(TsRollupResolution resolution) {
+        switch (resolution) {
+            case MINUTE:
+                return minuteTtlSec;
+            case HOUR:
+                return hourTtlSec;
+            default:
+                return dayTtlSec;
+        }
+    }
+
+    private static TsRollup parse(TsKvEntry entry) {
+        try {
+            return TsRollup.fromJson(entry.getValueAsString());
+        } catch (Exception e) {
+            log.warn("[{}][{}] Failed to parse rollup", entry.getKey(), entry.getTs(), e);
+            return new TsRollup();
+        }
+    }
+
+    @Data
+    static class SeriesKey {
+        private final TenantId tenantId;
+        private final EntityId entityId;
+        private final String key;
+    }
+
+    @Data
+    static class RollupState {
+        private final long start;
+        private final long to;
+    }
+
+    @Data
+    static class RollupCursor {
+        private final long watermark;
+        private final long recomputedTo;
+    }
+
+    @Data
+    static class Segment {
+        private final TsRollupResolution resolution;
+        private final long from;
+        private final long to;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.stereotype.Component;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.dao.cache.AbstractDaoCache;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.thingsboard.server.common.data.CacheConstants.TS_LATEST_CACHE;
+
+/**
+ * Write-through cache of the latest timeseries values keyed by entity id and key.
+ * Enabled by {@code cache.ts_latest.enabled}. Local caches are not invalidated across nodes,
+ * so clustered deployments have to use the redis cache.
+ * <p>
+ * Every change also bumps the version of the entity, so the values read by {@link BaseTimeseriesService#findAllLatest}
+ * are cached only if no key of the entity was changed during the read.
+ */
+@Component
+public class TimeseriesLatestCache extends AbstractDaoCache {
+
+    public TimeseriesLatestCache(@Value("${cache.ts_latest.enabled:false}") boolean enabled,
+                                 @Value("${cache.ts_latest.redis_ttl_sec:86400}") long redisTtlSec) {
+        super(TS_LATEST_CACHE, enabled, redisTtlSec);
+    }
+
+    public TsKvEntry get(EntityId entityId, String key) {
+        Cache.ValueWrapper wrapper = getValue(toCacheKey(entityId, key));
+        return wrapper != null ? (TsKvEntry) wrapper.get() : null;
+    }
+
+    /**
+     * @return the version to pass to {@link #putIfAbsent(EntityId, TsKvEntry, long)}, has to be taken before the database read.
+     */
+    public long getVersion(EntityId entityId, String key) {
+        return getVersion(toCacheKey(entityId, key));
+    }
+
+    /**
+     * @return the version to pass to {@link #putAllIfAbsent(EntityId, List, long)}, has to be taken before the database read.
+     */
+    public long getVersion(EntityId entityId) {
+        return getVersion((Object) entityId);
+    }
+
+    /**
+     * Caches the value loaded from the database unless it was changed or invalidated since the version was taken.
+     */
+    public void putIfAbsent(EntityId entityId, TsKvEntry entry, long version) {
+        if (entry != null && entry.getValue() != null) {
+            List<Object> cacheKey = toCacheKey(entityId, entry.getKey());
+            putValueIfAbsent(cacheKey, entry, cacheKey, version);
+        }
+    }
+
+    /**
+     * Caches the values loaded from the database unless any value of the entity was changed or invalidated since the version was taken.
+     */
+    public void putAllIfAbsent(EntityId entityId, List<TsKvEntry> entries, long entityVersion) {
+        for (TsKvEntry entry : entries) {
+            if (entry.getValue() != null) {
+                putValueIfAbsent(toCacheKey(entityId, entry.getKey()), entry, entityId, entityVersion);
+            }
+        }
+    }
+
+    public void put(EntityId entityId, TsKvEntry entry) {
+        putValue(toCacheKey(entityId, entry.getKey()), entry, entityId);
+    }
+
+    public void evict(EntityId entityId, String key) {
+        evictValue(toCacheKey(entityId, key), entityId);
+    }
+
+    private static List<Object> toCacheKey(EntityId entityId, String key) {
+        return Arrays.asList(entityId, key);
+    }
+}
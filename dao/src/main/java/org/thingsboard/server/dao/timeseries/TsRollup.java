@@ -0,0 +1,143 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.DataType;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.KvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Mergeable aggregate of numeric values. Long and double values are tracked separately so that
+ * results have the same data types as aggregation over raw data.
+ */
+public class TsRollup {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private long lCount;
+    private long lSum;
+    private long lMin = Long.MAX_VALUE;
+    private long lMax = Long.MIN_VALUE;
+    private long dCount;
+    private double dSum;
+    private double dMin = Double.MAX_VALUE;
+    private double dMax = -Double.MAX_VALUE;
+
+    public static boolean isNumeric(KvEntry entry) {
+        return entry.getDataType() == DataType.LONG || entry.getDataType() == DataType.DOUBLE;
+    }
+
+    public void add(KvEntry entry) {
+        if (entry.getDataType() == DataType.LONG) {
+            entry.getLongValue().ifPresent(this::addLong);
+        } else if (entry.getDataType() == DataType.DOUBLE) {
+            entry.getDoubleValue().ifPresent(this::addDouble);
+        }
+    }
+
+    private void addLong(long value) {
+        lCount++;
+        lSum += value;
+        lMin = Math.min(lMin, value);
+        lMax = Math.max(lMax, value);
+    }
+
+    private void addDouble(double value) {
+        dCount++;
+        dSum += value;
+        dMin = Math.min(dMin, value);
+        dMax = Math.max(dMax, value);
+    }
+
+    public void merge(TsRollup other) {
+        lCount += other.lCount;
+        lSum += other.lSum;
+        lMin = Math.min(lMin, other.lMin);
+        lMax = Math.max(lMax, other.lMax);
+        dCount += other.dCount;
+        dSum += other.dSum;
+        dMin = Math.min(dMin, other.dMin);
+        dMax = Math.max(dMax, other.dMax);
+    }
+
+    public boolean isEmpty() {
+        return lCount == 0 && dCount == 0;
+    }
+
+    public long getCount() {
+        return lCount + dCount;
+    }
+
+    public Optional<TsKvEntry> toTsKvEntry(String key, long ts, Aggregation aggregation) {
+        if (isEmpty()) {
+            return Optional.empty();
+        }
+        boolean hasDouble = dCount > 0;
+        switch (aggregation) {
+            case COUNT:
+                return Optional.of(new BasicTsKvEntry(ts, new LongDataEntry(key, getCount())));
+            case SUM:
+                return Optional.of(new BasicTsKvEntry(ts, hasDouble ? new DoubleDataEntry(key, dSum + lSum) : new LongDataEntry(key, lSum)));
+            case AVG:
+                return Optional.of(new BasicTsKvEntry(ts, new DoubleDataEntry(key, (dSum + lSum) / getCount())));
+            case MIN:
+                return Optional.of(new BasicTsKvEntry(ts, hasDouble ? new DoubleDataEntry(key, Math.min(dMin, (double) lMin)) : new LongDataEntry(key, lMin)));
+            case MAX:
+                return Optional.of(new BasicTsKvEntry(ts, hasDouble ? new DoubleDataEntry(key, Math.max(dMax, (double) lMax)) : new LongDataEntry(key, lMax)));
+            default:
+                return Optional.empty();
+        }
+    }
+
+    public String toJson() {
+        ObjectNode node = mapper.createObjectNode();
+        if (lCount > 0) {
+            node.put("lc", lCount).put("ls", lSum).put("lmin", lMin).put("lmax", lMax);
+        }
+        if (dCount > 0) {
+            node.put("dc", dCount).put("ds", dSum).put("dmin", dMin).put("dmax", dMax);
+        }
+        return node.toString();
+    }
+
+    public static TsRollup fromJson(String json) throws IOException {
+        JsonNode node = mapper.readTree(json);
+        TsRollup rollup = new TsRollup();
+        if (node.has("lc")) {
+            rollup.lCount = node.get("lc").asLong();
+            rollup.lSum = node.get("ls").asLong();
+            rollup.lMin = node.get("lmin").asLong();
+            rollup.lMax = node.get("lmax").asLong();
+        }
+        if (node.has("dc")) {
+            rollup.dCount = node.get("dc").asLong();
+            rollup.dSum = node.get("ds").asDouble();
+            rollup.dMin = node.get("dmin").asDouble();
+            rollup.dMax = node.get("dmax").asDouble();
+        }
+        return rollup;
+    }
+}
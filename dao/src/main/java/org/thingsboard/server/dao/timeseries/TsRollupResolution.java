@@ -0,0 +1,68 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolutions of pre-aggregated timeseries. Each rollup bucket covers the interval {@code (end - intervalMs, end]}
+ * in UTC and is stored under the bucket end timestamp, matching the {@code ts > start AND ts <= end} semantics of timeseries queries.
+ */
+public enum TsRollupResolution {
+
+    MINUTE(TimeUnit.MINUTES.toMillis(1), "1m"),
+    HOUR(TimeUnit.HOURS.toMillis(1), "1h"),
+    DAY(TimeUnit.DAYS.toMillis(1), "1d");
+
+    public static final String KEY_SEPARATOR = "$rollup_";
+
+    @Getter
+    private final long intervalMs;
+    private final String keySuffix;
+
+    TsRollupResolution(long intervalMs, String name) {
+        this.intervalMs = intervalMs;
+        this.keySuffix = KEY_SEPARATOR + name;
+    }
+
+    public String getRollupKey(String key) {
+        return key + keySuffix;
+    }
+
+    /**
+     * @return end of the bucket that contains the given timestamp.
+     */
+    public long bucketEnd(long ts) {
+        return ceil(ts);
+    }
+
+    public long ceil(long ts) {
+        return Math.floorDiv(ts + intervalMs - 1, intervalMs) * intervalMs;
+    }
+
+    public long floor(long ts) {
+        return Math.floorDiv(ts, intervalMs) * intervalMs;
+    }
+
+    /**
+     * @return the finer resolution this one is computed from, or null if it is computed from raw data.
+     */
+    public TsRollupResolution getSource() {
+        return ordinal() == 0 ? null : values()[ordinal() - 1];
+    }
+}
@@ -36,17 +36,19 @@ import org.thingsboard.server.common.msg.tools.TbRateLimits;
 import org.thingsboard.server.dao.nosql.CassandraStatementTask;
 
 import javax.annotation.Nullable;
-import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayDeque;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 
 /**
@@ -58,29 +60,36 @@ public abstract class AbstractBufferedRateExecutor<T extends AsyncTask, F extend
     public static final String CONCURRENCY_LEVEL = "currBuffer";
 
     private final long maxWaitTime;
-    private final long pollMs;
-    private final BlockingQueue<AsyncTaskContext<T, V>> queue;
+    private final int queueLimit;
+    private final int priorityWeight;
+    private final Queue<AsyncTaskContext<T, V>> priorityQueue = new ArrayDeque<>();
+    private final Queue<AsyncTaskContext<T, V>> queue = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dispatchCondition = lock.newCondition();
+    private final AdaptiveConcurrencyLimiter limiter;
     private final ExecutorService dispatcherExecutor;
     private final ExecutorService callbackExecutor;
     private final ScheduledExecutorService timeoutExecutor;
-    private final int concurrencyLimit;
     private final int printQueriesFreq;
     private final boolean perTenantLimitsEnabled;
     private final String perTenantLimitsConfiguration;
     private final ConcurrentMap<TenantId, TbRateLimits> perTenantLimits = new ConcurrentHashMap<>();
 
     private final AtomicInteger printQueriesIdx = new AtomicInteger(0);
+    private final AtomicLong taskIdSeq = new AtomicLong();
+    private int priorityTasksInRow;
 
     protected final AtomicInteger concurrencyLevel;
     protected final BufferedRateExecutorStats stats;
 
-    public AbstractBufferedRateExecutor(int queueLimit, int concurrencyLimit, long maxWaitTime, int dispatcherThreads, int callbackThreads, long pollMs,
+    public AbstractBufferedRateExecutor(int queueLimit, int concurrencyLimit, long maxWaitTime, int dispatcherThreads, int callbackThreads,
+                                        boolean adaptiveConcurrency, int minConcurrencyLimit, double rttTolerance, int priorityWeight,
                                         boolean perTenantLimitsEnabled, String perTenantLimitsConfiguration, int printQueriesFreq, StatsFactory statsFactory) {
         this.maxWaitTime = maxWaitTime;
-        this.pollMs = pollMs;
-        this.concurrencyLimit = concurrencyLimit;
+        this.queueLimit = queueLimit;
+        this.priorityWeight = Math.max(1, priorityWeight);
+        this.limiter = new AdaptiveConcurrencyLimiter(adaptiveConcurrency, minConcurrencyLimit, concurrencyLimit, rttTolerance);
         this.printQueriesFreq = printQueriesFreq;
-        this.queue = new LinkedBlockingDeque<>(queueLimit);
         this.dispatcherExecutor = Executors.newFixedThreadPool(dispatcherThreads, ThingsBoardThreadFactory.forName("nosql-dispatcher"));
         this.callbackExecutor = Executors.newWorkStealingPool(callbackThreads);
         this.timeoutExecutor = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("nosql-timeout"));
@@ -89,6 +98,8 @@ public abstract class AbstractBufferedRateExecutor<T extends AsyncTask, F extend
         this.stats = new BufferedRateExecutorStats(statsFactory);
         String concurrencyLevelKey = StatsType.RATE_EXECUTOR.getName() + "." + CONCURRENCY_LEVEL;
         this.concurrencyLevel = statsFactory.createGauge(concurrencyLevelKey, new AtomicInteger(0));
+        this.stats.getConcurrencyLimit().set(limiter.getLimit());
+        this.stats.getMaxConcurrencyLimit().set(limiter.getMaxLimit());
 
         for (int i = 0; i < dispatcherThreads; i++) {
             dispatcherExecutor.submit(this::dispatch);
@@ -114,12 +125,22 @@ public abstract class AbstractBufferedRateExecutor<T extends AsyncTask, F extend
             }
         }
         if (!perTenantLimitReached) {
+            stats.getTotalAdded().increment();
+            AsyncTaskContext<T, V> taskCtx = new AsyncTaskContext<>(taskIdSeq.incrementAndGet(), task, settableFuture, System.currentTimeMillis());
+            boolean added;
+            lock.lock();
             try {
-                stats.getTotalAdded().increment();
-                queue.add(new AsyncTaskContext<>(UUID.randomUUID(), task, settableFuture, System.currentTimeMillis()));
-            } catch (IllegalStateException e) {
+                added = priorityQueue.size() + queue.size() < queueLimit;
+                if (added) {
+                    (isPriorityTask(task) ? priorityQueue : queue).add(taskCtx);
+                    dispatchCondition.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (!added) {
                 stats.getTotalRejected().increment();
-                settableFuture.setException(e);
+                settableFuture.setException(new IllegalStateException("Queue full"));
             }
         }
         return result;
@@ -143,59 +164,119 @@ public abstract class AbstractBufferedRateExecutor<T extends AsyncTask, F extend
 
     protected abstract ListenableFuture<V> execute(AsyncTaskContext<T, V> taskCtx);
 
+    /**
+     * Priority tasks (e.g. reads) are dispatched before the queued regular tasks,
+     * but every priorityWeight priority tasks in a row one regular task is dispatched, so the regular tasks do not starve.
+     */
+    protected boolean isPriorityTask(T task) {
+        return false;
+    }
+
+    /**
+     * @return true if the failure indicates that the storage is overloaded and the concurrency limit should be decreased.
+     */
+    protected boolean isOverloaded(Throwable t) {
+        return t instanceof TimeoutException;
+    }
+
+    private AsyncTaskContext<T, V> takeTask() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                if (!priorityQueue.isEmpty() || !queue.isEmpty()) {
+                    if (limiter.tryAcquire()) {
+                        concurrencyLevel.set(limiter.getInFlight());
+                        return pollTask();
+                    }
+                }
+                dispatchCondition.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private AsyncTaskContext<T, V> pollTask() {
+        if (priorityQueue.isEmpty() || (!queue.isEmpty() && priorityTasksInRow >= priorityWeight)) {
+            priorityTasksInRow = 0;
+            return queue.poll();
+        }
+        if (queue.isEmpty()) {
+            priorityTasksInRow = 0;
+        } else {
+            priorityTasksInRow++;
+        }
+        return priorityQueue.poll();
+    }
+
+    private void releasePermit(boolean executed, long startTime, Throwable t) {
+        lock.lock();
+        try {
+            if (executed) {
+                long now = System.nanoTime();
+                limiter.release(now - startTime, t != null && isOverloaded(t), now);
+            } else {
+                limiter.release();
+            }
+            concurrencyLevel.set(limiter.getInFlight());
+            stats.getConcurrencyLimit().set(limiter.getLimit());
+            dispatchCondition.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private void dispatch() {
         log.info("Buffered rate executor thread started");
         while (!Thread.interrupted()) {
-            int curLvl = concurrencyLevel.get();
             AsyncTaskContext<T, V> taskCtx = null;
+            boolean executed = false;
+            long startTime = 0;
             try {
-                if (curLvl <= concurrencyLimit) {
-                    taskCtx = queue.take();
-                    final AsyncTaskContext<T, V> finalTaskCtx = taskCtx;
-                    if (printQueriesFreq > 0) {
-                        if (printQueriesIdx.incrementAndGet() >= printQueriesFreq) {
-                            printQueriesIdx.set(0);
-                            String query = queryToString(finalTaskCtx);
-                            log.info("[{}] Cassandra query: {}", taskCtx.getId(), query);
-                        }
+                taskCtx = takeTask();
+                final AsyncTaskContext<T, V> finalTaskCtx = taskCtx;
+                if (printQueriesFreq > 0) {
+                    if (printQueriesIdx.incrementAndGet() >= printQueriesFreq) {
+                        printQueriesIdx.set(0);
+                        String query = queryToString(finalTaskCtx);
+                        log.info("[{}] Cassandra query: {}", taskCtx.getId(), query);
                     }
-                    logTask("Processing", finalTaskCtx);
-                    concurrencyLevel.incrementAndGet();
-                    long timeout = finalTaskCtx.getCreateTime() + maxWaitTime - System.currentTimeMillis();
-                    if (timeout > 0) {
-                        stats.getTotalLaunched().increment();
-                        ListenableFuture<V> result = execute(finalTaskCtx);
-                        result = Futures.withTimeout(result, timeout, TimeUnit.MILLISECONDS, timeoutExecutor);
-                        Futures.addCallback(result, new FutureCallback<V>() {
-                            @Override
-                            public void onSuccess(@Nullable V result) {
-                                logTask("Releasing", finalTaskCtx);
-                                stats.getTotalReleased().increment();
-                                concurrencyLevel.decrementAndGet();
-                                finalTaskCtx.getFuture().set(result);
-                            }
+                }
+                logTask("Processing", finalTaskCtx);
+                long timeout = finalTaskCtx.getCreateTime() + maxWaitTime - System.currentTimeMillis();
+                if (timeout > 0) {
+                    stats.getTotalLaunched().increment();
+                    final long finalStartTime = startTime = System.nanoTime();
+                    executed = true;
+                    ListenableFuture<V> result = execute(finalTaskCtx);
+                    result = Futures.withTimeout(result, timeout, TimeUnit.MILLISECONDS, timeoutExecutor);
+                    Futures.addCallback(result, new FutureCallback<V>() {
+                        @Override
+                        public void onSuccess(@Nullable V result) {
+                            logTask("Releasing", finalTaskCtx);
+                            stats.getTotalReleased().increment();
+                            releasePermit(true, finalStartTime, null);
+                            finalTaskCtx.getFuture().set(result);
+                        }
 
-                            @Override
-                            public void onFailure(Throwable t) {
-                                if (t instanceof TimeoutException) {
-                                    logTask("Expired During Execution", finalTaskCtx);
-                                } else {
-                                    logTask("Failed", finalTaskCtx);
-                                }
-                                stats.getTotalFailed().increment();
-                                concurrencyLevel.decrementAndGet();
-                                finalTaskCtx.getFuture().setException(t);
-                                log.debug("[{}] Failed to execute task: {}", finalTaskCtx.getId(), finalTaskCtx.getTask(), t);
+                        @Override
+                        public void onFailure(Throwable t) {
+                            if (t instanceof TimeoutException) {
+                                logTask("Expired During Execution", finalTaskCtx);
+                            } else {
+                                logTask("Failed", finalTaskCtx);
                             }
-                        }, callbackExecutor);
-                    } else {
-                        logTask("Expired Before Execution", finalTaskCtx);
-                        stats.getTotalExpired().increment();
-                        concurrencyLevel.decrementAndGet();
-                        taskCtx.getFuture().setException(new TimeoutException());
-                    }
+                            stats.getTotalFailed().increment();
+                            releasePermit(true, finalStartTime, t);
+                            finalTaskCtx.getFuture().setException(t);
+                            log.debug("[{}] Failed to execute task: {}", finalTaskCtx.getId(), finalTaskCtx.getTask(), t);
+                        }
+                    }, callbackExecutor);
                 } else {
-                    Thread.sleep(pollMs);
+                    logTask("Expired Before Execution", finalTaskCtx);
+                    stats.getTotalExpired().increment();
+                    releasePermit(false, 0, null);
+                    taskCtx.getFuture().setException(new TimeoutException());
                 }
             } catch (InterruptedException e) {
                 break;
@@ -203,7 +284,8 @@ public abstract class AbstractBufferedRateExecutor<T extends AsyncTask, F extend
                 if (taskCtx != null) {
                     log.debug("[{}] Failed to execute task: {}", taskCtx.getId(), taskCtx, e);
                     stats.getTotalFailed().increment();
-                    concurrencyLevel.decrementAndGet();
+                    releasePermit(executed, startTime, e);
+                    taskCtx.getFuture().setException(e);
                 } else {
                     log.debug("Failed to queue task:", e);
                 }
@@ -261,6 +343,11 @@ public abstract class AbstractBufferedRateExecutor<T extends AsyncTask, F extend
     }
 
     protected int getQueueSize() {
-        return queue.size();
+        lock.lock();
+        try {
+            return priorityQueue.size() + queue.size();
+        } finally {
+            lock.unlock();
+        }
     }
 }
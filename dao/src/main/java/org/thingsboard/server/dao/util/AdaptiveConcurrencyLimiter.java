@@ -0,0 +1,114 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.util;
+
+/**
+ * AIMD concurrency limit driven by observed request latency, similar to the gradient limiter.
+ * The limit grows by one per round trip while the short term latency stays within {@code rttTolerance}
+ * of the long term latency, and is multiplied by {@link #BACKOFF_RATIO} when latency degrades or requests are dropped.
+ * Not thread safe: callers must synchronize access.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double SHORT_RTT_ALPHA = 0.2;
+    private static final double LONG_RTT_ALPHA = 0.01;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+
+    private double limit;
+    private int inFlight;
+    private double shortRtt;
+    private double longRtt;
+    private long lastDecreaseTime;
+    private boolean decreased;
+
+    public AdaptiveConcurrencyLimiter(boolean adaptive, int minLimit, int maxLimit, double rttTolerance) {
+        this.adaptive = adaptive;
+        this.minLimit = Math.max(1, Math.min(minLimit, maxLimit));
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.limit = maxLimit;
+    }
+
+    public boolean tryAcquire() {
+        if (inFlight < getLimit()) {
+            inFlight++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Releases a permit without affecting the limit, e.g. for a task that expired before execution.
+     */
+    public void release() {
+        inFlight--;
+    }
+
+    /**
+     * Releases a permit and adjusts the limit using the request round trip time.
+     *
+     * @param now current {@link System#nanoTime()}
+     */
+    public void release(long rttNanos, boolean dropped, long now) {
+        inFlight--;
+        if (!adaptive) {
+            return;
+        }
+        if (dropped) {
+            decrease(now);
+            return;
+        }
+        if (longRtt == 0) {
+            shortRtt = rttNanos;
+            longRtt = rttNanos;
+            return;
+        }
+        shortRtt += (rttNanos - shortRtt) * SHORT_RTT_ALPHA;
+        longRtt += (rttNanos - longRtt) * LONG_RTT_ALPHA;
+        if (shortRtt > longRtt * rttTolerance) {
+            decrease(now);
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    private void decrease(long now) {
+        // back off at most once per round trip, otherwise all requests of a slow window would collapse the limit
+        if (decreased && now - lastDecreaseTime < longRtt) {
+            return;
+        }
+        decreased = true;
+        lastDecreaseTime = now;
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+}
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Getter
@@ -41,6 +42,8 @@ public class BufferedRateExecutorStats {
     private static final String TOTAL_EXPIRED = "totalExpired";
     private static final String TOTAL_REJECTED = "totalRejected";
     private static final String TOTAL_RATE_LIMITED = "totalRateLimited";
+    private static final String CONCURRENCY_LIMIT = "currLimit";
+    private static final String MAX_CONCURRENCY_LIMIT = "maxLimit";
 
     private final StatsFactory statsFactory;
 
@@ -56,6 +59,9 @@ public class BufferedRateExecutorStats {
     private final StatsCounter totalRejected;
     private final StatsCounter totalRateLimited;
 
+    private final AtomicInteger concurrencyLimit;
+    private final AtomicInteger maxConcurrencyLimit;
+
     public BufferedRateExecutorStats(StatsFactory statsFactory) {
         this.statsFactory = statsFactory;
 
@@ -69,6 +75,9 @@ public class BufferedRateExecutorStats {
         this.totalRejected = statsFactory.createStatsCounter(key, TOTAL_REJECTED);
         this.totalRateLimited = statsFactory.createStatsCounter(key, TOTAL_RATE_LIMITED);
 
+        this.concurrencyLimit = statsFactory.createGauge(key + "." + CONCURRENCY_LIMIT, new AtomicInteger(0));
+        this.maxConcurrencyLimit = statsFactory.createGauge(key + "." + MAX_CONCURRENCY_LIMIT, new AtomicInteger(0));
+
         this.statsCounters.add(totalAdded);
         this.statsCounters.add(totalLaunched);
         this.statsCounters.add(totalReleased);
@@ -0,0 +1,98 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.attributes;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.kv.AttributeKvEntry;
+import org.thingsboard.server.common.data.kv.BaseAttributeKvEntry;
+import org.thingsboard.server.common.data.kv.StringDataEntry;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.thingsboard.server.common.data.CacheConstants.ATTRIBUTES_CACHE;
+
+public class AttributesCacheTest {
+
+    private static final String SCOPE = "SERVER_SCOPE";
+    private static final String KEY = "key";
+
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+    private AttributesCache attributesCache;
+
+    @Before
+    public void before() {
+        CacheManager cacheManager = mock(CacheManager.class);
+        when(cacheManager.getCache(ATTRIBUTES_CACHE)).thenReturn(new ConcurrentMapCache(ATTRIBUTES_CACHE));
+        StatsFactory statsFactory = mock(StatsFactory.class);
+        when(statsFactory.createDefaultCounter(anyString(), (String[]) anyVararg())).thenReturn(mock(DefaultCounter.class));
+        attributesCache = new AttributesCache(true, 0);
+        ReflectionTestUtils.setField(attributesCache, "cacheManager", cacheManager);
+        ReflectionTestUtils.setField(attributesCache, "statsFactory", statsFactory);
+        attributesCache.init();
+    }
+
+    @Test
+    public void testLoadedValueIsCached() {
+        long version = attributesCache.getVersion(deviceId, SCOPE, KEY);
+        AttributeKvEntry attribute = attribute("value");
+        attributesCache.putIfAbsent(deviceId, SCOPE, KEY, attribute, version);
+        Assert.assertEquals(attribute, attributesCache.get(deviceId, SCOPE, KEY).get());
+    }
+
+    @Test
+    public void testMissingValueIsCached() {
+        long version = attributesCache.getVersion(deviceId, SCOPE, KEY);
+        attributesCache.putIfAbsent(deviceId, SCOPE, KEY, null, version);
+        Assert.assertNotNull(attributesCache.get(deviceId, SCOPE, KEY));
+        Assert.assertNull(attributesCache.get(deviceId, SCOPE, KEY).get());
+    }
+
+    @Test
+    public void testLoadedValueIsDroppedAfterConcurrentEviction() {
+        long version = attributesCache.getVersion(deviceId, SCOPE, KEY);
+        attributesCache.evict(deviceId, SCOPE, Collections.singletonList(KEY));
+        attributesCache.putIfAbsent(deviceId, SCOPE, KEY, attribute("stale"), version);
+        Assert.assertNull(attributesCache.get(deviceId, SCOPE, KEY));
+    }
+
+    @Test
+    public void testLoadedValueDoesNotReplaceConcurrentSave() {
+        long version = attributesCache.getVersion(deviceId, SCOPE, KEY);
+        AttributeKvEntry saved = attribute("saved");
+        attributesCache.put(deviceId, SCOPE, saved);
+        attributesCache.putIfAbsent(deviceId, SCOPE, KEY, attribute("stale"), version);
+        Cache.ValueWrapper cached = attributesCache.get(deviceId, SCOPE, KEY);
+        Assert.assertTrue(cached == null || saved.equals(cached.get()));
+    }
+
+    private static AttributeKvEntry attribute(String value) {
+        return new BaseAttributeKvEntry(new StringDataEntry(KEY, value), System.currentTimeMillis());
+    }
+}
@@ -46,9 +46,12 @@ import org.thingsboard.server.common.data.relation.EntityRelation;
 import org.thingsboard.server.common.data.relation.RelationTypeGroup;
 import org.thingsboard.server.dao.alarm.AlarmOperationResult;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 
 public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
@@ -280,6 +283,49 @@ public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
         Assert.assertEquals(tenantAlarm, alarms.getData().get(0));
     }
 
+    @Test
+    public void testFindAlarmDataWithCursor() throws ExecutionException, InterruptedException {
+        Device device = new Device();
+        device.setName("TestCursorDevice");
+        device.setType("default");
+        device.setTenantId(tenantId);
+        device = deviceService.saveDevice(device);
+
+        long ts = System.currentTimeMillis();
+        List<UUID> alarmIds = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            Alarm alarm = Alarm.builder().tenantId(tenantId)
+                    .originator(device.getId())
+                    .type(TEST_ALARM + i)
+                    .severity(AlarmSeverity.CRITICAL).status(AlarmStatus.ACTIVE_UNACK)
+                    .startTs(ts).build();
+            alarmIds.add(alarmService.createOrUpdateAlarm(alarm).getAlarm().getUuidId());
+        }
+
+        AlarmDataPageLink pageLink = new AlarmDataPageLink();
+        pageLink.setPageSize(5);
+        pageLink.setCursor("");
+        pageLink.setSortOrder(new EntityDataSortOrder(new EntityKey(EntityKeyType.ALARM_FIELD, "createdTime"), EntityDataSortOrder.Direction.ASC));
+        pageLink.setStartTs(0L);
+        pageLink.setEndTs(System.currentTimeMillis());
+
+        List<UUID> loadedIds = new ArrayList<>();
+        PageData<AlarmData> alarms;
+        do {
+            boolean firstPage = pageLink.getCursor().isEmpty();
+            alarms = alarmService.findAlarmDataByQueryForEntities(tenantId, new CustomerId(CustomerId.NULL_UUID), toQuery(pageLink),
+                    Collections.singletonList(device.getId()));
+            // only the first page is counted
+            Assert.assertEquals(firstPage ? 23 : -1, alarms.getTotalElements());
+            Assert.assertEquals(alarms.hasNext(), alarms.getNextCursor() != null);
+            alarms.getData().forEach(alarmData -> loadedIds.add(alarmData.getUuidId()));
+            pageLink.setCursor(alarms.getNextCursor());
+        } while (alarms.hasNext());
+
+        Assert.assertEquals(alarmIds.size(), loadedIds.size());
+        Assert.assertEquals(new HashSet<>(alarmIds), new HashSet<>(loadedIds));
+    }
+
     private AlarmDataQuery toQuery(AlarmDataPageLink pageLink){
         return toQuery(pageLink, Collections.EMPTY_LIST);
     }
@@ -521,6 +521,48 @@ public abstract class BaseEntityServiceTest extends AbstractServiceTest {
         deviceService.deleteDevicesByTenantId(tenantId);
     }
 
+    @Test
+    public void testFindEntityDataByQueryWithCursor() {
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < 97; i++) {
+            Device device = new Device();
+            device.setTenantId(tenantId);
+            device.setName("Device" + i);
+            device.setType("default");
+            devices.add(deviceService.saveDevice(device));
+        }
+
+        DeviceTypeFilter filter = new DeviceTypeFilter();
+        filter.setDeviceType("default");
+        filter.setDeviceNameFilter("");
+
+        EntityDataSortOrder sortOrder = new EntityDataSortOrder(
+                new EntityKey(EntityKeyType.ENTITY_FIELD, "name"), EntityDataSortOrder.Direction.DESC
+        );
+        EntityDataPageLink pageLink = new EntityDataPageLink(10, 0, null, sortOrder);
+        pageLink.setCursor("");
+        List<EntityKey> entityFields = Collections.singletonList(new EntityKey(EntityKeyType.ENTITY_FIELD, "name"));
+        EntityDataQuery query = new EntityDataQuery(filter, pageLink, entityFields, null, null);
+
+        List<String> loadedNames = new ArrayList<>();
+        PageData<EntityData> data;
+        do {
+            boolean firstPage = pageLink.getCursor().isEmpty();
+            data = entityService.findEntityDataByQuery(tenantId, new CustomerId(CustomerId.NULL_UUID), query);
+            // only the first page is counted
+            Assert.assertEquals(firstPage ? 97 : -1, data.getTotalElements());
+            Assert.assertEquals(firstPage ? 10 : -1, data.getTotalPages());
+            Assert.assertEquals(data.hasNext(), data.getNextCursor() != null);
+            data.getData().forEach(entityData -> loadedNames.add(entityData.getLatest().get(EntityKeyType.ENTITY_FIELD).get("name").getValue()));
+            pageLink.setCursor(data.getNextCursor());
+        } while (data.hasNext());
+
+        List<String> deviceNames = devices.stream().map(Device::getName).sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        Assert.assertEquals(deviceNames, loadedNames);
+
+        deviceService.deleteDevicesByTenantId(tenantId);
+    }
+
     @Test
     public void testFindEntityDataByQueryWithAttributes() throws ExecutionException, InterruptedException {
 
@@ -29,6 +29,7 @@ import org.thingsboard.server.common.data.kv.StringDataEntry;
 import org.thingsboard.server.dao.attributes.AttributesService;
 import org.thingsboard.server.dao.service.AbstractServiceTest;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -100,4 +101,33 @@ public abstract class BaseAttributesServiceTest extends AbstractServiceTest {
         Assert.assertEquals(attrBNew, saved.get(1));
     }
 
+    @Test
+    public void findMultipleKeysPartiallyCached() throws Exception {
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        AttributeKvEntry attrA = new BaseAttributeKvEntry(new StringDataEntry("A", "value1"), 42L);
+        AttributeKvEntry attrB = new BaseAttributeKvEntry(new StringDataEntry("B", "value2"), 42L);
+
+        attributesService.save(SYSTEM_TENANT_ID, deviceId, DataConstants.CLIENT_SCOPE, Collections.singletonList(attrA)).get();
+        Assert.assertFalse(attributesService.find(SYSTEM_TENANT_ID, deviceId, DataConstants.CLIENT_SCOPE, "B").get().isPresent());
+        attributesService.save(SYSTEM_TENANT_ID, deviceId, DataConstants.CLIENT_SCOPE, Collections.singletonList(attrB)).get();
+
+        List<AttributeKvEntry> found = attributesService.find(SYSTEM_TENANT_ID, deviceId, DataConstants.CLIENT_SCOPE, Arrays.asList("A", "B", "C")).get();
+        Assert.assertEquals(2, found.size());
+        Assert.assertTrue(found.contains(attrA));
+        Assert.assertTrue(found.contains(attrB));
+    }
+
+    @Test
+    public void removeAllEvictsCachedValues() throws Exception {
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        AttributeKvEntry attr = new BaseAttributeKvEntry(new StringDataEntry("attribute1", "value1"), 42L);
+
+        attributesService.save(SYSTEM_TENANT_ID, deviceId, DataConstants.SERVER_SCOPE, Collections.singletonList(attr)).get();
+        Assert.assertTrue(attributesService.find(SYSTEM_TENANT_ID, deviceId, DataConstants.SERVER_SCOPE, attr.getKey()).get().isPresent());
+
+        attributesService.removeAll(SYSTEM_TENANT_ID, deviceId, DataConstants.SERVER_SCOPE, Collections.singletonList(attr.getKey())).get();
+        Assert.assertFalse(attributesService.find(SYSTEM_TENANT_ID, deviceId, DataConstants.SERVER_SCOPE, attr.getKey()).get().isPresent());
+        Assert.assertTrue(attributesService.find(SYSTEM_TENANT_ID, deviceId, DataConstants.SERVER_SCOPE, Collections.singletonList(attr.getKey())).get().isEmpty());
+    }
+
 }
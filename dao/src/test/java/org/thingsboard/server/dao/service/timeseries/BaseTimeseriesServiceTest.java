@@ -139,6 +139,42 @@ public abstract class BaseTimeseriesServiceTest extends AbstractServiceTest {
         Assert.assertEquals(toTsEntry(TS, stringKvEntry), entries.get(0));
     }
 
+    @Test
+    public void testFindLatestAfterSave() throws Exception {
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+
+        saveEntries(deviceId, TS);
+        List<TsKvEntry> entries = tsService.findLatest(tenantId, deviceId, Collections.singleton(STRING_KEY)).get();
+        Assert.assertEquals(toTsEntry(TS, stringKvEntry), entries.get(0));
+
+        TsKvEntry newEntry = toTsEntry(TS + 1, new StringDataEntry(STRING_KEY, "newValue"));
+        tsService.save(tenantId, deviceId, newEntry).get();
+        entries = tsService.findLatest(tenantId, deviceId, Collections.singleton(STRING_KEY)).get();
+        Assert.assertEquals(newEntry, entries.get(0));
+
+        entries = tsService.findAllLatest(tenantId, deviceId).get();
+        Assert.assertTrue(entries.contains(newEntry));
+    }
+
+    @Test
+    public void testFindLatestAfterRemove() throws Exception {
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+
+        saveEntries(deviceId, 10000);
+        saveEntries(deviceId, 20000);
+        List<TsKvEntry> latest = tsService.findLatest(tenantId, deviceId, Collections.singletonList(STRING_KEY)).get();
+        Assert.assertEquals(20000, latest.get(0).getTs());
+
+        tsService.remove(tenantId, deviceId, Collections.singletonList(
+                new BaseDeleteTsKvQuery(STRING_KEY, 15000, 25000, true))).get();
+        latest = tsService.findLatest(tenantId, deviceId, Collections.singletonList(STRING_KEY)).get();
+        Assert.assertEquals(10000, latest.get(0).getTs());
+
+        tsService.removeLatest(tenantId, deviceId, Collections.singletonList(STRING_KEY)).get();
+        latest = tsService.findLatest(tenantId, deviceId, Collections.singletonList(STRING_KEY)).get();
+        Assert.assertNull(latest.get(0).getValue());
+    }
+
     @Test
     public void testFindByQueryAscOrder() throws Exception {
         DeviceId deviceId = new DeviceId(Uuids.timeBased());
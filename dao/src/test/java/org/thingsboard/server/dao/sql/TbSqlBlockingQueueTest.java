@@ -0,0 +1,141 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.stats.MessagesStats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class TbSqlBlockingQueueTest {
+
+    private final MessagesStats stats = mock(MessagesStats.class);
+    private final List<List<Integer>> packs = new CopyOnWriteArrayList<>();
+    private volatile long saveDelayMs;
+    private TbSqlBlockingQueue<Integer> queue;
+
+    @After
+    public void after() {
+        if (queue != null) {
+            queue.destroy();
+        }
+    }
+
+    @Test
+    public void testElementIsRejectedWhenQueueIsFullAfterOfferTimeout() throws Exception {
+        queue = new TbSqlBlockingQueue<>(params(10, 1000, 2, 100, false), stats);
+        queue.add(1);
+        queue.add(2);
+
+        long startTs = System.currentTimeMillis();
+        ListenableFuture<Void> rejected = queue.add(3);
+
+        Assert.assertTrue(System.currentTimeMillis() - startTs >= 100);
+        Assert.assertTrue(rejected.isDone());
+        try {
+            rejected.get();
+            Assert.fail("Element added to the full queue");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        verify(stats).incrementFailed();
+    }
+
+    @Test
+    public void testPartialPackIsFlushedAtMaxDelayOfOldestElement() throws Exception {
+        queue = new TbSqlBlockingQueue<>(params(10, 500, 100, 0, false), stats);
+        init();
+
+        long startTs = System.currentTimeMillis();
+        ListenableFuture<Void> first = queue.add(1);
+        Thread.sleep(300);
+        Futures.allAsList(first, queue.add(2), queue.add(3)).get(5, TimeUnit.SECONDS);
+        long flushDelay = System.currentTimeMillis() - startTs;
+
+        Assert.assertTrue(flushDelay >= 500);
+        Assert.assertTrue(flushDelay < 800);
+        Assert.assertEquals(1, packs.size());
+        Assert.assertEquals(3, packs.get(0).size());
+    }
+
+    @Test
+    public void testBatchSizeShrinksOnSlowFlushAndGrowsOnFullPacks() throws Exception {
+        queue = new TbSqlBlockingQueue<>(params(64, 1000, 1000, 0, true), stats);
+        saveDelayMs = 50;
+        List<ListenableFuture<Void>> futures = addAll(64);
+        init();
+
+        Futures.allAsList(futures).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(64, packs.get(0).size());
+        Assert.assertEquals(32, getBatchSize());
+
+        saveDelayMs = 0;
+        Futures.allAsList(addAll(32)).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(32, packs.get(1).size());
+        Assert.assertEquals(36, getBatchSize());
+    }
+
+    private void init() {
+        queue.init(mock(ScheduledLogExecutorComponent.class), pack -> {
+            packs.add(new ArrayList<>(pack));
+            if (saveDelayMs > 0) {
+                try {
+                    Thread.sleep(saveDelayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, Comparator.naturalOrder(), 0);
+    }
+
+    private List<ListenableFuture<Void>> addAll(int count) {
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(queue.add(i));
+        }
+        return futures;
+    }
+
+    private int getBatchSize() {
+        return (int) ReflectionTestUtils.getField(queue, "currentBatchSize");
+    }
+
+    private static TbSqlBlockingQueueParams params(int batchSize, long maxDelay, int maxQueueSize, long maxQueueOfferTimeoutMs, boolean adaptive) {
+        return TbSqlBlockingQueueParams.builder()
+                .logName("Test")
+                .batchSize(batchSize)
+                .maxDelay(maxDelay)
+                .statsPrintIntervalMs(1000)
+                .maxQueueSize(maxQueueSize)
+                .maxQueueOfferTimeoutMs(maxQueueOfferTimeoutMs)
+                .adaptiveBatchSizeEnabled(adaptive)
+                .batchTargetLatencyMs(10)
+                .build();
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.query;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.query.DeviceTypeFilter;
+import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityDataPageLink;
+import org.thingsboard.server.common.data.query.EntityDataQuery;
+import org.thingsboard.server.common.data.query.EntityDataSortOrder;
+import org.thingsboard.server.common.data.query.EntityKey;
+import org.thingsboard.server.common.data.query.EntityKeyType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity data queries of a tenant with many devices, counting the total by a separate query or by a window function.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EntityQueryRepositoryBenchmark {
+
+    private static final TenantId TENANT_ID = new TenantId(UUID.fromString("6c3fd3a0-0000-11eb-8080-808080808080"));
+    private static final UUID DEVICE_PROFILE_ID = UUID.fromString("6c3fd3a1-0000-11eb-8080-808080808080");
+    private static final int DEVICE_COUNT = Integer.getInteger("benchmark.devices", 1000000);
+    private static final int DEVICE_TYPES = 10;
+
+    @Param({"false", "true"})
+    private boolean windowCount;
+
+    @Param({"0", "100"})
+    private int page;
+
+    private HikariDataSource dataSource;
+    private DefaultEntityQueryRepository repository;
+    private EntityDataQuery typeQuery;
+    private EntityDataQuery textSearchQuery;
+
+    @Setup
+    public void setUp() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(System.getProperty("benchmark.db.url", "jdbc:postgresql://localhost:5432/thingsboard"));
+        config.setUsername(System.getProperty("benchmark.db.username", "postgres"));
+        config.setPassword(System.getProperty("benchmark.db.password", "postgres"));
+        config.setMaximumPoolSize(1);
+        dataSource = new HikariDataSource(config);
+        seed(new JdbcTemplate(dataSource));
+
+        DefaultQueryLogComponent queryLog = new DefaultQueryLogComponent();
+        repository = new DefaultEntityQueryRepository(new NamedParameterJdbcTemplate(dataSource),
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)), queryLog);
+        ReflectionTestUtils.setField(repository, "windowCount", windowCount);
+
+        typeQuery = query("type_3", null);
+        textSearchQuery = query("type_3", "device 12");
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public PageData<EntityData> findByType() {
+        return repository.findEntityDataByQuery(TENANT_ID, new CustomerId(CustomerId.NULL_UUID), typeQuery);
+    }
+
+    @Benchmark
+    public PageData<EntityData> findByTypeWithTextSearch() {
+        return repository.findEntityDataByQuery(TENANT_ID, new CustomerId(CustomerId.NULL_UUID), textSearchQuery);
+    }
+
+    private EntityDataQuery query(String deviceType, String textSearch) {
+        DeviceTypeFilter filter = new DeviceTypeFilter();
+        filter.setDeviceType(deviceType);
+        filter.setDeviceNameFilter("");
+        EntityKey createdTime = new EntityKey(EntityKeyType.ENTITY_FIELD, "createdTime");
+        EntityDataSortOrder sortOrder = new EntityDataSortOrder(createdTime, EntityDataSortOrder.Direction.DESC);
+        EntityDataPageLink pageLink = new EntityDataPageLink(20, page, textSearch, sortOrder);
+        List<EntityKey> entityFields = Arrays.asList(new EntityKey(EntityKeyType.ENTITY_FIELD, "name"), createdTime);
+        return new EntityDataQuery(filter, pageLink, entityFields, Collections.emptyList(), Collections.emptyList());
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate) {
+        Integer existing = jdbcTemplate.queryForObject("select count(*) from device where tenant_id = ?", Integer.class, TENANT_ID.getId());
+        if (existing != null && existing >= DEVICE_COUNT) {
+            return;
+        }
+        jdbcTemplate.update("insert into device_profile (id, created_time, name, type, transport_type, provision_type, search_text, is_default, tenant_id) " +
+                "values (?, 0, 'benchmark', 'DEFAULT', 'DEFAULT', 'DISABLED', 'benchmark', true, ?) on conflict do nothing", DEVICE_PROFILE_ID, TENANT_ID.getId());
+        jdbcTemplate.update("insert into device (id, created_time, customer_id, device_profile_id, type, name, label, search_text, tenant_id) " +
+                        "select md5('benchmark' || i)::uuid, i, ?, ?, 'type_' || (i % ?), 'Device ' || i, '', 'device ' || i, ? " +
+                        "from generate_series(0, ?) as i on conflict do nothing",
+                CustomerId.NULL_UUID, DEVICE_PROFILE_ID, DEVICE_TYPES, TENANT_ID.getId(), DEVICE_COUNT - 1);
+        jdbcTemplate.execute("analyze device");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String[] jvmArgs = Arrays.stream(new String[]{"benchmark.db.url", "benchmark.db.username", "benchmark.db.password", "benchmark.devices"})
+                .filter(property -> System.getProperty(property) != null)
+                .map(property -> "-D" + property + "=" + System.getProperty(property))
+                .toArray(String[]::new);
+        new Runner(new OptionsBuilder().include(EntityQueryRepositoryBenchmark.class.getSimpleName()).jvmArgsAppend(jvmArgs).build()).run();
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.query;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.data.EntityType;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.dao.exception.IncorrectParameterException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+public class QueryCursorTest {
+
+    @Test
+    public void testEncodeDecodeRoundtrip() {
+        UUID alarmId = UUID.randomUUID();
+        UUID entityId = UUID.randomUUID();
+        String cursor = QueryCursor.encode(1600000000000L, Arrays.asList(alarmId, entityId));
+
+        QueryContext ctx = newContext();
+        String seekQuery = QueryCursor.decode(cursor, 2).toSeekQuery(ctx, "a.created_time", true, Arrays.asList("a.id", "a.entity_id"), false);
+
+        Assert.assertEquals("(a.created_time, a.id, a.entity_id) < (:cursor_sort_value, :cursor_id_0, :cursor_id_1)", seekQuery);
+        Assert.assertEquals(1600000000000L, ctx.getValue("cursor_sort_value"));
+        Assert.assertEquals(alarmId, ctx.getValue("cursor_id_0"));
+        Assert.assertEquals(entityId, ctx.getValue("cursor_id_1"));
+    }
+
+    @Test
+    public void testAscendingSeekIncludesNullSortValues() {
+        UUID id = UUID.randomUUID();
+        String cursor = QueryCursor.encode("Device1", Collections.singletonList(id));
+
+        QueryContext ctx = newContext();
+        String seekQuery = QueryCursor.decode(cursor, 1).toSeekQuery(ctx, "name", false, Collections.singletonList("e.id"), true);
+
+        Assert.assertEquals("((name, e.id) > (:cursor_sort_value, :cursor_id_0) or name is null)", seekQuery);
+        Assert.assertEquals("Device1", ctx.getValue("cursor_sort_value"));
+    }
+
+    @Test
+    public void testNullSortValue() {
+        UUID id = UUID.randomUUID();
+        String cursor = QueryCursor.encode(null, Collections.singletonList(id));
+
+        QueryContext ctx = newContext();
+        String seekQuery = QueryCursor.decode(cursor, 1).toSeekQuery(ctx, "label", false, Collections.singletonList("e.id"), false);
+
+        Assert.assertEquals("((label is null and (e.id) < (:cursor_id_0)) or label is not null)", seekQuery);
+        Assert.assertFalse(ctx.hasValue("cursor_sort_value"));
+    }
+
+    @Test
+    public void testSeekByIdsOnly() {
+        UUID id = UUID.randomUUID();
+        String cursor = QueryCursor.encode(null, Collections.singletonList(id));
+
+        String seekQuery = QueryCursor.decode(cursor, 1).toSeekQuery(newContext(), null, false, Collections.singletonList("e.id"), true);
+
+        Assert.assertEquals("(e.id) > (:cursor_id_0)", seekQuery);
+    }
+
+    @Test(expected = IncorrectParameterException.class)
+    public void testDecodeRejectsWrongIdCount() {
+        QueryCursor.decode(QueryCursor.encode(1L, Collections.singletonList(UUID.randomUUID())), 2);
+    }
+
+    @Test(expected = IncorrectParameterException.class)
+    public void testDecodeRejectsGarbage() {
+        QueryCursor.decode("not a cursor", 1);
+    }
+
+    @Test(expected = IncorrectParameterException.class)
+    public void testNumericSortRejectsTextValue() {
+        String cursor = QueryCursor.encode("abc", Collections.singletonList(UUID.randomUUID()));
+        QueryCursor.decode(cursor, 1).toSeekQuery(newContext(), "created_time", true, Collections.singletonList("e.id"), true);
+    }
+
+    private static QueryContext newContext() {
+        return new QueryContext(new QuerySecurityContext(TenantId.SYS_TENANT_ID, new CustomerId(CustomerId.NULL_UUID), EntityType.DEVICE));
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.insert.psql;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thingsboard.server.dao.model.sql.AbstractTsKvEntity;
+import org.thingsboard.server.dao.model.sqlts.latest.TsKvLatestEntity;
+import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
+import org.thingsboard.server.dao.sqlts.insert.latest.psql.PsqlLatestInsertTsRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving of a ts_kv and ts_kv_latest batch with the batch update and the COPY insert paths.
+ * Use a scratch database, the tables are created in a separate schema that is dropped afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PsqlCopyInsertBenchmark {
+
+    private static final String SCHEMA = "tb_copy_benchmark";
+    private static final int DEVICES = 1000;
+    private static final int KEYS = 20;
+
+    @Param({"100", "1000", "10000"})
+    private int batchSize;
+
+    @Param({"false", "true"})
+    private boolean copyEnabled;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private PsqlInsertTsRepository tsRepository;
+    private PsqlLatestInsertTsRepository latestRepository;
+    private List<UUID> devices;
+    private long ts;
+    private List<TsKvEntity> tsBatch;
+    private List<TsKvLatestEntity> latestBatch;
+
+    @Setup
+    public void setUp() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(System.getProperty("benchmark.db.url", "jdbc:postgresql://localhost:5432/thingsboard_benchmark"));
+        config.setUsername(System.getProperty("benchmark.db.username", "postgres"));
+        config.setPassword(System.getProperty("benchmark.db.password", "postgres"));
+        config.addDataSourceProperty("currentSchema", SCHEMA);
+        config.setMaximumPoolSize(1);
+        dataSource = new HikariDataSource(config);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        createTables();
+
+        tsRepository = init(new PsqlInsertTsRepository());
+        latestRepository = init(new PsqlLatestInsertTsRepository());
+        devices = new ArrayList<>(DEVICES);
+        for (int i = 0; i < DEVICES; i++) {
+            devices.add(UUID.randomUUID());
+        }
+        ts = System.currentTimeMillis();
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() {
+        jdbcTemplate.execute("TRUNCATE ts_kv, ts_kv_latest");
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareBatch() {
+        ts++;
+        tsBatch = new ArrayList<>(batchSize);
+        latestBatch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            UUID entityId = devices.get((i / KEYS) % DEVICES);
+            int key = i % KEYS;
+            tsBatch.add(fillValue(new TsKvEntity(), entityId, key));
+            latestBatch.add(fillValue(new TsKvLatestEntity(), entityId, key));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void saveTs() {
+        transactionTemplate.execute(status -> {
+            tsRepository.saveOrUpdate(tsBatch);
+            return null;
+        });
+    }
+
+    @Benchmark
+    public void saveLatest() {
+        latestRepository.saveOrUpdate(latestBatch);
+    }
+
+    private void createTables() {
+        jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + SCHEMA);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + SCHEMA + ".ts_kv (entity_id uuid NOT NULL, key int NOT NULL, ts bigint NOT NULL, " +
+                "bool_v boolean, str_v varchar(10000000), long_v bigint, dbl_v double precision, json_v json, " +
+                "CONSTRAINT ts_kv_pkey PRIMARY KEY (entity_id, key, ts))");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + SCHEMA + ".ts_kv_latest (entity_id uuid NOT NULL, key int NOT NULL, ts bigint NOT NULL, " +
+                "bool_v boolean, str_v varchar(10000000), long_v bigint, dbl_v double precision, json_v json, " +
+                "CONSTRAINT ts_kv_latest_pkey PRIMARY KEY (entity_id, key))");
+    }
+
+    private <T> T init(T repository) {
+        ReflectionTestUtils.setField(repository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(repository, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(repository, "removeNullChars", true);
+        ReflectionTestUtils.setField(repository, "copyMinBatchSize", 1);
+        ReflectionTestUtils.setField(repository, "copyEnabled", copyEnabled);
+        return repository;
+    }
+
+    private <T extends AbstractTsKvEntity> T fillValue(T entity, UUID entityId, int key) {
+        entity.setEntityId(entityId);
+        entity.setKey(key);
+        entity.setTs(ts);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (key % 4) {
+            case 0:
+                entity.setDoubleValue(random.nextDouble());
+                break;
+            case 1:
+                entity.setLongValue(random.nextLong());
+                break;
+            case 2:
+                entity.setBooleanValue(random.nextBoolean());
+                break;
+            default:
+                entity.setStrValue("value \"" + random.nextInt() + "\", with comma");
+        }
+        return entity;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String[] jvmArgs = Arrays.stream(new String[]{"benchmark.db.url", "benchmark.db.username", "benchmark.db.password"})
+                .filter(property -> System.getProperty(property) != null)
+                .map(property -> "-D" + property + "=" + System.getProperty(property))
+                .toArray(String[]::new);
+        new Runner(new OptionsBuilder().include(PsqlCopyInsertBenchmark.class.getSimpleName()).jvmArgsAppend(jvmArgs).build()).run();
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.TenantId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+public class CassandraTsWriteBatcherTest {
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final List<Statement<?>> executed = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void before() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void after() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testSingleCallStatementsAreBatched() throws Exception {
+        CassandraTsWriteBatcher batcher = new CassandraTsWriteBatcher(this::write, null, 0, 100);
+        batcher.write(tenantId, key("temperature"), 1L, Collections.singletonList(mock(BoundStatement.class))).get();
+        Assert.assertEquals(1, executed.size());
+        Assert.assertTrue(executed.get(0) instanceof BoundStatement);
+
+        executed.clear();
+        batcher.write(tenantId, key("temperature"), 2L, Arrays.asList(mock(BoundStatement.class), mock(BoundStatement.class))).get();
+        Assert.assertEquals(1, executed.size());
+        Assert.assertEquals(2, ((BatchStatement) executed.get(0)).size());
+    }
+
+    @Test
+    public void testWritesOfSamePartitionAreGroupedWithinLinger() throws Exception {
+        CassandraTsWriteBatcher batcher = new CassandraTsWriteBatcher(this::write, scheduler, 50, 100);
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(batcher.write(tenantId, key("temperature"), i, Collections.singletonList(mock(BoundStatement.class))));
+        }
+        futures.add(batcher.write(tenantId, key("humidity"), 0L, Collections.singletonList(mock(BoundStatement.class))));
+        Futures.allAsList(futures).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(2, executed.size());
+    }
+
+    @Test
+    public void testFullBatchIsSentImmediately() throws Exception {
+        CassandraTsWriteBatcher batcher = new CassandraTsWriteBatcher(this::write, scheduler, TimeUnit.MINUTES.toMillis(1), 2);
+        ListenableFuture<Void> first = batcher.write(tenantId, key("temperature"), 1L, Collections.singletonList(mock(BoundStatement.class)));
+        ListenableFuture<Void> second = batcher.write(tenantId, key("temperature"), 2L, Collections.singletonList(mock(BoundStatement.class)));
+        Futures.allAsList(first, second).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(1, executed.size());
+        Assert.assertEquals(2, ((BatchStatement) executed.get(0)).size());
+    }
+
+    @Test
+    public void testWriteOfPendingTimestampSendsPendingBatchFirst() throws Exception {
+        CassandraTsWriteBatcher batcher = new CassandraTsWriteBatcher(this::write, scheduler, TimeUnit.MINUTES.toMillis(1), 2);
+        BoundStatement firstStatement = mock(BoundStatement.class);
+        ListenableFuture<Void> first = batcher.write(tenantId, key("temperature"), 1L, Collections.singletonList(firstStatement));
+        ListenableFuture<Void> second = batcher.write(tenantId, key("temperature"), 1L, Collections.singletonList(mock(BoundStatement.class)));
+        first.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(1, executed.size());
+        Assert.assertSame(firstStatement, executed.get(0));
+        Assert.assertFalse(second.isDone());
+
+        batcher.write(tenantId, key("temperature"), 2L, Collections.singletonList(mock(BoundStatement.class)));
+        second.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(2, executed.size());
+        Assert.assertEquals(2, ((BatchStatement) executed.get(1)).size());
+    }
+
+    private CassandraTsWriteBatcher.PartitionKey key(String key) {
+        return new CassandraTsWriteBatcher.PartitionKey("DEVICE", tenantId.getId(), key, 0L);
+    }
+
+    private ListenableFuture<Void> write(TenantId tenantId, Statement<?> statement) {
+        executed.add(statement);
+        return Futures.immediateFuture(null);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.thingsboard.server.common.data.CacheConstants.TS_LATEST_CACHE;
+
+public class TimeseriesLatestCacheTest {
+
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+    private TimeseriesLatestCache latestCache;
+
+    @Before
+    public void before() {
+        CacheManager cacheManager = mock(CacheManager.class);
+        when(cacheManager.getCache(TS_LATEST_CACHE)).thenReturn(new ConcurrentMapCache(TS_LATEST_CACHE));
+        StatsFactory statsFactory = mock(StatsFactory.class);
+        when(statsFactory.createDefaultCounter(anyString(), (String[]) anyVararg())).thenReturn(mock(DefaultCounter.class));
+        latestCache = new TimeseriesLatestCache(true, 0);
+        ReflectionTestUtils.setField(latestCache, "cacheManager", cacheManager);
+        ReflectionTestUtils.setField(latestCache, "statsFactory", statsFactory);
+        latestCache.init();
+    }
+
+    @Test
+    public void testDisabledCache() {
+        TimeseriesLatestCache disabled = new TimeseriesLatestCache(false, 0);
+        ReflectionTestUtils.setField(disabled, "cacheManager", mock(CacheManager.class));
+        ReflectionTestUtils.setField(disabled, "statsFactory", mock(StatsFactory.class));
+        disabled.init();
+        Assert.assertFalse(disabled.isEnabled());
+        Assert.assertFalse(disabled.isLocal());
+    }
+
+    @Test
+    public void testLoadedValuesAreCached() {
+        long version = latestCache.getVersion(deviceId);
+        latestCache.putAllIfAbsent(deviceId, Arrays.asList(entry("a", 1), entry("b", 2)), version);
+        Assert.assertEquals(Long.valueOf(1), latestCache.get(deviceId, "a").getLongValue().get());
+        Assert.assertEquals(Long.valueOf(2), latestCache.get(deviceId, "b").getLongValue().get());
+    }
+
+    @Test
+    public void testLoadedValuesAreDroppedAfterConcurrentRemove() {
+        long version = latestCache.getVersion(deviceId);
+        latestCache.evict(deviceId, "a");
+        latestCache.putAllIfAbsent(deviceId, Collections.singletonList(entry("a", 1)), version);
+        Assert.assertNull(latestCache.get(deviceId, "a"));
+    }
+
+    @Test
+    public void testLoadedValueDoesNotReplaceConcurrentSave() {
+        long version = latestCache.getVersion(deviceId, "a");
+        latestCache.put(deviceId, entry("a", 2));
+        latestCache.putIfAbsent(deviceId, entry("a", 1), version);
+        TsKvEntry cached = latestCache.get(deviceId, "a");
+        Assert.assertTrue(cached == null || cached.getLongValue().get() == 2);
+    }
+
+    private static TsKvEntry entry(String key, long value) {
+        return new BasicTsKvEntry(System.currentTimeMillis(), new LongDataEntry(key, value));
+    }
+}
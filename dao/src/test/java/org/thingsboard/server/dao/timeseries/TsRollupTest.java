@@ -0,0 +1,178 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.util.concurrent.Futures;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.DataType;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.StringDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TsRollupTest {
+
+    private static final long MINUTE = TsRollupResolution.MINUTE.getIntervalMs();
+    private static final long HOUR = TsRollupResolution.HOUR.getIntervalMs();
+    private static final long DAY = TsRollupResolution.DAY.getIntervalMs();
+
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        TsRollup rollup = new TsRollup();
+        rollup.add(new LongDataEntry("temp", 5L));
+        rollup.add(new LongDataEntry("temp", -3L));
+        rollup.add(new DoubleDataEntry("temp", 1.5));
+
+        TsRollup restored = TsRollup.fromJson(rollup.toJson());
+
+        Assert.assertEquals(3, restored.getCount());
+        Assert.assertEquals(3.5, restored.toTsKvEntry("temp", 1, Aggregation.SUM).get().getDoubleValue().get(), 0.0);
+        Assert.assertEquals(-3.0, restored.toTsKvEntry("temp", 1, Aggregation.MIN).get().getDoubleValue().get(), 0.0);
+        Assert.assertEquals(5.0, restored.toTsKvEntry("temp", 1, Aggregation.MAX).get().getDoubleValue().get(), 0.0);
+    }
+
+    @Test
+    public void testLongOnlyRollupKeepsLongType() throws Exception {
+        TsRollup first = new TsRollup();
+        first.add(new LongDataEntry("temp", 2L));
+        TsRollup second = TsRollup.fromJson(new TsRollup().toJson());
+        second.add(new LongDataEntry("temp", 4L));
+        first.merge(second);
+
+        TsKvEntry sum = first.toTsKvEntry("temp", 1, Aggregation.SUM).get();
+        Assert.assertEquals(DataType.LONG, sum.getDataType());
+        Assert.assertEquals(6L, sum.getLongValue().get().longValue());
+        Assert.assertEquals(3.0, first.toTsKvEntry("temp", 1, Aggregation.AVG).get().getDoubleValue().get(), 0.0);
+        Assert.assertEquals(2L, first.toTsKvEntry("temp", 1, Aggregation.COUNT).get().getLongValue().get().longValue());
+        Assert.assertFalse(new TsRollup().toTsKvEntry("temp", 1, Aggregation.SUM).isPresent());
+    }
+
+    @Test
+    public void testBucketBoundaries() {
+        Assert.assertEquals(MINUTE, TsRollupResolution.MINUTE.bucketEnd(MINUTE));
+        Assert.assertEquals(2 * MINUTE, TsRollupResolution.MINUTE.bucketEnd(MINUTE + 1));
+        Assert.assertEquals(HOUR, TsRollupResolution.HOUR.floor(HOUR + MINUTE));
+        Assert.assertEquals("temp$rollup_1h", TsRollupResolution.HOUR.getRollupKey("temp"));
+        Assert.assertEquals(TsRollupResolution.HOUR, TsRollupResolution.DAY.getSource());
+        Assert.assertNull(TsRollupResolution.MINUTE.getSource());
+    }
+
+    @Test
+    public void testDecomposeUsesCoarsestBuckets() {
+        long[] validFrom = new long[]{0, 0, 0};
+        List<DefaultTsRollupService.Segment> segments = new ArrayList<>();
+
+        DefaultTsRollupService.decompose(DAY - HOUR - MINUTE - 1, 2 * DAY + HOUR + 1, 2, validFrom, 10 * DAY, segments);
+
+        Assert.assertEquals(Arrays.asList(
+                new DefaultTsRollupService.Segment(null, DAY - HOUR - MINUTE - 1, DAY - HOUR - MINUTE),
+                new DefaultTsRollupService.Segment(TsRollupResolution.MINUTE, DAY - HOUR - MINUTE, DAY - HOUR),
+                new DefaultTsRollupService.Segment(TsRollupResolution.HOUR, DAY - HOUR, DAY),
+                new DefaultTsRollupService.Segment(TsRollupResolution.DAY, DAY, 2 * DAY),
+                new DefaultTsRollupService.Segment(TsRollupResolution.HOUR, 2 * DAY, 2 * DAY + HOUR),
+                new DefaultTsRollupService.Segment(null, 2 * DAY + HOUR, 2 * DAY + HOUR + 1)), segments);
+    }
+
+    @Test
+    public void testDecomposeFallsBackToRawDataOutsideOfRollups() {
+        long[] validFrom = new long[]{Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        List<DefaultTsRollupService.Segment> segments = new ArrayList<>();
+
+        DefaultTsRollupService.decompose(0, DAY, 2, validFrom, 10 * DAY, segments);
+
+        Assert.assertEquals(Arrays.asList(new DefaultTsRollupService.Segment(null, 0, DAY)), segments);
+    }
+
+    @Test
+    public void testCombine() {
+        List<Optional<TsKvEntry>> parts = Arrays.asList(
+                Optional.of(new BasicTsKvEntry(1, new LongDataEntry("temp", 3L))),
+                Optional.empty(),
+                Optional.of(new BasicTsKvEntry(2, new LongDataEntry("temp", 7L))));
+
+        TsKvEntry sum = DefaultTsRollupService.combine("temp", 5, Aggregation.SUM, parts).get();
+        Assert.assertEquals(5, sum.getTs());
+        Assert.assertEquals(10L, sum.getLongValue().get().longValue());
+        Assert.assertEquals(7L, DefaultTsRollupService.combine("temp", 5, Aggregation.MAX, parts).get().getLongValue().get().longValue());
+
+        List<Optional<TsKvEntry>> mixed = new ArrayList<>(parts);
+        mixed.add(Optional.of(new BasicTsKvEntry(3, new DoubleDataEntry("temp", 2.5))));
+        TsKvEntry min = DefaultTsRollupService.combine("temp", 5, Aggregation.MIN, mixed).get();
+        Assert.assertEquals(DataType.DOUBLE, min.getDataType());
+        Assert.assertEquals(2.5, min.getDoubleValue().get(), 0.0);
+
+        Assert.assertFalse(DefaultTsRollupService.combine("temp", 5, Aggregation.SUM, Arrays.asList(Optional.empty())).isPresent());
+    }
+
+    @Test
+    public void testCombineKeepsSingleStringPart() {
+        List<Optional<TsKvEntry>> parts = Collections.singletonList(Optional.of(new BasicTsKvEntry(1, new StringDataEntry("state", "idle"))));
+
+        TsKvEntry max = DefaultTsRollupService.combine("state", 5, Aggregation.MAX, parts).get();
+
+        Assert.assertEquals(5, max.getTs());
+        Assert.assertEquals(DataType.STRING, max.getDataType());
+        Assert.assertEquals("idle", max.getStrValue().get());
+    }
+
+    @Test
+    public void testMinMaxOfStringKeyAreReadFromStorage() throws Exception {
+        TenantId tenantId = new TenantId(UUID.randomUUID());
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        TimeseriesDao timeseriesDao = mock(TimeseriesDao.class);
+        DefaultTsRollupService rollupService = new DefaultTsRollupService();
+        ReflectionTestUtils.setField(rollupService, "timeseriesDao", timeseriesDao);
+        ReflectionTestUtils.setField(rollupService, "flushIntervalMs", MINUTE);
+        ReflectionTestUtils.setField(rollupService, "threads", 1);
+        ReflectionTestUtils.setField(rollupService, "stateCacheSize", 1000L);
+        rollupService.init();
+        try {
+            ReadTsKvQuery min = new BaseReadTsKvQuery("state", 0, DAY, DAY, 1, Aggregation.MIN, "ASC");
+            ReadTsKvQuery max = new BaseReadTsKvQuery("state", 0, DAY, DAY, 1, Aggregation.MAX, "ASC");
+            when(timeseriesDao.findAllAsync(eq(tenantId), eq(deviceId), anyListOf(ReadTsKvQuery.class)))
+                    .thenReturn(Futures.immediateFuture(Collections.emptyList()));
+            when(timeseriesDao.findAllAsync(eq(tenantId), eq(deviceId), eq(Collections.singletonList(min))))
+                    .thenReturn(Futures.immediateFuture(Collections.singletonList(new BasicTsKvEntry(DAY / 2, new StringDataEntry("state", "busy")))));
+            when(timeseriesDao.findAllAsync(eq(tenantId), eq(deviceId), eq(Collections.singletonList(max))))
+                    .thenReturn(Futures.immediateFuture(Collections.singletonList(new BasicTsKvEntry(DAY / 2, new StringDataEntry("state", "idle")))));
+
+            Assert.assertEquals("busy", rollupService.findAllAsync(tenantId, deviceId, min).get().get(0).getStrValue().get());
+            Assert.assertEquals("idle", rollupService.findAllAsync(tenantId, deviceId, max).get().get(0).getStrValue().get());
+        } finally {
+            rollupService.destroy();
+        }
+    }
+}
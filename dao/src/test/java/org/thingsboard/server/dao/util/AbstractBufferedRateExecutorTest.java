@@ -0,0 +1,211 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.util;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.stats.StatsCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AbstractBufferedRateExecutorTest {
+
+    private static final long MAX_WAIT_TIME = 200;
+
+    private TestRateExecutor executor;
+
+    @After
+    public void after() {
+        if (executor != null) {
+            executor.stop();
+        }
+    }
+
+    @Test
+    public void testPermitReleasedAfterExpiredBeforeExecution() throws Exception {
+        executor = new TestRateExecutor(1, MAX_WAIT_TIME);
+        // blocks the single dispatcher thread until the queued task expires
+        ListenableFuture<String> blocker = executor.submit(new TestTask("blocker", task -> {
+            sleep(MAX_WAIT_TIME * 2);
+            return Futures.immediateFuture(task.getName());
+        }));
+        TestTask expiredTask = new TestTask("expired", task -> Futures.immediateFuture(task.getName()));
+        ListenableFuture<String> expired = executor.submit(expiredTask);
+        Assert.assertEquals("blocker", blocker.get(5, TimeUnit.SECONDS));
+        assertFailure(expired, TimeoutException.class);
+        Assert.assertFalse(expiredTask.isExecuted());
+        assertPermitsReleased();
+    }
+
+    @Test
+    public void testPermitReleasedAfterExecuteThrows() throws Exception {
+        executor = new TestRateExecutor(1, MAX_WAIT_TIME);
+        ListenableFuture<String> failed = executor.submit(new TestTask("failed", task -> {
+            throw new IllegalStateException("execute failed");
+        }));
+        assertFailure(failed, IllegalStateException.class);
+        assertPermitsReleased();
+    }
+
+    @Test
+    public void testPermitReleasedAfterTimeout() throws Exception {
+        executor = new TestRateExecutor(1, MAX_WAIT_TIME);
+        ListenableFuture<String> timedOut = executor.submit(new TestTask("timedOut", task -> SettableFuture.create()));
+        assertFailure(timedOut, TimeoutException.class);
+        assertPermitsReleased();
+    }
+
+    @Test
+    public void testWritesAreNotStarvedByReads() throws Exception {
+        executor = new TestRateExecutor(2, TimeUnit.SECONDS.toMillis(10));
+        CountDownLatch blockerStarted = new CountDownLatch(1);
+        SettableFuture<String> blockerResult = SettableFuture.create();
+        ListenableFuture<String> blocker = executor.submit(new TestTask("blocker", task -> {
+            blockerStarted.countDown();
+            return blockerResult;
+        }));
+        Assert.assertTrue(blockerStarted.await(5, TimeUnit.SECONDS));
+
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        Function<TestTask, ListenableFuture<String>> record = task -> {
+            executed.add(task.getName());
+            return Futures.immediateFuture(task.getName());
+        };
+        List<ListenableFuture<String>> futures = new ArrayList<>();
+        futures.add(executor.submit(new TestTask("W1", record)));
+        futures.add(executor.submit(new TestTask("W2", record)));
+        for (int i = 1; i <= 4; i++) {
+            futures.add(executor.submit(new TestTask("R" + i, record, true)));
+        }
+        blockerResult.set("blocker");
+        blocker.get(5, TimeUnit.SECONDS);
+        Futures.allAsList(futures).get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(Arrays.asList("R1", "R2", "W1", "R3", "R4", "W2"), executed);
+    }
+
+    private void assertPermitsReleased() throws Exception {
+        Assert.assertEquals(0, executor.concurrencyLevel.get());
+        ListenableFuture<String> next = executor.submit(new TestTask("next", task -> Futures.immediateFuture(task.getName())));
+        Assert.assertEquals("next", next.get(5, TimeUnit.SECONDS));
+    }
+
+    private static void assertFailure(ListenableFuture<String> future, Class<? extends Throwable> expected) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected failure: " + expected.getSimpleName());
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().toString(), expected.isInstance(e.getCause()));
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static StatsFactory mockStatsFactory() {
+        StatsFactory statsFactory = mock(StatsFactory.class);
+        when(statsFactory.createStatsCounter(anyString(), anyString())).thenReturn(mock(StatsCounter.class));
+        when(statsFactory.createGauge(anyString(), any(Number.class), (String[]) anyVararg()))
+                .thenAnswer(invocation -> invocation.getArguments()[1]);
+        return statsFactory;
+    }
+
+    private static class TestTask implements AsyncTask {
+
+        private final String name;
+        private final Function<TestTask, ListenableFuture<String>> action;
+        private final boolean read;
+        private volatile boolean executed;
+
+        TestTask(String name, Function<TestTask, ListenableFuture<String>> action) {
+            this(name, action, false);
+        }
+
+        TestTask(String name, Function<TestTask, ListenableFuture<String>> action, boolean read) {
+            this.name = name;
+            this.action = action;
+            this.read = read;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public TenantId getTenantId() {
+            return TenantId.SYS_TENANT_ID;
+        }
+    }
+
+    private static class TestRateExecutor extends AbstractBufferedRateExecutor<TestTask, ListenableFuture<String>, String> {
+
+        TestRateExecutor(int priorityWeight, long maxWaitTime) {
+            super(100, 1, maxWaitTime, 1, 1, false, 1, 2.0, priorityWeight,
+                    false, null, 0, mockStatsFactory());
+        }
+
+        @Override
+        protected SettableFuture<String> create() {
+            return SettableFuture.create();
+        }
+
+        @Override
+        protected ListenableFuture<String> wrap(TestTask task, SettableFuture<String> future) {
+            return future;
+        }
+
+        @Override
+        protected ListenableFuture<String> execute(AsyncTaskContext<TestTask, String> taskCtx) {
+            TestTask task = taskCtx.getTask();
+            task.executed = true;
+            return task.action.apply(task);
+        }
+
+        @Override
+        protected boolean isPriorityTask(TestTask task) {
+            return task.read;
+        }
+    }
+}
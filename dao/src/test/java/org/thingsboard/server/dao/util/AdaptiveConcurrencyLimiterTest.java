@@ -0,0 +1,86 @@
+/**
+ * Copyright © 2016-2020 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(5);
+
+    @Test
+    public void testFixedLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(false, 1, 2, 2.0);
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertFalse(limiter.tryAcquire());
+        limiter.release(RTT * 100, true, System.nanoTime());
+        Assert.assertEquals(2, limiter.getLimit());
+        Assert.assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testDecreaseOnDropAndRecover() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 10, 100, 2.0);
+        long now = 0;
+        limiter.tryAcquire();
+        limiter.release(RTT, false, now);
+        limiter.tryAcquire();
+        limiter.release(RTT, true, now);
+        Assert.assertEquals(90, limiter.getLimit());
+
+        // second drop within the same round trip does not decrease the limit again
+        limiter.tryAcquire();
+        limiter.release(RTT, true, now + 1);
+        Assert.assertEquals(90, limiter.getLimit());
+
+        for (int i = 0; i < 50; i++) {
+            now += RTT;
+            limiter.tryAcquire();
+            limiter.release(RTT, true, now);
+        }
+        Assert.assertEquals(10, limiter.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire();
+        }
+        for (int i = 0; i < 1000; i++) {
+            limiter.release(RTT, false, now);
+            limiter.tryAcquire();
+        }
+        Assert.assertTrue(limiter.getLimit() > 10);
+    }
+
+    @Test
+    public void testDecreaseOnLatencyGrowth() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 10, 100, 2.0);
+        long now = 0;
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire();
+            limiter.release(RTT, false, now);
+        }
+        Assert.assertEquals(100, limiter.getLimit());
+        for (int i = 0; i < 10; i++) {
+            now += RTT * 10;
+            limiter.tryAcquire();
+            limiter.release(RTT * 10, false, now);
+        }
+        Assert.assertTrue(limiter.getLimit() < 100);
+    }
+}
@@ -56,6 +56,8 @@ JsInvokeMessageProcessor.prototype.onJsInvokeMessage = function(message) {
             this.processCompileRequest(requestId, responseTopic, headers, request.compileRequest);
         } else if (request.invokeRequest) {
             this.processInvokeRequest(requestId, responseTopic, headers, request.invokeRequest);
+        } else if (request.batchInvokeRequest) {
+            this.processBatchInvokeRequest(requestId, responseTopic, headers, request.batchInvokeRequest);
         } else if (request.releaseRequest) {
             this.processReleaseRequest(requestId, responseTopic, headers, request.releaseRequest);
         } else {
@@ -106,12 +108,7 @@ JsInvokeMessageProcessor.prototype.processInvokeRequest = function(requestId, re
                     this.sendResponse(requestId, responseTopic, headers, scriptId, null, invokeResponse);
                 },
                 (err) => {
-                    var errorCode;
-                    if (err.message.includes('Script execution timed out')) {
-                        errorCode = TIMEOUT_ERROR;
-                    } else {
-                        errorCode = RUNTIME_ERROR;
-                    }
+                    var errorCode = toInvokeErrorCode(err);
                     var invokeResponse = createInvokeResponse("", false, errorCode, err);
                     logger.debug('[%s] Sending failed invoke response, scriptId: [%s], errorCode: [%s]', requestId, scriptId, errorCode);
                     this.sendResponse(requestId, responseTopic, headers, scriptId, null, invokeResponse);
@@ -126,6 +123,40 @@ JsInvokeMessageProcessor.prototype.processInvokeRequest = function(requestId, re
     );
 }
 
+JsInvokeMessageProcessor.prototype.processBatchInvokeRequest = function(requestId, responseTopic, headers, batchInvokeRequest) {
+    var scriptId = getScriptId(batchInvokeRequest);
+    var invocations = batchInvokeRequest.invocations || [];
+    logger.debug('[%s] Processing batch invoke request, scriptId: [%s], invocations: [%s]', requestId, scriptId, invocations.length);
+    this.executedScriptsCounter += invocations.length;
+    if ( this.executedScriptsCounter >= scriptBodyTraceFrequency ) {
+        this.executedScriptsCounter = 0;
+        if (logger.levels[logger.level] >= logger.levels['debug']) {
+            logger.debug('[%s] Executing script body: [%s]', scriptId, batchInvokeRequest.scriptBody);
+        }
+    }
+    this.getOrCompileScript(scriptId, batchInvokeRequest.scriptBody).then(
+        (script) => {
+            var responses = invocations.map((invocation) =>
+                this.executor.executeScript(script, invocation.args || [], batchInvokeRequest.timeout).then(
+                    (result) => createInvokeResponse(result, true),
+                    (err) => createInvokeResponse("", false, toInvokeErrorCode(err), err)
+                )
+            );
+            Promise.all(responses).then(
+                (invokeResponses) => {
+                    logger.debug('[%s] Sending batch invoke response, scriptId: [%s]', requestId, scriptId);
+                    this.sendResponse(requestId, responseTopic, headers, scriptId, null, null, null, createBatchInvokeResponse(invokeResponses));
+                }
+            );
+        },
+        (err) => {
+            var invokeResponses = invocations.map(() => createInvokeResponse("", false, COMPILATION_ERROR, err));
+            logger.debug('[%s] Sending failed batch invoke response, scriptId: [%s], errorCode: [%s]', requestId, scriptId, COMPILATION_ERROR);
+            this.sendResponse(requestId, responseTopic, headers, scriptId, null, null, null, createBatchInvokeResponse(invokeResponses));
+        }
+    );
+}
+
 JsInvokeMessageProcessor.prototype.processReleaseRequest = function(requestId, responseTopic, headers, releaseRequest) {
     var scriptId = getScriptId(releaseRequest);
     logger.debug('[%s] Processing release request, scriptId: [%s]', requestId, scriptId);
@@ -141,8 +172,8 @@ JsInvokeMessageProcessor.prototype.processReleaseRequest = function(requestId, r
     this.sendResponse(requestId, responseTopic, headers, scriptId, null, null, releaseResponse);
 }
 
-JsInvokeMessageProcessor.prototype.sendResponse = function (requestId, responseTopic, headers, scriptId, compileResponse, invokeResponse, releaseResponse) {
-    var remoteResponse = createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse);
+JsInvokeMessageProcessor.prototype.sendResponse = function (requestId, responseTopic, headers, scriptId, compileResponse, invokeResponse, releaseResponse, batchInvokeResponse) {
+    var remoteResponse = createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse, batchInvokeResponse);
     var rawResponse = Buffer.from(JSON.stringify(remoteResponse), 'utf8');
     this.producer.send(responseTopic, scriptId, rawResponse, headers).then(
         () => {},
@@ -187,14 +218,15 @@ JsInvokeMessageProcessor.prototype.cacheScript = function(scriptId, script) {
     this.scriptMap[scriptId] = script;
 }
 
-function createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse) {
+function createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse, batchInvokeResponse) {
     const requestIdBits = Utils.UUIDToBits(requestId);
     return {
             requestIdMSB: requestIdBits[0],
             requestIdLSB: requestIdBits[1],
             compileResponse: compileResponse,
             invokeResponse: invokeResponse,
-            releaseResponse: releaseResponse
+            releaseResponse: releaseResponse,
+            batchInvokeResponse: batchInvokeResponse
     };
 }
 
@@ -218,6 +250,20 @@ function createInvokeResponse(result, success, errorCode, err) {
     };
 }
 
+function createBatchInvokeResponse(invokeResponses) {
+    return {
+            responses: invokeResponses
+    };
+}
+
+function toInvokeErrorCode(err) {
+    if (err && err.message && err.message.includes('Script execution timed out')) {
+        return TIMEOUT_ERROR;
+    } else {
+        return RUNTIME_ERROR;
+    }
+}
+
 function createReleaseResponse(scriptId, success) {
     const scriptIdBits = Utils.UUIDToBits(scriptId);
     return {